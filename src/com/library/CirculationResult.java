@@ -0,0 +1,28 @@
+package com.library;
+
+/**
+ * Outcome of a circulation call, per item for batch calls. The failures are
+ * also the reasons counted by {@link com.library.metrics.Metrics}.
+ */
+public enum CirculationResult {
+    /** The book was issued or returned. */
+    OK,
+    /** The borrower or librarian ID is not registered as such. */
+    UNKNOWN_USER,
+    /** No book with this ID is in the catalog. */
+    NOT_FOUND,
+    /** The book is already on loan. */
+    UNAVAILABLE,
+    /** Another borrower is first in the book's hold queue. */
+    HELD_FOR_OTHER,
+    /** The borrower has no loan slot left. */
+    LIMIT_REACHED,
+    /** The book is not on loan, or not to this borrower. */
+    NOT_ON_LOAN,
+    /** The borrower owes fines at or above the blocking threshold. */
+    FINES_OWED,
+    /** The borrower already holds this book. */
+    ALREADY_HELD,
+    /** The loan is overdue, so it cannot be renewed. */
+    OVERDUE
+}
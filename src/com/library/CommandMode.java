@@ -0,0 +1,393 @@
+package com.library;
+
+import com.library.analytics.PopularityTracker;
+import com.library.model.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Non-interactive front end: reads one command per line and writes plain,
+ * tab-separated results through a single buffered writer, without the menu.
+ * Used for scripts and replay files.
+ * <p>
+ * Arguments are separated by blanks; wrap an argument in double quotes to
+ * include blanks ({@code \"} escapes a quote). Blank lines and lines starting
+ * with {@code #} are skipped. Every command prints {@code ok ...} or
+ * {@code error <line>: ...}; listings print one line per item after it.
+ * Type {@code help} for the command list.
+ */
+public class CommandMode {
+    private static final String HELP = String.join("\n",
+            "add-book <id> <type 1|2|3> <title> <author> <subject>",
+            "remove-book <bookId>",
+            "search <keyword>",
+            "subject <keyword>",
+            "titles <keyword>",
+            "find <words>",
+            "suggest <prefix>",
+            "facets [keyword] [subject=<subject>]... [type=<type>]... [available]",
+            "list-books",
+            "register-borrower <id> <name> <email> <phone>",
+            "register-librarian <id> <name> <email> <phone>",
+            "list-users",
+            "hold <borrowerId> <bookId>",
+            "cancel-hold <borrowerId> <bookId>",
+            "holds <bookId>",
+            "expire-hold <borrowerId> <bookId>",
+            "expire-pickups",
+            "issue <borrowerId> <bookId> <librarianId>",
+            "issue-copy <borrowerId> <bookId> <librarianId>",
+            "issue-batch <borrowerId> <librarianId> <bookId>...",
+            "renew <borrowerId> <bookId>",
+            "return <bookId>",
+            "return-batch <bookId>...",
+            "overdue",
+            "report <borrowerId>",
+            "history <borrowerId> [fromDate toDate]",
+            "book-history <bookId> [fromDate toDate]",
+            "popular [book|subject] [checkout|hold] [7|30|365] [n]",
+            "fines <borrowerId>",
+            "pay <borrowerId> <cents>",
+            "metrics",
+            "help");
+
+    private final Library lib;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+
+    /**
+     * @param lib library service
+     * @param in  command source
+     * @param out result sink; wrapped in a BufferedWriter unless it already is one
+     */
+    public CommandMode(Library lib, BufferedReader in, Writer out) {
+        this.lib = lib;
+        this.in  = in;
+        this.out = out instanceof BufferedWriter bw ? bw : new BufferedWriter(out, 1 << 16);
+    }
+
+    /**
+     * Executes every command until the end of the input, then flushes the output.
+     * @return number of commands that failed
+     * @throws IOException if reading commands or writing results fails
+     */
+    public int run() throws IOException {
+        int failed = 0;
+        long lineNo = 0;
+        for (String line; (line = in.readLine()) != null; ) {
+            lineNo++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            String error;
+            try {
+                error = execute(tokenize(trimmed));
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            if (error != null) {
+                failed++;
+                out.write("error " + lineNo + ": " + error);
+                out.newLine();
+            }
+        }
+        out.flush();
+        return failed;
+    }
+
+    /**
+     * Runs one parsed command.
+     * @return null on success, else the error message
+     */
+    private String execute(List<String> a) throws IOException {
+        String cmd = a.get(0);
+        switch (cmd) {
+            case "add-book" -> {
+                args(a, 5);
+                BookType type = switch (a.get(2)) {
+                    case "1" -> BookType.TEXTBOOK;
+                    case "2" -> BookType.NOVEL;
+                    case "3" -> BookType.REFERENCE;
+                    default  -> throw new IllegalArgumentException("invalid type " + a.get(2));
+                };
+                lib.addBook(type.create(a.get(1), a.get(3), a.get(4), a.get(5)));
+                ok("added " + a.get(1));
+            }
+            case "remove-book" -> {
+                args(a, 1);
+                if (lib.removeBook(a.get(1)) == null) return "no book " + a.get(1);
+                ok("removed " + a.get(1));
+            }
+            case "search", "subject" -> {
+                args(a, 1);
+                String keyword = String.join(" ", a.subList(1, a.size()));
+                books(cmd.equals("search") ? lib.searchBooks(keyword) : lib.searchBySubject(keyword));
+            }
+            case "find" -> {
+                args(a, 1);
+                books(lib.searchRanked(String.join(" ", a.subList(1, a.size())), 20));
+            }
+            case "suggest" -> {
+                args(a, 1);
+                List<String> out = lib.suggest(String.join(" ", a.subList(1, a.size())), 10);
+                ok(out.size() + " suggestions");
+                for (String s : out) line(s);
+            }
+            case "titles" -> {
+                args(a, 1);
+                List<Title> titles = lib.searchTitles(String.join(" ", a.subList(1, a.size())));
+                ok(titles.size() + " titles");
+                for (Title t : titles) {
+                    line(t.getType().name(), t.getTitle(), t.getAuthor(), t.getSubject(),
+                            t.getAvailable() + "/" + t.getCopies(), String.join(",", t.getCopyIds()));
+                }
+            }
+            case "facets" -> {
+                Set<String> subjects = new HashSet<>();
+                Set<BookType> types = EnumSet.noneOf(BookType.class);
+                boolean available = false;
+                List<String> words = new ArrayList<>();
+                for (String s : a.subList(1, a.size())) {
+                    if (s.startsWith("subject=")) subjects.add(s.substring(8));
+                    else if (s.startsWith("type=")) types.add(BookType.valueOf(s.substring(5).toUpperCase(Locale.ROOT)));
+                    else if (s.equals("available")) available = true;
+                    else words.add(s);
+                }
+                Facets f = lib.searchFacets(words.isEmpty() ? null : String.join(" ", words), subjects, types,
+                        available, Integer.MAX_VALUE);
+                ok(f.total() + " books, " + f.available() + " available");
+                for (var e : f.subjects().entrySet()) line("subject", e.getKey(), e.getValue().toString());
+                for (var e : f.types().entrySet()) line("type", e.getKey().name(), e.getValue().toString());
+                for (Book b : f.books()) book(b);
+            }
+            case "list-books" -> {
+                ok(lib.listBooks().size() + " books");
+                for (Iterator<Book> it = lib.streamBooks().iterator(); it.hasNext(); ) book(it.next());
+            }
+            case "register-borrower", "register-librarian" -> {
+                args(a, 4);
+                if (lib.getUser(a.get(1)) != null) return "user exists " + a.get(1);
+                if (cmd.equals("register-borrower")) lib.registerBorrower(new Borrower(a.get(1), a.get(2), a.get(3), a.get(4)));
+                else lib.registerLibrarian(new Librarian(a.get(1), a.get(2), a.get(3), a.get(4)));
+                ok("registered " + a.get(1));
+            }
+            case "list-users" -> {
+                ok(lib.listUsers().size() + " users");
+                for (Iterator<Person> it = lib.streamUsers().iterator(); it.hasNext(); ) {
+                    Person p = it.next();
+                    line(p.getId(), p.getClass().getSimpleName(), p.getName(), p.getEmail(), p.getPhone());
+                }
+            }
+            case "hold" -> {
+                args(a, 2);
+                if (!lib.placeHold(a.get(1), a.get(2))) return "cannot hold " + a.get(2) + " for " + a.get(1);
+                ok("hold " + a.get(2) + " " + a.get(1));
+            }
+            case "cancel-hold" -> {
+                args(a, 2);
+                if (!lib.cancelHold(a.get(1), a.get(2))) return "no hold on " + a.get(2) + " for " + a.get(1);
+                ok("cancelled " + a.get(2) + " " + a.get(1));
+            }
+            case "holds" -> {
+                args(a, 1);
+                List<HoldRequest> holds = lib.getHoldsForBook(a.get(1));
+                ok(holds.size() + " holds");
+                for (HoldRequest hr : holds) {
+                    if (hr.getPickupBy() == null) line(hr.getBorrower().getId(), hr.getRequestDate().toString());
+                    else line(hr.getBorrower().getId(), hr.getRequestDate().toString(), hr.getPickupBy().toString(),
+                            hr.getBook().getBookId());
+                }
+            }
+            case "expire-hold" -> {
+                args(a, 2);
+                if (!lib.expireHold(a.get(1), a.get(2))) return a.get(2) + " is not set aside for " + a.get(1);
+                ok("expired " + a.get(2) + " " + a.get(1));
+            }
+            case "expire-pickups" -> ok("expired " + lib.expirePickups());
+            case "issue" -> {
+                args(a, 3);
+                if (!lib.issueBook(a.get(1), a.get(2), a.get(3))) return "cannot issue " + a.get(2) + " to " + a.get(1);
+                ok("issued " + a.get(2) + " " + a.get(1));
+            }
+            case "issue-copy" -> {
+                args(a, 3);
+                String copy = lib.issueCopy(a.get(1), a.get(2), a.get(3));
+                if (copy == null) return "no copy of " + a.get(2) + " for " + a.get(1);
+                ok("issued " + copy + " " + a.get(1));
+            }
+            case "issue-batch" -> {
+                args(a, 3);
+                results(a.subList(3, a.size()), lib.issueBooks(a.get(1), a.subList(3, a.size()), a.get(2)));
+            }
+            case "renew" -> {
+                args(a, 2);
+                if (!lib.renewLoan(a.get(1), a.get(2))) return "cannot renew " + a.get(2) + " for " + a.get(1);
+                ok("renewed " + a.get(2) + " due " + lib.getActiveLoan(a.get(2)).getDueDate());
+            }
+            case "return" -> {
+                args(a, 1);
+                if (!lib.returnBook(a.get(1))) return "not on loan " + a.get(1);
+                ok("returned " + a.get(1));
+            }
+            case "return-batch" -> {
+                args(a, 1);
+                results(a.subList(1, a.size()), lib.returnBooks(a.subList(1, a.size())));
+            }
+            case "overdue" -> loans(lib.displayOverdue());
+            case "report" -> {
+                args(a, 1);
+                if (!(lib.getUser(a.get(1)) instanceof Borrower)) return "no borrower " + a.get(1);
+                List<Loan> report = new ArrayList<>(lib.getLoanHistory(a.get(1)));
+                report.addAll(lib.generateUserReport(a.get(1)));
+                loans(report);
+            }
+            case "history" -> {
+                args(a, 1);
+                if (!(lib.getUser(a.get(1)) instanceof Borrower)) return "no borrower " + a.get(1);
+                loans(a.size() > 2 ? lib.getLoanHistory(a.get(1), from(a), to(a)) : lib.getLoanHistory(a.get(1)));
+            }
+            case "book-history" -> {
+                args(a, 1);
+                if (lib.getBook(a.get(1)) == null) return "no book " + a.get(1);
+                loans(a.size() > 2 ? lib.getBookHistory(a.get(1), from(a), to(a)) : lib.getBookHistory(a.get(1)));
+            }
+            case "popular" -> {
+                var by = PopularityTracker.Dimension.valueOf(arg(a, 1, "book").toUpperCase(Locale.ROOT));
+                var event = PopularityTracker.Event.valueOf(arg(a, 2, "checkout").toUpperCase(Locale.ROOT));
+                var window = PopularityTracker.Window.ofDays(Integer.parseInt(arg(a, 3, "30")));
+                var top = lib.getPopular(event, by, window, Integer.parseInt(arg(a, 4, "10")));
+                ok(top.size() + " entries");
+                for (PopularityTracker.Count c : top) line(c.key(), Long.toString(c.count()));
+            }
+            case "fines" -> {
+                args(a, 1);
+                if (!(lib.getUser(a.get(1)) instanceof Borrower)) return "no borrower " + a.get(1);
+                ok(Long.toString(lib.getFineBalance(a.get(1))));
+            }
+            case "pay" -> {
+                args(a, 2);
+                if (!lib.payFine(a.get(1), Long.parseLong(a.get(2)))) return "cannot pay " + a.get(2) + " for " + a.get(1);
+                ok("paid " + a.get(2) + " balance " + lib.getFineBalance(a.get(1)));
+            }
+            case "metrics" -> {
+                ok("metrics");
+                lib.getMetrics().writeText(out);
+            }
+            case "help" -> {
+                ok("commands");
+                out.write(HELP);
+                out.newLine();
+            }
+            default -> {
+                return "unknown command " + cmd;
+            }
+        }
+        return null;
+    }
+
+    private static void args(List<String> a, int min) {
+        if (a.size() - 1 < min) throw new IllegalArgumentException(a.get(0) + " needs " + min + " argument(s)");
+    }
+
+    /** @return argument {@code i}, or the fallback if the command has fewer arguments */
+    private static String arg(List<String> a, int i, String fallback) {
+        return i < a.size() ? a.get(i) : fallback;
+    }
+
+    /** @return start of the day given as argument 2 */
+    private static LocalDateTime from(List<String> a) {
+        return date(a.get(2)).atStartOfDay();
+    }
+
+    /** @return end of the day given as argument 3 (exclusive), or of argument 2 if there is none */
+    private static LocalDateTime to(List<String> a) {
+        return date(a.get(a.size() > 3 ? 3 : 2)).plusDays(1).atStartOfDay();
+    }
+
+    private static LocalDate date(String v) {
+        try {
+            return LocalDate.parse(v);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date " + v);
+        }
+    }
+
+    private void ok(String message) throws IOException {
+        out.write("ok ");
+        out.write(message);
+        out.newLine();
+    }
+
+    private void line(String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.write('\t');
+            out.write(fields[i] == null ? "" : fields[i]);
+        }
+        out.newLine();
+    }
+
+    private void books(Collection<Book> books) throws IOException {
+        ok(books.size() + " books");
+        for (Book b : books) book(b);
+    }
+
+    private void book(Book b) throws IOException {
+        line(b.getBookId(), b.getClass().getSimpleName(), b.getTitle(), b.getAuthor(), b.getSubject(),
+                b.isIssued() ? "OUT" : "IN");
+    }
+
+    private void loans(List<Loan> loans) throws IOException {
+        ok(loans.size() + " loans");
+        for (Loan l : loans) {
+            if (l.getReturnDate() == null) line(l.getBook().getBookId(), l.getBorrower().getId(), l.getDueDate().toString());
+            else line(l.getBook().getBookId(), l.getBorrower().getId(), l.getDueDate().toString(), l.getReturnDate().toString());
+        }
+    }
+
+    private void results(List<String> bookIds, CirculationResult[] results) throws IOException {
+        int done = 0;
+        for (CirculationResult r : results) if (r == CirculationResult.OK) done++;
+        ok(done + "/" + results.length);
+        for (int i = 0; i < results.length; i++) line(bookIds.get(i), results[i].name());
+    }
+
+    /** Splits a command line at blanks, keeping double-quoted arguments together. */
+    static List<String> tokenize(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false, inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < line.length() && line.charAt(i + 1) == '"') cur.append(line.charAt(++i));
+                else if (c == '"') quoted = false;
+                else cur.append(c);
+            } else if (c == '"') {
+                quoted = inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) out.add(cur.toString());
+                cur.setLength(0);
+                inToken = false;
+            } else {
+                cur.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("unterminated quote");
+        if (inToken) out.add(cur.toString());
+        return out;
+    }
+}
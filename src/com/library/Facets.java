@@ -0,0 +1,21 @@
+package com.library;
+
+import com.library.model.Book;
+import com.library.model.BookType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answer of a faceted search: the first matching books, and per facet value
+ * the number of books it matches together with the filters on the other
+ * facets, i.e. how many hits selecting that value would give.
+ *
+ * @param books     the first matching books, in catalog order
+ * @param total     number of matching books
+ * @param subjects  count per subject, largest first
+ * @param types     count per book type
+ * @param available number of matching books on the shelf, ignoring the availability filter
+ */
+public record Facets(List<Book> books, int total, Map<String, Integer> subjects, Map<BookType, Integer> types,
+                     int available) {}
@@ -1,27 +1,393 @@
 package com.library;
 
+import com.library.analytics.PopularityTracker;
+import com.library.events.Event;
+import com.library.events.EventBus;
+import com.library.fines.FineEngine;
+import com.library.fines.FineSchedule;
+import com.library.history.LoanHistory;
+import com.library.holds.PickupScheduler;
+import com.library.index.Bitmap;
+import com.library.index.BookIndex;
+import com.library.index.FacetIndex;
+import com.library.index.HoldQueues;
+import com.library.index.Holdings;
+import com.library.index.MappedCatalog;
+import com.library.index.OverdueIndex;
+import com.library.index.RankedIndex;
+import com.library.metrics.Metrics;
 import com.library.model.*;
+import com.library.persistence.Journal;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Core service handling books, users, holds, and loans.
+ * <p>
+ * Safe for concurrent use by several counter terminals. Every mutation that
+ * concerns one book (add/remove, hold, issue, renew, return) runs under the
+ * lock stripe of its title, so a book can never be issued twice and its
+ * title's hold queue stays in order. Borrow limits are enforced with a
+ * compare-and-set on the borrower's open-loan counter, so different books for
+ * the same borrower need no common lock. Lookups, searches and reports take
+ * no lock.
+ * <p>
+ * When a {@link Journal} is attached, every successful mutation is logged while
+ * its lock is still held (so the log order matches the apply order) and the
+ * caller then waits for the group commit outside the lock. Events for the
+ * {@link EventBus} are claimed under the lock in the same way, which fixes
+ * their order, and published once it is released, so a slow or reentrant
+ * handler never waits on a held stripe. All timestamps come
+ * from the library's {@link Clock}, which lets recovery replay the journal
+ * with the original times.
+ * <p>
+ * A read-only {@link MappedCatalog} can be mounted underneath the in-memory
+ * catalog. Its books are materialized as {@link Book} objects only when they are
+ * looked up by ID (and then cached, since they carry circulation state);
+ * listing and searching return short-lived views of untouched books. Adding a
+ * book with a mounted ID replaces it and removing one hides it.
+ * <p>
+ * Listings that can grow large also come as keyset {@link Page}s and lazy
+ * {@link Stream}s with a stable order: books and users by ID, overdue and due
+ * loans by due date, search hits in catalog order, holds in queue order and
+ * history oldest first.
  */
 public class Library {
-    private final Map<String, Book>   catalog     = new HashMap<>();
-    private final Map<String, Person> users       = new HashMap<>();
-    private final List<HoldRequest>   holdQueue   = new ArrayList<>();
-    private final List<Loan>          activeLoans = new ArrayList<>();
+    /** Pickup window of a book set aside for a hold, unless changed with {@link #setPickupWindow}. */
+    public static final Duration DEFAULT_PICKUP_WINDOW = Duration.ofDays(7);
+    private static final int STRIPES = 256;                  // power of two
+    private static final int EVENT_SLOTS = 1 << 14;          // power of two
+
+    private final Map<String, Book>   catalog     = new ConcurrentHashMap<>();
+    private final Map<String, Person> users       = new ConcurrentHashMap<>();
+    private final NavigableSet<String> bookIds    = new ConcurrentSkipListSet<>();   // in-memory books, for paging
+    private final NavigableSet<String> userIds    = new ConcurrentSkipListSet<>();
+    private final Holdings            holdings    = new Holdings();
+    private final HoldQueues          holdQueues  = new HoldQueues();                  // key = titleId
+    private final Map<String, Loan>   activeLoans = new ConcurrentHashMap<>();  // key = bookId
+    private final BookIndex           bookIndex   = new BookIndex();
+    private final FacetIndex          facets      = new FacetIndex();          // mounted ordinals, then docBase + doc
+    private final RankedIndex         ranked      = new RankedIndex();         // likewise
+    private final OverdueIndex        dueIndex    = new OverdueIndex();
+    private final LoanHistory         history     = new LoanHistory(this::lookup, users::get);
+    private final PopularityTracker   popularity  = new PopularityTracker();
+    private final FineEngine          fines       = new FineEngine(FineSchedule.DEFAULT, dueIndex);
+    private final EventBus            events      = new EventBus(EVENT_SLOTS);
+    private final ThreadLocal<EventBus.Outbox> outbox = ThreadLocal.withInitial(events::outbox);  // claimed under a stripe
+    private final Metrics             metrics     = new Metrics();
+    private final PickupScheduler     pickups;
+    private volatile Duration         pickupWindow = DEFAULT_PICKUP_WINDOW;
+    private final ReentrantLock[]     bookLocks   = new ReentrantLock[STRIPES];
+    private volatile MappedCatalog    mounted;
+    private volatile int              docBase;
+    private final Map<String, Book>   mountedViews = new ConcurrentHashMap<>();     // looked-up mounted books
+    private final Set<String>         hiddenMounted = ConcurrentHashMap.newKeySet(); // mounted IDs removed or replaced
+    private final Clock               clock;
+    private volatile Journal          journal;
+
+    public Library() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock source of "now" for loans, holds and overdue checks
+     */
+    public Library(Clock clock) {
+        this.clock = clock;
+        this.pickups = new PickupScheduler(LocalDateTime.now(clock));
+        for (int i = 0; i < STRIPES; i++) bookLocks[i] = new ReentrantLock();
+    }
+
+    /**
+     * Starts logging every mutation to the given journal.
+     * @param journal the write-ahead journal, or null to stop logging
+     */
+    public void attachJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Runs an action while holding every book lock, i.e. with no mutation in
+     * flight. Used to take a consistent snapshot.
+     * @param action the action to run
+     */
+    public void runExclusive(Runnable action) {
+        for (ReentrantLock l : bookLocks) l.lock();
+        try {
+            action.run();
+        } finally {
+            for (ReentrantLock l : bookLocks) l.unlock();
+        }
+    }
+
+    /**
+     * Serves the books of a catalog file underneath the in-memory catalog.
+     * Mounting is not journaled; the file must be mounted again after a restart.
+     * @param file the mapped catalog
+     * @throws IllegalStateException if the library already has books or a mounted catalog
+     */
+    public synchronized void mountCatalog(MappedCatalog file) {
+        if (mounted != null || !catalog.isEmpty()) {
+            throw new IllegalStateException("A catalog can only be mounted into an empty library");
+        }
+        holdings.mount(file, ord -> mountedView(file, ord));
+        facets.addAll(file);
+        ranked.mount(file);
+        docBase = file.size();
+        mounted = file;
+    }
+
+    /** @return the mounted catalog file, or null */
+    public MappedCatalog getMountedCatalog() {
+        return mounted;
+    }
+
+    /** Waits for a journal record to become durable; no-op when not journaling. */
+    private static void awaitDurable(Journal j, long seq) {
+        if (j != null) j.awaitDurable(seq);
+    }
+
+    /** @return the lock stripe guarding the given key */
+    private ReentrantLock lockFor(Object key) {
+        return bookLocks[stripe(key)];
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * @return the key of the title a book is a copy of; for an unknown book a
+     *         key of its own ID
+     */
+    private Title.Key titleKey(String bookId) {
+        Title t = holdings.ofCopy(bookId);
+        return t != null ? t.getKey() : ownKey(bookId);
+    }
+
+    /** @return the key that locks a book belonging to no title */
+    private static Title.Key ownKey(String bookId) {
+        return new Title.Key(null, bookId, null, null);
+    }
+
+    /**
+     * Locks the stripe of a book's title, which guards all its copies and its
+     * hold queue. Retries if the book moved to another title meanwhile.
+     * @return the locked stripe
+     */
+    private ReentrantLock lockBook(String bookId) {
+        while (true) {
+            Title.Key key = titleKey(bookId);
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            if (key.equals(titleKey(bookId))) return lock;
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Locks the stripes of a book's current title and of the title it is about
+     * to belong to, in stripe order, for adding, replacing or removing it.
+     * @return the locked stripes, to pass to {@link #unlock}
+     */
+    private ReentrantLock[] lockMove(String bookId, Title.Key newKey) {
+        while (true) {
+            Title.Key key = titleKey(bookId);
+            int a = stripe(key), b = stripe(newKey);
+            ReentrantLock[] locks = a == b ? new ReentrantLock[] { bookLocks[a] }
+                    : new ReentrantLock[] { bookLocks[Math.min(a, b)], bookLocks[Math.max(a, b)] };
+            for (ReentrantLock l : locks) l.lock();
+            if (key.equals(titleKey(bookId))) return locks;
+            unlock(locks);
+        }
+    }
+
+    private void unlock(ReentrantLock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) locks[i].unlock();
+        publishClaimed(locks[0]);
+    }
+
+    /** Releases a stripe, then publishes the events claimed under it. */
+    private void unlock(ReentrantLock lock) {
+        lock.unlock();
+        publishClaimed(lock);
+    }
+
+    /** Publishes this thread's claimed events, unless it still holds the stripe. */
+    private void publishClaimed(ReentrantLock lock) {
+        EventBus.Outbox o = outbox.get();
+        if (!o.isEmpty() && !lock.isHeldByCurrentThread()) o.flush();
+    }
 
     // Book operations
 
+    /** @return the book with this ID, materializing and caching a mounted one */
+    private Book lookup(String bookId) {
+        Book b = catalog.get(bookId);
+        if (b != null) return b;
+        MappedCatalog m = mounted;
+        if (m == null || hiddenMounted.contains(bookId)) return null;
+        Book view = mountedViews.get(bookId);
+        if (view != null) return view;
+        int ord = m.find(bookId);
+        return ord < 0 ? null : mountedViews.computeIfAbsent(bookId, k -> m.book(ord));
+    }
+
+    /** @return the cached mounted book if it was looked up, else a fresh view; null if hidden */
+    private Book mountedView(MappedCatalog m, int ord) {
+        String id = m.bookId(ord);
+        if (hiddenMounted.contains(id)) return null;
+        Book view = mountedViews.get(id);
+        return view != null ? view : m.book(ord);
+    }
+
+    /**
+     * Hides a mounted book; the caller holds its lock stripe.
+     * @return the hidden book, or null if no visible mounted book has this ID
+     */
+    private Book hideMounted(String bookId) {
+        MappedCatalog m = mounted;
+        if (m == null || hiddenMounted.contains(bookId)) return null;
+        int ord = m.find(bookId);
+        if (ord < 0) return null;
+        Book view = mountedViews.remove(bookId);
+        if (view == null) view = m.book(ord);
+        holdings.remove(bookId);
+        hiddenMounted.add(bookId);
+        facets.remove(ord, view);
+        ranked.remove(ord, view);
+        return view;
+    }
+
+    /**
+     * Stores a book in memory, replacing any book with its ID, and registers it
+     * as a copy of its title; the caller holds the stripes from {@link #lockMove}.
+     */
+    private void putBook(Book b) {
+        Book previous = catalog.put(b.getBookId(), b);
+        if (previous != null) unindex(previous);
+        else {
+            bookIds.add(b.getBookId());
+            hideMounted(b.getBookId());
+        }
+        holdings.add(b);
+    }
+
+    /**
+     * Sets a copy just added aside for the first hold waiting on its title, if
+     * any; the caller holds the stripes from {@link #lockMove}.
+     */
+    private void serveWaiting(Book b, LocalDateTime now) {
+        String id = b.getBookId();
+        Title t = holdings.ofCopy(id);
+        if (t != null && t.isFree(id) && holdQueues.firstWaiting(t.getKey()) != null) setAside(id, now);
+    }
+
+    /** Adds an in-memory book, already in the search index, to the facets and the ranked index; the caller holds its stripe. */
+    private void indexDoc(Book b) {
+        String id = b.getBookId();
+        int doc = bookIndex.docOf(id);
+        Title t = holdings.ofCopy(id);
+        if (doc < 0) return;
+        facets.add(docBase + doc, b, t != null && t.isFree(id));
+        ranked.add(docBase + doc, b);
+    }
+
+    /** Drops an in-memory book from the search index, the facets and the ranked index; the caller holds its stripe. */
+    private void unindex(Book b) {
+        int doc = bookIndex.docOf(b.getBookId());
+        if (doc >= 0 && bookIndex.book(doc) == b) {
+            facets.remove(docBase + doc, b);
+            ranked.remove(docBase + doc, b);
+        }
+        bookIndex.remove(b);
+    }
+
+    /** @return the facet document of a book, or -1 if it is not indexed */
+    private int facetDoc(String bookId) {
+        int doc = bookIndex.docOf(bookId);
+        if (doc >= 0) return docBase + doc;
+        MappedCatalog m = mounted;
+        return m == null || hiddenMounted.contains(bookId) ? -1 : m.find(bookId);
+    }
+
+    /** Takes a copy off the shelf of its title and of the availability facet. */
+    private void take(Title t, String bookId) {
+        if (t.take(bookId)) facets.setAvailable(facetDoc(bookId), false);
+    }
+
+    /** Puts a copy back on the shelf of its title and of the availability facet. */
+    private void release(Title t, String bookId) {
+        if (t.release(bookId)) facets.setAvailable(facetDoc(bookId), true);
+    }
+
     /**
      * Adds a book to the catalog.
      * @param b the Book to add
      */
     public void addBook(Book b) {
-        catalog.put(b.getBookId(), b);
+        Journal j = journal;
+        long seq = 0;
+        ReentrantLock[] locks = lockMove(b.getBookId(), Title.keyOf(b));
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            if (j != null) seq = j.logAddBook(b, now);
+            putBook(b);
+            bookIndex.add(b);
+            indexDoc(b);
+            outbox.get().addAdded(b, now);
+            serveWaiting(b, now);
+        } finally {
+            unlock(locks);
+        }
+        awaitDurable(j, seq);
+    }
+
+    /**
+     * Adds many books at once. Catalog and journal entries are written per book,
+     * but the search index is updated in one batch, which is much faster for
+     * large loads. Books with an ID already in the catalog replace the old entry.
+     * @param books the Books to add
+     */
+    public void addBooks(Collection<? extends Book> books) {
+        Journal j = journal;
+        long seq = 0;
+        List<Book> added = new ArrayList<>(books.size());
+        for (Book b : books) {
+            ReentrantLock[] locks = lockMove(b.getBookId(), Title.keyOf(b));
+            try {
+                LocalDateTime now = LocalDateTime.now(clock);
+                if (j != null) seq = j.logAddBook(b, now);
+                putBook(b);
+                added.add(b);
+                outbox.get().addAdded(b, now);
+                serveWaiting(b, now);
+            } finally {
+                unlock(locks);
+            }
+        }
+        bookIndex.addAll(added, b -> catalog.get(b.getBookId()) == b);   // not one removed or replaced since
+        for (Book b : added) {
+            ReentrantLock lock = lockBook(b.getBookId());
+            try {
+                if (catalog.get(b.getBookId()) == b) indexDoc(b);
+            } finally {
+                unlock(lock);
+            }
+        }
+        awaitDurable(j, seq);
     }
 
     /**
@@ -30,30 +396,329 @@ public class Library {
      * @return the removed Book, or null if none existed
      */
     public Book removeBook(String bookId) {
-        return catalog.remove(bookId);
+        Journal j = journal;
+        long seq = 0;
+        Book removed;
+        ReentrantLock[] locks = lockMove(bookId, ownKey(bookId));
+        try {
+            Title title = holdings.ofCopy(bookId);
+            removed = catalog.remove(bookId);
+            if (removed != null) {
+                bookIds.remove(bookId);
+                unindex(removed);
+                holdings.remove(bookId);
+            } else {
+                removed = hideMounted(bookId);
+            }
+            if (removed != null) {
+                LocalDateTime now = LocalDateTime.now(clock);
+                if (j != null) seq = j.logRemoveBook(bookId, now);
+                outbox.get().add(Event.Type.BOOK_REMOVED, now, bookId, null, null, 0);
+                HoldRequest aside = pickups.cancel(bookId);
+                if (aside != null) {
+                    aside.setPickupBy(null);                  // waits again, for another copy if one is free
+                    String other = title == null ? null : title.firstFree();
+                    if (other != null) setAside(other, now);
+                }
+            }
+        } finally {
+            unlock(locks);
+        }
+        awaitDurable(j, seq);
+        return removed;
     }
 
     /**
-     * Searches books by title, author, or ID.
+     * Searches books by title, author, or ID via the n-gram index.
      * @param keyword search term
-     * @return matching list of books
+     * @return matching list of books, one per copy
      */
     public List<Book> searchBooks(String keyword) {
-        String k = keyword.toLowerCase();
-        return catalog.values().stream()
-                .filter(b -> b.getTitle().toLowerCase().contains(k)
-                        || b.getAuthor().toLowerCase().contains(k)
-                        || b.getBookId().equalsIgnoreCase(keyword))
-                .collect(Collectors.toList());
+        long start = metrics.start();
+        List<Book> hits = withMounted(bookIndex.searchTitleAuthorOrId(keyword), m -> m.searchTitleAuthorOrId(keyword));
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return hits;
+    }
+
+    /**
+     * Searches books whose subject contains the keyword (case-insensitive).
+     * @param keyword search term
+     * @return matching list of books
+     */
+    public List<Book> searchBySubject(String keyword) {
+        long start = metrics.start();
+        List<Book> hits = withMounted(bookIndex.search(BookIndex.Field.SUBJECT, keyword),
+                m -> m.search(BookIndex.Field.SUBJECT, keyword));
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return hits;
+    }
+
+    /**
+     * Searches like {@link #searchBooks(String)}, with one hit per title
+     * instead of one per copy, in the order of each title's first copy.
+     * @param keyword search term
+     * @return matching titles, with their copy and availability counts
+     */
+    public List<Title> searchTitles(String keyword) {
+        Map<Title.Key, Title> found = new LinkedHashMap<>();
+        for (Book b : searchBooks(keyword)) {
+            Title t = holdings.ofCopy(b.getBookId());
+            if (t != null) found.putIfAbsent(t.getKey(), t);     // null if removed since the search
+        }
+        return new ArrayList<>(found.values());
     }
 
     /**
-     * @return all books in the catalog
+     * @param bookId ID of a copy
+     * @return the title it is a copy of, or null if there is no such book
+     */
+    public Title getTitle(String bookId) {
+        Book b = lookup(bookId);
+        return b == null ? null : holdings.ofCopy(bookId);
+    }
+
+    /**
+     * Searches by keyword and facets, answering from the facet bitmaps. Within
+     * a facet any selected value matches; across facets all must. Each facet
+     * is counted with the filters of the other facets applied.
+     * @param keyword       search term as in {@link #searchBooks(String)}, or null for every book
+     * @param subjects      exact subjects to keep; empty for any
+     * @param types         book types to keep; empty for any
+     * @param availableOnly whether to keep only copies on the shelf
+     * @param limit         maximum number of books returned
+     * @return the first matching books in catalog order, the number of matches and the facet counts
+     */
+    public Facets searchFacets(String keyword, Set<String> subjects, Set<BookType> types, boolean availableOnly, int limit) {
+        Page.checkLimit(limit);
+        long start = metrics.start();
+        MappedCatalog m = mounted;
+        Bitmap scope = null;
+        if (keyword != null) {
+            scope = new Bitmap();
+            if (m != null) for (int ord : m.searchTitleAuthorOrId(keyword)) scope.add(ord);
+            int base = docBase;
+            for (int doc : bookIndex.matchTitleAuthorOrId(keyword)) scope.add(base + doc);
+        }
+        FacetIndex.Result r = facets.query(scope, subjects, types, availableOnly, limit);
+        List<Book> books = new ArrayList<>(r.docs().length);
+        for (int doc : r.docs()) {
+            Book b = bookAtDoc(m, doc);
+            if (b != null) books.add(b);                      // removed since the query
+        }
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return new Facets(books, r.total(), r.subjects(), r.types(), r.available());
+    }
+
+    /**
+     * Searches titles, authors and subjects for any of the words of a query,
+     * best matches first. Words also match with a typo: one edit from three
+     * letters on, two from six; words of one or two letters must match exactly.
+     * Titles weigh more than authors and authors more than subjects, and rare
+     * words more than common ones.
+     * @param query words to look for
+     * @param limit maximum number of books
+     * @return the best matching books, best first
+     */
+    public List<Book> searchRanked(String query, int limit) {
+        Page.checkLimit(limit);
+        long start = metrics.start();
+        MappedCatalog m = mounted;
+        List<Book> books = new ArrayList<>();
+        for (RankedIndex.Hit h : ranked.search(query, limit)) {
+            Book b = bookAtDoc(m, h.doc());
+            if (b != null) books.add(b);
+        }
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return books;
+    }
+
+    /**
+     * Completes what was typed into a search box.
+     * @param prefix start of a title or an author name, ignoring case
+     * @param limit  maximum number of suggestions
+     * @return titles and author names starting with the prefix, those of the
+     *         most books first
+     */
+    public List<String> suggest(String prefix, int limit) {
+        Page.checkLimit(limit);
+        long start = metrics.start();
+        List<String> out = ranked.suggest(prefix, limit);
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return out;
+    }
+
+    /** @return the book of a facet or ranked document, or null if removed since */
+    private Book bookAtDoc(MappedCatalog m, int doc) {
+        int base = docBase;
+        return doc < base ? mountedView(m, doc) : bookIndex.book(doc - base);
+    }
+
+    /**
+     * One page of {@link #searchBooks(String)}, in catalog order: mounted books
+     * first, then books in the order they were added.
+     * @param keyword search term
+     * @param after   cursor of the previous page, or null for the first page
+     * @param limit   maximum number of books
+     * @return the page
+     */
+    public Page<Book> searchBooks(String keyword, String after, int limit) {
+        long start = metrics.start();
+        Page<Book> page = searchPage(after, limit, m -> m.searchTitleAuthorOrId(keyword),
+                (doc, n) -> bookIndex.searchTitleAuthorOrId(keyword, doc, n));
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return page;
+    }
+
+    /**
+     * One page of {@link #searchBySubject(String)}, in catalog order.
+     * @param keyword search term
+     * @param after   cursor of the previous page, or null for the first page
+     * @param limit   maximum number of books
+     * @return the page
+     */
+    public Page<Book> searchBySubject(String keyword, String after, int limit) {
+        long start = metrics.start();
+        Page<Book> page = searchPage(after, limit, m -> m.search(BookIndex.Field.SUBJECT, keyword),
+                (doc, n) -> bookIndex.search(BookIndex.Field.SUBJECT, keyword, doc, n));
+        metrics.record(Metrics.Op.SEARCH, CirculationResult.OK, start);
+        return page;
+    }
+
+    /**
+     * @param keyword search term
+     * @return lazy stream of {@link #searchBooks(String)}, fetched page by page
+     */
+    public Stream<Book> streamSearch(String keyword) {
+        return Page.stream(after -> searchBooks(keyword, after, Page.STREAM_CHUNK));
+    }
+
+    /**
+     * Pages over mounted hits, then in-memory hits. Cursors are {@code m<ordinal>}
+     * for a mounted book and {@code b<document>} for an in-memory one.
+     */
+    private Page<Book> searchPage(String after, int limit, Function<MappedCatalog, int[]> mountedQuery,
+                                  BiFunction<Integer, Integer, List<BookIndex.Hit>> ownQuery) {
+        Page.checkLimit(limit);
+        int afterOrd = -1, afterDoc = -1;
+        boolean inMounted = true;
+        if (after != null) {
+            try {
+                if (after.startsWith("m")) afterOrd = Integer.parseInt(after.substring(1));
+                else if (after.startsWith("b")) {
+                    afterDoc = Integer.parseInt(after.substring(1));
+                    inMounted = false;
+                } else throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid cursor " + after);
+            }
+        }
+        List<Book> out = new ArrayList<>(Math.min(limit, 1024));
+        List<String> keys = new ArrayList<>(Math.min(limit, 1024));
+        MappedCatalog m = mounted;
+        if (m != null && inMounted) {
+            int[] hits = mountedQuery.apply(m);
+            int i = Arrays.binarySearch(hits, afterOrd);
+            for (i = i >= 0 ? i + 1 : -i - 1; i < hits.length && out.size() <= limit; i++) {
+                Book b = mountedView(m, hits[i]);
+                if (b == null) continue;
+                out.add(b);
+                keys.add("m" + hits[i]);
+            }
+        }
+        if (out.size() <= limit) {
+            for (BookIndex.Hit h : ownQuery.apply(afterDoc, limit + 1 - out.size())) {
+                out.add(h.book());
+                keys.add("b" + h.doc());
+            }
+        }
+        if (out.size() <= limit) return new Page<>(out, null);
+        return new Page<>(out.subList(0, limit), keys.get(limit - 1));
+    }
+
+    /** Prepends the visible mounted hits of a query to the in-memory hits. */
+    private List<Book> withMounted(List<Book> own, Function<MappedCatalog, int[]> query) {
+        MappedCatalog m = mounted;
+        if (m == null) return own;
+        List<Book> out = new ArrayList<>();
+        for (int ord : query.apply(m)) {
+            Book b = mountedView(m, ord);
+            if (b != null) out.add(b);
+        }
+        out.addAll(own);
+        return out;
+    }
+
+    /**
+     * @return all books in the catalog; mounted books are read lazily while iterating
      */
     public Collection<Book> listBooks() {
+        MappedCatalog m = mounted;
+        if (m == null) return catalog.values();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return Stream.concat(
+                        IntStream.range(0, m.size()).mapToObj(ord -> mountedView(m, ord)).filter(Objects::nonNull),
+                        catalog.values().stream()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return m.size() - hiddenMounted.size() + catalog.size();
+            }
+        };
+    }
+
+    /**
+     * One page of the catalog in ID order ({@link String#compareTo}), merging
+     * mounted and in-memory books.
+     * @param after ID of the last book of the previous page, or null for the first page
+     * @param limit maximum number of books
+     * @return the page; its cursor is the last book's ID
+     */
+    public Page<Book> listBooks(String after, int limit) {
+        Page.checkLimit(limit);
+        MappedCatalog m = mounted;
+        Iterator<String> own = (after == null ? bookIds : bookIds.tailSet(after, false)).iterator();
+        int rank = m == null ? 0 : m.rankAfter(after), end = m == null ? 0 : m.size();
+        String ownId = own.hasNext() ? own.next() : null;
+        String mountedId = rank < end ? m.bookId(m.ordAtRank(rank)) : null;
+        List<Book> out = new ArrayList<>(Math.min(limit + 1, 1024));
+        while (out.size() <= limit && (ownId != null || mountedId != null)) {
+            Book b;
+            if (mountedId == null || (ownId != null && ownId.compareTo(mountedId) < 0)) {
+                b = catalog.get(ownId);
+                ownId = own.hasNext() ? own.next() : null;
+            } else {
+                b = mountedView(m, m.ordAtRank(rank));
+                mountedId = ++rank < end ? m.bookId(m.ordAtRank(rank)) : null;
+            }
+            if (b != null) out.add(b);            // removed meanwhile, or a hidden mounted book
+        }
+        return Page.of(out, limit, Book::getBookId);
+    }
+
+    /**
+     * @return lazy stream of every book in ID order, fetched page by page
+     */
+    public Stream<Book> streamBooks() {
+        return Page.stream(after -> listBooks(after, Page.STREAM_CHUNK));
+    }
+
+    /**
+     * @return books held in memory: all books unless a catalog file is mounted
+     */
+    public Collection<Book> listAddedBooks() {
         return catalog.values();
     }
 
+    /**
+     * @return IDs of mounted books that were removed or replaced
+     */
+    public Set<String> listHiddenMountedIds() {
+        return Collections.unmodifiableSet(hiddenMounted);
+    }
+
     // User operations
 
     /**
@@ -61,7 +726,7 @@ public class Library {
      * @param b the Borrower to add
      */
     public void registerBorrower(Borrower b) {
-        users.put(b.getId(), b);
+        register(b);
     }
 
     /**
@@ -69,7 +734,37 @@ public class Library {
      * @param l the Librarian to add
      */
     public void registerLibrarian(Librarian l) {
-        users.put(l.getId(), l);
+        register(l);
+    }
+
+    /**
+     * Logs before publishing, so no logged operation can precede the
+     * registration, and does both under the user's stripe, so a checkpoint
+     * cannot rotate the journal in between.
+     */
+    private void register(Person p) {
+        Journal j = journal;
+        long seq;
+        ReentrantLock lock = lockFor(p.getId());
+        lock.lock();
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            seq = j == null ? 0 : j.logRegister(p, now);
+            users.put(p.getId(), p);
+            userIds.add(p.getId());
+            outbox.get().addRegistered(p, now);
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
+    }
+
+    /**
+     * @param id ID of the user
+     * @return the registered borrower or librarian, or null
+     */
+    public Person getUser(String id) {
+        return users.get(id);
     }
 
     /**
@@ -79,86 +774,532 @@ public class Library {
         return users.values();
     }
 
+    /**
+     * One page of the registered users in ID order.
+     * @param after ID of the last user of the previous page, or null for the first page
+     * @param limit maximum number of users
+     * @return the page; its cursor is the last user's ID
+     */
+    public Page<Person> listUsers(String after, int limit) {
+        Page.checkLimit(limit);
+        List<Person> out = new ArrayList<>(Math.min(limit + 1, 1024));
+        for (String id : after == null ? userIds : userIds.tailSet(after, false)) {
+            if (out.size() > limit) break;
+            out.add(users.get(id));
+        }
+        return Page.of(out, limit, Person::getId);
+    }
+
+    /**
+     * @return lazy stream of every registered user in ID order, fetched page by page
+     */
+    public Stream<Person> streamUsers() {
+        return Page.stream(after -> listUsers(after, Page.STREAM_CHUNK));
+    }
+
     // Hold operations
 
     /**
-     * Places a hold request for a borrowed book.
+     * Places a hold on a book's title, for the next copy that comes back. Only
+     * allowed while no copy is on the shelf.
      * @param borrowerId ID of the borrower
-     * @param bookId     ID of the book
-     * @return true if the hold was placed
+     * @param bookId     ID of any copy of the title
+     * @return true if the hold was placed; false if invalid or already held by this borrower
      */
     public boolean placeHold(String borrowerId, String bookId) {
+        return tryPlaceHold(borrowerId, bookId) == CirculationResult.OK;
+    }
+
+    /**
+     * {@link #placeHold} with the reason a hold was refused.
+     * @param borrowerId ID of the borrower
+     * @param bookId     ID of any copy of the title
+     * @return OK, or e.g. NOT_ON_LOAN while a copy of the title is on the shelf
+     */
+    public CirculationResult tryPlaceHold(String borrowerId, String bookId) {
+        long start = metrics.start();
+        CirculationResult r = hold(borrowerId, bookId);
+        metrics.record(Metrics.Op.PLACE_HOLD, r, start);
+        return r;
+    }
+
+    /** {@link #placeHold} without the metrics. */
+    private CirculationResult hold(String borrowerId, String bookId) {
         Person p = users.get(borrowerId);
-        Book   b = catalog.get(bookId);
-        if (!(p instanceof Borrower) || b == null || !b.isIssued()) return false;
+        if (!(p instanceof Borrower)) return CirculationResult.UNKNOWN_USER;
         Borrower brw = (Borrower) p;
-        HoldRequest hr = new HoldRequest(brw, b);
-        holdQueue.add(hr);
-        brw.getHolds().add(hr);
+        Journal j = journal;
+        long seq = 0;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            Book b = lookup(bookId);
+            if (b == null) return CirculationResult.NOT_FOUND;
+            Title t = holdings.ofCopy(bookId);
+            if (t.getAvailable() > 0) return CirculationResult.NOT_ON_LOAN;
+            LocalDateTime now = LocalDateTime.now(clock);
+            HoldRequest hr = new HoldRequest(brw, b, now);
+            if (!holdQueues.add(t.getKey(), hr)) return CirculationResult.ALREADY_HELD;
+            brw.getHolds().add(hr);
+            popularity.record(PopularityTracker.Event.HOLD, b, now.toLocalDate());
+            if (j != null) seq = j.logPlaceHold(borrowerId, bookId, now);
+            outbox.get().add(Event.Type.HOLD_PLACED, now, bookId, borrowerId, null, 0);
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
+        return CirculationResult.OK;
+    }
+
+    /**
+     * Cancels a borrower's pending hold on a book's title. If a copy was set
+     * aside for that borrower, it is set aside for the next one in line.
+     * @param borrowerId ID of the borrower
+     * @param bookId     ID of any copy of the title
+     * @return true if a hold was cancelled
+     */
+    public boolean cancelHold(String borrowerId, String bookId) {
+        Journal j = journal;
+        long seq = 0;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            HoldRequest hr = holdQueues.remove(titleKey(bookId), borrowerId);
+            if (hr == null) return false;
+            hr.getBorrower().getHolds().remove(hr);
+            LocalDateTime now = LocalDateTime.now(clock);
+            if (j != null) seq = j.logCancelHold(borrowerId, bookId, now);
+            outbox.get().add(Event.Type.HOLD_CANCELLED, now, bookId, borrowerId, null, 0);
+            if (hr.getPickupBy() != null) {
+                String copy = hr.getBook().getBookId();
+                hr.setPickupBy(null);
+                pickups.cancel(copy);
+                setAside(copy, now);
+            }
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
         return true;
     }
 
     /**
-     * @param bookId ID of the book
-     * @return list of hold requests for that book
+     * @param bookId ID of any copy of a title
+     * @return list of hold requests for that title, first in line first
      */
     public List<HoldRequest> getHoldsForBook(String bookId) {
-        return holdQueue.stream()
-                .filter(hr -> hr.getBook().getBookId().equals(bookId))
-                .collect(Collectors.toList());
+        return holdQueues.forTitle(titleKey(bookId));
+    }
+
+    /**
+     * One page of a title's hold queue, first in line first.
+     * @param bookId ID of any copy of the title
+     * @param after  cursor of the previous page, or null for the first page
+     * @param limit  maximum number of holds
+     * @return the page
+     */
+    public Page<HoldRequest> getHoldsForBook(String bookId, String after, int limit) {
+        Page.checkLimit(limit);
+        LocalDateTime afterDate = null;
+        String afterBorrower = null;
+        if (after != null) {
+            int bar = after.indexOf('|');
+            try {
+                afterDate = LocalDateTime.parse(after.substring(0, Math.max(bar, 0)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("invalid cursor " + after);
+            }
+            afterBorrower = after.substring(bar + 1);
+        }
+        return Page.of(holdQueues.forTitle(titleKey(bookId), afterDate, afterBorrower, limit + 1), limit,
+                hr -> hr.getRequestDate() + "|" + hr.getBorrower().getId());
+    }
+
+    /**
+     * @return every pending hold, each title's holds in queue order
+     */
+    public List<HoldRequest> listHolds() {
+        return holdQueues.all();
+    }
+
+    /**
+     * Ends a borrower's pickup window now, e.g. because they declined the
+     * book, and sets the copy aside for the next borrower in line.
+     * @param borrowerId ID of the borrower
+     * @param bookId     ID of any copy of the title
+     * @return true if a copy was set aside for that borrower
+     */
+    public boolean expireHold(String borrowerId, String bookId) {
+        Journal j = journal;
+        long seq;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            HoldRequest hr = holdQueues.get(titleKey(bookId), borrowerId);
+            if (hr == null || hr.getPickupBy() == null) return false;
+            seq = expireLocked(j, hr);
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
+        return true;
+    }
+
+    /**
+     * Expires every pickup window that has run out; each copy is set aside
+     * for the next borrower in line. Meant to be called periodically.
+     * @return number of holds dropped
+     */
+    public int expirePickups() {
+        Journal j = journal;
+        long seq = 0;
+        int expired = 0;
+        for (HoldRequest hr : pickups.due(LocalDateTime.now(clock))) {
+            String bookId = hr.getBook().getBookId();
+            ReentrantLock lock = lockBook(bookId);
+            try {
+                // collected, cancelled or removed since the window ran out
+                if (hr.getPickupBy() == null || holdQueues.get(titleKey(bookId), hr.getBorrower().getId()) != hr) continue;
+                seq = Math.max(seq, expireLocked(j, hr));
+                expired++;
+            } finally {
+                unlock(lock);
+            }
+        }
+        awaitDurable(j, seq);
+        return expired;
+    }
+
+    /**
+     * @param window how long a returned book stays set aside for a hold; applies to books set aside from now on
+     */
+    public void setPickupWindow(Duration window) {
+        if (window.isNegative() || window.isZero()) throw new IllegalArgumentException("pickup window must be positive");
+        this.pickupWindow = window;
+    }
+
+    /** @return how long a returned book stays set aside for a hold */
+    public Duration getPickupWindow() {
+        return pickupWindow;
+    }
+
+    /** @return number of copies currently set aside for a hold */
+    public int getPickupsPending() {
+        return pickups.pending();
+    }
+
+    /**
+     * Sets a copy that came back aside for the first hold on its title still
+     * waiting, and announces it on the event bus; with nobody waiting the copy
+     * goes back on the shelf. The caller holds the title's lock stripe.
+     */
+    private void setAside(String bookId, LocalDateTime now) {
+        Title t = holdings.ofCopy(bookId);
+        if (t == null) return;
+        HoldRequest next = holdQueues.firstWaiting(t.getKey());
+        if (next == null) {
+            release(t, bookId);
+            return;
+        }
+        take(t, bookId);
+        next.setAside(lookup(bookId), now.plus(pickupWindow));
+        pickups.schedule(next);
+        outbox.get().add(Event.Type.HOLD_READY, now, bookId, next.getBorrower().getId(), null, 0);
+    }
+
+    /**
+     * Drops a hold with a copy set aside for it and sets the copy aside for
+     * the next one; the caller holds the title's lock stripe.
+     * @return the journal sequence number, or 0 when not journaling
+     */
+    private long expireLocked(Journal j, HoldRequest hr) {
+        String bookId = hr.getBook().getBookId(), borrowerId = hr.getBorrower().getId();
+        LocalDateTime now = LocalDateTime.now(clock);
+        holdQueues.remove(titleKey(bookId), borrowerId);
+        hr.getBorrower().getHolds().remove(hr);
+        hr.setPickupBy(null);
+        pickups.cancel(bookId);
+        long seq = j == null ? 0 : j.logExpireHold(borrowerId, bookId, now);
+        outbox.get().add(Event.Type.HOLD_EXPIRED, now, bookId, borrowerId, null, 0);
+        setAside(bookId, now);
+        return seq;
     }
 
     // Circulation operations
 
     /**
-     * Issues a book to a borrower, if valid.
+     * Issues a book to a borrower, if valid. Refused while the borrower owes
+     * the fine schedule's threshold or more.
      * @param borrowerId  ID of the borrower
      * @param bookId      ID of the book
      * @param librarianId ID of the librarian processing
      * @return true if issued successfully
      */
     public boolean issueBook(String borrowerId, String bookId, String librarianId) {
+        long start = metrics.start();
+        CirculationResult r = issue(borrowerId, bookId, librarianId);
+        metrics.record(Metrics.Op.ISSUE, r, start);
+        return r == CirculationResult.OK;
+    }
+
+    /** {@link #issueBook} without the metrics. */
+    private CirculationResult issue(String borrowerId, String bookId, String librarianId) {
         Person pu = users.get(borrowerId);
         Person pl = users.get(librarianId);
-        Book   bk = catalog.get(bookId);
-        if (!(pu instanceof Borrower) || !(pl instanceof Librarian) || bk == null || bk.isIssued())
-            return false;
+        if (!(pu instanceof Borrower) || !(pl instanceof Librarian)) return CirculationResult.UNKNOWN_USER;
 
         Borrower brw = (Borrower) pu;
         Librarian lib = (Librarian) pl;
+        if (fines.blocked(borrowerId, LocalDate.now(clock))) return CirculationResult.FINES_OWED;
 
-        // enforce borrow limit
-        long current = brw.getLoans().stream().filter(l -> !l.isOverdue()).count();
-        if (current >= brw.getMaxBorrowLimit()) return false;
+        Journal j = journal;
+        long seq;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            Book bk = lookup(bookId);
+            CirculationResult r = issuable(brw, bk);
+            if (r != CirculationResult.OK) return r;
+            if (!brw.tryReserveLoan()) return CirculationResult.LIMIT_REACHED;
+            seq = issueLocked(j, brw, bk, lib);
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
+        return CirculationResult.OK;
+    }
 
-        // enforce hold queue order
-        var holds = getHoldsForBook(bookId);
-        if (!holds.isEmpty() && !holds.get(0).getBorrower().equals(brw)) return false;
+    /**
+     * Issues a copy of a book's title: the copy set aside for the borrower if
+     * there is one, else the copy longest on the shelf.
+     * @param borrowerId  ID of the borrower
+     * @param bookId      ID of any copy of the title
+     * @param librarianId ID of the librarian processing
+     * @return ID of the copy issued, or null if none could be
+     */
+    public String issueCopy(String borrowerId, String bookId, String librarianId) {
+        long start = metrics.start();
+        String[] issued = new String[1];
+        CirculationResult r = issueAny(borrowerId, bookId, librarianId, issued);
+        metrics.record(Metrics.Op.ISSUE, r, start);
+        return issued[0];
+    }
+
+    /** {@link #issueCopy} without the metrics; stores the copy issued in {@code issued[0]}. */
+    private CirculationResult issueAny(String borrowerId, String bookId, String librarianId, String[] issued) {
+        if (!(users.get(borrowerId) instanceof Borrower brw) || !(users.get(librarianId) instanceof Librarian lib)) {
+            return CirculationResult.UNKNOWN_USER;
+        }
+        if (fines.blocked(borrowerId, LocalDate.now(clock))) return CirculationResult.FINES_OWED;
 
-        Loan loan = new Loan(brw, bk, lib);
+        Journal j = journal;
+        long seq;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            if (lookup(bookId) == null) return CirculationResult.NOT_FOUND;
+            Title t = holdings.ofCopy(bookId);
+            HoldRequest mine = holdQueues.get(t.getKey(), borrowerId);
+            String copy = mine != null && mine.getPickupBy() != null ? mine.getBook().getBookId() : t.firstFree();
+            if (copy == null) return CirculationResult.UNAVAILABLE;
+            Book bk = lookup(copy);
+            CirculationResult r = issuable(brw, bk);
+            if (r != CirculationResult.OK) return r;
+            if (!brw.tryReserveLoan()) return CirculationResult.LIMIT_REACHED;
+            seq = issueLocked(j, brw, bk, lib);
+            issued[0] = copy;
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
+        return CirculationResult.OK;
+    }
+
+    /**
+     * Issues several books to one borrower, e.g. at a self-checkout kiosk.
+     * Borrower and librarian are resolved once, loan slots for the whole batch
+     * are reserved with a single compare-and-set (unused ones are given back),
+     * and a journaled batch waits for one group commit instead of one per book.
+     * @param borrowerId  ID of the borrower
+     * @param bookIds     IDs of the books, in scan order
+     * @param librarianId ID of the librarian processing
+     * @return the result for each book, in the same order
+     */
+    public CirculationResult[] issueBooks(String borrowerId, List<String> bookIds, String librarianId) {
+        long start = metrics.start();
+        CirculationResult[] results = issueAll(borrowerId, bookIds, librarianId);
+        metrics.record(Metrics.Op.ISSUE_BATCH, results, start);
+        return results;
+    }
+
+    /** {@link #issueBooks} without the metrics. */
+    private CirculationResult[] issueAll(String borrowerId, List<String> bookIds, String librarianId) {
+        CirculationResult[] results = new CirculationResult[bookIds.size()];
+        if (!(users.get(borrowerId) instanceof Borrower brw) || !(users.get(librarianId) instanceof Librarian lib)) {
+            Arrays.fill(results, CirculationResult.UNKNOWN_USER);
+            return results;
+        }
+        if (fines.blocked(borrowerId, LocalDate.now(clock))) {
+            Arrays.fill(results, CirculationResult.FINES_OWED);
+            return results;
+        }
+        Journal j = journal;
+        long seq = 0;
+        int slots = brw.tryReserveLoans(bookIds.size());
+        try {
+            for (int i = 0; i < results.length; i++) {
+                String bookId = bookIds.get(i);
+                ReentrantLock lock = lockBook(bookId);
+                try {
+                    Book bk = lookup(bookId);
+                    CirculationResult r = issuable(brw, bk);
+                    if (r == CirculationResult.OK && slots == 0) r = CirculationResult.LIMIT_REACHED;
+                    if (r == CirculationResult.OK) {
+                        slots--;
+                        seq = Math.max(seq, issueLocked(j, brw, bk, lib));
+                    }
+                    results[i] = r;
+                } finally {
+                    unlock(lock);
+                }
+            }
+        } finally {
+            brw.releaseLoans(slots);
+        }
+        awaitDurable(j, seq);
+        return results;
+    }
+
+    /**
+     * Checks a copy against availability and hold order: a copy set aside goes
+     * only to its borrower, a copy on the shelf to anyone not queued behind a
+     * waiting hold. The caller holds the title's lock stripe.
+     */
+    private CirculationResult issuable(Borrower brw, Book bk) {
+        if (bk == null) return CirculationResult.NOT_FOUND;
+        if (bk.isIssued()) return CirculationResult.UNAVAILABLE;
+        String bookId = bk.getBookId();
+        Title t = holdings.ofCopy(bookId);
+        if (t.isFree(bookId)) {
+            HoldRequest next = holdQueues.firstWaiting(t.getKey());
+            return next == null || next.getBorrower().equals(brw) ? CirculationResult.OK : CirculationResult.HELD_FOR_OTHER;
+        }
+        HoldRequest mine = holdQueues.get(t.getKey(), brw.getId());
+        return mine != null && mine.getPickupBy() != null && mine.getBook() == bk
+                ? CirculationResult.OK : CirculationResult.HELD_FOR_OTHER;
+    }
+
+    /**
+     * Opens a loan for a book already checked by {@link #issuable}, using a loan slot
+     * the caller reserved. The caller holds the book's lock stripe.
+     * @return the journal sequence number, or 0 when not journaling
+     */
+    private long issueLocked(Journal j, Borrower brw, Book bk, Librarian lib) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        String bookId = bk.getBookId();
+        long seq = j == null ? 0 : j.logIssue(brw.getId(), bookId, lib.getId(), now);
+        Loan loan = new Loan(brw, bk, lib, now);
         bk.issue(loan);
-        activeLoans.add(loan);
+        Title t = holdings.ofCopy(bookId);
+        take(t, bookId);
+        activeLoans.put(bookId, loan);
+        dueIndex.add(loan);
         brw.getLoans().add(loan);
-        holdQueue.removeIf(hr -> hr.getBorrower().equals(brw) && hr.getBook().equals(bk));
-        return true;
+        popularity.record(PopularityTracker.Event.CHECKOUT, bk, now.toLocalDate());
+        HoldRequest fulfilled = holdQueues.remove(t.getKey(), brw.getId());
+        if (fulfilled != null) {
+            brw.getHolds().remove(fulfilled);
+            if (fulfilled.getPickupBy() != null) {
+                String aside = fulfilled.getBook().getBookId();
+                fulfilled.setPickupBy(null);
+                pickups.cancel(aside);
+                if (!aside.equals(bookId)) setAside(aside, now);   // took another copy; pass this one on
+            }
+        }
+        outbox.get().add(Event.Type.ISSUED, now, bookId, brw.getId(), lib.getId(), 0);
+        return seq;
     }
 
     /**
-     * Processes return of a book.
+     * Processes return of a book. If its title has holds, the book is set
+     * aside for the first borrower in line for a pickup window (see
+     * {@link #setPickupWindow} and {@link #expirePickups}).
      * @param bookId ID of the book
      * @return true if returned successfully
      */
     public boolean returnBook(String bookId) {
-        Book bk = catalog.get(bookId);
-        if (bk == null || !bk.isIssued()) return false;
-        Optional<Loan> ol = activeLoans.stream()
-                .filter(l -> l.getBook().equals(bk))
-                .findFirst();
-        if (ol.isEmpty()) return false;
-        Loan loan = ol.get();
-        loan.close();
-        activeLoans.remove(loan);
-        return true;
+        return tryReturnBook(bookId) == CirculationResult.OK;
+    }
+
+    /**
+     * {@link #returnBook} with the reason a return was refused.
+     * @return OK, NOT_FOUND or NOT_ON_LOAN
+     */
+    public CirculationResult tryReturnBook(String bookId) {
+        long start = metrics.start();
+        Journal j = journal;
+        long seq;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            seq = returnLocked(j, bookId);
+        } finally {
+            unlock(lock);
+        }
+        if (seq < 0) {
+            CirculationResult r = lookup(bookId) == null ? CirculationResult.NOT_FOUND : CirculationResult.NOT_ON_LOAN;
+            metrics.record(Metrics.Op.RETURN, r, start);
+            return r;
+        }
+        awaitDurable(j, seq);
+        metrics.record(Metrics.Op.RETURN, CirculationResult.OK, start);
+        return CirculationResult.OK;
+    }
+
+    /**
+     * Returns several books, e.g. from the book-drop sorter, waiting for one
+     * group commit for the whole batch when journaled.
+     * @param bookIds IDs of the returned books
+     * @return the result for each book, in the same order
+     */
+    public CirculationResult[] returnBooks(List<String> bookIds) {
+        long start = metrics.start();
+        CirculationResult[] results = new CirculationResult[bookIds.size()];
+        Journal j = journal;
+        long seq = 0;
+        for (int i = 0; i < results.length; i++) {
+            String bookId = bookIds.get(i);
+            ReentrantLock lock = lockBook(bookId);
+            try {
+                long s = returnLocked(j, bookId);
+                if (s >= 0) seq = Math.max(seq, s);
+                results[i] = s >= 0 ? CirculationResult.OK
+                        : lookup(bookId) == null ? CirculationResult.NOT_FOUND : CirculationResult.NOT_ON_LOAN;
+            } finally {
+                unlock(lock);
+            }
+        }
+        awaitDurable(j, seq);
+        metrics.record(Metrics.Op.RETURN_BATCH, results, start);
+        return results;
+    }
+
+    /**
+     * Closes the open loan of a book; the caller holds its lock stripe.
+     * @return the journal sequence number (0 when not journaling), or -1 if the book is not on loan
+     */
+    private long returnLocked(Journal j, String bookId) {
+        Book bk = lookup(bookId);
+        if (bk == null || !bk.isIssued()) return -1;
+        Loan loan = bk.getCurrentLoan();
+        if (loan == null || activeLoans.remove(bookId) != loan) return -1;
+        LocalDateTime now = LocalDateTime.now(clock);
+        // log before the loan slot is released, so a checkout that reuses it is logged later
+        long seq = j == null ? 0 : j.logReturn(bookId, now);
+        loan.close(now);
+        dueIndex.remove(loan);
+        long fine = fines.returned(loan, now.toLocalDate());
+        Borrower brw = loan.getBorrower();
+        brw.getLoans().remove(loan);
+        brw.releaseLoan();
+        history.append(loan);
+        outbox.get().add(Event.Type.RETURNED, now, bookId, brw.getId(), null, fine);
+        setAside(bookId, now);
+        return seq;
     }
 
     /**
@@ -168,36 +1309,269 @@ public class Library {
      * @return true if renewed ; false otherwise
      */
     public boolean renewLoan(String borrowerId, String bookId) {
-        for (Loan loan : activeLoans) {
-            if (loan.getBorrower().getId().equals(borrowerId)
-                    && loan.getBook().getBookId().equals(bookId)) {
-                if (loan.isOverdue()) {
-                    return false;
-                }
-                loan.renew();
-                return true;
+        long start = metrics.start();
+        CirculationResult r = renew(borrowerId, bookId);
+        metrics.record(Metrics.Op.RENEW, r, start);
+        return r == CirculationResult.OK;
+    }
+
+    /** {@link #renewLoan} without the metrics. */
+    private CirculationResult renew(String borrowerId, String bookId) {
+        Journal j = journal;
+        long seq = 0;
+        ReentrantLock lock = lockBook(bookId);
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            Loan loan = activeLoans.get(bookId);
+            if (loan == null || !loan.getBorrower().getId().equals(borrowerId)) {
+                return lookup(bookId) == null ? CirculationResult.NOT_FOUND : CirculationResult.NOT_ON_LOAN;
             }
+            if (loan.isOverdue(now)) return CirculationResult.OVERDUE;
+            loan.renew();
+            fines.renewed(loan, now.toLocalDate());
+            if (j != null) seq = j.logRenew(borrowerId, bookId, now);
+            outbox.get().add(Event.Type.RENEWED, now, bookId, borrowerId, null, 0);
+        } finally {
+            unlock(lock);
         }
-        return false;
+        awaitDurable(j, seq);
+        return CirculationResult.OK;
+    }
+
+    /**
+     * Books a fine payment.
+     * @param borrowerId ID of the borrower
+     * @param cents      amount paid in cents, at most the balance
+     * @return true if the payment was booked
+     */
+    public boolean payFine(String borrowerId, long cents) {
+        if (!(users.get(borrowerId) instanceof Borrower)) return false;
+        Journal j = journal;
+        long seq = 0;
+        ReentrantLock lock = lockFor(borrowerId);   // orders payments of one borrower
+        lock.lock();
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            if (!fines.pay(borrowerId, cents, now.toLocalDate())) return false;
+            if (j != null) seq = j.logPayFine(borrowerId, cents, now);
+            outbox.get().add(Event.Type.FINE_PAID, now, null, borrowerId, null, cents);
+        } finally {
+            unlock(lock);
+        }
+        awaitDurable(j, seq);
+        return true;
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @return fines owed in cents, including those accruing on overdue loans
+     */
+    public long getFineBalance(String borrowerId) {
+        return fines.balance(borrowerId, LocalDate.now(clock));
+    }
+
+    /** @return call counters and latency histograms, e.g. to register them with JMX */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the bus every successful mutation is published on, to subscribe
+     *         to; it is published while the mutation's lock is held, so
+     *         handlers see the changes to one book in the order they were applied
+     */
+    public EventBus getEvents() {
+        return events;
+    }
+
+    /** @return the fines engine, e.g. to snapshot settled balances */
+    public FineEngine getFines() {
+        return fines;
+    }
+
+    /**
+     * Looks up the open loan for a book.
+     * @param bookId ID of the book
+     * @return the active Loan, or null if the book is not on loan
+     */
+    public Loan getActiveLoan(String bookId) {
+        return activeLoans.get(bookId);
+    }
+
+    /**
+     * @return all open loans (weakly consistent view)
+     */
+    public Collection<Loan> getActiveLoans() {
+        return Collections.unmodifiableCollection(activeLoans.values());
     }
 
     // Reports
 
     /**
-     * @return list of currently overdue loans
+     * @return list of currently overdue loans, most overdue first
      */
     public List<Loan> displayOverdue() {
-        return activeLoans.stream().filter(Loan::isOverdue).collect(Collectors.toList());
+        return dueIndex.overdue(LocalDateTime.now(clock));
+    }
+
+    /**
+     * One page of {@link #displayOverdue()}.
+     * @param after cursor of the previous page, or null for the first page
+     * @param limit maximum number of loans
+     * @return the page, most overdue first
+     */
+    public Page<Loan> displayOverdue(String after, int limit) {
+        Page.checkLimit(limit);
+        return duePage(dueIndex.overdue(LocalDateTime.now(clock), dueCursor(after), limit + 1), limit);
+    }
+
+    /**
+     * @return lazy view of the currently overdue loans, most overdue first
+     */
+    public Stream<Loan> streamOverdue() {
+        return dueIndex.overdueStream(LocalDateTime.now(clock));
+    }
+
+    /**
+     * One page of {@link #getLoansDueWithin(int)}.
+     * @param days  size of the look-ahead window in days
+     * @param after cursor of the previous page, or null for the first page
+     * @param limit maximum number of loans
+     * @return the page, earliest first
+     */
+    public Page<Loan> getLoansDueWithin(int days, String after, int limit) {
+        Page.checkLimit(limit);
+        LocalDateTime now = LocalDateTime.now(clock);
+        return duePage(dueIndex.dueBetween(now, now.plusDays(days), dueCursor(after), limit + 1), limit);
+    }
+
+    /** Due-date cursors are {@code <seq>@<due date>}. */
+    private static OverdueIndex.Entry dueCursor(String after) {
+        if (after == null) return null;
+        int at = after.indexOf('@');
+        try {
+            return new OverdueIndex.Entry(LocalDateTime.parse(after.substring(at + 1)),
+                    Long.parseLong(after.substring(0, Math.max(at, 0))), null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid cursor " + after);
+        }
+    }
+
+    private static Page<Loan> duePage(List<OverdueIndex.Entry> fetched, int limit) {
+        Page<OverdueIndex.Entry> p = Page.of(fetched, limit, e -> e.seq() + "@" + e.due());
+        return new Page<>(p.items().stream().map(OverdueIndex.Entry::loan).toList(), p.next());
+    }
+
+    /**
+     * @param days size of the look-ahead window in days
+     * @return active loans not yet overdue but due within the window, earliest first
+     */
+    public List<Loan> getLoansDueWithin(int days) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        return dueIndex.dueBetween(now, now.plusDays(days));
     }
 
     /**
      * @param borrowerId ID of the borrower
-     * @return all loans (active and past) for that borrower
+     * @return active loans for that borrower
      */
     public List<Loan> generateUserReport(String borrowerId) {
-        return activeLoans.stream()
-                .filter(l -> l.getBorrower().getId().equals(borrowerId))
-                .collect(Collectors.toList());
+        Person p = users.get(borrowerId);
+        if (!(p instanceof Borrower)) return new ArrayList<>();
+        return new ArrayList<>(((Borrower) p).getLoans());
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @return returned loans for that borrower, oldest first
+     */
+    public List<Loan> getLoanHistory(String borrowerId) {
+        return history.forBorrower(borrowerId);
+    }
+
+    /**
+     * One page of {@link #getLoanHistory(String)}.
+     * @param borrowerId ID of the borrower
+     * @param after      cursor of the previous page, or null for the first page
+     * @param limit      maximum number of loans
+     * @return the page, oldest first
+     */
+    public Page<Loan> getLoanHistory(String borrowerId, String after, int limit) {
+        Page.checkLimit(limit);
+        int from;
+        try {
+            from = after == null ? 0 : Integer.parseInt(after);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor " + after);
+        }
+        if (from < 0) throw new IllegalArgumentException("invalid cursor " + after);
+        LoanHistory.Slice slice = history.forBorrower(borrowerId, from, limit);
+        return new Page<>(slice.loans(), slice.next() < 0 ? null : String.valueOf(slice.next()));
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @param from       start of the range, inclusive
+     * @param to         end of the range, exclusive
+     * @return returned loans of that borrower that were out at some time in the range, oldest first
+     */
+    public List<Loan> getLoanHistory(String borrowerId, LocalDateTime from, LocalDateTime to) {
+        return history.forBorrower(borrowerId, from, to);
+    }
+
+    /**
+     * @param bookId ID of the book
+     * @return returned loans of that book, oldest first
+     */
+    public List<Loan> getBookHistory(String bookId) {
+        return history.forBook(bookId);
+    }
+
+    /**
+     * @param bookId ID of the book
+     * @param from   start of the range, inclusive
+     * @param to     end of the range, exclusive
+     * @return returned loans of that book that were out at some time in the range, oldest first
+     */
+    public List<Loan> getBookHistory(String bookId, LocalDateTime from, LocalDateTime to) {
+        return history.forBook(bookId, from, to);
+    }
+
+    /**
+     * @return the closed-loan store, e.g. to spill or snapshot it
+     */
+    public LoanHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Most active books or subjects over a sliding window; answered from
+     * bounded-memory sketches, so counts are estimates (see {@link PopularityTracker}).
+     * @param event     checkouts or holds
+     * @param dimension books or subjects
+     * @param window    7-, 30- or 365-day window ending today
+     * @param n         maximum number of entries
+     * @return book IDs or subjects with their counts, most first
+     */
+    public List<PopularityTracker.Count> getPopular(PopularityTracker.Event event, PopularityTracker.Dimension dimension,
+                                                    PopularityTracker.Window window, int n) {
+        return popularity.top(event, dimension, window, n, LocalDate.now(clock));
+    }
+
+    /**
+     * @param window window ending today
+     * @param n      maximum number of titles
+     * @return the most borrowed books in the window, most checkouts first
+     */
+    public List<PopularityTracker.Count> getPopularTitles(PopularityTracker.Window window, int n) {
+        return getPopular(PopularityTracker.Event.CHECKOUT, PopularityTracker.Dimension.BOOK, window, n);
+    }
+
+    /**
+     * @return the popularity counters, e.g. to snapshot or restore them
+     */
+    public PopularityTracker getPopularity() {
+        return popularity;
     }
 
     /**
@@ -206,6 +1580,56 @@ public class Library {
      * @return the Book from the catalog, or null if not found
      */
     public Book getBook(String bookId) {
-        return catalog.get(bookId);
+        return lookup(bookId);
+    }
+
+    // Recovery
+
+    /**
+     * Installs an open loan from a snapshot, bypassing hold and limit checks.
+     * The loan's book must be in the catalog. Not journaled.
+     * @param loan the open loan, with its original dates
+     */
+    public void restoreLoan(Loan loan) {
+        Book bk = loan.getBook();
+        Borrower brw = loan.getBorrower();
+        bk.issue(loan);
+        Title t = holdings.ofCopy(bk.getBookId());
+        if (t != null) take(t, bk.getBookId());
+        activeLoans.put(bk.getBookId(), loan);
+        dueIndex.add(loan);
+        brw.getLoans().add(loan);
+        brw.tryReserveLoan();
+    }
+
+    /**
+     * Appends a hold from a snapshot to the end of its title's queue. Not journaled.
+     * @param hr the hold, with its original request date
+     */
+    public void restoreHold(HoldRequest hr) {
+        if (holdQueues.add(titleKey(hr.getBook().getBookId()), hr)) hr.getBorrower().getHolds().add(hr);
+    }
+
+    /**
+     * Sets a copy aside from a snapshot for a borrower's hold on its title. Not journaled.
+     * @param bookId     ID of the copy
+     * @param borrowerId ID of the borrower
+     * @param pickupBy   end of the pickup window
+     */
+    public void restorePickup(String bookId, String borrowerId, LocalDateTime pickupBy) {
+        HoldRequest hr = holdQueues.get(titleKey(bookId), borrowerId);
+        Book copy = lookup(bookId);
+        if (hr == null || copy == null || copy.isIssued()) return;
+        take(holdings.ofCopy(bookId), bookId);
+        hr.setAside(copy, pickupBy);
+        pickups.schedule(hr);
+    }
+
+    /**
+     * Adds an already-closed loan from a snapshot to the history. Not journaled.
+     * @param loan the returned loan
+     */
+    public void restoreClosedLoan(Loan loan) {
+        history.append(loan);
     }
 }
@@ -1,15 +1,19 @@
 package com.library;
 
+import com.library.analytics.PopularityTracker;
 import com.library.model.*;
 
 import java.util.Scanner;
-
-import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Command‐line interface handling user interaction.
  */
 public class LibrarySystem {
+    /** Rows printed per screen by long listings. */
+    private static final int SCREEN = 20;
+
     private final Library lib;
     private final Scanner in;
 
@@ -57,6 +61,7 @@ public class LibrarySystem {
                 case "12" -> returnBook();
                 case "13" -> displayOverdue();
                 case "14" -> userReport();
+                case "15" -> popularTitles();
                 case "0"  -> { System.out.println("Good-bye"); return; }
                 default   -> System.out.println("❌ Invalid option");
             }
@@ -93,6 +98,7 @@ public class LibrarySystem {
                 {"5) Register Borrower",   "12) Return Book"},
                 {"6) Register Librarian",  "13) Overdue Loans"},
                 {"7) Display All Users",   "14) Borrower History"},
+                {"",                       "15) Popular Titles"},
         };
 
         // Print two columns
@@ -183,22 +189,16 @@ public class LibrarySystem {
     private void searchBooks() {
         System.out.print("Keyword: ");
         String keyword = in.nextLine().trim();
-        var results = lib.searchBooks(keyword);
-        if (results.isEmpty()) {
+        if (!printPaged(after -> lib.searchBooks(keyword, after, SCREEN), Book::printInfo)) {
             System.out.println("❌ No book(s) found matching \"" + keyword + "\". Returning to main menu...");
-            return;
         }
-        results.forEach(Book::printInfo);
     }
 
-    /** Lists all books in the catalog. */
+    /** Lists all books in the catalog, ordered by ID. */
     private void listBooks() {
-        var books = lib.listBooks();
-        if (books.isEmpty()) {
+        if (!printPaged(after -> lib.listBooks(after, SCREEN), Book::printInfo)) {
             System.out.println("ℹ️  There are currently no books in the catalog. Returning to main menu...");
-            return;
         }
-        books.forEach(Book::printInfo);
     }
 
     /**
@@ -233,9 +233,9 @@ public class LibrarySystem {
         System.out.println("✅ Librarian " + name + " registered with ID " + id);
     }
 
-    /** Displays all registered users. */
+    /** Displays all registered users, ordered by ID. */
     private void listUsers() {
-        lib.listUsers().forEach(Person::printInfo);
+        printPaged(after -> lib.listUsers(after, SCREEN), Person::printInfo);
     }
 
     /**
@@ -271,9 +271,11 @@ public class LibrarySystem {
         }
         System.out.println("📌 Holds for book " + bookId + ":");
         holds.forEach(hr ->
-                System.out.printf(" • %s @ %s%n",
+                System.out.printf(" • %s @ %s%s%n",
                         hr.getBorrower().getName(),
-                        hr.getRequestDate().toLocalDate())
+                        hr.getRequestDate().toLocalDate(),
+                        hr.getPickupBy() == null ? "" : "  (" + hr.getBook().getBookId() + " ready for pickup until "
+                                + hr.getPickupBy().toLocalDate() + ")")
         );
     }
 
@@ -300,7 +302,7 @@ public class LibrarySystem {
         if (ok) {
             System.out.println("✅ Issued book with ID : " + bookId + " to User with ID : " + borrowerId);
         } else {
-            System.out.println("❌ Failed to issue. Check borrower ID, librarian ID, borrow limit, or hold queue.");
+            System.out.println("❌ Failed to issue. Check borrower ID, librarian ID, borrow limit, hold queue, or unpaid fines.");
         }
     }
 
@@ -310,19 +312,16 @@ public class LibrarySystem {
         String borrowerId  = in.nextLine().trim();
         System.out.print("Book ID: ");
         String bookId = in.nextLine().trim();
-        Optional<Loan> optLoan = lib.generateUserReport(borrowerId).stream().filter(l -> l.getBook().getBookId().equals(bookId))
-                .findFirst();
-        if (optLoan.isEmpty()) {
+        Loan loan = lib.getActiveLoan(bookId);
+        if (loan == null || !loan.getBorrower().getId().equals(borrowerId)) {
             System.out.println("❌ No active loan for book ID: " + bookId);
             return;
         }
-        Loan loan = optLoan.get();
-        if (loan.isOverdue()) {
+        if (!lib.renewLoan(borrowerId, bookId)) {
             System.out.println("❌ Cannot renew—loan for book ID " + bookId + " is already overdue since "
                     + loan.getDueDate().toLocalDate());
             return;
         }
-        loan.renew();
         System.out.println("✅ Loan renewed! New due date: " + loan.getDueDate().toLocalDate());
     }
 
@@ -336,13 +335,13 @@ public class LibrarySystem {
      * informs the user if no overdue.
      **/
     private void displayOverdue() {
-        var overdue = lib.displayOverdue();
-        if (overdue.isEmpty()) {
+        Page<Loan> first = lib.displayOverdue(null, SCREEN);
+        if (first.items().isEmpty()) {
             System.out.println("ℹ️ There are no overdue loans at the moment");
             return;
         }
         System.out.println("⚠️  Overdue loans:");
-        overdue.forEach(Loan::printInfo);
+        printPaged(after -> after == null ? first : lib.displayOverdue(after, SCREEN), Loan::printInfo);
     }
 
     /**
@@ -352,7 +351,7 @@ public class LibrarySystem {
     private void userReport() {
         System.out.print("Borrower ID: ");
         String borrowerId = in.nextLine().trim();
-        Person user = lib.listUsers().stream().filter(u -> u.getId().equals(borrowerId)).findFirst().orElse(null);
+        Person user = lib.getUser(borrowerId);
         if (user == null) {
             System.out.println("❌ No user found with ID: " + borrowerId);
             return;
@@ -361,12 +360,54 @@ public class LibrarySystem {
             System.out.println("❌ User ID " + borrowerId + " is not a borrower.");
             return;
         }
-        var history = lib.generateUserReport(borrowerId);
-        if (history.isEmpty()) {
+        long fines = lib.getFineBalance(borrowerId);
+        if (fines > 0) System.out.printf("💰 Fines owed by %s: %d.%02d%n", borrowerId, fines / 100, fines % 100);
+        var active = lib.generateUserReport(borrowerId);
+        Page<Loan> returned = lib.getLoanHistory(borrowerId, null, SCREEN);
+        if (active.isEmpty() && returned.items().isEmpty()) {
             System.out.println("ℹ️  Borrower " + borrowerId + " has not borrowed any books yet.");
             return;
         }
         System.out.println("📜 Borrowing history for " + borrowerId + ":");
-        history.forEach(Loan::printInfo);
+        active.forEach(Loan::printInfo);
+        printPaged(after -> after == null ? returned : lib.getLoanHistory(borrowerId, after, SCREEN), Loan::printInfo);
+    }
+
+    /** Shows the most borrowed titles of the last 7, 30 or 365 days. */
+    private void popularTitles() {
+        System.out.print("Window in days (7/30/365): ");
+        PopularityTracker.Window window;
+        try {
+            window = PopularityTracker.Window.ofDays(Integer.parseInt(in.nextLine().trim()));
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ Choose 7, 30 or 365 days.");
+            return;
+        }
+        var top = lib.getPopularTitles(window, 10);
+        if (top.isEmpty()) {
+            System.out.println("ℹ️  No checkouts in the last " + window.days + " days.");
+            return;
+        }
+        System.out.println("🏆 Most borrowed titles, last " + window.days + " days:");
+        for (PopularityTracker.Count c : top) {
+            Book b = lib.getBook(c.key());
+            System.out.printf(" • %-10s %-40s %d%n", c.key(), b == null ? "(removed)" : b.getTitle(), c.count());
+        }
+    }
+
+    /**
+     * Prints a paged listing one screen at a time, asking before each further screen.
+     * @return false if the listing was empty
+     */
+    private <T> boolean printPaged(Function<String, Page<T>> fetch, Consumer<T> print) {
+        Page<T> page = fetch.apply(null);
+        if (page.items().isEmpty()) return false;
+        while (true) {
+            page.items().forEach(print);
+            if (page.next() == null) return true;
+            System.out.print("-- Enter for more, q to stop -- ");
+            if (in.nextLine().trim().equalsIgnoreCase("q")) return true;
+            page = fetch.apply(page.next());
+        }
     }
 }
@@ -1,14 +1,71 @@
 package com.library;
 
 import com.library.model.*;
+import com.library.persistence.Journal;
+import com.library.persistence.LibraryStore;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Scanner;
 
 public class Main {
-    public static void main(String[] args) {
-        // seed demo data
-        Library lib = new Library();
+    /**
+     * Usage: {@code Main [dataDir] [--batch[=commandFile]] [--changelog]}. With {@code --batch}
+     * commands are read from the file (or stdin) by {@link CommandMode} instead
+     * of the interactive menu; the exit status is 1 if any command failed.
+     * Pickup windows then run out only through the script's
+     * {@code expire-pickups}, so a script gives the same results however long it takes.
+     * {@code --changelog} writes every mutation to a change log for other
+     * processes to tail (see {@link LibraryStore#startChangeLog()}).
+     */
+    public static void main(String[] args) throws IOException {
+        String dir = "library-data", batch = null;
+        boolean changeLog = false;
+        for (String a : args) {
+            if      (a.equals("--batch"))        batch = "-";
+            else if (a.startsWith("--batch="))   batch = a.substring(8);
+            else if (a.equals("--changelog"))    changeLog = true;
+            else                                 dir = a;
+        }
 
+        // recover state from the data directory (default ./library-data); scripts trade fsync per command for speed
+        Path dataDir = Path.of(dir);
+        LibraryStore store = LibraryStore.open(dataDir,
+                batch == null ? Journal.Durability.SYNC : Journal.Durability.ASYNC);
+        store.checkpointEvery(Duration.ofMinutes(5));
+        store.library().getMetrics().register(dataDir.toString());
+        if (changeLog) store.startChangeLog();
+        Library lib = store.library();
+
+        if (batch != null) {
+            int failed;
+            try (BufferedReader in = batch.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                    : Files.newBufferedReader(Path.of(batch), StandardCharsets.UTF_8)) {
+                failed = new CommandMode(lib, in, new OutputStreamWriter(System.out, StandardCharsets.UTF_8)).run();
+            }
+            store.close();
+            if (failed > 0) System.exit(1);
+            return;
+        }
+
+        store.expirePickupsEvery(Duration.ofMinutes(1));
+
+        // seed demo data on first start only
+        if (lib.listBooks().isEmpty() && lib.listUsers().isEmpty()) seed(lib);
+
+        // start CLI
+        new LibrarySystem(lib, new Scanner(System.in)).run();
+        store.close();
+    }
+
+    private static void seed(Library lib) {
         // seed borrowers
         lib.registerBorrower(new Borrower("BOR-0001",     "Sam",     "sam@mail.com",     "1234567555"));
         lib.registerBorrower(new Borrower("BOR-0002",   "Ruurd",   "ruurd@mail.com",   "1234567556"));
@@ -27,8 +84,5 @@ public class Main {
         // demo transaction
         lib.placeHold("sam","101");
         lib.issueBook("sam","101","mueller");
-
-        // start CLI
-        new LibrarySystem(lib, new Scanner(System.in)).run();
     }
 }
@@ -0,0 +1,81 @@
+package com.library;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * One page of a keyset-paginated listing.
+ * <p>
+ * The cursor is an opaque key naming the last item of the page; passing it
+ * back as {@code after} continues right behind that item, however the data
+ * changed in between. Items added or removed before the cursor do not shift
+ * later pages, so a client can walk millions of rows in constant memory.
+ *
+ * @param items the items of this page, in listing order
+ * @param next  cursor for the following page, or null if this is the last one
+ * @param <T>   item type
+ */
+public record Page<T>(List<T> items, String next) {
+    /** Items fetched per page by {@link #stream}. */
+    static final int STREAM_CHUNK = 256;
+
+    /**
+     * Builds a page from up to {@code limit + 1} fetched items; the extra item
+     * only signals that another page exists and is dropped.
+     * @param fetched items in listing order, at most {@code limit + 1}
+     * @param limit   page size
+     * @param key     cursor of an item
+     * @param <T>     item type
+     * @return the page
+     */
+    static <T> Page<T> of(List<T> fetched, int limit, Function<? super T, String> key) {
+        if (fetched.size() <= limit) return new Page<>(fetched, null);
+        List<T> items = fetched.subList(0, limit);
+        return new Page<>(items, key.apply(items.get(limit - 1)));
+    }
+
+    /**
+     * @param limit requested page size
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    static void checkLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+    }
+
+    /**
+     * Walks a paginated listing lazily, holding one page at a time.
+     * @param fetch returns the page after a cursor (null for the first page)
+     * @param <T>   item type
+     * @return a sequential stream over every item
+     */
+    static <T> Stream<T> stream(Function<String, Page<T>> fetch) {
+        Iterator<T> it = new Iterator<>() {
+            Page<T> page;
+            int i;
+
+            @Override
+            public boolean hasNext() {
+                if (page == null) page = fetch.apply(null);
+                while (i == page.items().size()) {
+                    if (page.next() == null) return false;
+                    page = fetch.apply(page.next());
+                    i = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.items().get(i++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
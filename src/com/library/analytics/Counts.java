@@ -0,0 +1,63 @@
+package com.library.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keys with counts as parallel arrays, largest count first: a frozen day of a
+ * series, or the total of several days.
+ */
+record Counts(String[] keys, long[] counts) {
+    static final Counts EMPTY = new Counts(new String[0], new long[0]);
+
+    int size() { return keys.length; }
+
+    /**
+     * Sums several count lists and keeps the {@code limit} largest totals.
+     * @param parts lists to add up
+     * @param limit maximum number of keys kept
+     * @return the summed counts, largest first
+     */
+    static Counts sum(Iterable<Counts> parts, int limit) {
+        Map<String, long[]> totals = new HashMap<>();
+        for (Counts c : parts) {
+            for (int i = 0; i < c.keys.length; i++) totals.computeIfAbsent(c.keys[i], k -> new long[1])[0] += c.counts[i];
+        }
+        // select the threshold on a primitive copy, then sort only the survivors
+        long threshold = Long.MIN_VALUE;
+        if (totals.size() > limit) {
+            long[] all = new long[totals.size()];
+            int i = 0;
+            for (long[] v : totals.values()) all[i++] = v[0];
+            Arrays.sort(all);
+            threshold = all[all.length - limit];
+        }
+        String[] keys = new String[Math.min(limit, totals.size())];
+        long[] counts = new long[keys.length];
+        int n = 0;
+        for (var e : totals.entrySet()) {             // everything above the threshold fits
+            if (e.getValue()[0] > threshold) {
+                keys[n] = e.getKey();
+                counts[n++] = e.getValue()[0];
+            }
+        }
+        for (var e : totals.entrySet()) {             // then ties at the threshold, while room is left
+            if (n == keys.length) break;
+            if (e.getValue()[0] == threshold) {
+                keys[n] = e.getKey();
+                counts[n++] = e.getValue()[0];
+            }
+        }
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; i++) idx[i] = i;
+        Arrays.sort(idx, (a, b) -> Long.compare(counts[b], counts[a]));
+        String[] sortedKeys = new String[n];
+        long[] sortedCounts = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortedKeys[i] = keys[idx[i]];
+            sortedCounts[i] = counts[idx[i]];
+        }
+        return new Counts(sortedKeys, sortedCounts);
+    }
+}
@@ -0,0 +1,317 @@
+package com.library.analytics;
+
+import com.library.model.Book;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Checkout and hold popularity of books and subjects over sliding 7-, 30- and
+ * 365-day windows, in bounded memory.
+ * <p>
+ * Each of the four series (checkouts or holds, per book or per subject)
+ * counts the current day in {@link SpaceSaving} summaries of {@code capacity}
+ * keys, so recording an event is a hash lookup and a short heap fix-up. When
+ * a later day begins the summaries are frozen into a compact bucket of
+ * parallel arrays; at most a year of buckets is kept. The first query of a day sums the
+ * closed buckets of each window once (keeping the {@value #WINDOW_FACTOR}×
+ * capacity largest totals); every query then merges that total with the live
+ * summaries, which touches at most {@code capacity} keys per summary plus the
+ * head of the total.
+ * <p>
+ * Counts are Space-Saving estimates: a key's daily count is over-estimated by
+ * at most the day's events divided by the capacity, and a key that is not
+ * among a day's heavy hitters may be missed for that day.
+ * <p>
+ * Thread-safe. Events are recorded under the library's book locks, so each
+ * series keeps a live summary per core (up to 16) and a thread records into
+ * the one its ID picks: concurrent checkouts contend only when their threads
+ * share a stripe. Queries merge the stripes, and each stripe freezes its
+ * part of a day on its first event of a later day, or at the next query.
+ */
+public class PopularityTracker {
+    /** Counted events. */
+    public enum Event { CHECKOUT, HOLD }
+
+    /** What events are counted for. */
+    public enum Dimension { BOOK, SUBJECT }
+
+    /** Sliding windows ending today. */
+    public enum Window {
+        WEEK(7), MONTH(30), YEAR(365);
+
+        /** Number of days in the window, today included. */
+        public final int days;
+
+        Window(int days) { this.days = days; }
+
+        /**
+         * @param days a window length
+         * @return the window of that length
+         * @throws IllegalArgumentException if no window has that length
+         */
+        public static Window ofDays(int days) {
+            for (Window w : values()) if (w.days == days) return w;
+            throw new IllegalArgumentException("no window of " + days + " days");
+        }
+    }
+
+    /**
+     * An entry of a top-N list.
+     * @param key   book ID or subject
+     * @param count estimated number of events in the window
+     */
+    public record Count(String key, long count) {}
+
+    /**
+     * One day of one series, as stored in snapshots.
+     * @param event     counted event
+     * @param dimension book or subject
+     * @param day       the day
+     * @param keys      book IDs or subjects, largest count first
+     * @param counts    counts of the keys
+     */
+    public record Bucket(Event event, Dimension dimension, LocalDate day, String[] keys, long[] counts) {}
+
+    /** Keys tracked per series and day unless configured otherwise. */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /** Window totals keep this many times the capacity. */
+    static final int WINDOW_FACTOR = 4;
+
+    private final Series[] series = new Series[Event.values().length * Dimension.values().length];
+
+    public PopularityTracker() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity keys tracked per series and day
+     */
+    public PopularityTracker(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        for (int i = 0; i < series.length; i++) series[i] = new Series(capacity);
+    }
+
+    /**
+     * Counts one event for a book and its subject.
+     * @param event what happened
+     * @param book  the book
+     * @param day   day of the event
+     */
+    public void record(Event event, Book book, LocalDate day) {
+        series(event, Dimension.BOOK).add(book.getBookId(), 1, day);
+        String subject = book.getSubject();
+        if (subject != null && !subject.isEmpty()) series(event, Dimension.SUBJECT).add(subject, 1, day);
+    }
+
+    /**
+     * @param event     counted event
+     * @param dimension books or subjects
+     * @param window    window ending today
+     * @param n         maximum number of entries
+     * @param today     the current day
+     * @return the {@code n} keys with the most events, most first (ties by key)
+     */
+    public List<Count> top(Event event, Dimension dimension, Window window, int n, LocalDate today) {
+        if (n < 1) throw new IllegalArgumentException("n must be positive: " + n);
+        return series(event, dimension).top(window, n, today);
+    }
+
+    /**
+     * @return every day of every series, oldest day first within a series
+     */
+    public List<Bucket> buckets() {
+        List<Bucket> out = new ArrayList<>();
+        for (Event e : Event.values()) {
+            for (Dimension d : Dimension.values()) series(e, d).buckets(e, d, out);
+        }
+        return out;
+    }
+
+    /**
+     * Adds a day from a snapshot. Days of a series must be restored in order.
+     * @param b the day
+     */
+    public void restore(Bucket b) {
+        Series s = series(b.event(), b.dimension());
+        for (int i = 0; i < b.keys().length; i++) s.add(b.keys()[i], b.counts()[i], b.day());
+    }
+
+    private Series series(Event e, Dimension d) {
+        return series[e.ordinal() * Dimension.values().length + d.ordinal()];
+    }
+
+    /** A frozen day. */
+    private record Day(LocalDate day, Counts counts) {}
+
+    /** Closed days of a window, summed, with a lookup by key. */
+    private record Total(Counts counts, Map<String, Long> index) {}
+
+    /** Live summaries per series, a power of two: one per core, up to 16. */
+    private static final int STRIPES =
+            Math.min(16, Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1));
+
+    /** One thread stripe of a series' live day; guarded by its own monitor. */
+    private static final class Live {
+        LocalDate day;                                   // day of {@code summary}; null before the first event
+        SpaceSaving summary;
+
+        Live(int capacity) {
+            this.summary = new SpaceSaving(capacity);
+        }
+    }
+
+    /**
+     * One event type for one dimension: live summaries of the current day plus
+     * a year of frozen days. Recording locks one live stripe; a stripe's first
+     * event of a later day, queries and snapshots also take the series'
+     * monitor, always before a stripe's.
+     */
+    private static final class Series {
+        private final int capacity;
+        private final Live[] stripes = new Live[STRIPES];
+        private LocalDate today;                         // latest day of any stripe; null before the first event
+        private final ArrayDeque<Day> closed = new ArrayDeque<>();   // oldest first
+        private final Total[] totals = new Total[Window.values().length];   // closed days per window
+        private LocalDate totalsDay;                     // day the totals were computed for
+
+        Series(int capacity) {
+            this.capacity = capacity;
+            for (int i = 0; i < STRIPES; i++) stripes[i] = new Live(capacity);
+        }
+
+        void add(String key, long n, LocalDate day) {
+            Live s = stripes[Long.hashCode(Thread.currentThread().threadId()) & (STRIPES - 1)];
+            synchronized (s) {
+                if (s.day != null && !day.isAfter(s.day)) {     // late events count towards the stripe's day
+                    s.summary.add(key, n);
+                    return;
+                }
+            }
+            synchronized (this) {
+                synchronized (s) {
+                    roll(s, day);
+                    s.summary.add(key, n);
+                }
+            }
+        }
+
+        /**
+         * Freezes a stripe's summary once a later day begins, merging it into
+         * that day's frozen counts. The caller holds both monitors.
+         */
+        private void roll(Live s, LocalDate day) {
+            if (s.day != null && !day.isAfter(s.day)) return;
+            if (s.day != null && !s.summary.isEmpty()) {
+                freeze(s.day, s.summary.sorted());
+                s.summary = new SpaceSaving(capacity);
+            }
+            s.day = day;
+            if (today == null || day.isAfter(today)) {
+                today = day;
+                LocalDate oldest = day.minusDays(Window.YEAR.days - 1);
+                while (!closed.isEmpty() && closed.peekFirst().day().isBefore(oldest)) closed.pollFirst();
+            }
+        }
+
+        /** Adds a stripe's counts to its frozen day; stripes freeze a day at different times. */
+        private void freeze(LocalDate day, Counts counts) {
+            if (today != null && day.isBefore(today.minusDays(Window.YEAR.days - 1))) return;
+            totalsDay = null;
+            Iterator<Day> newestFirst = closed.descendingIterator();
+            List<Day> later = new ArrayList<>();
+            while (newestFirst.hasNext()) {
+                Day d = newestFirst.next();
+                if (!d.day().isAfter(day)) {
+                    if (d.day().equals(day)) {
+                        newestFirst.remove();
+                        counts = Counts.sum(List.of(d.counts(), counts), capacity);
+                    }
+                    break;
+                }
+                newestFirst.remove();
+                later.add(d);
+            }
+            closed.addLast(new Day(day, counts));
+            for (int i = later.size() - 1; i >= 0; i--) closed.addLast(later.get(i));
+        }
+
+        /** Rolls every stripe to {@code day} and sums their live counts. The caller holds this monitor. */
+        private Map<String, long[]> live(LocalDate day) {
+            Map<String, long[]> live = new HashMap<>(4 * capacity);
+            for (Live s : stripes) {
+                synchronized (s) {
+                    roll(s, day);
+                    s.summary.forEach((k, c) -> live.computeIfAbsent(k, x -> new long[1])[0] += c);
+                }
+            }
+            return live;
+        }
+
+        synchronized List<Count> top(Window w, int n, LocalDate now) {
+            Map<String, long[]> live = live(now);
+            Total t = total(w);
+            Counts total = t.counts();
+            Map<String, Long> index = t.index();
+            PriorityQueue<Count> best = new PriorityQueue<>(n + 1, ORDER);
+            live.forEach((k, c) -> offer(best, n, k, c[0] + index.getOrDefault(k, 0L)));
+            for (int i = 0; i < total.size(); i++) {
+                long c = total.counts()[i];
+                if (best.size() == n && c < best.peek().count()) break;   // the rest cannot enter
+                String k = total.keys()[i];
+                if (!live.containsKey(k)) offer(best, n, k, c);
+            }
+            List<Count> out = new ArrayList<>(best);
+            out.sort(ORDER.reversed());
+            return out;
+        }
+
+        /** @return the closed days inside a window, summed once per day and again after a late freeze */
+        private Total total(Window w) {
+            if (!today.equals(totalsDay)) {
+                for (Window x : Window.values()) {
+                    LocalDate first = today.minusDays(x.days - 1);
+                    List<Counts> days = new ArrayList<>();
+                    for (Day d : closed) if (!d.day().isBefore(first)) days.add(d.counts());
+                    Counts sum = Counts.sum(days, capacity * WINDOW_FACTOR);
+                    Map<String, Long> index = new HashMap<>(sum.size() * 2);
+                    for (int i = 0; i < sum.size(); i++) index.put(sum.keys()[i], sum.counts()[i]);
+                    totals[x.ordinal()] = new Total(sum, index);
+                }
+                totalsDay = today;
+            }
+            return totals[w.ordinal()];
+        }
+
+        synchronized void buckets(Event e, Dimension d, List<Bucket> out) {
+            if (today == null) return;
+            List<Counts> live = new ArrayList<>();
+            for (Live s : stripes) {
+                synchronized (s) {
+                    roll(s, today);
+                    if (!s.summary.isEmpty()) live.add(s.summary.sorted());
+                }
+            }
+            for (Day day : closed) out.add(new Bucket(e, d, day.day(), day.counts().keys(), day.counts().counts()));
+            if (!live.isEmpty()) {
+                Counts c = Counts.sum(live, Integer.MAX_VALUE);
+                out.add(new Bucket(e, d, today, c.keys(), c.counts()));
+            }
+        }
+    }
+
+    /** Smallest count first; among equal counts the larger key first, so results list ties by key. */
+    private static final Comparator<Count> ORDER =
+            Comparator.comparingLong(Count::count).thenComparing(Count::key, Comparator.reverseOrder());
+
+    private static void offer(PriorityQueue<Count> best, int n, String key, long count) {
+        if (best.size() < n) best.add(new Count(key, count));
+        else if (count >= best.peek().count()) {
+            Count c = new Count(key, count);
+            if (ORDER.compare(c, best.peek()) > 0) {
+                best.poll();
+                best.add(c);
+            }
+        }
+    }
+}
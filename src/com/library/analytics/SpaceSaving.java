@@ -0,0 +1,141 @@
+package com.library.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy-hitter summary (Metwally, Agrawal and El Abbadi, 2005).
+ * <p>
+ * Keeps at most {@code capacity} counters. A key that is not tracked while
+ * the summary is full takes over the smallest counter and inherits its count,
+ * so counts are over-estimates by at most {@code total / capacity}, and every
+ * key occurring more often than that is guaranteed to be tracked. Counters sit
+ * in a min-heap, so an update costs one hash lookup plus O(log capacity).
+ * <p>
+ * Not thread-safe; the caller serializes access.
+ */
+final class SpaceSaving {
+    private static final class Counter {
+        String key;
+        long count;
+        int pos;                                  // index in the heap
+
+        Counter(String key, long count, int pos) {
+            this.key = key;
+            this.count = count;
+            this.pos = pos;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private long total;
+    private long max;
+
+    /**
+     * @param capacity maximum number of tracked keys
+     */
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Counts {@code n} occurrences of a key.
+     * @param key the key
+     * @param n   number of occurrences, positive
+     */
+    void add(String key, long n) {
+        total += n;
+        Counter c = counters.get(key);
+        if (c == null && size < capacity) {
+            c = new Counter(key, n, size);
+            heap[size++] = c;
+            counters.put(key, c);
+            max = Math.max(max, n);
+            siftUp(c.pos);
+            return;
+        }
+        if (c == null) {
+            c = heap[0];                          // evict the smallest counter, keep its count as error
+            counters.remove(c.key);
+            c.key = key;
+            counters.put(key, c);
+        }
+        c.count += n;
+        max = Math.max(max, c.count);
+        siftDown(c.pos);
+    }
+
+    /** @return estimated count of a key, 0 if it is not tracked */
+    long count(String key) {
+        Counter c = counters.get(key);
+        return c == null ? 0 : c.count;
+    }
+
+    /** @return the largest count */
+    long max() { return max; }
+
+    /** @return number of occurrences added */
+    long total() { return total; }
+
+    /** @return number of tracked keys */
+    int size() { return size; }
+
+    /** @return true if nothing was counted */
+    boolean isEmpty() { return size == 0; }
+
+    /** Visitor over the tracked keys. */
+    interface Visitor {
+        void visit(String key, long count);
+    }
+
+    void forEach(Visitor v) {
+        for (int i = 0; i < size; i++) v.visit(heap[i].key, heap[i].count);
+    }
+
+    /** @return the tracked keys and counts, largest count first */
+    Counts sorted() {
+        Counter[] all = Arrays.copyOf(heap, size);
+        Arrays.sort(all, (a, b) -> Long.compare(b.count, a.count));
+        String[] keys = new String[size];
+        long[] counts = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = all[i].key;
+            counts[i] = all[i].count;
+        }
+        return new Counts(keys, counts);
+    }
+
+    private void siftUp(int i) {
+        Counter c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= c.count) break;
+            heap[i] = heap[parent];
+            heap[i].pos = i;
+            i = parent;
+        }
+        heap[i] = c;
+        c.pos = i;
+    }
+
+    private void siftDown(int i) {
+        Counter c = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) child++;
+            if (heap[child].count >= c.count) break;
+            heap[i] = heap[child];
+            heap[i].pos = i;
+            i = child;
+        }
+        heap[i] = c;
+        c.pos = i;
+    }
+}
@@ -0,0 +1,641 @@
+package com.library.branch;
+
+import com.library.CirculationResult;
+import com.library.Library;
+import com.library.events.Event;
+import com.library.events.EventBus;
+import com.library.model.*;
+import com.library.persistence.Journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Several branch libraries behind one router, one {@link Library} per branch.
+ * <p>
+ * The catalog is partitioned: every book lives in one branch, either the one
+ * it was added to or, when added without a branch, the one its ID hashes to.
+ * A directory maps book IDs to branches, so routing a call is one map lookup.
+ * Each branch runs its calls on its own executor, and branches share no lock,
+ * so circulation throughput grows with the number of branches. Calls return
+ * {@link CompletableFuture}s that complete on the branch's executor.
+ * <p>
+ * Users are partitioned the same way: each is registered with one home
+ * branch, the one their ID hashes to. A branch a user borrows from or places
+ * a hold in gets a record of them on first use, the home's own {@link Person}
+ * object, or, for wrapped libraries that recovered their own, a record
+ * sharing the home record's open-loan counter (see
+ * {@link Person#shareLoanCount}), so the borrow limit holds across the
+ * network. Fines accrue where the overdue book lives; {@link #getFineBalance}
+ * asks each branch that has a record of the user, on that branch's executor,
+ * and a checkout is refused once the sum reaches the threshold of the book's
+ * branch.
+ * <p>
+ * {@link #searchBooks} asks every branch in parallel and merges the hits in
+ * branch order. A network hold ({@link #placeHold(String, Collection)}) is
+ * queued on every issued copy of a title, whichever branch holds it. The first
+ * copy set aside for the borrower, or issued to them, wins; the router learns
+ * of it from the branch's {@link EventBus} and cancels the holds on the other
+ * copies, which moves those copies on to the next borrower in line. Each
+ * branch places the holds on its copies in one call, and every hold refuses
+ * while a copy of its title is on the shelf, so a network hold is either
+ * placed where nothing is free or withdrawn everywhere. A network opened with
+ * a hold log ({@link #open}) journals each network hold until all its other
+ * holds are cancelled, so holds cut short by a failure or a restart are
+ * settled again when the network is next opened.
+ */
+public class BranchNetwork implements AutoCloseable {
+    private final List<String> names;
+    private final Library[] branches;
+    private final ExecutorService[] executors;
+    private final EventBus.Subscription[] feeds;
+    private final Map<String, Integer> branchIndex = new HashMap<>();
+    private final Map<String, Integer> homes = new ConcurrentHashMap<>();                 // bookId -> branch
+    private final Map<String, Integer> userHomes = new ConcurrentHashMap<>();             // userId -> branch, if not hashed
+    private final Map<String, Set<Integer>> guests = new ConcurrentHashMap<>();           // userId -> other branches
+    private final Map<String, Set<NetworkHold>> holdsByCopy = new ConcurrentHashMap<>();  // bookId -> waiting
+    private final Journal holdLog;                                                       // null: holds in memory only
+
+    private static final int CANCEL_ATTEMPTS = 3;
+
+    /** A borrower waiting for the first free copy among several. */
+    private static final class NetworkHold {
+        final String borrowerId;
+        final List<String> copies;
+        final AtomicBoolean settled = new AtomicBoolean();
+        volatile String winner;                             // copy set aside for or issued to the borrower
+        volatile long seq;                                  // of its record in the hold log, 0 if none
+
+        NetworkHold(String borrowerId, List<String> copies) {
+            this.borrowerId = borrowerId;
+            this.copies = copies;
+        }
+    }
+
+    /**
+     * Starts a network of empty branch libraries.
+     * @param names             branch names, in the order searches merge their hits
+     * @param threadsPerBranch  threads of each branch's executor
+     */
+    public BranchNetwork(List<String> names, int threadsPerBranch) {
+        this(emptyBranches(names), threadsPerBranch);
+    }
+
+    /**
+     * Puts existing libraries behind one router, e.g. ones opened by a
+     * {@link com.library.persistence.LibraryStore} each. Their books and users
+     * are read once to fill the directories. A user's home is the branch their
+     * ID hashes to if it has them, else the first that does; their records in
+     * other branches are made to share the home record's open-loan counter.
+     * @param branches          library of each branch, in the order searches merge their hits
+     * @param threadsPerBranch  threads of each branch's executor; more than one
+     *                          lets journaled calls share a group commit
+     */
+    public BranchNetwork(Map<String, Library> branches, int threadsPerBranch) {
+        this(branches, threadsPerBranch, null);
+    }
+
+    /**
+     * Puts existing libraries behind one router like {@link #BranchNetwork(Map, int)},
+     * journaling network holds in a directory of their own. The holds the log
+     * still has open are placed again, and those whose borrower got one of
+     * the copies meanwhile are settled; the log is then compacted to them.
+     * @param branches          library of each branch, in the order searches merge their hits
+     * @param threadsPerBranch  threads of each branch's executor
+     * @param holdLog           directory of the network hold journal (created if missing)
+     * @return the network
+     * @throws IOException if the log cannot be read or written
+     */
+    public static BranchNetwork open(Map<String, Library> branches, int threadsPerBranch, Path holdLog)
+            throws IOException {
+        Map<Long, Journal.Entry> open = new LinkedHashMap<>();
+        long last = Journal.replay(holdLog, 0, e -> {
+            if (e.type() == Journal.Type.NETWORK_HOLD) open.put(e.seq(), e);
+            else if (e.type() == Journal.Type.NETWORK_HOLD_DONE) open.remove(Long.parseLong(e.fields()[0]));
+        });
+        Journal log = new Journal(holdLog, last + 1, Journal.Durability.SYNC);
+        BranchNetwork net = new BranchNetwork(branches, threadsPerBranch, log);
+        for (Journal.Entry e : open.values()) {
+            String[] f = e.fields();
+            net.restore(f[0], List.of(Arrays.copyOfRange(f, 1, f.length)));
+        }
+        log.deleteSegmentsBefore(last + 1);
+        return net;
+    }
+
+    private BranchNetwork(Map<String, Library> branches, int threadsPerBranch, Journal holdLog) {
+        this.holdLog = holdLog;
+        if (branches.isEmpty()) throw new IllegalArgumentException("no branches");
+        if (threadsPerBranch < 1) throw new IllegalArgumentException("threadsPerBranch must be positive");
+        this.names = List.copyOf(branches.keySet());
+        this.branches = branches.values().toArray(new Library[0]);
+        this.executors = new ExecutorService[this.branches.length];
+        this.feeds = new EventBus.Subscription[this.branches.length];
+        shareLoanCounts();
+        for (int i = 0; i < this.branches.length; i++) {
+            String name = names.get(i);
+            int branch = i;
+            branchIndex.put(name, i);
+            this.branches[i].streamBooks().forEach(b -> homes.put(b.getBookId(), branch));
+            executors[i] = Executors.newFixedThreadPool(threadsPerBranch, r -> {
+                Thread t = new Thread(r, "library-branch-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+            feeds[i] = this.branches[i].getEvents().subscribe("branch-" + name, (e, endOfBatch) -> onEvent(e));
+        }
+    }
+
+    /** Finds every user's home and points their other records at the home record's open-loan counter. */
+    private void shareLoanCounts() {
+        Map<String, Integer> first = new HashMap<>();
+        for (int i = 0; i < branches.length; i++) {
+            for (Person p : branches[i].listUsers()) first.putIfAbsent(p.getId(), i);
+        }
+        first.forEach((id, i) -> {
+            int hashed = hash(id);
+            int home = branches[hashed].getUser(id) != null ? hashed : i;
+            if (home != hashed) userHomes.put(id, home);
+            Person shared = branches[home].getUser(id);
+            for (int b = 0; b < branches.length; b++) {
+                Person p = branches[b].getUser(id);
+                if (b == home || p == null) continue;
+                p.shareLoanCount(shared);
+                guests.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(b);
+            }
+        });
+    }
+
+    private static Map<String, Library> emptyBranches(List<String> names) {
+        Map<String, Library> branches = new LinkedHashMap<>();
+        for (String name : names) {
+            if (branches.put(name, new Library()) != null) throw new IllegalArgumentException("duplicate branch " + name);
+        }
+        return branches;
+    }
+
+    /** @return branch names, in search merge order */
+    public List<String> branchNames() {
+        return names;
+    }
+
+    /**
+     * @param name a branch name
+     * @return that branch's library, e.g. for reports
+     * @throws IllegalArgumentException if there is no such branch
+     */
+    public Library branch(String name) {
+        return branches[indexOf(name)];
+    }
+
+    /**
+     * @param bookId ID of a book
+     * @return the branch that holds it, or the one its ID hashes to if it is unknown
+     */
+    public String branchOf(String bookId) {
+        return names.get(route(bookId));
+    }
+
+    /**
+     * @param userId ID of a borrower or librarian
+     * @return the branch the user is registered with
+     */
+    public String homeOf(String userId) {
+        return names.get(home(userId));
+    }
+
+    // Catalog and users
+
+    /**
+     * Adds a book to a branch.
+     * @param branch name of the branch
+     * @param b      the book
+     * @return completes when the book is in the branch's catalog
+     */
+    public CompletableFuture<Void> addBook(String branch, Book b) {
+        int i = indexOf(branch);
+        homes.put(b.getBookId(), i);
+        return CompletableFuture.runAsync(() -> branches[i].addBook(b), executors[i]);
+    }
+
+    /**
+     * Adds a book to the branch its ID hashes to, or to its current branch if
+     * the ID is already known.
+     * @param b the book
+     * @return completes when the book is in the branch's catalog
+     */
+    public CompletableFuture<Void> addBook(Book b) {
+        return addBook(names.get(route(b.getBookId())), b);
+    }
+
+    /**
+     * @param bookId ID of the book
+     * @return the removed book, or null if none existed
+     */
+    public CompletableFuture<Book> removeBook(String bookId) {
+        return on(bookId, lib -> {
+            Book removed = lib.removeBook(bookId);
+            if (removed != null) homes.remove(bookId);
+            return removed;
+        });
+    }
+
+    /**
+     * @param bookId ID of the book
+     * @return the book, or null if no branch has it
+     */
+    public CompletableFuture<Book> getBook(String bookId) {
+        return on(bookId, lib -> lib.getBook(bookId));
+    }
+
+    /**
+     * Registers a borrower with their home branch.
+     * @param b the borrower
+     * @return completes when the home branch knows the borrower
+     */
+    public CompletableFuture<Void> registerBorrower(Borrower b) {
+        return run(home(b.getId()), lib -> {
+            lib.registerBorrower(b);
+            return null;
+        });
+    }
+
+    /**
+     * Registers a librarian with their home branch.
+     * @param l the librarian
+     * @return completes when the home branch knows the librarian
+     */
+    public CompletableFuture<Void> registerLibrarian(Librarian l) {
+        return run(home(l.getId()), lib -> {
+            lib.registerLibrarian(l);
+            return null;
+        });
+    }
+
+    /**
+     * Searches every branch in parallel.
+     * @param keyword search term
+     * @return hits of all branches, branch by branch in {@link #branchNames} order
+     */
+    public CompletableFuture<List<Book>> searchBooks(String keyword) {
+        return gather(lib -> lib.searchBooks(keyword));
+    }
+
+    /**
+     * Searches the subjects of every branch in parallel.
+     * @param keyword search term
+     * @return hits of all branches, branch by branch in {@link #branchNames} order
+     */
+    public CompletableFuture<List<Book>> searchBySubject(String keyword) {
+        return gather(lib -> lib.searchBySubject(keyword));
+    }
+
+    // Circulation, routed to the book's branch
+
+    /**
+     * {@link Library#issueBook} in the book's branch, refused while the
+     * borrower owes the branch's fine threshold across the network.
+     */
+    public CompletableFuture<Boolean> issueBook(String borrowerId, String bookId, String librarianId) {
+        int i = route(bookId);
+        long blockAt = branches[i].getFines().schedule().blockAt();
+        CompletableFuture<Long> owed = blockAt > 0 ? getFineBalance(borrowerId) : CompletableFuture.completedFuture(0L);
+        return owed.thenCompose(sum -> blockAt > 0 && sum >= blockAt ? CompletableFuture.completedFuture(false)
+                : run(i, lib -> guest(i, borrowerId) && guest(i, librarianId)
+                        && lib.issueBook(borrowerId, bookId, librarianId)));
+    }
+
+    /** {@link Library#returnBook} in the book's branch. */
+    public CompletableFuture<Boolean> returnBook(String bookId) {
+        return on(bookId, lib -> lib.returnBook(bookId));
+    }
+
+    /** {@link Library#renewLoan} in the book's branch. */
+    public CompletableFuture<Boolean> renewLoan(String borrowerId, String bookId) {
+        return on(bookId, lib -> lib.renewLoan(borrowerId, bookId));
+    }
+
+    /** {@link Library#placeHold} in the book's branch. */
+    public CompletableFuture<Boolean> placeHold(String borrowerId, String bookId) {
+        int i = route(bookId);
+        return run(i, lib -> guest(i, borrowerId) && lib.placeHold(borrowerId, bookId));
+    }
+
+    /** {@link Library#cancelHold} in the book's branch. */
+    public CompletableFuture<Boolean> cancelHold(String borrowerId, String bookId) {
+        return on(bookId, lib -> lib.cancelHold(borrowerId, bookId));
+    }
+
+    /**
+     * Expires the pickup windows that ran out in every branch.
+     * @return number of holds dropped
+     */
+    public CompletableFuture<Integer> expirePickups() {
+        List<CompletableFuture<Integer>> parts = new ArrayList<>(branches.length);
+        for (int i = 0; i < branches.length; i++) {
+            Library lib = branches[i];
+            parts.add(CompletableFuture.supplyAsync(lib::expirePickups, executors[i]));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> parts.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Asks the borrower's home branch and every branch they borrowed from, each on its own executor.
+     * @param borrowerId ID of the borrower
+     * @return fines owed in all branches, in cents
+     */
+    public CompletableFuture<Long> getFineBalance(String borrowerId) {
+        List<CompletableFuture<Long>> parts = new ArrayList<>();
+        parts.add(run(home(borrowerId), lib -> lib.getFineBalance(borrowerId)));
+        for (int i : guests.getOrDefault(borrowerId, Set.of())) parts.add(run(i, lib -> lib.getFineBalance(borrowerId)));
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> parts.stream().mapToLong(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Gives a branch a record of a user homed elsewhere, the home's own object,
+     * so both count the same loans; runs on that branch's executor.
+     * @return false if the user is registered nowhere
+     */
+    private boolean guest(int branch, String userId) {
+        Library lib = branches[branch];
+        if (lib.getUser(userId) != null) return true;
+        Person p = branches[home(userId)].getUser(userId);
+        if (p == null) return false;
+        if (p instanceof Librarian l) lib.registerLibrarian(l);
+        else lib.registerBorrower((Borrower) p);
+        guests.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(branch);
+        return true;
+    }
+
+    // Network holds
+
+    /**
+     * Places a hold on whichever of several copies comes back first, in any
+     * branch. The borrower queues on every copy that is issued or set aside;
+     * once one copy is set aside for them or issued to them, their holds on
+     * the others are cancelled.
+     * @param borrowerId ID of the borrower
+     * @param copyIds    IDs of the copies, e.g. of one title in several branches
+     * @return true if the borrower now waits for at least one copy; false if a
+     *         copy is on the shelf (borrow that one instead) or no hold was placed
+     */
+    public CompletableFuture<Boolean> placeHold(String borrowerId, Collection<String> copyIds) {
+        NetworkHold h = new NetworkHold(borrowerId, List.copyOf(new LinkedHashSet<>(copyIds)));
+        journal(h);
+        for (String c : h.copies) holdsByCopy.computeIfAbsent(c, k -> ConcurrentHashMap.newKeySet()).add(h);
+        Map<Integer, List<String>> byBranch = new TreeMap<>();
+        for (String c : h.copies) byBranch.computeIfAbsent(route(c), k -> new ArrayList<>()).add(c);
+        List<CompletableFuture<Placed>> parts = new ArrayList<>(byBranch.size());
+        byBranch.forEach((i, copies) -> parts.add(run(i, lib -> place(i, lib, borrowerId, copies))));
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenCompose(v -> {
+            List<String> placed = new ArrayList<>();
+            boolean onShelf = false;
+            for (CompletableFuture<Placed> p : parts) {
+                placed.addAll(p.join().copies());
+                onShelf |= p.join().onShelf();
+            }
+            if (!onShelf && !placed.isEmpty()) {
+                if (h.settled.get()) finish(h, cancelOthers(h));       // a copy came back while we were queuing
+                return CompletableFuture.completedFuture(true);
+            }
+            if (!h.settled.compareAndSet(false, true)) return CompletableFuture.completedFuture(false);
+            unindex(h);
+            return finish(h, cancelAll(borrowerId, placed)).thenApply(w -> false);
+        });
+    }
+
+    /** The holds one branch placed for a network hold, and whether it found a copy on the shelf. */
+    private record Placed(List<String> copies, boolean onShelf) {}
+
+    /**
+     * Places the holds on one branch's copies; if one of them is on the shelf,
+     * takes back those just placed, so the branch queues on all or none.
+     */
+    private Placed place(int branch, Library lib, String borrowerId, List<String> copies) {
+        if (!guest(branch, borrowerId)) return new Placed(List.of(), false);
+        List<String> placed = new ArrayList<>();
+        for (String c : copies) {
+            CirculationResult r = lib.tryPlaceHold(borrowerId, c);
+            if (r == CirculationResult.OK) placed.add(c);
+            else if (r == CirculationResult.NOT_ON_LOAN) {
+                for (String p : placed) lib.cancelHold(borrowerId, p);
+                return new Placed(List.of(), true);
+            }
+        }
+        return new Placed(placed, false);
+    }
+
+    /**
+     * Withdraws a network hold: the borrower's holds on all the copies are cancelled.
+     * @param borrowerId ID of the borrower
+     * @param copyIds    the copies given to {@link #placeHold(String, Collection)}
+     * @return true if at least one hold was cancelled
+     */
+    public CompletableFuture<Boolean> cancelHold(String borrowerId, Collection<String> copyIds) {
+        List<NetworkHold> withdrawn = new ArrayList<>();
+        for (String c : copyIds) {
+            for (NetworkHold h : holdsByCopy.getOrDefault(c, Set.of())) {
+                if (h.borrowerId.equals(borrowerId) && h.settled.compareAndSet(false, true)) {
+                    unindex(h);
+                    withdrawn.add(h);
+                }
+            }
+        }
+        List<CompletableFuture<Boolean>> cancelled = new ArrayList<>(copyIds.size());
+        for (String c : copyIds) cancelled.add(cancel(borrowerId, c, CANCEL_ATTEMPTS));
+        CompletableFuture<Void> all = CompletableFuture.allOf(cancelled.toArray(new CompletableFuture<?>[0]));
+        for (NetworkHold h : withdrawn) finish(h, all);
+        return all.thenApply(v -> cancelled.stream().anyMatch(CompletableFuture::join));
+    }
+
+    /** @return number of network holds still waiting for a copy */
+    public int getNetworkHoldsPending() {
+        Set<NetworkHold> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Set<NetworkHold> waiting : holdsByCopy.values()) pending.addAll(waiting);
+        return pending.size();
+    }
+
+    /** Settles a network hold when one of its copies is set aside for or issued to its borrower. */
+    private void onEvent(Event e) {
+        if (e.type() != Event.Type.HOLD_READY && e.type() != Event.Type.ISSUED) return;
+        Set<NetworkHold> waiting = holdsByCopy.get(e.bookId());
+        if (waiting == null) return;
+        for (NetworkHold h : waiting) {
+            if (h.borrowerId.equals(e.userId())) settle(h, e.bookId());
+        }
+    }
+
+    private void settle(NetworkHold h, String winner) {
+        if (!h.settled.compareAndSet(false, true)) return;
+        h.winner = winner;
+        unindex(h);
+        finish(h, cancelOthers(h));
+    }
+
+    /** @return completes once the borrower's holds on every copy but the winner are cancelled */
+    private CompletableFuture<Void> cancelOthers(NetworkHold h) {
+        List<String> others = new ArrayList<>(h.copies);
+        others.remove(h.winner);
+        return cancelAll(h.borrowerId, others);
+    }
+
+    private CompletableFuture<Void> cancelAll(String borrowerId, List<String> copies) {
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[copies.size()];
+        for (int i = 0; i < parts.length; i++) parts[i] = cancel(borrowerId, copies.get(i), CANCEL_ATTEMPTS);
+        return CompletableFuture.allOf(parts);
+    }
+
+    /** Cancels one hold, trying again if the branch fails; no hold to cancel counts as done. */
+    private CompletableFuture<Boolean> cancel(String borrowerId, String copy, int attempts) {
+        return on(copy, lib -> lib.cancelHold(borrowerId, copy)).exceptionallyCompose(e -> attempts > 1
+                ? cancel(borrowerId, copy, attempts - 1) : CompletableFuture.failedFuture(e));
+    }
+
+    /**
+     * Closes a network hold in the log once its cancellations are done. If one
+     * failed, the hold stays open in the log and is settled again on the next
+     * {@link #open}.
+     */
+    private CompletableFuture<Void> finish(NetworkHold h, CompletableFuture<Void> cancellations) {
+        return cancellations.handle((v, e) -> {
+            if (e != null) {
+                System.err.println("Network hold of " + h.borrowerId + " on " + h.copies + " left open: " + e);
+                return null;
+            }
+            if (holdLog != null && h.seq > 0) {
+                try {
+                    holdLog.awaitDurable(holdLog.logNetworkHoldDone(h.seq, LocalDateTime.now()));
+                } catch (RuntimeException ex) {
+                    System.err.println("Network hold of " + h.borrowerId + " on " + h.copies + " left open: " + ex);
+                }
+            }
+            return null;
+        });
+    }
+
+    /** Writes a new network hold to the log, if any, before any branch queues it. */
+    private void journal(NetworkHold h) {
+        if (holdLog == null) return;
+        h.seq = holdLog.logNetworkHold(h.borrowerId, h.copies, LocalDateTime.now());
+        holdLog.awaitDurable(h.seq);
+    }
+
+    /**
+     * Takes back a network hold still open in the log: journals it again, and
+     * settles it if one of its copies was set aside for or issued to the
+     * borrower meanwhile; the branches kept its holds.
+     */
+    private void restore(String borrowerId, List<String> copies) {
+        NetworkHold h = new NetworkHold(borrowerId, copies);
+        journal(h);
+        for (String c : copies) holdsByCopy.computeIfAbsent(c, k -> ConcurrentHashMap.newKeySet()).add(h);
+        for (String c : copies) {
+            on(c, lib -> served(lib, borrowerId, c)).thenAccept(served -> {
+                if (served) settle(h, c);
+            });
+        }
+    }
+
+    /** @return true if the copy is set aside for or issued to the borrower */
+    private static boolean served(Library lib, String borrowerId, String copy) {
+        Loan loan = lib.getActiveLoan(copy);
+        if (loan != null) return loan.getBorrower().getId().equals(borrowerId);
+        for (HoldRequest hr : lib.getHoldsForBook(copy)) {
+            if (hr.getPickupBy() != null && hr.getBorrower().getId().equals(borrowerId)
+                    && hr.getBook().getBookId().equals(copy)) return true;
+        }
+        return false;
+    }
+
+    private void unindex(NetworkHold h) {
+        for (String c : h.copies) {
+            holdsByCopy.computeIfPresent(c, (k, waiting) -> {
+                waiting.remove(h);
+                return waiting.isEmpty() ? null : waiting;
+            });
+        }
+    }
+
+    // Routing
+
+    private int indexOf(String branch) {
+        Integer i = branchIndex.get(branch);
+        if (i == null) throw new IllegalArgumentException("unknown branch " + branch);
+        return i;
+    }
+
+    private int route(String bookId) {
+        Integer i = homes.get(bookId);
+        return i != null ? i : hash(bookId);
+    }
+
+    private int home(String userId) {
+        Integer i = userHomes.get(userId);
+        return i != null ? i : hash(userId);
+    }
+
+    private int hash(String id) {
+        return Math.floorMod(id.hashCode(), branches.length);
+    }
+
+    private <T> CompletableFuture<T> on(String bookId, Function<Library, T> call) {
+        return run(route(bookId), call);
+    }
+
+    private <T> CompletableFuture<T> run(int branch, Function<Library, T> call) {
+        Library lib = branches[branch];
+        try {
+            return CompletableFuture.supplyAsync(() -> call.apply(lib), executors[branch]);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);                   // closed
+        }
+    }
+
+    private CompletableFuture<List<Book>> gather(Function<Library, List<Book>> query) {
+        List<CompletableFuture<List<Book>>> parts = new ArrayList<>(branches.length);
+        for (int i = 0; i < branches.length; i++) {
+            Library lib = branches[i];
+            parts.add(CompletableFuture.supplyAsync(() -> query.apply(lib), executors[i]));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<Book> hits = new ArrayList<>();
+            for (CompletableFuture<List<Book>> p : parts) hits.addAll(p.join());
+            return hits;
+        });
+    }
+
+    /**
+     * Stops the event feeds and the executors, after the calls already
+     * submitted have run. The branch libraries stay usable.
+     */
+    @Override
+    public void close() {
+        for (EventBus.Subscription feed : feeds) feed.close();     // may still cancel holds on the executors
+        for (ExecutorService ex : executors) ex.shutdown();
+        try {
+            for (ExecutorService ex : executors) ex.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (holdLog != null) {
+            try {
+                holdLog.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
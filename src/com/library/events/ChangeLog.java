@@ -0,0 +1,339 @@
+package com.library.events;
+
+import com.library.model.Book;
+import com.library.model.BookType;
+import com.library.model.Librarian;
+import com.library.model.Person;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * File-backed change log: an {@link EventBus.Handler} that appends every event
+ * to segment files, for consumers in other processes to tail.
+ * <p>
+ * Each change gets an offset that keeps counting across restarts. A
+ * {@link Reader} starts after any offset and then polls for new changes, so a
+ * consumer that stores the last offset it processed can resume there. Records
+ * are framed like the {@link com.library.persistence.Journal}'s, as
+ * {@code [int length][int crc32][long offset][byte type][long epochSecond][int nano]
+ * [bookId][userId][librarianId][long amount][byte n][n × detail]} with strings as
+ * {@code [int len][utf-8]} (-1 for null). Segments are named after their first
+ * offset and rolled at a size limit; {@link #deleteBefore} drops old ones.
+ * <p>
+ * Changes are written once per handler batch, after the library has applied
+ * them. The journal remains the durable record: a crash can lose the last
+ * batch of changes, and the log then continues at the next offset.
+ */
+public class ChangeLog implements EventBus.Handler, Closeable {
+    /**
+     * One change read back from the log.
+     * @param offset  position in the log
+     * @param details for {@code BOOK_ADDED} type, title, author, subject; for
+     *                {@code USER_REGISTERED} BORROWER or LIBRARIAN, name, email, phone; else empty
+     */
+    public record Change(long offset, Event.Type type, LocalDateTime time, String bookId, String userId,
+                         String librarianId, long amount, List<String> details) {}
+
+    /** Default size at which a segment is closed and the next one started. */
+    public static final long SEGMENT_BYTES = 64L << 20;
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 8;                  // length + crc
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean sync;
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private FileChannel channel;
+    private long written;                                 // bytes in the current segment
+    private long nextOffset;
+
+    /**
+     * Opens the log in {@code dir}, continuing after its last intact change.
+     * @param dir          directory of segment files (created if missing)
+     * @param segmentBytes size at which a segment is rolled
+     * @param sync         whether every batch is fsynced
+     * @throws IOException if the directory cannot be read or a segment created
+     */
+    public ChangeLog(Path dir, long segmentBytes, boolean sync) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+        this.sync = sync;
+        List<Path> segments = segments(dir);
+        long last = -1;
+        if (!segments.isEmpty()) {
+            Path tail = segments.get(segments.size() - 1);
+            last = startOf(tail) - 1;
+            try (Reader r = new Reader(dir, last)) {
+                while (r.poll(Integer.MAX_VALUE, c -> { }) > 0) { }
+                last = r.position();
+            }
+        }
+        this.nextOffset = last + 1;
+        this.channel = openSegment(nextOffset);
+    }
+
+    /**
+     * Opens the log with {@link #SEGMENT_BYTES} segments and no fsync.
+     * @param dir directory of segment files
+     * @throws IOException if the directory cannot be read or a segment created
+     */
+    public ChangeLog(Path dir) throws IOException {
+        this(dir, SEGMENT_BYTES, false);
+    }
+
+    @Override
+    public synchronized void onEvent(Event e, boolean endOfBatch) throws IOException {
+        String[] details = details(e);
+        int size = HEADER + 8 + 1 + 8 + 4 + 8 + 1 + bytes(e.bookId) + bytes(e.userId) + bytes(e.librarianId);
+        for (String d : details) size += bytes(d);
+        if (pending.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int start = pending.position();
+        pending.position(start + HEADER);
+        pending.putLong(nextOffset++);
+        pending.put((byte) e.type.ordinal());
+        pending.putLong(e.time.toEpochSecond(ZoneOffset.UTC));
+        pending.putInt(e.time.getNano());
+        putString(pending, e.bookId);
+        putString(pending, e.userId);
+        putString(pending, e.librarianId);
+        pending.putLong(e.amount);
+        pending.put((byte) details.length);
+        for (String d : details) putString(pending, d);
+        int len = pending.position() - start - HEADER;
+        CRC32 c = new CRC32();
+        c.update(pending.array(), start + HEADER, len);
+        pending.putInt(start, len);
+        pending.putInt(start + 4, (int) c.getValue());
+        if (endOfBatch || written + pending.position() >= segmentBytes) flush();
+    }
+
+    /** @return offset of the last change written, or -1 if there is none */
+    public synchronized long lastOffset() {
+        return nextOffset - 1;
+    }
+
+    /**
+     * Deletes segments that only hold changes below {@code offset}.
+     * @param offset first offset consumers still need
+     * @throws IOException if listing or deleting fails
+     */
+    public void deleteBefore(long offset) throws IOException {
+        List<Path> segments = segments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (startOf(segments.get(i + 1)) <= offset) Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * Writes what is buffered and closes the current segment.
+     * @throws IOException if the final write fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+    }
+
+    private void flush() throws IOException {
+        if (pending.position() == 0) return;
+        pending.flip();
+        written += pending.remaining();
+        while (pending.hasRemaining()) channel.write(pending);
+        pending.clear();
+        if (sync) channel.force(false);
+        if (written >= segmentBytes) {
+            channel.force(false);
+            channel.close();
+            channel = openSegment(nextOffset);
+            written = 0;
+        }
+    }
+
+    private static String[] details(Event e) {
+        if (e.type == Event.Type.BOOK_ADDED && e.book != null) {
+            Book b = e.book;
+            return new String[] { BookType.of(b).name(), b.getTitle(), b.getAuthor(), b.getSubject() };
+        }
+        if (e.type == Event.Type.USER_REGISTERED && e.user != null) {
+            Person p = e.user;
+            return new String[] { p instanceof Librarian ? "LIBRARIAN" : "BORROWER", p.getName(), p.getEmail(), p.getPhone() };
+        }
+        return new String[0];
+    }
+
+    private FileChannel openSegment(long firstOffset) throws IOException {
+        return FileChannel.open(dir.resolve(String.format("%s%020d%s", PREFIX, firstOffset, SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Tails a change log, e.g. from another process. Not thread-safe.
+     */
+    public static final class Reader implements Closeable {
+        private final Path dir;
+        private long position;
+        private long segmentStart = -1;
+        private FileChannel channel;
+        private long filePos;
+        private ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+
+        /**
+         * @param dir   directory of the log
+         * @param after offset of the last change already processed, or -1 to start at the beginning
+         */
+        public Reader(Path dir, long after) {
+            this.dir = dir;
+            this.position = after;
+        }
+
+        /** @return offset of the last change delivered, or the starting offset */
+        public long position() { return position; }
+
+        /**
+         * Delivers the changes written since the last poll.
+         * @param max      most changes to deliver
+         * @param consumer receives them in order
+         * @return number of changes delivered; 0 if there is nothing new yet
+         * @throws IOException if a segment cannot be read
+         */
+        public int poll(int max, Consumer<Change> consumer) throws IOException {
+            int n = 0;
+            while (n < max) {
+                if (channel == null && !open()) return n;
+                Change c = next();
+                if (c == null) {
+                    // a newer segment means this one is complete, or ends in a torn record
+                    if (!advance()) return n;
+                    continue;
+                }
+                if (c.offset() <= position) continue;
+                position = c.offset();
+                consumer.accept(c);
+                n++;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) channel.close();
+            channel = null;
+        }
+
+        /** Opens the segment holding the change after {@link #position}. */
+        private boolean open() throws IOException {
+            if (!Files.isDirectory(dir)) return false;
+            Path pick = null;
+            for (Path p : segments(dir)) {
+                if (pick == null || startOf(p) <= position + 1) pick = p;
+            }
+            if (pick == null) return false;
+            return openAt(pick);
+        }
+
+        private boolean openAt(Path segment) throws IOException {
+            try {
+                channel = FileChannel.open(segment, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return false;                                // deleted under us; the next poll looks again
+            }
+            segmentStart = startOf(segment);
+            filePos = 0;
+            return true;
+        }
+
+        /** Moves to the segment after the current one, if there is one. */
+        private boolean advance() throws IOException {
+            for (Path p : segments(dir)) {
+                if (startOf(p) > segmentStart) {
+                    close();
+                    return openAt(p);
+                }
+            }
+            return false;
+        }
+
+        /** @return the record at the current file position, or null if none is complete yet */
+        private Change next() throws IOException {
+            long size = channel.size();
+            if (size - filePos < HEADER) return null;
+            buf.clear().limit(HEADER);
+            channel.read(buf, filePos);
+            int len = buf.getInt(0), crc = buf.getInt(4);
+            if (len <= 0 || size - filePos - HEADER < len) return null;
+            if (buf.capacity() < len) buf = ByteBuffer.allocate(Math.max(len, buf.capacity() * 2));
+            buf.clear().limit(len);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, filePos + HEADER + buf.position()) < 0) return null;
+            }
+            CRC32 c = new CRC32();
+            c.update(buf.array(), 0, len);
+            if ((int) c.getValue() != crc) return null;
+            buf.flip();
+            filePos += HEADER + len;
+            long offset = buf.getLong();
+            Event.Type type = Event.Type.values()[buf.get()];
+            LocalDateTime time = LocalDateTime.ofEpochSecond(buf.getLong(), buf.getInt(), ZoneOffset.UTC);
+            String bookId = getString(buf), userId = getString(buf), librarianId = getString(buf);
+            long amount = buf.getLong();
+            List<String> details = new ArrayList<>();
+            for (int i = buf.get(); i > 0; i--) details.add(getString(buf));
+            return new Change(offset, type, time, bookId, userId, librarianId, amount, List.copyOf(details));
+        }
+    }
+
+    // Encoding
+
+    private static int bytes(String s) {
+        return 4 + (s == null ? 0 : s.length() * 3);           // upper bound of the UTF-8 size
+    }
+
+    private static void putString(ByteBuffer b, String s) {
+        if (s == null) {
+            b.putInt(-1);
+            return;
+        }
+        byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+        b.putInt(utf.length);
+        b.put(utf);
+    }
+
+    private static String getString(ByteBuffer b) {
+        int len = b.getInt();
+        if (len < 0) return null;
+        String s = new String(b.array(), b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(Comparator.comparingLong(ChangeLog::startOf));
+        return out;
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
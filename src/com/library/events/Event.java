@@ -0,0 +1,83 @@
+package com.library.events;
+
+import com.library.model.Book;
+import com.library.model.Person;
+
+import java.time.LocalDateTime;
+
+/**
+ * One library mutation as seen by {@link EventBus} handlers.
+ * <p>
+ * Events live in the bus's ring buffer and are overwritten once every handler
+ * has moved past them, so a handler must copy what it needs to keep.
+ */
+public final class Event {
+    /** Mutation types, with the fields each one sets. */
+    public enum Type {
+        /** bookId, book */
+        BOOK_ADDED,
+        /** bookId */
+        BOOK_REMOVED,
+        /** userId, user */
+        USER_REGISTERED,
+        /** bookId, userId (the borrower) */
+        HOLD_PLACED,
+        /** bookId, userId */
+        HOLD_CANCELLED,
+        /** bookId, userId, librarianId */
+        ISSUED,
+        /** bookId, userId */
+        RENEWED,
+        /** bookId, userId, amount (fine charged in cents) */
+        RETURNED,
+        /** userId, amount (cents paid) */
+        FINE_PAID,
+        /** bookId, userId (the borrower it is set aside for); time starts the pickup window */
+        HOLD_READY,
+        /** bookId, userId (the borrower whose pickup window ran out) */
+        HOLD_EXPIRED
+    }
+
+    Type type;
+    long seq;
+    LocalDateTime time;
+    String bookId, userId, librarianId;
+    long amount;
+    Book book;
+    Person user;
+
+    Event() { }
+
+    /** @return what happened */
+    public Type type() { return type; }
+
+    /** @return position on the bus, counting from 0 when the library was created */
+    public long seq() { return seq; }
+
+    /** @return library clock time of the mutation */
+    public LocalDateTime time() { return time; }
+
+    /** @return ID of the book, or null */
+    public String bookId() { return bookId; }
+
+    /** @return ID of the borrower, or of the registered user; or null */
+    public String userId() { return userId; }
+
+    /** @return ID of the librarian who issued the book, or null */
+    public String librarianId() { return librarianId; }
+
+    /** @return amount in cents, or 0 */
+    public long amount() { return amount; }
+
+    /** @return the added book, or null */
+    public Book book() { return book; }
+
+    /** @return the registered user, or null */
+    public Person user() { return user; }
+
+    @Override
+    public String toString() {
+        return seq + " " + type + " " + time + " book=" + bookId + " user=" + userId
+                + (librarianId == null ? "" : " librarian=" + librarianId) + (amount == 0 ? "" : " amount=" + amount);
+    }
+}
@@ -0,0 +1,347 @@
+package com.library.events;
+
+import com.library.model.Book;
+import com.library.model.Person;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process publication of library mutations to asynchronous handlers.
+ * <p>
+ * Events are written into a fixed ring of preallocated {@link Event} slots, so
+ * publishing allocates nothing. A publisher claims the next sequence number
+ * with one atomic increment, fills the slot and marks it published. Every
+ * {@link Subscription} has its own thread that reads all published events in
+ * order, in batches of up to {@link #MAX_BATCH}, and tells its handler where
+ * each batch ends.
+ * <p>
+ * A slot is reused only after every subscription has read it. When the
+ * slowest handler falls a whole ring behind, publishers wait for it. That is
+ * the backpressure: library mutations slow down rather than drop events. Size
+ * the ring for the longest pause a handler may take. With no subscription the
+ * ring is simply overwritten.
+ * <p>
+ * A publisher that holds locks a handler may need publishes through an
+ * {@link Outbox}: it claims the events' sequence numbers under its locks,
+ * which fixes their order, and fills and publishes them once it has let go,
+ * so it never waits for a handler while holding them.
+ * <p>
+ * Idle subscriptions spin briefly and then park; publishers unpark them.
+ */
+public class EventBus {
+    /** Most events handed to a handler before its subscription's position is advanced. */
+    public static final int MAX_BATCH = 256;
+    private static final int SPINS = 200;
+    private static final long IDLE_PARK_NANOS = 1_000_000;    // bounds the wake-up race, see Subscription.await
+
+    /** Receives events on a subscription's thread. */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param e          the event; valid only during this call
+         * @param endOfBatch true for the last event currently available, e.g. to flush
+         * @throws Exception a failure is reported and the handler gets the next event
+         */
+        void onEvent(Event e, boolean endOfBatch) throws Exception;
+    }
+
+    /** One handler reading the bus on its own thread. */
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final Handler handler;
+        private final Thread thread;
+        private volatile long next;                        // every event below has been handled
+        private volatile boolean waiting;
+        private volatile boolean running = true;
+
+        private Subscription(String name, Handler handler, long start) {
+            this.name = name;
+            this.handler = handler;
+            this.next = start;
+            this.thread = new Thread(this::run, "events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        /** @return the name given on subscription */
+        public String name() { return name; }
+
+        /** @return number of published events this subscription has not handled yet */
+        public long lag() {
+            return Math.max(0, published() - next);
+        }
+
+        /**
+         * Handles what has been published so far, then stops the thread.
+         */
+        @Override
+        public void close() {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            unsubscribe(this);                             // only now may publishers reuse its slots
+        }
+
+        private void run() {
+            long seq = next;
+            while (true) {
+                long end = seq;
+                while (end - seq < MAX_BATCH && available(end)) end++;
+                if (end == seq) {
+                    if (!running) return;
+                    await(seq);
+                    continue;
+                }
+                for (long s = seq; s < end; s++) {
+                    Event e = ring[(int) s & mask];
+                    try {
+                        handler.onEvent(e, s == end - 1);
+                    } catch (Exception ex) {
+                        System.err.println("Event handler " + name + " failed on " + e + ": " + ex);
+                    }
+                }
+                seq = end;
+                next = seq;
+            }
+        }
+
+        /** Spins, then parks until a publisher unparks us; a publisher may miss the flag, hence the timeout. */
+        private void await(long seq) {
+            for (int i = 0; i < SPINS; i++) {
+                if (available(seq) || !running) return;
+                Thread.onSpinWait();
+            }
+            waiting = true;
+            if (!available(seq) && running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            waiting = false;
+        }
+    }
+
+    /**
+     * Events claimed by one thread and published later. {@link #add} claims a
+     * sequence number without waiting for a slot; {@link #flush} waits for
+     * the slots and publishes. Subscriptions stop at a claimed event until it
+     * is published, so every add must be followed by a flush. The buffered
+     * events are reused, so an outbox allocates nothing once it has grown to
+     * the most events one flush covers.
+     */
+    public final class Outbox {
+        private Event[] pending = new Event[0];
+        private int size;
+
+        private Outbox() { }
+
+        /**
+         * Claims the next sequence number for a mutation of a book or a
+         * borrower's account; see {@link EventBus#publish}.
+         */
+        public void add(Event.Type type, LocalDateTime time, String bookId, String userId, String librarianId, long amount) {
+            add(type, time, bookId, userId, librarianId, amount, null, null);
+        }
+
+        /** Claims the next sequence number for {@link Event.Type#BOOK_ADDED}. */
+        public void addAdded(Book b, LocalDateTime time) {
+            add(Event.Type.BOOK_ADDED, time, b.getBookId(), null, null, 0, b, null);
+        }
+
+        /** Claims the next sequence number for {@link Event.Type#USER_REGISTERED}. */
+        public void addRegistered(Person p, LocalDateTime time) {
+            add(Event.Type.USER_REGISTERED, time, null, p.getId(), null, 0, null, p);
+        }
+
+        /** @return true if no claimed event waits to be published */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** Publishes the claimed events in order, waiting for slots as needed. */
+        public void flush() {
+            for (int i = 0; i < size; i++) {
+                Event e = pending[i];
+                fill(e.seq, e.type, e.time, e.bookId, e.userId, e.librarianId, e.amount, e.book, e.user);
+                e.book = null;
+                e.user = null;
+            }
+            size = 0;
+        }
+
+        private void add(Event.Type type, LocalDateTime time, String bookId, String userId, String librarianId,
+                         long amount, Book book, Person user) {
+            if (size == pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(4, size * 2));
+                for (int i = size; i < pending.length; i++) pending[i] = new Event();
+            }
+            Event e = pending[size++];
+            e.seq = claimed.getAndIncrement();
+            e.type = type;
+            e.time = time;
+            e.bookId = bookId;
+            e.userId = userId;
+            e.librarianId = librarianId;
+            e.amount = amount;
+            e.book = book;
+            e.user = user;
+        }
+    }
+
+    private final Event[] ring;
+    private final int mask;
+    private final AtomicLongArray published;               // slot -> sequence last published in it
+    private final AtomicLong claimed = new AtomicLong();   // next sequence to hand out
+    private final AtomicLong gate = new AtomicLong(Long.MAX_VALUE);   // cached lowest position of any subscription
+    private final LongAdder stalls = new LongAdder();
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * @param capacity number of ring slots, a power of two
+     */
+    public EventBus(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) ring[i] = new Event();
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+    }
+
+    /**
+     * Starts a handler on its own thread. It sees the events published from
+     * now on.
+     * @param name    names the thread and error reports
+     * @param handler receives the events
+     * @return the subscription, to close when done
+     */
+    public synchronized Subscription subscribe(String name, Handler handler) {
+        Subscription sub = new Subscription(name, handler, claimed.get());
+        Subscription[] subs = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        subs[subs.length - 1] = sub;
+        subscriptions = subs;
+        // publishers that read the lowered gate also see the new array
+        for (long g = gate.get(); g > sub.next && !gate.compareAndSet(g, sub.next); g = gate.get()) { }
+        sub.thread.start();
+        return sub;
+    }
+
+    /**
+     * Publishes a mutation of a book or a borrower's account.
+     * @param type        what happened
+     * @param time        library clock time
+     * @param bookId      ID of the book, or null
+     * @param userId      ID of the borrower, or null
+     * @param librarianId ID of the librarian, or null
+     * @param amount      amount in cents, or 0
+     */
+    public void publish(Event.Type type, LocalDateTime time, String bookId, String userId, String librarianId, long amount) {
+        publish(type, time, bookId, userId, librarianId, amount, null, null);
+    }
+
+    /**
+     * Publishes {@link Event.Type#BOOK_ADDED}.
+     * @param b    the added book
+     * @param time library clock time
+     */
+    public void publishAdded(Book b, LocalDateTime time) {
+        publish(Event.Type.BOOK_ADDED, time, b.getBookId(), null, null, 0, b, null);
+    }
+
+    /**
+     * Publishes {@link Event.Type#USER_REGISTERED}.
+     * @param p    the registered borrower or librarian
+     * @param time library clock time
+     */
+    public void publishRegistered(Person p, LocalDateTime time) {
+        publish(Event.Type.USER_REGISTERED, time, null, p.getId(), null, 0, null, p);
+    }
+
+    /** @return a new outbox, for one thread to publish through */
+    public Outbox outbox() {
+        return new Outbox();
+    }
+
+    /** @return number of events published or claimed so far */
+    public long published() {
+        return claimed.get();
+    }
+
+    /** @return how often a publisher had to wait for a handler to free a slot */
+    public long stalls() {
+        return stalls.sum();
+    }
+
+    /** @return number of ring slots */
+    public int capacity() {
+        return ring.length;
+    }
+
+    private void publish(Event.Type type, LocalDateTime time, String bookId, String userId, String librarianId,
+                         long amount, Book book, Person user) {
+        fill(claimed.getAndIncrement(), type, time, bookId, userId, librarianId, amount, book, user);
+    }
+
+    /** Waits for the slot of a claimed sequence number, fills it and publishes it. */
+    private void fill(long seq, Event.Type type, LocalDateTime time, String bookId, String userId, String librarianId,
+                      long amount, Book book, Person user) {
+        if (seq - ring.length >= gate.get()) awaitSlot(seq);
+        int i = (int) seq & mask;
+        Event e = ring[i];
+        e.type = type;
+        e.seq = seq;
+        e.time = time;
+        e.bookId = bookId;
+        e.userId = userId;
+        e.librarianId = librarianId;
+        e.amount = amount;
+        e.book = book;
+        e.user = user;
+        published.setRelease(i, seq);
+        for (Subscription s : subscriptions) {
+            if (s.waiting) {
+                s.waiting = false;                         // one unpark per sleep, not one per event
+                LockSupport.unpark(s.thread);
+            }
+        }
+    }
+
+    /** Waits until every subscription has moved past the slot's previous event. */
+    private void awaitSlot(long seq) {
+        boolean stalled = false;
+        for (int spins = 0; ; spins++) {
+            long g = gate.get();
+            long lowest = Long.MAX_VALUE;
+            for (Subscription s : subscriptions) lowest = Math.min(lowest, s.next);
+            if (g < lowest) gate.compareAndSet(g, lowest);    // lost races only cost another pass
+            if (seq - ring.length < lowest) return;
+            if (!stalled) {
+                stalls.increment();
+                stalled = true;
+            }
+            if (spins < SPINS) Thread.onSpinWait();
+            else LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private boolean available(long seq) {
+        return published.getAcquire((int) seq & mask) == seq;
+    }
+
+    private synchronized void unsubscribe(Subscription sub) {
+        Subscription[] subs = subscriptions;
+        for (int i = 0; i < subs.length; i++) {
+            if (subs[i] == sub) {
+                Subscription[] fewer = new Subscription[subs.length - 1];
+                System.arraycopy(subs, 0, fewer, 0, i);
+                System.arraycopy(subs, i + 1, fewer, i, subs.length - i - 1);
+                subscriptions = fewer;
+                return;
+            }
+        }
+    }
+}
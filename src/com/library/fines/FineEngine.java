@@ -0,0 +1,273 @@
+package com.library.fines;
+
+import com.library.index.OverdueIndex;
+import com.library.model.BookType;
+import com.library.model.Loan;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Overdue fines, accrued incrementally.
+ * <p>
+ * Every borrower has an account holding the fines settled on return, less
+ * payments, plus a running total for their open overdue loans. The running
+ * total is kept as an amount and a slope (cents per day) as of some day, so a
+ * balance is O(1) on any later day. The slope only changes when a loan falls
+ * due, reaches its cap or comes back.
+ * <p>
+ * The engine advances at most once per day, on the first call that names a
+ * new day. It walks the loans that fell due since the last advance, in
+ * due-date order, straight from the {@link OverdueIndex}. It also pops the
+ * loans that reach their cap from a queue ordered by cap day. No other loan
+ * or borrower is visited. A return settles the loan's exact fine.
+ * <p>
+ * Due dates moved into the past behind the engine, e.g. by hand in tests, are
+ * charged on return only. Thread-safe: accounts have their own monitors, and
+ * neither a balance lookup nor the return or renewal of a loan that is not
+ * accruing takes the engine's.
+ */
+public class FineEngine {
+    /** One borrower's balance; all amounts in cents. */
+    private static final class Account {
+        long settled;                      // fines of returned loans, less payments
+        long accrued;                      // running fines of open loans as of {@code asOf}
+        long slope;                        // cents per day added to {@code accrued}
+        long asOf = Long.MIN_VALUE;        // epoch day
+
+        synchronized void roll(long day) {
+            if (day <= asOf) return;
+            accrued += slope * (day - asOf);
+            asOf = day;
+        }
+
+        synchronized long balance(long day) {
+            return settled + accrued + (day > asOf ? slope * (day - asOf) : 0);
+        }
+    }
+
+    /** An open loan past its due day. */
+    private static final class Accrual {
+        final Loan loan;
+        final Account account;
+        final FineSchedule.Rate rate;
+        final long dueDay, capDay;
+        boolean capped, stopped;
+
+        Accrual(Loan loan, Account account, FineSchedule.Rate rate, long dueDay) {
+            this.loan = loan;
+            this.account = account;
+            this.rate = rate;
+            this.dueDay = dueDay;
+            this.capDay = dueDay + rate.capDays();
+        }
+    }
+
+    private final FineSchedule schedule;
+    private final OverdueIndex dueIndex;
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<Loan, Accrual> accruing = new ConcurrentHashMap<>(); // written under this
+    private final PriorityQueue<Accrual> capping =                         // guarded by this; stopped ones are skipped
+            new PriorityQueue<>(Comparator.comparingLong((Accrual a) -> a.capDay));
+    private LocalDateTime cursor = LocalDateTime.MIN;                      // loans due before it have been seen
+    private volatile long day = Long.MIN_VALUE;                            // epoch day accrued through
+
+    /**
+     * @param schedule rates and caps
+     * @param dueIndex the library's open loans in due-date order
+     */
+    public FineEngine(FineSchedule schedule, OverdueIndex dueIndex) {
+        this.schedule = schedule;
+        this.dueIndex = dueIndex;
+    }
+
+    /** @return the rates and caps */
+    public FineSchedule schedule() { return schedule; }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @param today      the current day
+     * @return fines owed in cents, including those still accruing on open loans
+     */
+    public long balance(String borrowerId, LocalDate today) {
+        advance(today);
+        Account a = accounts.get(borrowerId);
+        return a == null ? 0 : a.balance(today.toEpochDay());
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @param today      the current day
+     * @return true if the borrower owes at least the schedule's threshold
+     */
+    public boolean blocked(String borrowerId, LocalDate today) {
+        return schedule.blockAt() > 0 && balance(borrowerId, today) >= schedule.blockAt();
+    }
+
+    /**
+     * Settles a returned loan: its running fine is replaced by the exact one.
+     * @param loan  the loan, already closed
+     * @param today day of the return
+     * @return the fine charged, in cents
+     */
+    public long returned(Loan loan, LocalDate today) {
+        advance(today);
+        Account acct = account(loan.getBorrower().getId());
+        long fine = schedule.fine(loan, today);
+        release(loan, today.toEpochDay());
+        synchronized (acct) {
+            acct.settled += fine;
+        }
+        return fine;
+    }
+
+    /**
+     * Takes back the running fine of a loan whose due date moved forward; it
+     * accrues again once the new due day has passed.
+     * @param loan  the renewed loan
+     * @param today day of the renewal
+     */
+    public void renewed(Loan loan, LocalDate today) {
+        advance(today);
+        release(loan, today.toEpochDay());
+    }
+
+    /**
+     * Books a payment.
+     * @param borrowerId ID of the borrower
+     * @param cents      amount paid, at most the balance
+     * @param today      the current day
+     * @return false if the amount is not positive or exceeds the balance
+     */
+    public boolean pay(String borrowerId, long cents, LocalDate today) {
+        advance(today);
+        Account acct = accounts.get(borrowerId);
+        if (acct == null || cents <= 0) return false;
+        synchronized (acct) {
+            if (cents > acct.balance(today.toEpochDay())) return false;
+            acct.settled -= cents;
+        }
+        return true;
+    }
+
+    /**
+     * @return settled amount of every account that has one, e.g. to snapshot them;
+     *         running fines are rebuilt from the open loans
+     */
+    public Map<String, Long> settled() {
+        Map<String, Long> out = new HashMap<>();
+        accounts.forEach((id, a) -> {
+            synchronized (a) {
+                if (a.settled != 0) out.put(id, a.settled);
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Restores a settled amount from a snapshot.
+     * @param borrowerId ID of the borrower
+     * @param cents      settled amount
+     */
+    public void restore(String borrowerId, long cents) {
+        Account acct = account(borrowerId);
+        synchronized (acct) {
+            acct.settled = cents;
+        }
+    }
+
+    /** Applies every due and cap event up to {@code today}, in day order. */
+    private void advance(LocalDate today) {
+        long t = today.toEpochDay();
+        if (t <= day) return;
+        synchronized (this) {
+            if (t <= day) return;
+            LocalDateTime end = today.plusDays(1).atStartOfDay();
+            Iterator<Loan> due = dueIndex.dueStream(cursor, end).iterator();
+            Loan next = nextOpen(due);
+            while (true) {
+                while (!capping.isEmpty() && capping.peek().stopped) capping.poll();
+                Accrual cap = capping.peek();
+                long capDay = cap == null ? Long.MAX_VALUE : cap.capDay;
+                long dueDay = next == null ? Long.MAX_VALUE : next.getDueDate().toLocalDate().toEpochDay();
+                if (next == null && capDay > t) break;
+                if (dueDay <= capDay) {
+                    start(next, dueDay);
+                    next = nextOpen(due);
+                } else {
+                    capping.poll();
+                    capped(cap);
+                }
+            }
+            cursor = end;
+            day = t;
+        }
+    }
+
+    private static Loan nextOpen(Iterator<Loan> due) {
+        while (due.hasNext()) {
+            Loan l = due.next();
+            if (l.getReturnDate() == null) return l;
+        }
+        return null;
+    }
+
+    private void start(Loan loan, long dueDay) {
+        FineSchedule.Rate rate = schedule.rate(BookType.of(loan.getBook()));
+        if (rate == null || rate.perDay() == 0 || rate.cap() == 0 || accruing.containsKey(loan)) return;
+        Accrual a = new Accrual(loan, account(loan.getBorrower().getId()), rate, dueDay);
+        synchronized (a.account) {
+            a.account.roll(dueDay);
+            a.account.slope += rate.perDay();
+        }
+        accruing.put(loan, a);
+        capping.add(a);
+        // a return or renewal that looked before the put saw no accrual, so it is ours to stop
+        if (loan.getReturnDate() != null || loan.getDueDate().toLocalDate().toEpochDay() != dueDay) {
+            stop(accruing.remove(loan), dueDay);
+        }
+    }
+
+    private void capped(Accrual a) {
+        synchronized (a.account) {
+            a.account.roll(a.capDay);
+            a.account.slope -= a.rate.perDay();
+            a.account.accrued += a.rate.cap() - a.rate.perDay() * (a.capDay - a.dueDay);   // the last day may be partial
+        }
+        a.capped = true;
+    }
+
+    /**
+     * Removes the running fine of a loan that was closed or renewed, taking
+     * this monitor only if there is one. The loan is updated before the
+     * lookup and {@link #start} checks it after publishing, so an accrual
+     * started concurrently is stopped by one side or the other.
+     */
+    private void release(Loan loan, long day) {
+        if (!accruing.containsKey(loan)) return;
+        synchronized (this) {
+            stop(accruing.remove(loan), day);
+        }
+    }
+
+    /** Removes a loan's running fine as of {@code day}; the caller holds this monitor. */
+    private void stop(Accrual a, long day) {
+        if (a == null) return;
+        a.stopped = true;
+        synchronized (a.account) {
+            a.account.roll(day);
+            if (a.capped) {
+                a.account.accrued -= a.rate.cap();
+            } else {
+                a.account.slope -= a.rate.perDay();
+                a.account.accrued -= a.rate.perDay() * (day - a.dueDay);
+            }
+        }
+    }
+
+    private Account account(String borrowerId) {
+        return accounts.computeIfAbsent(borrowerId, k -> new Account());
+    }
+}
@@ -0,0 +1,72 @@
+package com.library.fines;
+
+import com.library.model.BookType;
+import com.library.model.Loan;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Fine rates per book type, in cents.
+ * <p>
+ * A loan is charged {@link Rate#perDay()} for every calendar day after the day
+ * it was due, up to {@link Rate#cap()}; returning it on the due day costs
+ * nothing.
+ *
+ * @param rates   rate of each book type; types without one are never fined
+ * @param blockAt balance at which a borrower may not check out more books; 0 never blocks
+ */
+public record FineSchedule(Map<BookType, Rate> rates, long blockAt) {
+    /**
+     * @param perDay cents per day late
+     * @param cap    most a single loan is charged, in cents
+     */
+    public record Rate(long perDay, long cap) {
+        public Rate {
+            if (perDay < 0 || cap < 0) throw new IllegalArgumentException("negative rate");
+        }
+
+        /** @return first day after the due day on which the cap is reached */
+        long capDays() {
+            return perDay == 0 ? Long.MAX_VALUE : (cap + perDay - 1) / perDay;
+        }
+
+        /** @return fine for a loan returned {@code days} days late */
+        long fine(long days) {
+            return days <= 0 ? 0 : Math.min(cap, perDay * Math.min(days, capDays()));
+        }
+    }
+
+    /** Text books 0.25/day up to 15.00, novels 0.10/day up to 5.00, reference 1.00/day up to 30.00; blocks at 10.00. */
+    public static final FineSchedule DEFAULT = new FineSchedule(Map.of(
+            BookType.TEXTBOOK,  new Rate(25, 1500),
+            BookType.NOVEL,     new Rate(10, 500),
+            BookType.REFERENCE, new Rate(100, 3000)), 1000);
+
+    public FineSchedule {
+        EnumMap<BookType, Rate> copy = new EnumMap<>(BookType.class);
+        copy.putAll(rates);
+        rates = Collections.unmodifiableMap(copy);
+        if (blockAt < 0) throw new IllegalArgumentException("negative threshold");
+    }
+
+    /**
+     * @param type a book type
+     * @return its rate, or null if the type is not fined
+     */
+    public Rate rate(BookType type) {
+        return rates.get(type);
+    }
+
+    /**
+     * @param loan a loan
+     * @param day  day it is (or would be) returned
+     * @return fine for returning the loan on that day, in cents
+     */
+    public long fine(Loan loan, LocalDate day) {
+        Rate r = rate(BookType.of(loan.getBook()));
+        return r == null ? 0 : r.fine(day.toEpochDay() - loan.getDueDate().toLocalDate().toEpochDay());
+    }
+}
@@ -0,0 +1,311 @@
+package com.library.history;
+
+import com.library.model.Book;
+import com.library.model.Borrower;
+import com.library.model.Librarian;
+import com.library.model.Loan;
+import com.library.model.Person;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
+
+import static com.library.history.Segment.ROWS;
+import static com.library.history.Segment.SHIFT;
+
+/**
+ * Append-only store of closed loans, kept off the checkout path.
+ * <p>
+ * A returned loan is kept as a primitive row: the borrower, book and librarian
+ * IDs are interned into tables, and the times are epoch seconds, so a row is
+ * {@value Segment#ROW_BYTES} bytes. Rows are appended to segments of
+ * {@value Segment#ROWS}. For each borrower and book, the row numbers are
+ * delta-encoded postings of one or two bytes per loan. Range queries skip
+ * segments whose rows all lie outside the range.
+ * <p>
+ * {@link #spill} writes full segments to files in a directory and maps them
+ * back. After that the heap holds only the ID tables, the postings and the
+ * open segment. {@link #mount} reopens the files after a restart and rebuilds
+ * the postings from them.
+ * <p>
+ * Loans are rebuilt on each query through the book and user lookups given to
+ * the constructor. Rows whose book or user no longer resolves are skipped,
+ * just as a snapshot drops them. Thread-safe. Rows are copied out under the
+ * store's monitor and resolved outside it.
+ */
+public class LoanHistory {
+    private static final String SUFFIX = ".seg";
+
+    /**
+     * One page of a borrower's history.
+     * @param loans the loans, oldest first
+     * @param next  position to continue from, or -1 if there are no more loans
+     */
+    public record Slice(List<Loan> loans, int next) {}
+
+    /** A row copied out of its segment. */
+    private record Row(String borrower, String book, String librarian, long issued, long due, long returned) {}
+
+    /** Rows collected for a query, and where the query stopped. */
+    private record Rows(List<Row> rows, int next, boolean more) {}
+
+    private final Function<String, ? extends Book> books;
+    private final Function<String, ? extends Person> users;
+    private final List<String> personIds = new ArrayList<>();          // borrowers and librarians
+    private final Map<String, Integer> personRefs = new HashMap<>();
+    private final List<String> bookIds = new ArrayList<>();
+    private final Map<String, Integer> bookRefs = new HashMap<>();
+    private final List<Postings> byBorrower = new ArrayList<>();       // by person index; null for librarians
+    private final List<Postings> byBook = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();          // the last one takes new rows
+    private final Object spillLock = new Object();
+    private int spilled;                                               // leading segments that live in files
+    private int size;
+
+    /**
+     * @param books resolves a book ID, null if the book is gone
+     * @param users resolves a borrower or librarian ID, null if unknown
+     */
+    public LoanHistory(Function<String, ? extends Book> books, Function<String, ? extends Person> users) {
+        this.books = books;
+        this.users = users;
+    }
+
+    /**
+     * Records a loan that has been returned.
+     * @param loan the closed loan
+     */
+    public synchronized void append(Loan loan) {
+        Segment open = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (open == null || open.full()) {
+            open = new Segment(personIds.size(), bookIds.size());
+            segments.add(open);
+        }
+        int borrower = intern(loan.getBorrower().getId(), personIds, personRefs);
+        int librarian = intern(loan.getProcessedBy().getId(), personIds, personRefs);
+        int book = intern(loan.getBook().getBookId(), bookIds, bookRefs);
+        int row = (segments.size() - 1) << SHIFT | open.size();
+        open.add(borrower, book, librarian, seconds(loan.getIssueDate()), seconds(loan.getDueDate()),
+                seconds(loan.getReturnDate()));
+        postings(byBorrower, borrower).add(row);
+        postings(byBook, book).add(row);
+        size++;
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @return closed loans of that borrower, oldest first
+     */
+    public List<Loan> forBorrower(String borrowerId) {
+        return loans(collect(byBorrower, personRefs, borrowerId, 0, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @param from       position of the first loan; positions never shift, as the history only grows
+     * @param limit      maximum number of loans
+     * @return closed loans of that borrower from {@code from} on, oldest first
+     */
+    public Slice forBorrower(String borrowerId, int from, int limit) {
+        List<Loan> out = new ArrayList<>(Math.min(limit, 256));
+        int pos = from;
+        while (true) {
+            Rows r = collect(byBorrower, personRefs, borrowerId, pos, limit - out.size(), Long.MIN_VALUE, Long.MAX_VALUE);
+            out.addAll(loans(r));
+            pos = r.next();
+            if (!r.more()) return new Slice(out, -1);
+            if (out.size() == limit) return new Slice(out, pos);
+        }
+    }
+
+    /**
+     * @param borrowerId ID of the borrower
+     * @param from       start of the range, inclusive
+     * @param to         end of the range, exclusive
+     * @return closed loans of that borrower that were out at some time in the range, oldest first
+     */
+    public List<Loan> forBorrower(String borrowerId, LocalDateTime from, LocalDateTime to) {
+        return loans(collect(byBorrower, personRefs, borrowerId, 0, Integer.MAX_VALUE, seconds(from), seconds(to)));
+    }
+
+    /**
+     * @param bookId ID of the book
+     * @return closed loans of that book, oldest first
+     */
+    public List<Loan> forBook(String bookId) {
+        return loans(collect(byBook, bookRefs, bookId, 0, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * @param bookId ID of the book
+     * @param from   start of the range, inclusive
+     * @param to     end of the range, exclusive
+     * @return closed loans of that book that were out at some time in the range, oldest first
+     */
+    public List<Loan> forBook(String bookId, LocalDateTime from, LocalDateTime to) {
+        return loans(collect(byBook, bookRefs, bookId, 0, Integer.MAX_VALUE, seconds(from), seconds(to)));
+    }
+
+    /** @return total number of closed loans recorded */
+    public synchronized int size() { return size; }
+
+    /** @return number of leading segments that live in files */
+    public synchronized int spilled() { return spilled; }
+
+    /**
+     * @return the closed loans not yet spilled to files, oldest first, e.g. to snapshot them
+     */
+    public List<Loan> unspilled() {
+        List<Row> rows = new ArrayList<>();
+        synchronized (this) {
+            for (int s = spilled; s < segments.size(); s++) {
+                Segment seg = segments.get(s);
+                for (int i = 0; i < seg.size(); i++) rows.add(row(seg, i));
+            }
+        }
+        return loans(new Rows(rows, 0, false));
+    }
+
+    /**
+     * Writes every full segment not yet in a file to {@code dir} and maps it
+     * back, freeing its heap. Returns go on while the files are written.
+     * @param dir directory for segment files
+     * @return number of leading segments now in files
+     * @throws IOException if a file cannot be written; segments written before stay spilled
+     */
+    public int spill(Path dir) throws IOException {
+        synchronized (spillLock) {
+            Files.createDirectories(dir);
+            while (true) {
+                int k;
+                Segment seg;
+                List<String> persons, bookRange;
+                synchronized (this) {
+                    k = spilled;
+                    if (k == segments.size() || !segments.get(k).full()) return k;
+                    seg = segments.get(k);
+                    int personEnd = k + 1 < segments.size() ? segments.get(k + 1).personBase : personIds.size();
+                    int bookEnd = k + 1 < segments.size() ? segments.get(k + 1).bookBase : bookIds.size();
+                    persons = List.copyOf(personIds.subList(seg.personBase, personEnd));
+                    bookRange = List.copyOf(bookIds.subList(seg.bookBase, bookEnd));
+                }
+                Segment mapped = seg.spill(file(dir, k), persons, bookRange);   // full segments no longer change
+                synchronized (this) {
+                    segments.set(k, mapped);
+                    spilled = k + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the first {@code count} segment files of {@code dir} into an empty
+     * store and rebuilds the ID tables and postings from them. Later files,
+     * written after the snapshot that names {@code count}, are deleted; their
+     * rows come back from the snapshot and the journal.
+     * @param dir   directory of segment files
+     * @param count number of files to mount
+     * @throws IOException if a file is missing or damaged
+     */
+    public synchronized void mount(Path dir, int count) throws IOException {
+        if (size != 0) throw new IllegalStateException("history is not empty");
+        for (int k = 0; k < count; k++) {
+            List<String> persons = new ArrayList<>(), bookRange = new ArrayList<>();
+            Segment seg = Segment.map(file(dir, k), persons, bookRange);
+            if (seg.personBase != personIds.size() || seg.bookBase != bookIds.size() || !seg.full()) {
+                throw new IOException("History segment out of sequence: " + file(dir, k));
+            }
+            for (String id : persons) intern(id, personIds, personRefs);
+            for (String id : bookRange) intern(id, bookIds, bookRefs);
+            segments.add(seg);
+            for (int i = 0; i < seg.size(); i++) {
+                int row = k << SHIFT | i;
+                postings(byBorrower, seg.borrower(i)).add(row);
+                postings(byBook, seg.book(i)).add(row);
+            }
+            size += seg.size();
+        }
+        spilled = count;
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    if (Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())) >= count) Files.delete(f);
+                }
+            }
+        }
+    }
+
+    // Internals
+
+    /**
+     * Copies the rows at positions {@code from..} of one posting list that
+     * were out at some time in {@code [start, end)}, at most {@code limit}.
+     */
+    private synchronized Rows collect(List<Postings> index, Map<String, Integer> refs, String id,
+                                      int from, int limit, long start, long end) {
+        Integer ref = refs.get(id);
+        Postings p = ref == null || ref >= index.size() ? null : index.get(ref);
+        if (p == null) return new Rows(List.of(), from, false);
+        int[] rows = p.rows();
+        List<Row> out = new ArrayList<>(Math.min(limit, rows.length));
+        int pos = Math.max(from, 0);
+        for (; pos < rows.length && out.size() < limit; pos++) {
+            Segment seg = segments.get(rows[pos] >>> SHIFT);
+            if (!seg.overlaps(start, end)) continue;
+            int i = rows[pos] & (ROWS - 1);
+            if (seg.issued(i) < end && seg.returned(i) >= start) out.add(row(seg, i));
+        }
+        return new Rows(out, pos, pos < rows.length);
+    }
+
+    /** @return the row with its IDs looked up; the caller holds the monitor */
+    private Row row(Segment seg, int i) {
+        return new Row(personIds.get(seg.borrower(i)), bookIds.get(seg.book(i)), personIds.get(seg.librarian(i)),
+                seg.issued(i), seg.due(i), seg.returned(i));
+    }
+
+    /** Rebuilds loans outside the monitor, skipping rows that no longer resolve. */
+    private List<Loan> loans(Rows rows) {
+        List<Loan> out = new ArrayList<>(rows.rows().size());
+        for (Row r : rows.rows()) {
+            Book b = books.apply(r.book());
+            if (b == null || !(users.apply(r.borrower()) instanceof Borrower brw)
+                    || !(users.apply(r.librarian()) instanceof Librarian lib)) continue;
+            out.add(new Loan(brw, b, lib, time(r.issued()), time(r.due()), time(r.returned())));
+        }
+        return out;
+    }
+
+    private static int intern(String id, List<String> table, Map<String, Integer> refs) {
+        Integer ref = refs.get(id);
+        if (ref != null) return ref;
+        table.add(id);
+        refs.put(id, table.size() - 1);
+        return table.size() - 1;
+    }
+
+    private static Postings postings(List<Postings> index, int ref) {
+        while (index.size() <= ref) index.add(null);
+        Postings p = index.get(ref);
+        if (p == null) index.set(ref, p = new Postings());
+        return p;
+    }
+
+    private static Path file(Path dir, int k) {
+        return dir.resolve(String.format("%08d%s", k, SUFFIX));
+    }
+
+    private static long seconds(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime time(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+}
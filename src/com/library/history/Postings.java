@@ -0,0 +1,47 @@
+package com.library.history;
+
+import java.util.Arrays;
+
+/**
+ * Ascending row numbers of one borrower or book, delta-encoded as varints, so
+ * a long history costs one or two bytes per loan. Not thread-safe; the history
+ * serializes access.
+ */
+final class Postings {
+    private byte[] bytes = new byte[4];
+    private int length;
+    private int count;
+    private int last = -1;
+
+    /** @param row a row number larger than every row added before */
+    void add(int row) {
+        if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        int delta = row - last;
+        last = row;
+        while ((delta & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        bytes[length++] = (byte) delta;
+        count++;
+    }
+
+    int count() { return count; }
+
+    /** @return every row, ascending */
+    int[] rows() {
+        int[] out = new int[count];
+        int row = -1, pos = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                delta |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            row += delta;
+            out[i] = row;
+        }
+        return out;
+    }
+}
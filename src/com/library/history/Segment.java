@@ -0,0 +1,152 @@
+package com.library.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Up to {@link #ROWS} closed loans as fixed-size primitive rows: borrower,
+ * book and librarian as indexes into the history's ID tables, then the
+ * issue, due and return times in epoch seconds (UTC).
+ * <p>
+ * The open segment grows on the heap. A full segment is sealed and may be
+ * written to its own file and mapped back read-only, so it no longer takes
+ * heap space. Segment files also carry the IDs first used by their rows, so
+ * mounting the files in order rebuilds the ID tables.
+ */
+final class Segment {
+    static final int SHIFT = 16;
+    /** Rows per segment. */
+    static final int ROWS = 1 << SHIFT;
+    static final int ROW_BYTES = 3 * 4 + 3 * 8;
+
+    private static final long MAGIC = 0x4C49424849533031L;        // "LIBHIS01"
+    private static final int HEADER = 8 + 3 * 4 + 2 * 8;
+    private static final int BORROWER = 0, BOOK = 4, LIBRARIAN = 8, ISSUED = 12, DUE = 20, RETURNED = 28;
+
+    /** Size of the person and book ID tables when the segment was started. */
+    final int personBase, bookBase;
+    private ByteBuffer rows;
+    private int size;
+    private long minIssued = Long.MAX_VALUE, maxReturned = Long.MIN_VALUE;
+    private final boolean mapped;
+
+    Segment(int personBase, int bookBase) {
+        this.personBase = personBase;
+        this.bookBase = bookBase;
+        this.rows = ByteBuffer.allocate(1024 * ROW_BYTES);
+        this.mapped = false;
+    }
+
+    private Segment(int personBase, int bookBase, ByteBuffer rows, int size, long minIssued, long maxReturned) {
+        this.personBase = personBase;
+        this.bookBase = bookBase;
+        this.rows = rows;
+        this.size = size;
+        this.minIssued = minIssued;
+        this.maxReturned = maxReturned;
+        this.mapped = true;
+    }
+
+    void add(int borrower, int book, int librarian, long issued, long due, long returned) {
+        int at = size * ROW_BYTES;
+        if (at == rows.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(ROWS, size * 2) * ROW_BYTES);
+            grown.put(rows.duplicate().clear());
+            rows = grown;
+        }
+        rows.putInt(at + BORROWER, borrower).putInt(at + BOOK, book).putInt(at + LIBRARIAN, librarian)
+            .putLong(at + ISSUED, issued).putLong(at + DUE, due).putLong(at + RETURNED, returned);
+        size++;
+        minIssued = Math.min(minIssued, issued);
+        maxReturned = Math.max(maxReturned, returned);
+    }
+
+    int size() { return size; }
+
+    boolean full() { return size == ROWS; }
+
+    /** @return true if the segment lives in a mapped file */
+    boolean mapped() { return mapped; }
+
+    /** @return true if some row may have been out between {@code from} (inclusive) and {@code to} (exclusive) */
+    boolean overlaps(long from, long to) {
+        return size > 0 && minIssued < to && maxReturned >= from;
+    }
+
+    int borrower(int row)  { return rows.getInt(row * ROW_BYTES + BORROWER); }
+    int book(int row)      { return rows.getInt(row * ROW_BYTES + BOOK); }
+    int librarian(int row) { return rows.getInt(row * ROW_BYTES + LIBRARIAN); }
+    long issued(int row)   { return rows.getLong(row * ROW_BYTES + ISSUED); }
+    long due(int row)      { return rows.getLong(row * ROW_BYTES + DUE); }
+    long returned(int row) { return rows.getLong(row * ROW_BYTES + RETURNED); }
+
+    /**
+     * Writes a sealed segment to a file and maps it back.
+     * @param file    target file, replaced atomically
+     * @param persons the person IDs first used by this segment
+     * @param books   the book IDs first used by this segment
+     * @return the mapped copy
+     * @throws IOException if the file cannot be written
+     */
+    Segment spill(Path file, List<String> persons, List<String> books) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long length = (long) size * ROW_BYTES;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putLong(MAGIC).putInt(size).putInt(personBase).putInt(bookBase)
+                  .putLong(minIssued).putLong(maxReturned).flip();
+            while (header.hasRemaining()) ch.write(header);
+            ByteBuffer body = rows.duplicate().limit((int) length).position(0);
+            while (body.hasRemaining()) ch.write(body);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+            out.writeInt(persons.size());
+            for (String id : persons) out.writeUTF(id);
+            out.writeInt(books.size());
+            for (String id : books) out.writeUTF(id);
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return map(file, null, null);
+    }
+
+    /**
+     * Maps a segment file.
+     * @param file    the file
+     * @param persons receives the person IDs the segment introduced, or null
+     * @param books   receives the book IDs the segment introduced, or null
+     * @return the mapped segment
+     * @throws IOException if the file cannot be read or is not a history segment
+     */
+    static Segment map(Path file, List<String> persons, List<String> books) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER) throw new IOException("Not a history segment: " + file);
+            ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getLong() != MAGIC) throw new IOException("Not a history segment: " + file);
+            int size = header.getInt(), personBase = header.getInt(), bookBase = header.getInt();
+            long minIssued = header.getLong(), maxReturned = header.getLong();
+            long length = (long) size * ROW_BYTES;
+            if (size < 0 || size > ROWS || ch.size() < HEADER + length) throw new IOException("Truncated history segment: " + file);
+            ByteBuffer rows = ch.map(FileChannel.MapMode.READ_ONLY, HEADER, length);
+            if (persons != null) {
+                ch.position(HEADER + length);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 1 << 16));
+                for (int n = in.readInt(); n > 0; n--) persons.add(in.readUTF());
+                for (int n = in.readInt(); n > 0; n--) books.add(in.readUTF());
+            }
+            return new Segment(personBase, bookBase, rows, size, minIssued, maxReturned);
+        }
+    }
+}
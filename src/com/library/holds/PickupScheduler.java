@@ -0,0 +1,75 @@
+package com.library.holds;
+
+import com.library.model.HoldRequest;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Pickup windows of books set aside for the first borrower in their hold queue.
+ * <p>
+ * Each window is a timer on a {@link TimingWheel} with one-second ticks, so
+ * setting a book aside and collecting it are O(1) however many books wait on
+ * the shelf, and finding the windows that ran out costs time proportional to
+ * those windows only. Nothing runs on its own thread: the owner calls
+ * {@link #due} periodically, e.g. from one scheduled task for the whole library.
+ * Thread-safe.
+ */
+public class PickupScheduler {
+    private final TimingWheel<HoldRequest> wheel;
+    private final Map<String, TimingWheel.Timer<HoldRequest>> byBook = new HashMap<>();
+
+    /**
+     * @param now the current time; windows ending before it run out on the first {@link #due} call
+     */
+    public PickupScheduler(LocalDateTime now) {
+        this.wheel = new TimingWheel<>(tick(now));
+    }
+
+    /**
+     * Starts the pickup window of a hold, replacing any window of its book.
+     * @param hr the first hold of its book, with {@link HoldRequest#getPickupBy()} set
+     */
+    public synchronized void schedule(HoldRequest hr) {
+        TimingWheel.Timer<HoldRequest> t = wheel.schedule(hr, tick(hr.getPickupBy()) + 1);
+        TimingWheel.Timer<HoldRequest> previous = byBook.put(hr.getBook().getBookId(), t);
+        if (previous != null) wheel.cancel(previous);
+    }
+
+    /**
+     * Ends a book's pickup window early, e.g. because the book was collected.
+     * @param bookId ID of the book
+     * @return the hold whose window was cancelled, or null if the book was not set aside
+     */
+    public synchronized HoldRequest cancel(String bookId) {
+        TimingWheel.Timer<HoldRequest> t = byBook.remove(bookId);
+        if (t == null) return null;
+        wheel.cancel(t);
+        return t.payload();
+    }
+
+    /**
+     * Removes the windows that have run out.
+     * @param now the current time
+     * @return their holds, earliest deadline first (to the second)
+     */
+    public synchronized List<HoldRequest> due(LocalDateTime now) {
+        List<HoldRequest> out = new ArrayList<>();
+        wheel.advance(tick(now), hr -> {
+            byBook.remove(hr.getBook().getBookId());
+            out.add(hr);
+        });
+        return out;
+    }
+
+    /** @return number of books waiting on the shelf */
+    public synchronized int pending() {
+        return wheel.size();
+    }
+
+    /** @return the time in whole seconds; a window runs out in the second after it ends */
+    private static long tick(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC);
+    }
+}
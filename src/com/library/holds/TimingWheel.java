@@ -0,0 +1,169 @@
+package com.library.holds;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: timers keyed by a deadline tick, fired in bulk as
+ * time advances.
+ * <p>
+ * Level 0 has one slot per tick for the next 64 ticks, level 1 one slot per 64
+ * ticks for the next 4096, and so on up to six levels (2^36
+ * ticks). Scheduling and cancelling are O(1): a timer is linked into the slot
+ * of its level. When time enters a slot of a higher level, its timers cascade
+ * down to the level their remaining time fits, so a timer moves at most once
+ * per level before it fires. Advancing jumps over stretches in which the lower
+ * levels are empty, so idle periods cost O(levels × 64) rather than one step
+ * per tick.
+ * <p>
+ * Not thread-safe; the owner serializes calls.
+ * @param <T> payload type
+ */
+public class TimingWheel<T> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    /** A scheduled timer; the handle to cancel it. */
+    public static final class Timer<T> {
+        private final T payload;
+        private final long deadline;
+        private Timer<T> prev, next;
+        private int level = -1, slot;                       // level -1: not scheduled
+
+        private Timer(T payload, long deadline) {
+            this.payload = payload;
+            this.deadline = deadline;
+        }
+
+        /** @return what was scheduled */
+        public T payload() { return payload; }
+
+        /** @return tick at which the timer fires */
+        public long deadline() { return deadline; }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Timer<T>[][] wheels = new Timer[LEVELS][SLOTS];   // slot -> head of a doubly linked list
+    private final int[] counts = new int[LEVELS];
+    private long current;                                            // every timer due up to here has fired
+    private int size;
+
+    /**
+     * @param start the current tick; timers due at or before it fire on the next advance
+     */
+    public TimingWheel(long start) {
+        this.current = start;
+    }
+
+    /**
+     * Schedules a payload.
+     * @param payload  what to hand back when the timer fires
+     * @param deadline tick at which it fires; past deadlines fire on the next advance
+     * @return the timer, to cancel it
+     */
+    public Timer<T> schedule(T payload, long deadline) {
+        Timer<T> t = new Timer<>(payload, deadline);
+        place(t, current + 1);                           // this tick's slot has already fired
+        size++;
+        return t;
+    }
+
+    /**
+     * Cancels a timer that has not fired yet.
+     * @param t the timer
+     * @return false if it had already fired or been cancelled
+     */
+    public boolean cancel(Timer<T> t) {
+        if (t.level < 0) return false;
+        unlink(t);
+        size--;
+        return true;
+    }
+
+    /**
+     * Fires every timer due up to {@code now}, in deadline order up to the
+     * tick (timers due on the same tick in no particular order).
+     * @param now   the current tick; earlier values are ignored
+     * @param fired receives the payloads of the fired timers
+     */
+    public void advance(long now, Consumer<? super T> fired) {
+        while (current < now) {
+            if (size == 0) {
+                current = now;
+                return;
+            }
+            int empty = 0;                                   // lower levels without timers
+            while (empty < LEVELS - 1 && counts[empty] == 0) empty++;
+            if (empty > 0) {
+                // nothing can fire or cascade before the next slot of level `empty`
+                long skipTo = current | ((1L << (BITS * empty)) - 1);
+                if (skipTo >= now) {
+                    current = now;
+                    return;
+                }
+                current = skipTo;
+            }
+            current++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((current & ((1L << (BITS * level)) - 1)) != 0) break;
+                cascade(level, (int) (current >>> (BITS * level)) & MASK);
+            }
+            Timer<T> t = wheels[0][(int) current & MASK];
+            while (t != null) {
+                Timer<T> next = t.next;
+                unlink(t);
+                size--;
+                fired.accept(t.payload);
+                t = next;
+            }
+        }
+    }
+
+    /** @return number of pending timers */
+    public int size() {
+        return size;
+    }
+
+    /** @return the tick time has been advanced to */
+    public long current() {
+        return current;
+    }
+
+    /** Re-places the timers of a higher-level slot whose span time has entered. */
+    private void cascade(int level, int slot) {
+        Timer<T> t = wheels[level][slot];
+        while (t != null) {
+            Timer<T> next = t.next;
+            unlink(t);
+            place(t, current);                           // this tick's slot fires next
+            t = next;
+        }
+    }
+
+    private void place(Timer<T> t, long earliest) {
+        long deadline = Math.max(t.deadline, earliest);
+        long delta = deadline - current;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) level++;
+        if (delta >= 1L << (BITS * LEVELS)) deadline = current + (1L << (BITS * LEVELS)) - 1;  // re-placed on cascade
+        int slot = (int) (deadline >>> (BITS * level)) & MASK;
+        Timer<T> head = wheels[level][slot];
+        t.prev = null;
+        t.next = head;
+        if (head != null) head.prev = t;
+        wheels[level][slot] = t;
+        t.level = level;
+        t.slot = slot;
+        counts[level]++;
+    }
+
+    private void unlink(Timer<T> t) {
+        if (t.prev != null) t.prev.next = t.next;
+        else wheels[t.level][t.slot] = t.next;
+        if (t.next != null) t.next.prev = t.prev;
+        counts[t.level]--;
+        t.prev = t.next = null;
+        t.level = -1;
+    }
+}
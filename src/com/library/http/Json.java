@@ -0,0 +1,183 @@
+package com.library.http;
+
+import com.library.CirculationResult;
+import com.library.Facets;
+import com.library.Page;
+import com.library.analytics.PopularityTracker;
+import com.library.model.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Minimal JSON writer for the API's response bodies.
+ */
+final class Json {
+    private final StringBuilder sb = new StringBuilder(256);
+
+    @Override
+    public String toString() { return sb.toString(); }
+
+    Json raw(String s) {
+        sb.append(s);
+        return this;
+    }
+
+    /** Appends a JSON string literal, or null. */
+    Json str(String s) {
+        if (s == null) return raw("null");
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"'  -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+        return this;
+    }
+
+    /** Appends {@code "name":} after a separating comma unless it is the first member. */
+    private Json name(String name, boolean first) {
+        if (!first) sb.append(',');
+        return str(name).raw(":");
+    }
+
+    <T> Json array(Collection<T> items, BiConsumer<Json, T> item) {
+        sb.append('[');
+        boolean first = true;
+        for (T t : items) {
+            if (!first) sb.append(',');
+            item.accept(this, t);
+            first = false;
+        }
+        sb.append(']');
+        return this;
+    }
+
+    /** Appends {@code {"items": [...], "next": cursor}}. */
+    <T> Json page(Page<T> page, BiConsumer<Json, T> item) {
+        sb.append('{');
+        name("items", true).array(page.items(), item);
+        name("next", false).str(page.next());
+        sb.append('}');
+        return this;
+    }
+
+    Json book(Book b) {
+        sb.append('{');
+        name("id", true).str(b.getBookId());
+        name("type", false).str(BookType.of(b).name());
+        name("title", false).str(b.getTitle());
+        name("author", false).str(b.getAuthor());
+        name("subject", false).str(b.getSubject());
+        name("issued", false).raw(Boolean.toString(b.isIssued()));
+        sb.append('}');
+        return this;
+    }
+
+    Json title(Title t) {
+        sb.append('{');
+        name("type", true).str(t.getType().name());
+        name("title", false).str(t.getTitle());
+        name("author", false).str(t.getAuthor());
+        name("subject", false).str(t.getSubject());
+        name("copies", false).raw(Integer.toString(t.getCopies()));
+        name("available", false).raw(Integer.toString(t.getAvailable()));
+        name("copyIds", false).array(t.getCopyIds(), Json::str);
+        sb.append('}');
+        return this;
+    }
+
+    /** Appends {@code {"total": n, "available": n, "subjects": {...}, "types": {...}, "items": [...]}}. */
+    Json facets(Facets f) {
+        sb.append('{');
+        name("total", true).raw(Integer.toString(f.total()));
+        name("available", false).raw(Integer.toString(f.available()));
+        name("subjects", false).counts(f.subjects());
+        name("types", false).counts(f.types());
+        name("items", false).array(f.books(), Json::book);
+        sb.append('}');
+        return this;
+    }
+
+    /** Appends an object of counts keyed by the keys' string forms. */
+    private Json counts(Map<?, Integer> counts) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<?, Integer> e : counts.entrySet()) {
+            name(e.getKey().toString(), first).raw(e.getValue().toString());
+            first = false;
+        }
+        sb.append('}');
+        return this;
+    }
+
+    Json loan(Loan l) {
+        sb.append('{');
+        name("bookId", true).str(l.getBook().getBookId());
+        name("title", false).str(l.getBook().getTitle());
+        name("borrowerId", false).str(l.getBorrower().getId());
+        name("librarianId", false).str(l.getProcessedBy().getId());
+        name("issued", false).str(l.getIssueDate().toString());
+        name("due", false).str(l.getDueDate().toString());
+        name("returned", false).str(l.getReturnDate() == null ? null : l.getReturnDate().toString());
+        sb.append('}');
+        return this;
+    }
+
+    Json hold(HoldRequest hr) {
+        sb.append('{');
+        name("bookId", true).str(hr.getBook().getBookId());
+        name("borrowerId", false).str(hr.getBorrower().getId());
+        name("requested", false).str(hr.getRequestDate().toString());
+        name("pickupBy", false).str(hr.getPickupBy() == null ? null : hr.getPickupBy().toString());
+        sb.append('}');
+        return this;
+    }
+
+    Json count(PopularityTracker.Count c) {
+        sb.append('{');
+        name("key", true).str(c.key());
+        name("count", false).raw(Long.toString(c.count()));
+        sb.append('}');
+        return this;
+    }
+
+    Json balance(String borrowerId, long cents) {
+        sb.append('{');
+        name("borrowerId", true).str(borrowerId);
+        name("balance", false).raw(Long.toString(cents));
+        sb.append('}');
+        return this;
+    }
+
+    Json results(List<String> bookIds, CirculationResult[] results) {
+        sb.append('[');
+        for (int i = 0; i < results.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('{');
+            name("bookId", true).str(bookIds.get(i));
+            name("result", false).str(results[i].name());
+            sb.append('}');
+        }
+        sb.append(']');
+        return this;
+    }
+
+    static String error(String message) {
+        Json j = new Json().raw("{");
+        j.name("error", true).str(message);
+        return j.raw("}").toString();
+    }
+}
@@ -0,0 +1,403 @@
+package com.library.http;
+
+import com.library.CirculationResult;
+import com.library.Library;
+import com.library.analytics.PopularityTracker;
+import com.library.model.BookType;
+import com.library.model.Borrower;
+import com.library.model.Loan;
+import com.library.persistence.Journal;
+import com.library.persistence.LibraryStore;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP/JSON API over a {@link Library}, built on the JDK's
+ * {@code com.sun.net.httpserver} with one virtual thread per request.
+ * <p>
+ * Parameters come from the query string or an
+ * {@code application/x-www-form-urlencoded} body; responses are JSON. Routes
+ * marked * are keyset-paginated: they take {@code limit} (default
+ * {@value #DEFAULT_LIMIT}, at most {@value #MAX_LIMIT}) and {@code after}, and
+ * answer {@code {"items": [...], "next": cursor}}, where {@code next} is the
+ * {@code after} of the following page or null on the last one.
+ * <pre>
+ * GET    /books                * all books by ID
+ * GET    /books?q=…            * search title, author or ID
+ * GET    /books?subject=…      * search subject
+ * GET    /books/{id}
+ * GET    /books/{id}/history   from, to (ISO dates, inclusive)
+ * GET    /titles?q=…           search title, author or ID; one hit per title with copy counts
+ * GET    /facets               q, subject and type (repeatable), available=true, limit; matches with facet counts
+ * GET    /search?q=…           words with typos allowed, limit; best matches first
+ * GET    /suggest?q=…          start of a title or author, limit (default 10); completions, most books first
+ * POST   /loans                borrower, librarian, book (repeat book for a batch)
+ * GET    /loans/{bookId}
+ * POST   /loans/{bookId}/renew borrower
+ * DELETE /loans/{bookId}       return
+ * POST   /returns              book (repeated), for the book-drop sorter
+ * GET    /holds/{bookId}       * queue order
+ * POST   /holds                borrower, book
+ * DELETE /holds/{bookId}       borrower
+ * GET    /reports/overdue      * most overdue first
+ * GET    /reports/due?days=7   * earliest first
+ * GET    /reports/popular      by=book|subject, event=checkout|hold, days=7|30|365, limit
+ * GET    /borrowers/{id}/loans
+ * GET    /borrowers/{id}/history * oldest first; or all loans out between from and to
+ * GET    /borrowers/{id}/fines  balance in cents
+ * POST   /borrowers/{id}/payments amount (cents)
+ * GET    /metrics              call counts and latencies as Prometheus text
+ * </pre>
+ * Failures answer 400 (bad request), 404 (unknown book or user), 409
+ * (refused by circulation rules), 413 (form body over {@value #MAX_BODY}
+ * bytes) or 500 (anything else, logged to standard error) with
+ * {@code {"error": "..."}}.
+ */
+public class LibraryServer implements Closeable {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    static final int SUGGESTIONS = 10;
+    static final int MAX_BODY = 1 << 20;                  // bytes of a form body
+
+    static {
+        // the JDK server writes headers and body separately; without TCP_NODELAY every
+        // keep-alive request waits for a delayed ACK (about 40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Library lib;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Binds the server; call {@link #start()} to accept requests.
+     * @param lib     library to serve
+     * @param address address to bind, port 0 for any free port
+     * @throws IOException if the address cannot be bound
+     */
+    public LibraryServer(Library lib, InetSocketAddress address) throws IOException {
+        this.lib = lib;
+        this.server = HttpServer.create(address, 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /** Starts accepting requests. */
+    public void start() {
+        server.start();
+    }
+
+    /** @return the bound port */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** Stops accepting requests and waits for running ones to finish. */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    /** A request body over {@link #MAX_BODY} bytes. */
+    private static final class BodyTooLargeException extends RuntimeException {
+        BodyTooLargeException() { super("body over " + MAX_BODY + " bytes"); }
+    }
+
+    /** Answer of a route: HTTP status plus body, JSON unless stated otherwise. */
+    private record Response(int status, String body, String type) {
+        Response(int status, String body)      { this(status, body, "application/json; charset=utf-8"); }
+        static Response ok(String body)        { return new Response(200, body); }
+        static Response error(int status, String message) { return new Response(status, Json.error(message)); }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        Response r;
+        try {
+            r = route(ex.getRequestMethod(), segments(ex.getRequestURI().getRawPath()), params(ex));
+        } catch (IllegalArgumentException e) {
+            r = Response.error(400, e.getMessage());
+        } catch (BodyTooLargeException e) {
+            r = Response.error(413, e.getMessage());
+        } catch (RuntimeException e) {
+            // the details stay in the server's log; clients only learn that it failed
+            System.err.println("Request " + ex.getRequestMethod() + " " + ex.getRequestURI().getRawPath() + " failed: " + e);
+            e.printStackTrace();
+            r = Response.error(500, "internal error");
+        }
+        byte[] body = r.body().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", r.type());
+        ex.sendResponseHeaders(r.status(), body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Response route(String method, List<String> path, Map<String, List<String>> p) {
+        String root = path.isEmpty() ? "" : path.get(0);
+        int n = path.size();
+        switch (method + " " + root) {
+            case "GET books" -> {
+                if (n == 2) {
+                    var b = lib.getBook(path.get(1));
+                    return b == null ? Response.error(404, "no book " + path.get(1)) : Response.ok(new Json().book(b).toString());
+                }
+                if (n == 3 && path.get(2).equals("history")) {
+                    if (lib.getBook(path.get(1)) == null) return Response.error(404, "no book " + path.get(1));
+                    var loans = p.containsKey("from") || p.containsKey("to")
+                            ? lib.getBookHistory(path.get(1), from(p), to(p)) : lib.getBookHistory(path.get(1));
+                    return Response.ok(new Json().array(loans, Json::loan).toString());
+                }
+                if (n != 1) break;
+                int limit = limit(p);
+                String after = after(p);
+                var books = p.containsKey("subject") ? lib.searchBySubject(one(p, "subject"), after, limit)
+                        : p.containsKey("q") ? lib.searchBooks(one(p, "q"), after, limit)
+                        : lib.listBooks(after, limit);
+                return Response.ok(new Json().page(books, Json::book).toString());
+            }
+            case "GET titles" -> {
+                if (n != 1) break;
+                return Response.ok(new Json().array(lib.searchTitles(one(p, "q")), Json::title).toString());
+            }
+            case "GET facets" -> {
+                if (n != 1) break;
+                Set<BookType> types = EnumSet.noneOf(BookType.class);
+                for (String t : p.getOrDefault("type", List.of())) types.add(BookType.valueOf(t.toUpperCase(Locale.ROOT)));
+                var facets = lib.searchFacets(p.containsKey("q") ? one(p, "q") : null,
+                        new HashSet<>(p.getOrDefault("subject", List.of())), types,
+                        Boolean.parseBoolean(opt(p, "available", "false")), limit(p));
+                return Response.ok(new Json().facets(facets).toString());
+            }
+            case "GET search" -> {
+                if (n != 1) break;
+                return Response.ok(new Json().array(lib.searchRanked(one(p, "q"), limit(p)), Json::book).toString());
+            }
+            case "GET suggest" -> {
+                if (n != 1) break;
+                int limit = p.containsKey("limit") ? limit(p) : SUGGESTIONS;
+                return Response.ok(new Json().array(lib.suggest(one(p, "q"), limit), Json::str).toString());
+            }
+            case "POST loans" -> {
+                if (n == 3 && path.get(2).equals("renew")) {
+                    String bookId = path.get(1);
+                    if (!lib.renewLoan(one(p, "borrower"), bookId)) return Response.error(409, "cannot renew " + bookId);
+                    return Response.ok(new Json().loan(lib.getActiveLoan(bookId)).toString());
+                }
+                if (n != 1) break;
+                List<String> books = all(p, "book");
+                CirculationResult[] results = lib.issueBooks(one(p, "borrower"), books, one(p, "librarian"));
+                if (books.size() > 1) return Response.ok(new Json().results(books, results).toString());
+                return switch (results[0]) {
+                    case OK -> new Response(201, new Json().loan(lib.getActiveLoan(books.get(0))).toString());
+                    case UNKNOWN_USER, NOT_FOUND -> Response.error(404, results[0].name());
+                    default -> Response.error(409, results[0].name());
+                };
+            }
+            case "GET loans" -> {
+                if (n != 2) break;
+                Loan l = lib.getActiveLoan(path.get(1));
+                return l == null ? Response.error(404, "not on loan " + path.get(1)) : Response.ok(new Json().loan(l).toString());
+            }
+            case "DELETE loans" -> {
+                if (n != 2) break;
+                CirculationResult r = lib.tryReturnBook(path.get(1));
+                return r == CirculationResult.OK ? Response.ok("{}")
+                        : Response.error(r == CirculationResult.NOT_FOUND ? 404 : 409, r.name());
+            }
+            case "POST returns" -> {
+                List<String> books = all(p, "book");
+                return Response.ok(new Json().results(books, lib.returnBooks(books)).toString());
+            }
+            case "GET holds" -> {
+                if (n != 2) break;
+                return Response.ok(new Json().page(lib.getHoldsForBook(path.get(1), after(p), limit(p)), Json::hold).toString());
+            }
+            case "POST holds" -> {
+                String bookId = one(p, "book");
+                if (!lib.placeHold(one(p, "borrower"), bookId)) return Response.error(409, "cannot hold " + bookId);
+                return new Response(201, new Json().array(lib.getHoldsForBook(bookId), Json::hold).toString());
+            }
+            case "DELETE holds" -> {
+                if (n != 2) break;
+                if (!lib.cancelHold(one(p, "borrower"), path.get(1))) return Response.error(404, "no such hold");
+                return Response.ok("{}");
+            }
+            case "GET reports" -> {
+                if (n == 2 && path.get(1).equals("overdue")) {
+                    return Response.ok(new Json().page(lib.displayOverdue(after(p), limit(p)), Json::loan).toString());
+                }
+                if (n == 2 && path.get(1).equals("popular")) {
+                    var by = PopularityTracker.Dimension.valueOf(opt(p, "by", "book").toUpperCase(Locale.ROOT));
+                    var event = PopularityTracker.Event.valueOf(opt(p, "event", "checkout").toUpperCase(Locale.ROOT));
+                    var window = PopularityTracker.Window.ofDays(Integer.parseInt(opt(p, "days", "30")));
+                    return Response.ok(new Json().array(lib.getPopular(event, by, window, limit(p)), Json::count).toString());
+                }
+                if (n == 2 && path.get(1).equals("due")) {
+                    int days = p.containsKey("days") ? Integer.parseInt(one(p, "days")) : 7;
+                    return Response.ok(new Json().page(lib.getLoansDueWithin(days, after(p), limit(p)), Json::loan).toString());
+                }
+            }
+            case "GET borrowers" -> {
+                if (n != 3) break;
+                String id = path.get(1);
+                if (!(lib.getUser(id) instanceof Borrower)) return Response.error(404, "no borrower " + id);
+                if (path.get(2).equals("loans")) {
+                    return Response.ok(new Json().array(lib.generateUserReport(id), Json::loan).toString());
+                }
+                if (path.get(2).equals("history")) {
+                    if (p.containsKey("from") || p.containsKey("to")) {
+                        return Response.ok(new Json().array(lib.getLoanHistory(id, from(p), to(p)), Json::loan).toString());
+                    }
+                    return Response.ok(new Json().page(lib.getLoanHistory(id, after(p), limit(p)), Json::loan).toString());
+                }
+                if (path.get(2).equals("fines")) {
+                    return Response.ok(new Json().balance(id, lib.getFineBalance(id)).toString());
+                }
+            }
+            case "GET metrics" -> {
+                if (n != 1) break;
+                return new Response(200, lib.getMetrics().toText(), "text/plain; version=0.0.4; charset=utf-8");
+            }
+            case "POST borrowers" -> {
+                if (n != 3 || !path.get(2).equals("payments")) break;
+                String id = path.get(1);
+                if (!(lib.getUser(id) instanceof Borrower)) return Response.error(404, "no borrower " + id);
+                if (!lib.payFine(id, Long.parseLong(one(p, "amount")))) return Response.error(409, "cannot pay " + one(p, "amount"));
+                return Response.ok(new Json().balance(id, lib.getFineBalance(id)).toString());
+            }
+            default -> { }
+        }
+        return Response.error(404, "no route " + method + " /" + String.join("/", path));
+    }
+
+    private static List<String> segments(String rawPath) {
+        List<String> out = new ArrayList<>();
+        for (String s : rawPath.split("/")) if (!s.isEmpty()) out.add(URLDecoder.decode(s, StandardCharsets.UTF_8));
+        return out;
+    }
+
+    /**
+     * Query-string parameters plus form-encoded body parameters.
+     * @throws BodyTooLargeException if the body is declared or turns out larger than {@link #MAX_BODY}
+     */
+    private static Map<String, List<String>> params(HttpExchange ex) throws IOException {
+        Map<String, List<String>> out = new HashMap<>();
+        parseForm(ex.getRequestURI().getRawQuery(), out);
+        String type = ex.getRequestHeaders().getFirst("Content-Type");
+        if (type != null && type.startsWith("application/x-www-form-urlencoded")) {
+            String length = ex.getRequestHeaders().getFirst("Content-Length");
+            if (length != null && Long.parseLong(length) > MAX_BODY) throw new BodyTooLargeException();
+            try (InputStream in = ex.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY + 1);                              // chunked bodies declare no length
+                if (body.length > MAX_BODY) throw new BodyTooLargeException();
+                parseForm(new String(body, StandardCharsets.UTF_8), out);
+            }
+        }
+        return out;
+    }
+
+    private static void parseForm(String form, Map<String, List<String>> out) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String v = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            out.computeIfAbsent(k, x -> new ArrayList<>()).add(v);
+        }
+    }
+
+    private static String one(Map<String, List<String>> p, String name) {
+        List<String> v = p.get(name);
+        if (v == null || v.isEmpty()) throw new IllegalArgumentException("missing parameter " + name);
+        return v.get(0);
+    }
+
+    private static int limit(Map<String, List<String>> p) {
+        if (!p.containsKey("limit")) return DEFAULT_LIMIT;
+        int limit = Integer.parseInt(one(p, "limit"));
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit must be 1.." + MAX_LIMIT);
+        return limit;
+    }
+
+    /** @return start of the {@code from} day, or the earliest time if absent */
+    private static LocalDateTime from(Map<String, List<String>> p) {
+        return p.containsKey("from") ? date(one(p, "from")).atStartOfDay() : LocalDateTime.MIN;
+    }
+
+    /** @return end of the {@code to} day (exclusive), or the latest time if absent */
+    private static LocalDateTime to(Map<String, List<String>> p) {
+        return p.containsKey("to") ? date(one(p, "to")).plusDays(1).atStartOfDay() : LocalDateTime.MAX;
+    }
+
+    private static LocalDate date(String v) {
+        try {
+            return LocalDate.parse(v);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date " + v);
+        }
+    }
+
+    private static String opt(Map<String, List<String>> p, String name, String fallback) {
+        List<String> v = p.get(name);
+        return v == null || v.isEmpty() ? fallback : v.get(0);
+    }
+
+    private static String after(Map<String, List<String>> p) {
+        List<String> v = p.get("after");
+        return v == null || v.isEmpty() || v.get(0).isEmpty() ? null : v.get(0);
+    }
+
+    private static List<String> all(Map<String, List<String>> p, String name) {
+        List<String> v = p.get(name);
+        if (v == null || v.isEmpty()) throw new IllegalArgumentException("missing parameter " + name);
+        return v;
+    }
+
+    /**
+     * Serves a data directory over HTTP until the process is stopped. Binds
+     * the loopback address unless a host to bind is given, e.g. {@code 0.0.0.0}.
+     * Usage: {@code LibraryServer [dataDir] [port] [host]}
+     * @param args command-line arguments
+     * @throws IOException if the store cannot be opened or the port bound
+     */
+    public static void main(String[] args) throws IOException {
+        Path dataDir = Path.of(args.length > 0 ? args[0] : "library-data");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        InetAddress host = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        LibraryStore store = LibraryStore.open(dataDir, Journal.Durability.SYNC);
+        store.checkpointEvery(Duration.ofMinutes(5));
+        store.expirePickupsEvery(Duration.ofMinutes(1));
+        store.library().getMetrics().register(dataDir.toString());
+        LibraryServer server = new LibraryServer(store.library(), new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Shutdown checkpoint failed: " + e.getMessage());
+            }
+        }));
+        server.start();
+        System.out.println("Library API listening on " + host.getHostAddress() + " port " + server.port());
+    }
+}
@@ -0,0 +1,231 @@
+package com.library.importer;
+
+import com.library.Library;
+import com.library.model.Book;
+import com.library.model.BookType;
+import com.library.model.Borrower;
+import com.library.persistence.Journal;
+import com.library.persistence.LibraryStore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming bulk loader for books and borrowers from CSV or JSON Lines files.
+ * <p>
+ * The input is read in chunks of {@value #CHUNK} lines. Chunks are parsed and
+ * validated on a worker pool, then committed to the library one at a time in
+ * file order: each chunk's books go in through {@link Library#addBooks} so the
+ * search index is updated once per chunk. Only a bounded number of chunks is
+ * in flight, so memory use does not depend on the file size.
+ * <p>
+ * Records are matched by field name: {@code id, type, title, author, subject}
+ * for books (type is {@code textbook|novel|reference} or the menu code
+ * {@code 1|2|3}) and {@code id, name, email, phone} for borrowers. CSV files
+ * name their columns in a header row. A record whose ID is malformed, already
+ * in the library or seen earlier in the file is rejected; rejected rows are
+ * written as {@code line<TAB>reason<TAB>row} to the rejects file.
+ */
+public class BulkImporter {
+    static final int CHUNK = 10_000;
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+
+    /** Kinds of records a file can hold. */
+    public enum Kind { BOOKS, BORROWERS }
+
+    /**
+     * Running or final totals of an import.
+     * @param read     data rows read
+     * @param imported rows added to the library
+     * @param rejected rows written to the rejects file
+     */
+    public record Report(long read, long imported, long rejected) {}
+
+    /** One parsed row: either a record to add or a rejection reason. */
+    private record Row(long line, String raw, Object record, String reason) {}
+
+    private final Library library;
+    private final int threads;
+    private final Consumer<Report> progress;
+
+    /**
+     * @param library  target library
+     * @param threads  parser threads
+     * @param progress called after every committed chunk, may be null
+     */
+    public BulkImporter(Library library, int threads, Consumer<Report> progress) {
+        this.library = library;
+        this.threads = Math.max(1, threads);
+        this.progress = progress;
+    }
+
+    /**
+     * Imports one file; the format follows the extension ({@code .csv}, else JSON Lines).
+     * @param kind    what the file holds
+     * @param input   CSV or JSON Lines file
+     * @param rejects where to write rejected rows (created even if empty)
+     * @return final totals
+     * @throws IOException if a file cannot be read or written
+     */
+    public Report importFile(Kind kind, Path input, Path rejects) throws IOException {
+        boolean csv = input.getFileName().toString().toLowerCase().endsWith(".csv");
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "library-import");
+            t.setDaemon(true);
+            return t;
+        });
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter rejected = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+            long line = 0;
+            List<String> header = null;
+            if (csv) {
+                String first = in.readLine();
+                line++;
+                header = first == null ? List.of() : RecordParser.csvValues(first).stream()
+                        .map(h -> h.toLowerCase(Locale.ROOT)).toList();
+            }
+
+            long[] totals = new long[3];                      // read, imported, rejected
+            Deque<Future<List<Row>>> inFlight = new ArrayDeque<>();
+            List<String> chunk = new ArrayList<>(CHUNK);
+            long chunkStart = line + 1;
+            for (String raw; (raw = in.readLine()) != null; ) {
+                line++;
+                if (chunk.isEmpty()) chunkStart = line;
+                chunk.add(raw);
+                if (chunk.size() == CHUNK) {
+                    submit(pool, inFlight, kind, header, chunk, chunkStart);
+                    chunk = new ArrayList<>(CHUNK);
+                    if (inFlight.size() >= 2 * threads) commit(inFlight.poll(), rejected, totals);
+                }
+            }
+            if (!chunk.isEmpty()) submit(pool, inFlight, kind, header, chunk, chunkStart);
+            while (!inFlight.isEmpty()) commit(inFlight.poll(), rejected, totals);
+            return new Report(totals[0], totals[1], totals[2]);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void submit(ExecutorService pool, Deque<Future<List<Row>>> inFlight, Kind kind,
+                               List<String> header, List<String> lines, long firstLine) {
+        inFlight.add(pool.submit(() -> parse(kind, header, lines, firstLine)));
+    }
+
+    /** Parses and validates one chunk of consecutive lines, skipping blank ones. */
+    private static List<Row> parse(Kind kind, List<String> header, List<String> lines, long firstLine) {
+        List<Row> rows = new ArrayList<>(lines.size());
+        long line = firstLine;
+        for (String raw : lines) {
+            if (raw.isBlank()) {
+                line++;
+                continue;
+            }
+            try {
+                Map<String, String> fields = header == null ? RecordParser.json(raw) : RecordParser.csv(header, raw);
+                rows.add(new Row(line, raw, kind == Kind.BOOKS ? book(fields) : borrower(fields), null));
+            } catch (IllegalArgumentException e) {
+                rows.add(new Row(line, raw, null, e.getMessage()));
+            }
+            line++;
+        }
+        return rows;
+    }
+
+    /** Adds a parsed chunk to the library, in file order. */
+    private void commit(Future<List<Row>> parsed, BufferedWriter rejected, long[] totals) throws IOException {
+        List<Row> rows;
+        try {
+            rows = parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        }
+
+        Set<String> seen = new HashSet<>();
+        List<Book> books = new ArrayList<>();
+        int imported = 0;
+        for (Row r : rows) {
+            totals[0]++;
+            String reason = r.reason();
+            if (reason == null) {
+                String id = r.record() instanceof Book b ? b.getBookId() : ((Borrower) r.record()).getId();
+                boolean exists = r.record() instanceof Book ? library.getBook(id) != null : library.getUser(id) != null;
+                if (exists || !seen.add(id)) reason = "duplicate id " + id;
+            }
+            if (reason != null) {
+                totals[2]++;
+                rejected.write(r.line() + "\t" + reason.replace('\t', ' ') + "\t" + r.raw());
+                rejected.newLine();
+            } else {
+                if (r.record() instanceof Book b) books.add(b);
+                else library.registerBorrower((Borrower) r.record());
+                imported++;
+            }
+        }
+        if (!books.isEmpty()) library.addBooks(books);
+        totals[1] += imported;
+        if (progress != null) progress.accept(new Report(totals[0], totals[1], totals[2]));
+    }
+
+    private static Book book(Map<String, String> f) {
+        String type = required(f, "type").toLowerCase(Locale.ROOT);
+        BookType t = switch (type) {
+            case "1", "textbook"  -> BookType.TEXTBOOK;
+            case "2", "novel"     -> BookType.NOVEL;
+            case "3", "reference" -> BookType.REFERENCE;
+            default -> throw new IllegalArgumentException("unknown type " + type);
+        };
+        return t.create(id(f), required(f, "title"), f.getOrDefault("author", ""), f.getOrDefault("subject", ""));
+    }
+
+    private static Borrower borrower(Map<String, String> f) {
+        String email = f.getOrDefault("email", "");
+        if (!email.isEmpty() && email.indexOf('@') < 1) throw new IllegalArgumentException("invalid email " + email);
+        return new Borrower(id(f), required(f, "name"), email, f.getOrDefault("phone", ""));
+    }
+
+    private static String id(Map<String, String> f) {
+        String id = required(f, "id");
+        if (!ID.matcher(id).matches()) throw new IllegalArgumentException("invalid id " + id);
+        return id;
+    }
+
+    private static String required(Map<String, String> f, String name) {
+        String v = f.get(name);
+        if (v == null || v.isBlank()) throw new IllegalArgumentException("missing " + name);
+        return v.trim();
+    }
+
+    /**
+     * Imports files into a data directory.
+     * Usage: {@code BulkImporter <dataDir> books|borrowers <file> [rejects]}
+     * @param args command-line arguments
+     * @throws IOException if the store or a file cannot be accessed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: BulkImporter <dataDir> books|borrowers <file> [rejects]");
+            System.exit(2);
+        }
+        Kind kind = Kind.valueOf(args[1].toUpperCase(Locale.ROOT));
+        Path input = Path.of(args[2]);
+        Path rejects = Path.of(args.length > 3 ? args[3] : args[2] + ".rejects");
+        try (LibraryStore store = LibraryStore.open(Path.of(args[0]), Journal.Durability.ASYNC)) {
+            BulkImporter importer = new BulkImporter(store.library(), Runtime.getRuntime().availableProcessors(),
+                    r -> System.out.printf("\r%,d read, %,d imported, %,d rejected", r.read(), r.imported(), r.rejected()));
+            Report r = importer.importFile(kind, input, rejects);
+            System.out.printf("%nDone: %,d imported, %,d rejected (see %s)%n", r.imported(), r.rejected(), rejects);
+        }
+    }
+}
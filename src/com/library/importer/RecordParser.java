@@ -0,0 +1,144 @@
+package com.library.importer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-oriented parsers for the import formats: CSV rows (RFC 4180 quoting,
+ * no line breaks inside fields) and flat JSON Lines objects. Both produce a
+ * field-name → value map; malformed input raises {@link IllegalArgumentException}.
+ */
+final class RecordParser {
+    private RecordParser() {}
+
+    /**
+     * @param line one CSV row
+     * @return the row's values
+     */
+    static List<String> csvValues(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') cur.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') { cur.append('"'); i++; }
+                else quoted = false;
+            } else if (c == '"' && cur.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(cur.toString().trim());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("unterminated quote");
+        out.add(cur.toString().trim());
+        return out;
+    }
+
+    /**
+     * @param header column names from the first row
+     * @param line   one CSV row
+     * @return column name → value
+     */
+    static Map<String, String> csv(List<String> header, String line) {
+        List<String> values = csvValues(line);
+        if (values.size() != header.size()) {
+            throw new IllegalArgumentException("expected " + header.size() + " columns, found " + values.size());
+        }
+        Map<String, String> out = new LinkedHashMap<>();
+        for (int i = 0; i < header.size(); i++) out.put(header.get(i), values.get(i));
+        return out;
+    }
+
+    /**
+     * Parses one flat JSON object. Numbers and booleans are kept as their text,
+     * null becomes a missing field; nested objects and arrays are rejected.
+     * @param line one JSON Lines record
+     * @return key → value
+     */
+    static Map<String, String> json(String line) {
+        Cursor c = new Cursor(line);
+        Map<String, String> out = new LinkedHashMap<>();
+        c.expect('{');
+        if (!c.consume('}')) {
+            do {
+                String key = c.string();
+                c.expect(':');
+                String value = c.value();
+                if (value != null) out.put(key, value);
+            } while (c.consume(','));
+            c.expect('}');
+        }
+        c.skipSpace();
+        if (c.pos < line.length()) throw new IllegalArgumentException("trailing characters at " + c.pos);
+        return out;
+    }
+
+    private static final class Cursor {
+        final String s;
+        int pos;
+
+        Cursor(String s) { this.s = s; }
+
+        void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < s.length() && s.charAt(pos) == c) { pos++; return true; }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) throw new IllegalArgumentException("expected '" + c + "' at " + pos);
+        }
+
+        String value() {
+            skipSpace();
+            if (pos >= s.length()) throw new IllegalArgumentException("missing value");
+            char c = s.charAt(pos);
+            if (c == '"') return string();
+            if (c == '{' || c == '[') throw new IllegalArgumentException("nested values are not supported");
+            int start = pos;
+            while (pos < s.length() && ",}".indexOf(s.charAt(pos)) < 0 && !Character.isWhitespace(s.charAt(pos))) pos++;
+            String literal = s.substring(start, pos);
+            if (literal.equals("null")) return null;
+            if (literal.isEmpty()) throw new IllegalArgumentException("missing value at " + start);
+            return literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                if (pos >= s.length()) break;
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case '"', '\\', '/' -> sb.append(e);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > s.length()) throw new IllegalArgumentException("bad \\u escape");
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> throw new IllegalArgumentException("bad escape \\" + e);
+                }
+            }
+            throw new IllegalArgumentException("unterminated string");
+        }
+    }
+}
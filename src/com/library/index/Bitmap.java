@@ -0,0 +1,410 @@
+package com.library.index;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints, laid out like a roaring bitmap.
+ * <p>
+ * The high 16 bits of a value pick a container and the low 16 bits are stored
+ * in it. A container holding at most {@value #ARRAY_MAX} values is a sorted
+ * {@code char[]}, two bytes per value; a fuller one is a 65536-bit
+ * {@code long[]} of 8 KB. AND, OR and the size of an AND run container by
+ * container, as a merge, a probe or word-wise logic depending on the two
+ * kinds, so their cost follows the number of containers rather than of
+ * values. Not thread-safe.
+ */
+public final class Bitmap {
+    static final int ARRAY_MAX = 1024;          // below the 4096 of a memory-optimal split, as counts probe array values one by one
+    private static final int WORDS = 1 << 10;
+
+    private char[] keys;
+    private Container[] containers;
+    private int n;
+
+    public Bitmap() {
+        this(4);
+    }
+
+    private Bitmap(int capacity) {
+        keys = new char[Math.max(4, capacity)];
+        containers = new Container[keys.length];
+    }
+
+    /**
+     * @param value a non-negative int
+     * @return true if it was not in the set
+     */
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        int i = n > 0 && keys[n - 1] == key ? n - 1 : find(key);    // appends in order skip the search
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayContainer(new char[4], 0));
+        }
+        Container c = containers[i];
+        int before = c.cardinality();
+        containers[i] = c.add((char) value);
+        return containers[i].cardinality() > before;
+    }
+
+    /**
+     * @param value a non-negative int
+     * @return true if it was in the set
+     */
+    public boolean remove(int value) {
+        int i = find((char) (value >>> 16));
+        if (i < 0) return false;
+        Container c = containers[i];
+        int before = c.cardinality();
+        c = c.remove((char) value);
+        if (c.cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, n - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, n - i - 1);
+            containers[--n] = null;
+            return true;
+        }
+        containers[i] = c;
+        return c.cardinality() < before;
+    }
+
+    /**
+     * @param value a non-negative int
+     * @return true if it is in the set
+     */
+    public boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /** @return number of values */
+    public int cardinality() {
+        int c = 0;
+        for (int i = 0; i < n; i++) c += containers[i].cardinality();
+        return c;
+    }
+
+    /** @return true if the set has no values */
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /**
+     * @param other another bitmap
+     * @return a new bitmap of the values in both
+     */
+    public Bitmap and(Bitmap other) {
+        Bitmap out = new Bitmap(Math.min(n, other.n));
+        for (int i = 0, j = 0; i < n && j < other.n; ) {
+            if      (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else {
+                Container c = containers[i++].and(other.containers[j++]);
+                if (c.cardinality() > 0) out.append(keys[i - 1], c);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @param other another bitmap
+     * @return a new bitmap of the values in either
+     */
+    public Bitmap or(Bitmap other) {
+        Bitmap out = new Bitmap(n + other.n);
+        int i = 0, j = 0;
+        while (i < n || j < other.n) {
+            if (j == other.n || (i < n && keys[i] < other.keys[j])) {
+                out.append(keys[i], containers[i++].copy());
+            } else if (i == n || keys[i] > other.keys[j]) {
+                out.append(other.keys[j], other.containers[j++].copy());
+            } else {
+                out.append(keys[i], containers[i++].or(other.containers[j++]));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Counts the values in both sets without building their intersection.
+     * @param other another bitmap
+     * @return size of {@code this.and(other)}
+     */
+    public int andCardinality(Bitmap other) {
+        int c = 0;
+        for (int i = 0, j = 0; i < n && j < other.n; ) {
+            if      (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else c += containers[i++].andCardinality(other.containers[j++]);
+        }
+        return c;
+    }
+
+    /**
+     * @param limit maximum number of values
+     * @return the smallest values, at most {@code limit}, ascending
+     */
+    public int[] toArray(int limit) {
+        int[] out = new int[(int) Math.min(limit, (long) cardinality())];
+        int size = 0;
+        for (int i = 0; i < n && size < out.length; i++) {
+            size = containers[i].fill(out, size, keys[i] << 16);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray(Integer.MAX_VALUE));
+    }
+
+    /** @return index of the container for a key, or {@code -(insertion point) - 1} */
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, n, key);
+    }
+
+    private void insert(int i, char key, Container c) {
+        if (n == keys.length) {
+            keys = Arrays.copyOf(keys, n * 2);
+            containers = Arrays.copyOf(containers, n * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, n - i);
+        System.arraycopy(containers, i, containers, i + 1, n - i);
+        keys[i] = key;
+        containers[i] = c;
+        n++;
+    }
+
+    /** Adds a container after all others; used while building results in key order. */
+    private void append(char key, Container c) {
+        insert(n, key, c);
+    }
+
+    /** The low 16 bits of the values sharing one high part. */
+    private abstract static class Container {
+        abstract int cardinality();
+        abstract boolean contains(char v);
+        /** @return this container or its replacement holding {@code v} as well */
+        abstract Container add(char v);
+        /** @return this container or its replacement without {@code v} */
+        abstract Container remove(char v);
+        abstract Container and(Container o);
+        abstract Container or(Container o);
+        abstract int andCardinality(Container o);
+        abstract Container copy();
+        /** Writes {@code high | value} into {@code out} from {@code from} until it is full. */
+        abstract int fill(int[] out, int from, int high);
+    }
+
+    /** Up to {@value #ARRAY_MAX} values as a sorted array. */
+    private static final class ArrayContainer extends Container {
+        char[] values;
+        int size;
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override int cardinality() { return size; }
+
+        @Override
+        boolean contains(char v) {
+            return Arrays.binarySearch(values, 0, size, v) >= 0;
+        }
+
+        @Override
+        Container add(char v) {
+            int i = size > 0 && values[size - 1] < v ? -size - 1 : Arrays.binarySearch(values, 0, size, v);
+            if (i >= 0) return this;
+            if (size == ARRAY_MAX) return toBits().add(v);
+            i = -i - 1;
+            if (size == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = v;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(char v) {
+            int i = Arrays.binarySearch(values, 0, size, v);
+            if (i < 0) return this;
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+            return this;
+        }
+
+        @Override
+        Container and(Container o) {
+            char[] out = new char[Math.min(size, o.cardinality())];
+            int k = 0;
+            if (o instanceof ArrayContainer a) {
+                if (size * 16 < a.size || a.size * 16 < size) {           // lopsided: probe the larger one
+                    ArrayContainer small = size < a.size ? this : a, large = small == this ? a : this;
+                    for (int i = 0; i < small.size; i++) if (large.contains(small.values[i])) out[k++] = small.values[i];
+                } else {
+                    for (int i = 0, j = 0; i < size && j < a.size; ) {
+                        if      (values[i] < a.values[j]) i++;
+                        else if (values[i] > a.values[j]) j++;
+                        else { out[k++] = values[i++]; j++; }
+                    }
+                }
+            } else {
+                long[] words = ((BitsContainer) o).words;
+                for (int i = 0; i < size; i++) {
+                    out[k] = values[i];
+                    k += (int) (words[values[i] >>> 6] >>> values[i]) & 1;
+                }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        @Override
+        Container or(Container o) {
+            if (o instanceof BitsContainer b) return b.or(this);
+            ArrayContainer a = (ArrayContainer) o;
+            char[] out = new char[size + a.size];
+            int i = 0, j = 0, k = 0;
+            while (i < size && j < a.size) {
+                if      (values[i] < a.values[j]) out[k++] = values[i++];
+                else if (values[i] > a.values[j]) out[k++] = a.values[j++];
+                else { out[k++] = values[i++]; j++; }
+            }
+            while (i < size) out[k++] = values[i++];
+            while (j < a.size) out[k++] = a.values[j++];
+            ArrayContainer merged = new ArrayContainer(out, k);
+            return k > ARRAY_MAX ? merged.toBits() : merged;
+        }
+
+        @Override
+        int andCardinality(Container o) {
+            int c = 0;
+            if (o instanceof ArrayContainer a && size * 16 >= a.size && a.size * 16 >= size) {
+                for (int i = 0, j = 0; i < size && j < a.size; ) {
+                    if      (values[i] < a.values[j]) i++;
+                    else if (values[i] > a.values[j]) j++;
+                    else { c++; i++; j++; }
+                }
+                return c;
+            }
+            if (o instanceof ArrayContainer a) {
+                if (a.size < size) return a.andCardinality(this);
+                for (int i = 0; i < size; i++) if (a.contains(values[i])) c++;
+                return c;
+            }
+            long[] words = ((BitsContainer) o).words;
+            for (int i = 0; i < size; i++) c += (int) (words[values[i] >>> 6] >>> values[i]) & 1;    // no branch to mispredict
+            return c;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(4, size)), size);
+        }
+
+        @Override
+        int fill(int[] out, int from, int high) {
+            for (int i = 0; i < size && from < out.length; i++) out[from++] = high | values[i];
+            return from;
+        }
+
+        BitsContainer toBits() {
+            BitsContainer b = new BitsContainer(new long[WORDS], size);
+            for (int i = 0; i < size; i++) b.words[values[i] >>> 6] |= 1L << values[i];
+            return b;
+        }
+    }
+
+    /** More than {@value #ARRAY_MAX} values as one bit each. */
+    private static final class BitsContainer extends Container {
+        final long[] words;
+        int cardinality;
+
+        BitsContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override int cardinality() { return cardinality; }
+
+        @Override
+        boolean contains(char v) {
+            return (words[v >>> 6] & (1L << v)) != 0;
+        }
+
+        @Override
+        Container add(char v) {
+            long w = words[v >>> 6];
+            if ((w & (1L << v)) == 0) {
+                words[v >>> 6] = w | (1L << v);
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char v) {
+            long w = words[v >>> 6];
+            if ((w & (1L << v)) == 0) return this;
+            words[v >>> 6] = w & ~(1L << v);
+            return --cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        Container and(Container o) {
+            if (o instanceof ArrayContainer a) return a.and(this);
+            long[] other = ((BitsContainer) o).words, out = new long[WORDS];
+            int c = 0;
+            for (int i = 0; i < WORDS; i++) c += Long.bitCount(out[i] = words[i] & other[i]);
+            BitsContainer b = new BitsContainer(out, c);
+            return c <= ARRAY_MAX ? b.toArray() : b;
+        }
+
+        @Override
+        Container or(Container o) {
+            long[] out = words.clone();
+            if (o instanceof ArrayContainer a) {
+                for (int i = 0; i < a.size; i++) out[a.values[i] >>> 6] |= 1L << a.values[i];
+            } else {
+                long[] other = ((BitsContainer) o).words;
+                for (int i = 0; i < WORDS; i++) out[i] |= other[i];
+            }
+            int c = 0;
+            for (long w : out) c += Long.bitCount(w);
+            return new BitsContainer(out, c);
+        }
+
+        @Override
+        int andCardinality(Container o) {
+            if (o instanceof ArrayContainer a) return a.andCardinality(this);
+            long[] other = ((BitsContainer) o).words;
+            int c = 0;
+            for (int i = 0; i < WORDS; i++) c += Long.bitCount(words[i] & other[i]);
+            return c;
+        }
+
+        @Override
+        Container copy() {
+            return new BitsContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int fill(int[] out, int from, int high) {
+            for (int i = 0; i < WORDS && from < out.length; i++) {
+                for (long w = words[i]; w != 0 && from < out.length; w &= w - 1) {
+                    out[from++] = high | (i << 6) | Long.numberOfTrailingZeros(w);
+                }
+            }
+            return from;
+        }
+
+        ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int k = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long w = words[i]; w != 0; w &= w - 1) values[k++] = (char) ((i << 6) | Long.numberOfTrailingZeros(w));
+            }
+            return new ArrayContainer(values, k);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.library.index;
+
+import com.library.model.Book;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Inverted n-gram index over the title, author and subject of every book.
+ * <p>
+ * Each book gets an int document number in insertion order. For every field the
+ * index keeps, per 1-, 2- and 3-gram of the lower-cased text, a sorted posting
+ * list of the documents containing that gram. A substring query of up to three
+ * characters is answered by a single posting list; longer queries intersect the
+ * posting lists of their trigrams and verify the few remaining candidates.
+ * <p>
+ * Removing a book clears its entry in the document table and records it in a
+ * bitmap of removed documents; its postings stay as tombstones, which readers
+ * skip as they already skip books removed while they run. Once the removed
+ * documents reach a quarter of the live ones, one pass rewrites every posting
+ * list without them, so the cost of a removal is batched the way adds are.
+ * <p>
+ * Writers are serialized on the index; searches take no lock. Posting lists and
+ * the document table are published through volatile references, so a reader
+ * always sees a consistent snapshot of each list it touches.
+ */
+public class BookIndex {
+    /** Searchable text fields of a book. */
+    public enum Field { TITLE, AUTHOR, SUBJECT }
+
+    /**
+     * A search hit.
+     * @param doc  document number: ascending in insertion order, never reused, so usable as a paging key
+     * @param book the matching book
+     */
+    public record Hit(int doc, Book book) {}
+
+    static final int MAX_GRAM = 3;
+    private static final int COMPACT_MIN = 1024;             // removed documents before postings are rewritten
+
+    private volatile Book[]     docs   = new Book[16];       // doc → book, null once removed
+    private volatile String[][] folded = new String[16][];   // doc → lower-cased fields
+    private volatile int nextDoc;
+    private volatile int size;
+    private final Map<String, Integer> docByBook = new ConcurrentHashMap<>();
+    private final Map<String, Integer> docByFoldedId = new ConcurrentHashMap<>();
+    private final List<Map<Long, Postings>> grams = new ArrayList<>();
+    private Bitmap removed = new Bitmap();                   // docs still in the postings; writers only
+    private int tombstones;
+
+    public BookIndex() {
+        for (int f = 0; f < Field.values().length; f++) grams.add(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Indexes a book. A book with the same ID must be removed first.
+     * @param b the Book to index
+     */
+    public synchronized void add(Book b) {
+        int doc = register(b);
+        String[] text = folded[doc];
+        for (Field f : Field.values()) {
+            Map<Long, Postings> postings = grams.get(f.ordinal());
+            for (long g : gramsOf(text[f.ordinal()])) {
+                postings.computeIfAbsent(g, k -> new Postings()).append(doc);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Indexes a batch of books, touching each posting list once per batch
+     * instead of once per book. Books with the same ID must be removed first.
+     * @param books the Books to index
+     */
+    public void addAll(Collection<? extends Book> books) {
+        addAll(books, b -> true);
+    }
+
+    /**
+     * Indexes the books of a batch that are still current, checked while
+     * writers are held off, so a book removed or replaced since the caller
+     * collected it is not indexed after its removal.
+     * @param books   the Books to index
+     * @param current whether a book is still in the catalog
+     */
+    public synchronized void addAll(Collection<? extends Book> books, Predicate<? super Book> current) {
+        int fields = Field.values().length;
+        LongIntMap[] slots = new LongIntMap[fields];               // gram → index into lists
+        List<List<IntBuffer>> lists = new ArrayList<>();
+        for (int f = 0; f < fields; f++) {
+            slots[f] = new LongIntMap(1 << 12);
+            lists.add(new ArrayList<>());
+        }
+        int added = 0;
+        for (Book b : books) {
+            if (!current.test(b)) continue;
+            int doc = register(b);
+            added++;
+            String[] text = folded[doc];
+            for (int f = 0; f < fields; f++) {
+                List<IntBuffer> fieldLists = lists.get(f);
+                for (long g : gramsOf(text[f])) {
+                    int slot = slots[f].get(g, -1);
+                    if (slot < 0) {
+                        slot = fieldLists.size();
+                        slots[f].put(g, slot);
+                        fieldLists.add(new IntBuffer());
+                    }
+                    fieldLists.get(slot).add(doc);
+                }
+            }
+        }
+        for (int f = 0; f < fields; f++) {
+            Map<Long, Postings> postings = grams.get(f);
+            List<IntBuffer> fieldLists = lists.get(f);
+            slots[f].forEach((g, slot) -> {
+                IntBuffer docs = fieldLists.get(slot);
+                postings.computeIfAbsent(g, k -> new Postings()).appendAll(docs.ids, docs.size);
+            });
+        }
+        size += added;
+    }
+
+    /** Assigns the next document number to a book and stores its folded text. */
+    private int register(Book b) {
+        int doc = nextDoc;
+        String[] text = {
+                fold(b.getTitle()), fold(b.getAuthor()), fold(b.getSubject())
+        };
+        if (doc == docs.length) {
+            folded = Arrays.copyOf(folded, doc * 2);
+            docs   = Arrays.copyOf(docs, doc * 2);
+        }
+        folded[doc] = text;
+        docs[doc]   = b;
+        nextDoc = doc + 1;
+        docByBook.put(b.getBookId(), doc);
+        docByFoldedId.put(fold(b.getBookId()), doc);
+        return doc;
+    }
+
+    /**
+     * Drops a book from the index.
+     * @param b the Book to remove
+     * @return true if the book was indexed
+     */
+    public synchronized boolean remove(Book b) {
+        Integer doc = docByBook.get(b.getBookId());
+        if (doc == null || docs[doc] != b) return false;
+        docByBook.remove(b.getBookId());
+        docByFoldedId.remove(fold(b.getBookId()), doc);
+        docs[doc]   = null;
+        folded[doc] = null;
+        size--;
+        removed.add(doc);
+        if (++tombstones >= Math.max(COMPACT_MIN, size / 4)) compact();
+        return true;
+    }
+
+    /** Rewrites every posting list without the removed documents, dropping lists left empty. */
+    private void compact() {
+        Bitmap dead = removed;
+        for (Map<Long, Postings> postings : grams) postings.values().removeIf(p -> p.removeAll(dead));
+        removed = new Bitmap();
+        tombstones = 0;
+    }
+
+    /** @return number of indexed books */
+    public int size() { return size; }
+
+    /**
+     * Case-insensitive substring search over one field.
+     * @param field   field to search
+     * @param keyword search term
+     * @return matching books in insertion order
+     */
+    public List<Book> search(Field field, String keyword) {
+        return toBooks(match(field, fold(keyword)));
+    }
+
+    /**
+     * Same semantics as a linear scan testing {@code title.contains(k)},
+     * {@code author.contains(k)} and {@code bookId.equalsIgnoreCase(k)}.
+     * @param keyword search term
+     * @return matching books in insertion order
+     */
+    public List<Book> searchTitleAuthorOrId(String keyword) {
+        return toBooks(matchTitleAuthorOrId(keyword));
+    }
+
+    /**
+     * Like {@link #searchTitleAuthorOrId(String)}, as document numbers.
+     * @param keyword search term
+     * @return matching documents, ascending; some may have been removed
+     */
+    public int[] matchTitleAuthorOrId(String keyword) {
+        String k = fold(keyword);
+        int[] hits = union(match(Field.TITLE, k), match(Field.AUTHOR, k));
+        Integer byId = docByFoldedId.get(k);
+        if (byId != null && Arrays.binarySearch(hits, byId) < 0) {
+            hits = union(hits, new int[] { byId });
+        }
+        return hits;
+    }
+
+    /**
+     * @param bookId exact book ID
+     * @return the document number of the indexed book with this ID, or -1
+     */
+    public int docOf(String bookId) {
+        Integer doc = docByBook.get(bookId);
+        return doc == null ? -1 : doc;
+    }
+
+    /**
+     * @param doc a document number
+     * @return the book indexed under it, or null if it was removed
+     */
+    public Book book(int doc) {
+        Book[] all = docs;
+        return doc >= 0 && doc < all.length ? all[doc] : null;
+    }
+
+    /**
+     * One page of {@link #search(Field, String)} in document order.
+     * @param field    field to search
+     * @param keyword  search term
+     * @param afterDoc return only documents after this one; -1 for the first page
+     * @param limit    maximum number of hits
+     * @return matching books with their document numbers, ascending
+     */
+    public List<Hit> search(Field field, String keyword, int afterDoc, int limit) {
+        return take(cursor(field, fold(keyword), afterDoc), limit);
+    }
+
+    /**
+     * One page of {@link #searchTitleAuthorOrId(String)} in document order.
+     * Only the returned hits are verified, so the cost follows the page size
+     * rather than the number of matches.
+     * @param keyword  search term
+     * @param afterDoc return only documents after this one; -1 for the first page
+     * @param limit    maximum number of hits
+     * @return matching books with their document numbers, ascending
+     */
+    public List<Hit> searchTitleAuthorOrId(String keyword, int afterDoc, int limit) {
+        String k = fold(keyword);
+        DocCursor hits = union(cursor(Field.TITLE, k, afterDoc), cursor(Field.AUTHOR, k, afterDoc));
+        Integer byId = docByFoldedId.get(k);
+        if (byId != null && byId > afterDoc) hits = union(hits, single(byId));
+        return take(hits, limit);
+    }
+
+    /** Ascending stream of document numbers; {@link #next()} returns -1 once exhausted. */
+    private interface DocCursor {
+        int next();
+    }
+
+    private int[] match(Field field, String k) {
+        if (k.isEmpty()) return liveDocs();
+        if (k.length() <= MAX_GRAM) {
+            Postings p = grams.get(field.ordinal()).get(key(k, 0, k.length()));
+            if (p == null) return new int[0];
+            Snapshot s = p.snapshot;
+            return Arrays.copyOf(s.ids, s.size);
+        }
+        DocCursor c = cursor(field, k, -1);
+        int[] out = new int[16];
+        int n = 0;
+        for (int doc; (doc = c.next()) >= 0; ) {
+            if (n == out.length) out = Arrays.copyOf(out, n * 2);
+            out[n++] = doc;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** @return lazy matches of a folded keyword in one field, after {@code afterDoc} */
+    private DocCursor cursor(Field field, String k, int afterDoc) {
+        if (k.isEmpty()) {
+            Book[] all = docs;
+            int end = Math.min(nextDoc, all.length);
+            int[] d = { afterDoc };
+            return () -> {
+                while (++d[0] < end) if (all[d[0]] != null) return d[0];
+                return -1;
+            };
+        }
+        Map<Long, Postings> postings = grams.get(field.ordinal());
+        if (k.length() <= MAX_GRAM) {
+            Postings p = postings.get(key(k, 0, k.length()));
+            if (p == null) return () -> -1;
+            Snapshot s = p.snapshot;
+            int[] i = { s.after(afterDoc) };
+            return () -> i[0] < s.size ? s.ids[i[0]++] : -1;
+        }
+
+        // walk the rarest trigram list, checking the others and then the text
+        List<Snapshot> lists = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= k.length(); i++) {
+            Postings p = postings.get(key(k, i, MAX_GRAM));
+            if (p == null) return () -> -1;
+            lists.add(p.snapshot);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        String[][] text = folded;
+        Snapshot rarest = lists.get(0);
+        int[] i = { rarest.after(afterDoc) };
+        return () -> {
+            candidates:
+            while (i[0] < rarest.size) {
+                int doc = rarest.ids[i[0]++];
+                for (int j = 1; j < lists.size(); j++) {
+                    if (!lists.get(j).contains(doc)) continue candidates;
+                }
+                String[] t = text[doc];
+                if (t != null && t[field.ordinal()].contains(k)) return doc;
+            }
+            return -1;
+        };
+    }
+
+    /** Merges two cursors without duplicates. */
+    private static DocCursor union(DocCursor a, DocCursor b) {
+        int[] head = { a.next(), b.next() };
+        return () -> {
+            int x = head[0], y = head[1];
+            if (x < 0 && y < 0) return -1;
+            if (y < 0 || (x >= 0 && x < y)) {
+                head[0] = a.next();
+                return x;
+            }
+            if (x == y) head[0] = a.next();
+            head[1] = b.next();
+            return y;
+        };
+    }
+
+    private static DocCursor single(int doc) {
+        boolean[] done = { false };
+        return () -> {
+            if (done[0]) return -1;
+            done[0] = true;
+            return doc;
+        };
+    }
+
+    /** Collects up to {@code limit} live books from a cursor. */
+    private List<Hit> take(DocCursor c, int limit) {
+        Book[] all = docs;
+        List<Hit> out = new ArrayList<>(Math.min(limit, 1024));
+        for (int doc; out.size() < limit && (doc = c.next()) >= 0; ) {
+            Book b = doc < all.length ? all[doc] : null;
+            if (b != null) out.add(new Hit(doc, b));     // removed: a tombstone or since the postings were read
+        }
+        return out;
+    }
+
+    private int[] liveDocs() {
+        Book[] all = docs;
+        int end = Math.min(nextDoc, all.length);
+        int[] out = new int[end];
+        int n = 0;
+        for (int d = 0; d < end; d++) if (all[d] != null) out[n++] = d;
+        return Arrays.copyOf(out, n);
+    }
+
+    private List<Book> toBooks(int[] hits) {
+        Book[] all = docs;
+        List<Book> out = new ArrayList<>(hits.length);
+        for (int d : hits) {
+            Book b = all[d];
+            if (b != null) out.add(b);       // removed: a tombstone or since the postings were read
+        }
+        return out;
+    }
+
+    /** Merges two sorted doc lists without duplicates. */
+    static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if      (a[i] < b[j]) out[n++] = a[i++];
+            else if (a[i] > b[j]) out[n++] = b[j++];
+            else { out[n++] = a[i++]; j++; }
+        }
+        while (i < a.length) out[n++] = a[i++];
+        while (j < b.length) out[n++] = b[j++];
+        return Arrays.copyOf(out, n);
+    }
+
+    /** @return every distinct 1-, 2- and 3-gram of s as packed keys, sorted */
+    static long[] gramsOf(String s) {
+        long[] out = new long[s.length() * MAX_GRAM];
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            for (int len = 1; len <= MAX_GRAM && i + len <= s.length(); len++) {
+                out[n++] = key(s, i, len);
+            }
+        }
+        Arrays.sort(out, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || out[i] != out[distinct - 1]) out[distinct++] = out[i];
+        }
+        return Arrays.copyOf(out, distinct);
+    }
+
+    /**
+     * Packs up to three chars plus the gram length into one long, then scrambles
+     * it with an odd multiplier (a bijection) so that {@link Long#hashCode()},
+     * which folds the high half onto the low half, spreads the keys.
+     */
+    static long key(String s, int from, int len) {
+        long k = len;
+        for (int i = 0; i < len; i++) k = (k << 16) | s.charAt(from + i);
+        return k * 0x9E3779B97F4A7C15L;
+    }
+
+    static String fold(String s) {
+        return s == null ? "" : s.toLowerCase();
+    }
+
+    /** Immutable view of a posting list: the first {@code size} entries of {@code ids}. */
+    private record Snapshot(int[] ids, int size) {
+        boolean contains(int doc) {
+            return Arrays.binarySearch(ids, 0, size, doc) >= 0;
+        }
+
+        /** @return index of the first entry greater than {@code doc} */
+        int after(int doc) {
+            int i = Arrays.binarySearch(ids, 0, size, doc);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+    }
+
+    /**
+     * Growable sorted int list of document numbers. Appends write past the
+     * published size and then publish a new snapshot; compaction copies.
+     */
+    private static final class Postings {
+        volatile Snapshot snapshot = new Snapshot(new int[4], 0);
+
+        void append(int doc) {
+            Snapshot s = snapshot;
+            int[] ids = s.size == s.ids.length ? Arrays.copyOf(s.ids, s.size * 2) : s.ids;
+            ids[s.size] = doc;
+            snapshot = new Snapshot(ids, s.size + 1);
+        }
+
+        void appendAll(int[] docs, int n) {
+            Snapshot s = snapshot;
+            int[] ids = s.size + n > s.ids.length
+                    ? Arrays.copyOf(s.ids, Math.max(s.ids.length * 2, s.size + n)) : s.ids;
+            System.arraycopy(docs, 0, ids, s.size, n);
+            snapshot = new Snapshot(ids, s.size + n);
+        }
+
+        /** @return true if the list is empty afterwards */
+        boolean removeAll(Bitmap docs) {
+            Snapshot s = snapshot;
+            int first = 0;
+            while (first < s.size && !docs.contains(s.ids[first])) first++;
+            if (first == s.size) return s.size == 0;
+            int[] ids = new int[Math.max(4, s.size)];
+            System.arraycopy(s.ids, 0, ids, 0, first);
+            int n = first;
+            for (int i = first + 1; i < s.size; i++) if (!docs.contains(s.ids[i])) ids[n++] = s.ids[i];
+            snapshot = new Snapshot(ids, n);
+            return n == 0;
+        }
+    }
+
+    /** Plain growable int list used while building a batch. */
+    private static final class IntBuffer {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = doc;
+        }
+    }
+}
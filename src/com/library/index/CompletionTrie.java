@@ -0,0 +1,304 @@
+package com.library.index;
+
+import java.util.*;
+
+/**
+ * Radix trie of weighted strings, for prefix completion and typo-tolerant
+ * lookup.
+ * <p>
+ * Each key carries a weight and a value (e.g. the display form of a folded
+ * key); a key whose weight drops to zero is removed. Every node also keeps
+ * the largest weight below it, so {@link #complete} walks the trie best-first
+ * and stops after {@code limit} results, whatever the number of keys under
+ * the prefix. {@link #fuzzy} runs the edit-distance recurrence along the
+ * edges, one row per character, and skips a subtree as soon as the row's
+ * minimum exceeds the distance, which is how a Levenshtein automaton would
+ * prune it. Edge labels are ranges of the inserted key strings, so the trie
+ * copies no characters. Not thread-safe.
+ */
+public class CompletionTrie {
+    /**
+     * A key within reach of a fuzzy lookup.
+     * @param key      the key
+     * @param distance its edit distance to the looked-up word
+     */
+    public record Match(String key, int distance) {}
+
+    /**
+     * A key found by a completion.
+     * @param key    the key
+     * @param value  its value
+     * @param weight its weight
+     */
+    public record Entry(String key, String value, int weight) {}
+
+    private static final Node[] NO_KIDS = new Node[0];
+
+    private final Node root = new Node("", 0, 0);
+    private int size;
+    private Node[] path = new Node[16];     // scratch for add
+
+    /** A node; the edge into it is {@code src[from, to)} and its path is {@code src[0, to)}. */
+    private static final class Node {
+        String src;
+        int from, to;
+        Node[] kids = NO_KIDS;       // sorted by the first char of their edge
+        int weight;                  // of the key ending here, 0 if none
+        int best;                    // largest weight in this subtree
+        String value;
+
+        Node(String src, int from, int to) {
+            this.src = src;
+            this.from = from;
+            this.to = to;
+        }
+
+        char first() { return src.charAt(from); }
+
+        int kid(char c) {
+            int lo = 0, hi = kids.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char k = kids[mid].first();
+                if (k < c) lo = mid + 1;
+                else if (k > c) hi = mid - 1;
+                else return mid;
+            }
+            return -lo - 1;
+        }
+
+        void insertKid(int at, Node n) {
+            Node[] k = Arrays.copyOf(kids, kids.length + 1);
+            System.arraycopy(k, at, k, at + 1, kids.length - at);
+            k[at] = n;
+            kids = k;
+        }
+
+        void updateBest() {
+            int b = weight;
+            for (Node k : kids) b = Math.max(b, k.best);
+            best = b;
+        }
+    }
+
+    /**
+     * Changes the weight of a key, adding it if new and removing it at zero.
+     * @param key   the key
+     * @param value value to keep for a new key; an existing key keeps its value
+     * @param delta change of the weight
+     */
+    public void add(String key, String value, int delta) {
+        Node n = root;
+        int i = 0, depth = 0;
+        path[depth++] = n;
+        while (i < key.length()) {
+            int k = n.kid(key.charAt(i));
+            if (k < 0) {
+                if (delta <= 0) return;
+                Node leaf = new Node(key, i, key.length());
+                n.insertKid(-k - 1, leaf);
+                n = leaf;
+                i = key.length();
+            } else {
+                Node kid = n.kids[k];
+                int len = kid.to - kid.from, common = 1;
+                while (common < len && i + common < key.length()
+                        && kid.src.charAt(kid.from + common) == key.charAt(i + common)) common++;
+                if (common < len) {
+                    if (delta <= 0) return;
+                    Node mid = new Node(kid.src, kid.from, kid.from + common);     // split the edge
+                    kid.from += common;
+                    mid.kids = new Node[] { kid };
+                    mid.best = kid.best;
+                    n.kids[k] = mid;
+                    kid = mid;
+                }
+                n = kid;
+                i += common;
+            }
+            if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+            path[depth++] = n;
+        }
+        if (n.weight == 0) {
+            if (delta <= 0) return;
+            n.value = value;
+            size++;
+        }
+        n.weight = Math.max(0, n.weight + delta);
+        if (n.weight == 0) {
+            n.value = null;
+            size--;
+        }
+        for (int p = depth - 1; p > 0; p--) {
+            Node node = path[p], parent = path[p - 1];
+            if (node.weight == 0 && node.kids.length == 0) {                 // prune an empty leaf
+                Node[] k = parent.kids;
+                int at = parent.kid(node.first());
+                Node[] shrunk = new Node[k.length - 1];
+                System.arraycopy(k, 0, shrunk, 0, at);
+                System.arraycopy(k, at + 1, shrunk, at, k.length - at - 1);
+                parent.kids = shrunk;
+            } else {
+                node.updateBest();
+            }
+        }
+        root.updateBest();
+    }
+
+    /**
+     * @param key a key
+     * @return its weight, 0 if absent
+     */
+    public int weight(String key) {
+        Node n = node(key);
+        return n == null ? 0 : n.weight;
+    }
+
+    /**
+     * @param key a key
+     * @return the key with its value and weight, or null if absent
+     */
+    public Entry get(String key) {
+        Node n = node(key);
+        return n == null || n.weight == 0 ? null : new Entry(key, n.value, n.weight);
+    }
+
+    /** @return the node whose path is {@code key}, or null */
+    private Node node(String key) {
+        Node n = root;
+        int i = 0;
+        while (i < key.length()) {
+            int k = n.kid(key.charAt(i));
+            if (k < 0) return null;
+            n = n.kids[k];
+            int len = n.to - n.from;
+            if (i + len > key.length() || !key.regionMatches(i, n.src, n.from, len)) return null;
+            i += len;
+        }
+        return n;
+    }
+
+    /** @return number of keys */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param prefix start of the keys
+     * @param limit  maximum number of results
+     * @return values of the heaviest keys starting with {@code prefix}, heaviest
+     *         first, ties in key order
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<Entry> entries = entries(prefix, limit);
+        List<String> out = new ArrayList<>(entries.size());
+        for (Entry e : entries) out.add(e.value());
+        return out;
+    }
+
+    /**
+     * Like {@link #complete}, with the keys and weights.
+     * @param prefix start of the keys
+     * @param limit  maximum number of results
+     * @return the heaviest keys starting with {@code prefix}, heaviest first,
+     *         ties in key order
+     */
+    public List<Entry> entries(String prefix, int limit) {
+        Node n = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int k = n.kid(prefix.charAt(i));
+            if (k < 0) return List.of();
+            n = n.kids[k];
+            int len = Math.min(n.to - n.from, prefix.length() - i);
+            if (!prefix.regionMatches(i, n.src, n.from, len)) return List.of();
+            i += len;
+        }
+        // entries are nodes (by best weight below) or keys (by own weight); a key
+        // leaves the queue only when no node in it can hold a heavier one, and
+        // equal weights leave in path order, a key before the nodes below it
+        record Candidate(Node node, boolean key) {}
+        PriorityQueue<Candidate> queue = new PriorityQueue<>((a, b) -> {
+            int pa = a.key ? a.node.weight : a.node.best, pb = b.key ? b.node.weight : b.node.best;
+            if (pa != pb) return Integer.compare(pb, pa);
+            int byPath = comparePaths(a.node, b.node);
+            if (byPath != 0) return byPath;
+            return Boolean.compare(b.key, a.key);
+        });
+        queue.add(new Candidate(n, false));
+        List<Entry> out = new ArrayList<>(Math.min(limit, 16));
+        while (!queue.isEmpty() && out.size() < limit) {
+            Candidate e = queue.poll();
+            if (e.key) {
+                out.add(new Entry(e.node.src.substring(0, e.node.to), e.node.value, e.node.weight));
+                continue;
+            }
+            if (e.node.weight > 0) queue.add(new Candidate(e.node, true));
+            for (Node kid : e.node.kids) queue.add(new Candidate(kid, false));
+        }
+        return out;
+    }
+
+    private static int comparePaths(Node a, Node b) {
+        int n = Math.min(a.to, b.to);
+        for (int i = 0; i < n; i++) {
+            int d = a.src.charAt(i) - b.src.charAt(i);
+            if (d != 0) return d;
+        }
+        return Integer.compare(a.to, b.to);
+    }
+
+    /**
+     * Finds the keys within an optimal-string-alignment distance of a word:
+     * insertions, deletions, substitutions and swaps of adjacent characters
+     * each count one.
+     * @param word        the word
+     * @param maxDistance largest distance to accept
+     * @return matching keys with their distances, in key order
+     */
+    public List<Match> fuzzy(String word, int maxDistance) {
+        int[] row = new int[word.length() + 1];
+        for (int j = 0; j < row.length; j++) row[j] = j;
+        List<Match> out = new ArrayList<>();
+        for (Node kid : root.kids) walk(kid, word, maxDistance, row, null, (char) 0, out);
+        return out;
+    }
+
+    private static void walk(Node n, String word, int max, int[] prev, int[] prevPrev, char prevChar, List<Match> out) {
+        int w = word.length();
+        for (int p = n.from; p < n.to; p++) {
+            char c = n.src.charAt(p);
+            int[] row = new int[w + 1];
+            if (step(word, prev, prevPrev, prevChar, c, row) > max) return;
+            prevPrev = prev;
+            prev = row;
+            prevChar = c;
+        }
+        if (n.weight > 0 && prev[w] <= max) out.add(new Match(n.src.substring(0, n.to), prev[w]));
+        for (Node kid : n.kids) walk(kid, word, max, prev, prevPrev, prevChar, out);
+    }
+
+    /**
+     * Fills the row of the distance recurrence for one more character of a
+     * key, given the rows of the two characters before it.
+     * @param word     the looked-up word
+     * @param prev     row of the key's previous character (or the initial row)
+     * @param prevPrev row before that, or null
+     * @param prevChar the key's previous character, if {@code prevPrev} is set
+     * @param c        the next character of the key
+     * @param row      row to fill, {@code word.length() + 1} long
+     * @return the row's minimum; no longer key has a smaller distance
+     */
+    static int step(String word, int[] prev, int[] prevPrev, char prevChar, char c, int[] row) {
+        row[0] = prev[0] + 1;
+        int min = row[0];
+        for (int j = 1; j <= word.length(); j++) {
+            char wc = word.charAt(j - 1);
+            int d = Math.min(Math.min(prev[j] + 1, row[j - 1] + 1), prev[j - 1] + (wc == c ? 0 : 1));
+            if (prevPrev != null && j > 1 && wc == prevChar && word.charAt(j - 2) == c) d = Math.min(d, prevPrev[j - 2] + 1);
+            row[j] = d;
+            min = Math.min(min, d);
+        }
+        return min;
+    }
+}
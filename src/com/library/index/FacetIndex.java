@@ -0,0 +1,189 @@
+package com.library.index;
+
+import com.library.model.Book;
+import com.library.model.BookType;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap indexes over the subject, the type and the availability of books,
+ * for faceted search.
+ * <p>
+ * Books are addressed by int document numbers chosen by the caller. Each
+ * subject and each type has a {@link Bitmap} of its documents, and one more
+ * bitmap holds the documents on the shelf, flipped as copies are issued and
+ * returned. A query ANDs the filters of the facets, ORing the selected
+ * values within one facet, and counts each facet's values against the other
+ * facets' filters, so every count says how many hits selecting that value
+ * would give. Thread-safe: writers are exclusive, queries share a read lock.
+ */
+public class FacetIndex {
+    /**
+     * Answer of a query.
+     * @param total     number of matching documents
+     * @param docs      the first matching documents, ascending
+     * @param subjects  matches per subject with the type and availability filters applied, largest first
+     * @param types     matches per type with the subject and availability filters applied
+     * @param available matches on the shelf with the subject and type filters applied
+     */
+    public record Result(int total, int[] docs, Map<String, Integer> subjects, Map<BookType, Integer> types,
+                         int available) {}
+
+    private final Map<String, Bitmap> bySubject = new HashMap<>();
+    private final Map<BookType, Bitmap> byType = new EnumMap<>(BookType.class);
+    private final Bitmap all = new Bitmap();
+    private final Bitmap available = new Bitmap();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FacetIndex() {
+        for (BookType t : BookType.values()) byType.put(t, new Bitmap());
+    }
+
+    /**
+     * Indexes a book under a document number not in use.
+     * @param doc     document number, not negative
+     * @param b       the book
+     * @param onShelf whether it can be borrowed now
+     */
+    public void add(int doc, Book b, boolean onShelf) {
+        lock.writeLock().lock();
+        try {
+            put(doc, BookType.of(b), b.getSubject(), onShelf);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes every book of a catalog file, on the shelf, under its ordinal.
+     * @param m the catalog file
+     */
+    public void addAll(MappedCatalog m) {
+        lock.writeLock().lock();
+        try {
+            for (int ord = 0; ord < m.size(); ord++) put(ord, m.type(ord), m.subject(ord), true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(int doc, BookType type, String subject, boolean onShelf) {
+        all.add(doc);
+        byType.get(type).add(doc);
+        if (subject != null) bySubject.computeIfAbsent(subject, k -> new Bitmap()).add(doc);
+        if (onShelf) available.add(doc);
+    }
+
+    /**
+     * Drops a document.
+     * @param doc document number
+     * @param b   the book it was indexed with
+     */
+    public void remove(int doc, Book b) {
+        lock.writeLock().lock();
+        try {
+            if (!all.remove(doc)) return;
+            byType.get(BookType.of(b)).remove(doc);
+            Bitmap s = b.getSubject() == null ? null : bySubject.get(b.getSubject());
+            if (s != null && s.remove(doc) && s.isEmpty()) bySubject.remove(b.getSubject());
+            available.remove(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a document as on the shelf or not.
+     * @param doc     document number; ignored if not indexed
+     * @param onShelf whether it can be borrowed now
+     */
+    public void setAvailable(int doc, boolean onShelf) {
+        lock.writeLock().lock();
+        try {
+            if (!all.contains(doc)) return;
+            if (onShelf) available.add(doc);
+            else available.remove(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return number of indexed documents */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return all.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filters documents by facets and counts the values of each facet.
+     * @param scope         documents to search, e.g. keyword hits, or null for all
+     * @param subjects      subjects to keep, any of them; empty for no subject filter
+     * @param types         types to keep, any of them; empty for no type filter
+     * @param availableOnly whether to keep only documents on the shelf
+     * @param limit         maximum number of documents returned in {@link Result#docs()}
+     * @return the matches and facet counts
+     */
+    public Result query(Bitmap scope, Set<String> subjects, Set<BookType> types, boolean availableOnly, int limit) {
+        lock.readLock().lock();
+        try {
+            Bitmap base = scope == null ? null : scope.and(all);
+            Bitmap subjectFilter = subjects.isEmpty() ? null : union(subjects.stream().map(bySubject::get).toList());
+            Bitmap typeFilter = types.isEmpty() ? null : union(types.stream().map(byType::get).toList());
+            Bitmap shelfFilter = availableOnly ? available : null;
+
+            Bitmap forSubjects = and(base, typeFilter, shelfFilter);
+            List<Map.Entry<String, Integer>> subjectCounts = new ArrayList<>();
+            for (Map.Entry<String, Bitmap> e : bySubject.entrySet()) {
+                int c = count(forSubjects, e.getValue());
+                if (c > 0) subjectCounts.add(Map.entry(e.getKey(), c));
+            }
+            subjectCounts.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+            Map<String, Integer> bySubjectCount = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> e : subjectCounts) bySubjectCount.put(e.getKey(), e.getValue());
+
+            Bitmap forTypes = and(base, subjectFilter, shelfFilter);
+            Map<BookType, Integer> byTypeCount = new EnumMap<>(BookType.class);
+            for (Map.Entry<BookType, Bitmap> e : byType.entrySet()) {
+                int c = count(forTypes, e.getValue());
+                if (c > 0) byTypeCount.put(e.getKey(), c);
+            }
+
+            Bitmap matches = and(base, subjectFilter, typeFilter);
+            int onShelf = count(matches, available);
+            if (availableOnly) matches = matches == all ? available : matches.and(available);
+            return new Result(availableOnly ? onShelf : matches.cardinality(), matches.toArray(limit),
+                    bySubjectCount, byTypeCount, onShelf);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param base documents to start from, or null for all
+     * @return the intersection, skipping null filters; without any, {@code base}
+     *         or {@link #all} itself, and a single filter itself over all
+     *         documents, since every bitmap of the index is a subset of {@link #all}
+     */
+    private Bitmap and(Bitmap base, Bitmap... filters) {
+        Bitmap out = base;
+        for (Bitmap f : filters) if (f != null) out = out == null ? f : out.and(f);
+        return out == null ? all : out;
+    }
+
+    /** @return number of {@code values} in {@code filter} */
+    private int count(Bitmap filter, Bitmap values) {
+        return filter == all ? values.cardinality() : filter.andCardinality(values);
+    }
+
+    /** @return the union, or the only bitmap itself; never modify the result */
+    private static Bitmap union(List<Bitmap> bitmaps) {
+        Bitmap out = null;
+        for (Bitmap b : bitmaps) if (b != null) out = out == null ? b : out.or(b);
+        return out == null ? new Bitmap() : out;
+    }
+}
@@ -0,0 +1,159 @@
+package com.library.index;
+
+import com.library.model.HoldRequest;
+import com.library.model.Title;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-title FIFO hold queues.
+ * <p>
+ * Each title with outstanding holds owns an insertion-ordered map keyed by
+ * borrower ID, so the head of the queue, appending a hold and withdrawing or
+ * finding any single borrower's hold are all constant time. Holds with a copy
+ * set aside form a prefix of the queue, since a copy coming back goes to the
+ * first hold still waiting. Empty queues are dropped.
+ * <p>
+ * Callers must serialize mutations of the same title (the library does so with
+ * its per-title lock stripe); each queue is also guarded by its own monitor so
+ * readers never observe it mid-update.
+ */
+public class HoldQueues {
+    private final Map<Title.Key, LinkedHashMap<String, HoldRequest>> byTitle = new ConcurrentHashMap<>();
+
+    /**
+     * Appends a hold to the end of its title's queue.
+     * @param title   key of the title
+     * @param hr      the hold request
+     * @return false if the borrower already holds this title
+     */
+    public boolean add(Title.Key title, HoldRequest hr) {
+        var queue = byTitle.computeIfAbsent(title, k -> new LinkedHashMap<>());
+        synchronized (queue) {
+            return queue.putIfAbsent(hr.getBorrower().getId(), hr) == null;
+        }
+    }
+
+    /**
+     * @param title   key of the title
+     * @return the first hold in line, or null if nobody is waiting
+     */
+    public HoldRequest peek(Title.Key title) {
+        var queue = byTitle.get(title);
+        if (queue == null) return null;
+        synchronized (queue) {
+            return queue.isEmpty() ? null : queue.values().iterator().next();
+        }
+    }
+
+    /**
+     * @param title   key of the title
+     * @return the first hold without a copy set aside, or null if there is none
+     */
+    public HoldRequest firstWaiting(Title.Key title) {
+        var queue = byTitle.get(title);
+        if (queue == null) return null;
+        synchronized (queue) {
+            for (HoldRequest hr : queue.values()) if (hr.getPickupBy() == null) return hr;
+            return null;
+        }
+    }
+
+    /**
+     * @param title      key of the title
+     * @param borrowerId ID of the borrower
+     * @return the borrower's hold on that title, or null
+     */
+    public HoldRequest get(Title.Key title, String borrowerId) {
+        var queue = byTitle.get(title);
+        if (queue == null) return null;
+        synchronized (queue) {
+            return queue.get(borrowerId);
+        }
+    }
+
+    /**
+     * Withdraws a borrower's hold on a title.
+     * @param title      key of the title
+     * @param borrowerId ID of the borrower
+     * @return the removed hold, or null if there was none
+     */
+    public HoldRequest remove(Title.Key title, String borrowerId) {
+        var queue = byTitle.get(title);
+        if (queue == null) return null;
+        synchronized (queue) {
+            HoldRequest removed = queue.remove(borrowerId);
+            if (queue.isEmpty()) byTitle.remove(title, queue);
+            return removed;
+        }
+    }
+
+    /**
+     * @param title   key of the title
+     * @return holds for that title in queue order
+     */
+    public List<HoldRequest> forTitle(Title.Key title) {
+        var queue = byTitle.get(title);
+        if (queue == null) return new ArrayList<>();
+        synchronized (queue) {
+            return new ArrayList<>(queue.values());
+        }
+    }
+
+    /**
+     * Keyset page of a title's queue. Continues behind the given borrower while
+     * that borrower is still queued; otherwise behind holds requested up to
+     * {@code afterDate}, since the queue is in request order.
+     * @param title         key of the title
+     * @param afterDate     request date of the last hold seen, or null for the first page
+     * @param afterBorrower borrower of the last hold seen, or null for the first page
+     * @param limit         maximum number of holds
+     * @return holds in queue order
+     */
+    public List<HoldRequest> forTitle(Title.Key title, LocalDateTime afterDate, String afterBorrower, int limit) {
+        var queue = byTitle.get(title);
+        List<HoldRequest> out = new ArrayList<>();
+        if (queue == null) return out;
+        synchronized (queue) {
+            boolean queued = afterBorrower != null && queue.containsKey(afterBorrower);
+            boolean passed = afterBorrower == null;
+            for (HoldRequest hr : queue.values()) {
+                if (out.size() == limit) break;
+                if (!passed) {
+                    if (queued) passed = hr.getBorrower().getId().equals(afterBorrower);
+                    else passed = hr.getRequestDate().isAfter(afterDate);
+                    if (queued || !passed) continue;
+                }
+                out.add(hr);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return every hold, each title's holds in queue order
+     */
+    public List<HoldRequest> all() {
+        List<HoldRequest> out = new ArrayList<>();
+        for (var queue : byTitle.values()) {
+            synchronized (queue) {
+                out.addAll(queue.values());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @param title   key of the title
+     * @return number of borrowers waiting for that title
+     */
+    public int size(Title.Key title) {
+        var queue = byTitle.get(title);
+        if (queue == null) return 0;
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+}
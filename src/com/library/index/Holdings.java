@@ -0,0 +1,136 @@
+package com.library.index;
+
+import com.library.model.Book;
+import com.library.model.Title;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Titles of the catalog and the copies that belong to them.
+ * <p>
+ * Maps each title key to its {@link Title} and each copy's book ID to its
+ * title, so both directions are one hash lookup. A title is dropped with its
+ * last copy. Thread-safe; the library changes the copies of one title under
+ * that title's lock stripe.
+ * <p>
+ * The copies in a mounted catalog file are registered one title group at a
+ * time, the first time one of them or their title is asked for, so mounting
+ * does not create a Book per copy and counts are still complete.
+ */
+public class Holdings {
+    private final Map<Title.Key, Title> titles = new ConcurrentHashMap<>();
+    private final Map<String, Title> byCopy = new ConcurrentHashMap<>();
+    private final Set<Integer> loadedGroups = ConcurrentHashMap.newKeySet();
+    private volatile MappedCatalog mounted;
+    private volatile IntFunction<Book> mountedBooks;
+
+    /**
+     * Registers a book as a copy of its title, moving it from the title it
+     * was registered with before if that differs.
+     * @param b the book
+     * @return its title
+     */
+    public Title add(Book b) {
+        String id = b.getBookId();
+        Title.Key key = Title.keyOf(b);
+        MappedCatalog m = mounted;
+        if (m != null) {
+            int group = m.titleGroup(key);
+            if (group >= 0) load(m, group);
+        }
+        Title t = titles.compute(key, (k, v) -> {
+            if (v == null) v = new Title(k);              // shares the map's key
+            v.addCopy(b);
+            return v;
+        });
+        Title previous = byCopy.put(id, t);
+        if (previous != null && previous != t) drop(previous, id);
+        return t;
+    }
+
+    /**
+     * Serves the books of a catalog file as copies of their titles; a title's
+     * mounted copies are registered when it or one of them is first looked up.
+     * @param m     the catalog file
+     * @param books the book to register for an ordinal, or null to leave it out
+     */
+    public void mount(MappedCatalog m, IntFunction<Book> books) {
+        mountedBooks = books;
+        mounted = m;
+    }
+
+    /**
+     * @param bookId ID of a copy
+     * @return the title it belonged to, or null if it was not registered
+     */
+    public Title remove(String bookId) {
+        if (ofCopy(bookId) == null) return null;
+        Title t = byCopy.remove(bookId);
+        if (t != null) drop(t, bookId);
+        return t;
+    }
+
+    /**
+     * @param bookId ID of a copy
+     * @return its title, or null if the book is not registered
+     */
+    public Title ofCopy(String bookId) {
+        Title t = byCopy.get(bookId);
+        MappedCatalog m = mounted;
+        if (t != null || m == null) return t;
+        int ord = m.find(bookId);
+        if (ord < 0) return null;
+        load(m, m.titleOf(ord));
+        return byCopy.get(bookId);
+    }
+
+    /**
+     * @param key key of a title
+     * @return the title, or null if it has no copies
+     */
+    public Title get(Title.Key key) {
+        MappedCatalog m = mounted;
+        if (m != null) {
+            int group = m.titleGroup(key);
+            if (group >= 0) load(m, group);
+        }
+        return titles.get(key);
+    }
+
+    /** @return number of titles registered so far, which leaves out mounted titles not looked up yet */
+    public int size() {
+        return titles.size();
+    }
+
+    /**
+     * Registers the copies of a mounted title group once, atomically with
+     * {@link #add} for its key. The group counts as loaded only once its
+     * copies are in {@code byCopy}, so a caller that skips it finds them.
+     */
+    private void load(MappedCatalog m, int group) {
+        if (loadedGroups.contains(group)) return;
+        int[] ords = m.titleBooks(group);
+        titles.compute(m.titleKey(ords[0]), (k, v) -> {
+            if (loadedGroups.contains(group)) return v;
+            if (v == null) v = new Title(k);
+            for (int ord : ords) {
+                Book b = mountedBooks.apply(ord);
+                if (b != null && v.addCopy(b)) byCopy.put(b.getBookId(), v);
+            }
+            loadedGroups.add(group);
+            return v.getCopies() == 0 ? null : v;
+        });
+    }
+
+    /** Removes a copy from its title, and the title with its last copy, atomically with {@link #add}. */
+    private void drop(Title t, String bookId) {
+        titles.computeIfPresent(t.getKey(), (k, v) -> {
+            if (v != t) return v;
+            t.removeCopy(bookId);
+            return t.getCopies() == 0 ? null : t;
+        });
+    }
+}
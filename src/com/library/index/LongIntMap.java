@@ -0,0 +1,71 @@
+package com.library.index;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to int values without boxing,
+ * for hot build loops. Not thread-safe.
+ */
+final class LongIntMap {
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[cap];
+        values = new int[cap];
+        Arrays.fill(keys, FREE);
+    }
+
+    /** @return the value for {@code key}, or {@code missing} if absent */
+    int get(long key, int missing) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == FREE) return missing;
+        }
+    }
+
+    /** Associates {@code value} with {@code key}. {@code key} must not be {@link Long#MIN_VALUE}. */
+    void put(long key, int value) {
+        if (size * 2 >= keys.length) grow();
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) { values[i] = value; return; }
+            if (keys[i] == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    int size() { return size; }
+
+    /** Visits every entry. */
+    void forEach(Visitor v) {
+        for (int i = 0; i < keys.length; i++) if (keys[i] != FREE) v.visit(keys[i], values[i]);
+    }
+
+    interface Visitor { void visit(long key, int value); }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != FREE) put(oldKeys[i], oldValues[i]);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,893 @@
+package com.library.index;
+
+import com.library.model.Book;
+import com.library.model.BookType;
+import com.library.model.Title;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static com.library.index.BookIndex.MAX_GRAM;
+import static com.library.index.BookIndex.fold;
+import static com.library.index.BookIndex.gramsOf;
+import static com.library.index.BookIndex.key;
+
+/**
+ * Read-only, memory-mapped catalog file.
+ * <p>
+ * Books are stored column by column and addressed by ordinal: a type byte, an
+ * author and a subject reference into interned dictionaries, and the ID and
+ * title as UTF-8 in string heaps with offset tables. The file also carries the
+ * ordinals sorted by ID (for lookups and ID-ordered listing) and by lower-cased
+ * ID (for case-insensitive matches), each dictionary entry's
+ * books, and 1- to 3-gram posting lists over the lower-cased titles, so
+ * searches have the same semantics as {@link BookIndex} without building it.
+ * Books with the same {@link Title.Key} form a title group; groups are
+ * numbered in key order, so {@link Holdings} finds a title's copies by key or
+ * by ordinal without registering the whole file.
+ * <p>
+ * For {@link RankedIndex} it carries the same word index that class keeps on
+ * the heap: the sorted vocabulary with a posting list per word (ordinals and
+ * packed per-field counts), each book's packed word counts and the field
+ * totals, plus the sorted suggestion keys with their display values, weights
+ * and a max-tree over the weights for best-first completion.
+ * <p>
+ * Opening the file maps it and loads only the two dictionaries onto the heap;
+ * {@link Book} objects are created on demand by {@link #book(int)}. Instances
+ * are safe for concurrent readers.
+ */
+public class MappedCatalog implements Closeable {
+    private static final long MAGIC = 0x4C49424341543033L;      // "LIBCAT03"
+
+    /** File sections, stored in this order after the header. */
+    private enum Section {
+        TYPES, AUTHOR_OF, SUBJECT_OF,
+        ID_OFFSETS, ID_BYTES, TITLE_OFFSETS, TITLE_BYTES, ID_ORDER, ID_SORTED,
+        AUTHOR_OFFSETS, AUTHOR_BYTES, SUBJECT_OFFSETS, SUBJECT_BYTES,
+        AUTHOR_BOOK_OFFSETS, AUTHOR_BOOKS, SUBJECT_BOOK_OFFSETS, SUBJECT_BOOKS,
+        TITLE_OF, TITLE_BOOK_OFFSETS, TITLE_BOOKS,
+        GRAM_KEYS, GRAM_OFFSETS, GRAM_DOCS,
+        WORD_OFFSETS, WORD_BYTES, WORD_POSTING_OFFSETS, WORD_DOCS, WORD_COUNTS, DOC_LENGTHS,
+        SUGGEST_OFFSETS, SUGGEST_BYTES, SUGGEST_VALUE_OFFSETS, SUGGEST_VALUE_BYTES, SUGGEST_WEIGHTS, SUGGEST_MAX
+    }
+
+    private static final int HEADER = 8 + 7 * 4 + RankedIndex.FIELDS * 8 + Section.values().length * 16;
+
+    /** Order of the title groups; keys read from the file have no nulls. */
+    private static final Comparator<Title.Key> TITLE_ORDER = Comparator.comparing((Title.Key k) -> k.type().code())
+            .thenComparing(Title.Key::title).thenComparing(Title.Key::author).thenComparing(Title.Key::subject);
+
+    private final FileChannel channel;
+    private final ByteBuffer[] sections = new ByteBuffer[Section.values().length];
+    private final int size;
+    private final int titles, grams, words, suggestions, leaves;
+    private final long[] fieldLengths = new long[RankedIndex.FIELDS];
+    private final String[] authors, subjects;
+    private final String[] foldedAuthors, foldedSubjects;
+
+    private MappedCatalog(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+        if (header.getLong() != MAGIC) throw new IOException("Not a catalog file");
+        size = header.getInt();
+        int authorCount = header.getInt(), subjectCount = header.getInt();
+        titles = header.getInt();
+        grams = header.getInt();
+        words = header.getInt();
+        suggestions = header.getInt();
+        for (int f = 0; f < fieldLengths.length; f++) fieldLengths[f] = header.getLong();
+        leaves = leaves(suggestions);
+        for (Section s : Section.values()) {
+            long offset = header.getLong(), length = header.getLong();
+            sections[s.ordinal()] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        authors  = strings(Section.AUTHOR_OFFSETS, Section.AUTHOR_BYTES, authorCount);
+        subjects = strings(Section.SUBJECT_OFFSETS, Section.SUBJECT_BYTES, subjectCount);
+        foldedAuthors  = Arrays.stream(authors).map(BookIndex::fold).toArray(String[]::new);
+        foldedSubjects = Arrays.stream(subjects).map(BookIndex::fold).toArray(String[]::new);
+    }
+
+    /**
+     * Maps a catalog file.
+     * @param file the catalog file
+     * @return the open catalog
+     * @throws IOException if the file cannot be read or is not a catalog
+     */
+    public static MappedCatalog open(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedCatalog(ch);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** @return number of books in the file */
+    public int size() { return size; }
+
+    /**
+     * @param ord ordinal, 0 ≤ ord &lt; {@link #size()}
+     * @return the book's ID, read without creating a Book
+     */
+    public String bookId(int ord) {
+        return string(Section.ID_OFFSETS, Section.ID_BYTES, ord);
+    }
+
+    /**
+     * Creates a fresh Book for an ordinal; every call returns a new object.
+     * @param ord ordinal, 0 ≤ ord &lt; {@link #size()}
+     * @return the book
+     */
+    public Book book(int ord) {
+        return type(ord).create(bookId(ord), string(Section.TITLE_OFFSETS, Section.TITLE_BYTES, ord),
+                authors[section(Section.AUTHOR_OF).getInt(ord * 4)], subject(ord));
+    }
+
+    /**
+     * @param ord ordinal, 0 ≤ ord &lt; {@link #size()}
+     * @return the book's type, read without creating a Book
+     */
+    public BookType type(int ord) {
+        return BookType.ofCode(section(Section.TYPES).get(ord));
+    }
+
+    /**
+     * @param ord ordinal, 0 ≤ ord &lt; {@link #size()}
+     * @return the book's subject, read without creating a Book
+     */
+    public String subject(int ord) {
+        return subjects[section(Section.SUBJECT_OF).getInt(ord * 4)];
+    }
+
+    /**
+     * @param bookId exact book ID
+     * @return its ordinal, or -1 if the file has no such book
+     */
+    public int find(String bookId) {
+        int rank = rankAfter(bookId) - 1;
+        if (rank < 0) return -1;
+        int ord = ordAtRank(rank);
+        return bookId(ord).equals(bookId) ? ord : -1;
+    }
+
+    /**
+     * @param bookId an ID, or null
+     * @return number of books whose ID sorts at or before {@code bookId}
+     *         ({@link String#compareTo}), i.e. the rank of the first later ID
+     */
+    public int rankAfter(String bookId) {
+        if (bookId == null) return 0;
+        ByteBuffer sorted = section(Section.ID_SORTED);
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bookId(sorted.getInt(mid * 4)).compareTo(bookId) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @param rank position in ID order, 0 ≤ rank &lt; {@link #size()}
+     * @return ordinal of the book at that position
+     */
+    public int ordAtRank(int rank) {
+        return section(Section.ID_SORTED).getInt(rank * 4);
+    }
+
+    /**
+     * Case-insensitive substring search over one field.
+     * @param field   field to search
+     * @param keyword search term
+     * @return matching ordinals, ascending
+     */
+    public int[] search(BookIndex.Field field, String keyword) {
+        return match(field, fold(keyword));
+    }
+
+    /**
+     * Same semantics as {@link BookIndex#searchTitleAuthorOrId(String)}.
+     * @param keyword search term
+     * @return matching ordinals, ascending
+     */
+    public int[] searchTitleAuthorOrId(String keyword) {
+        String k = fold(keyword);
+        int[] hits = BookIndex.union(match(BookIndex.Field.TITLE, k), match(BookIndex.Field.AUTHOR, k));
+        ByteBuffer order = section(Section.ID_ORDER);
+        List<Integer> byId = new ArrayList<>();
+        for (int i = lowerBound(k); i < size; i++) {
+            int ord = order.getInt(i * 4);
+            if (!fold(bookId(ord)).equals(k)) break;
+            byId.add(ord);
+        }
+        if (byId.isEmpty()) return hits;
+        int[] ids = byId.stream().mapToInt(Integer::intValue).sorted().toArray();
+        return BookIndex.union(hits, ids);
+    }
+
+    // Title groups
+
+    /**
+     * @param ord ordinal, 0 ≤ ord &lt; {@link #size()}
+     * @return the title group of the book
+     */
+    int titleOf(int ord) {
+        return section(Section.TITLE_OF).getInt(ord * 4);
+    }
+
+    /**
+     * @param group a title group
+     * @return ordinals of the group's books, ascending
+     */
+    int[] titleBooks(int group) {
+        ByteBuffer off = section(Section.TITLE_BOOK_OFFSETS), ords = section(Section.TITLE_BOOKS);
+        int from = off.getInt(group * 4), to = off.getInt(group * 4 + 4);
+        int[] out = new int[to - from];
+        for (int i = 0; i < out.length; i++) out[i] = ords.getInt((from + i) * 4);
+        return out;
+    }
+
+    /**
+     * @param ord ordinal, 0 ≤ ord &lt; {@link #size()}
+     * @return the key of the title the book is a copy of, as {@link Title#keyOf} gives for {@link #book(int)}
+     */
+    Title.Key titleKey(int ord) {
+        return new Title.Key(type(ord), string(Section.TITLE_OFFSETS, Section.TITLE_BYTES, ord),
+                authors[section(Section.AUTHOR_OF).getInt(ord * 4)], subject(ord));
+    }
+
+    /**
+     * @param key key of a title
+     * @return its title group, or -1 if no book in the file is a copy of it
+     */
+    int titleGroup(Title.Key key) {
+        if (key.type() == null || key.title() == null || key.author() == null || key.subject() == null) return -1;
+        ByteBuffer off = section(Section.TITLE_BOOK_OFFSETS), ords = section(Section.TITLE_BOOKS);
+        int lo = 0, hi = titles - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = TITLE_ORDER.compare(titleKey(ords.getInt(off.getInt(mid * 4) * 4)), key);
+            if      (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // Ranked index
+
+    /**
+     * @param field a {@link BookIndex.Field} ordinal
+     * @return number of words in that field over all books
+     */
+    long fieldLength(int field) {
+        return fieldLengths[field];
+    }
+
+    /**
+     * @param ord ordinal
+     * @return the book's number of words per field, packed as by {@link RankedIndex}
+     */
+    int docLength(int ord) {
+        return section(Section.DOC_LENGTHS).getInt(ord * 4);
+    }
+
+    /**
+     * @param word a folded word
+     * @return its position in the vocabulary, or -1
+     */
+    int word(String word) {
+        int lo = 0, hi = words - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = string(Section.WORD_OFFSETS, Section.WORD_BYTES, mid).compareTo(word);
+            if      (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /** @return position of the first posting of a vocabulary word */
+    int postingsFrom(int word) {
+        return section(Section.WORD_POSTING_OFFSETS).getInt(word * 4);
+    }
+
+    /** @return position after the last posting of a vocabulary word */
+    int postingsTo(int word) {
+        return section(Section.WORD_POSTING_OFFSETS).getInt(word * 4 + 4);
+    }
+
+    /** @return ordinal of a posting; a word's postings are ascending */
+    int postingDoc(int i) {
+        return section(Section.WORD_DOCS).getInt(i * 4);
+    }
+
+    /** @return the word's counts per field in a posting, packed */
+    int postingCounts(int i) {
+        return section(Section.WORD_COUNTS).getInt(i * 4);
+    }
+
+    /**
+     * Finds the vocabulary words within a distance of a word, like
+     * {@link CompletionTrie#fuzzy}. The sorted vocabulary is walked as the
+     * trie it spells: the rows of the prefix shared with the previous word
+     * are kept, and a prefix whose row exceeds the distance skips every word
+     * that starts with it.
+     * @param word        the word
+     * @param maxDistance largest distance to accept
+     * @return matching words with their distances, in word order
+     */
+    List<CompletionTrie.Match> fuzzyWords(String word, int maxDistance) {
+        int w = word.length();
+        int[][] rows = new int[16][];
+        rows[0] = new int[w + 1];
+        for (int j = 0; j <= w; j++) rows[0][j] = j;
+        List<CompletionTrie.Match> out = new ArrayList<>();
+        String prev = "";
+        int valid = 0;                                      // rows[0..valid] belong to prefixes of prev
+        for (int i = 0; i < words; ) {
+            String key = string(Section.WORD_OFFSETS, Section.WORD_BYTES, i);
+            int d = 0, shared = Math.min(valid, key.length());
+            while (d < shared && key.charAt(d) == prev.charAt(d)) d++;
+            for (; d < key.length(); d++) {
+                if (d + 1 == rows.length) rows = Arrays.copyOf(rows, rows.length * 2);
+                if (rows[d + 1] == null) rows[d + 1] = new int[w + 1];
+                char prevChar = d > 0 ? key.charAt(d - 1) : 0;
+                if (CompletionTrie.step(word, rows[d], d > 0 ? rows[d - 1] : null, prevChar, key.charAt(d), rows[d + 1]) > maxDistance) break;
+            }
+            prev = key;
+            if (d < key.length()) {                         // no word starting with key[0, d] is in reach
+                valid = d;
+                i = endOfPrefix(utf8(key.substring(0, d + 1)), i);
+                continue;
+            }
+            valid = d;
+            if (rows[d][w] <= maxDistance) out.add(new CompletionTrie.Match(key, rows[d][w]));
+            i++;
+        }
+        return out;
+    }
+
+    /**
+     * @param prefix UTF-8 bytes the word at {@code from} starts with
+     * @return the first vocabulary position after {@code from} whose word does
+     *         not start with {@code prefix}, found by galloping since most runs are short
+     */
+    private int endOfPrefix(byte[] prefix, int from) {
+        int lo = from, step = 1;                    // lo starts with the prefix
+        while (lo + step < words && wordStartsWith(lo + step, prefix)) {
+            lo += step;
+            step *= 2;
+        }
+        int hi = Math.min(words, lo + step);
+        for (lo++; lo < hi; ) {
+            int mid = (lo + hi) >>> 1;
+            if (wordStartsWith(mid, prefix)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private boolean wordStartsWith(int word, byte[] prefix) {
+        ByteBuffer off = section(Section.WORD_OFFSETS), bytes = section(Section.WORD_BYTES);
+        int from = off.getInt(word * 4);
+        if (off.getInt(word * 4 + 4) - from < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) if (bytes.get(from + i) != prefix[i]) return false;
+        return true;
+    }
+
+    /**
+     * @param key a folded title or author name
+     * @return the key with its display value and number of books, or null if no book carries it
+     */
+    CompletionTrie.Entry suggestion(String key) {
+        int i = suggestionRank(key);
+        return i < suggestions && suggestionKey(i).equals(key) ? suggestion(i) : null;
+    }
+
+    /**
+     * Completes a prefix like {@link CompletionTrie#entries}: the key range of
+     * the prefix is split at its heaviest key, found in the max-tree, and the
+     * parts are visited best-first.
+     * @param prefix start of the folded keys
+     * @param limit  maximum number of results
+     * @return the heaviest keys starting with the prefix, heaviest first, ties in key order
+     */
+    List<CompletionTrie.Entry> suggestions(String prefix, int limit) {
+        int from = suggestionRank(prefix), to = from;
+        for (int hi = suggestions; to < hi; ) {                  // end of the keys starting with the prefix
+            int mid = (to + hi) >>> 1;
+            if (suggestionKey(mid).startsWith(prefix)) to = mid + 1;
+            else hi = mid;
+        }
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> better(a[2], b[2]) == a[2] ? -1 : 1);
+        if (from < to) ranges.add(new int[] { from, to, heaviest(from, to) });
+        List<CompletionTrie.Entry> out = new ArrayList<>(Math.min(limit, 16));
+        while (!ranges.isEmpty() && out.size() < limit) {
+            int[] r = ranges.poll();
+            int i = r[2];
+            out.add(suggestion(i));
+            if (r[0] < i) ranges.add(new int[] { r[0], i, heaviest(r[0], i) });
+            if (i + 1 < r[1]) ranges.add(new int[] { i + 1, r[1], heaviest(i + 1, r[1]) });
+        }
+        return out;
+    }
+
+    private CompletionTrie.Entry suggestion(int i) {
+        return new CompletionTrie.Entry(suggestionKey(i), string(Section.SUGGEST_VALUE_OFFSETS, Section.SUGGEST_VALUE_BYTES, i),
+                section(Section.SUGGEST_WEIGHTS).getInt(i * 4));
+    }
+
+    private String suggestionKey(int i) {
+        return string(Section.SUGGEST_OFFSETS, Section.SUGGEST_BYTES, i);
+    }
+
+    /** @return position of the first suggestion key not below {@code key} */
+    private int suggestionRank(String key) {
+        int lo = 0, hi = suggestions;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (suggestionKey(mid).compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** @return the heaviest suggestion in positions [from, to), the first of equals */
+    private int heaviest(int from, int to) {
+        ByteBuffer tree = section(Section.SUGGEST_MAX);
+        int best = -1;
+        for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>>= 1, hi >>>= 1) {
+            if ((lo & 1) == 1) best = better(best, tree.getInt(lo++ * 4));
+            if ((hi & 1) == 1) best = better(best, tree.getInt(--hi * 4));
+        }
+        return best;
+    }
+
+    private int better(int a, int b) {
+        return better(section(Section.SUGGEST_WEIGHTS), a, b);
+    }
+
+    /** @return of two suggestion positions (-1 for none) the heavier one, or the first of equals */
+    private static int better(ByteBuffer weights, int a, int b) {
+        if (a < 0) return b;
+        if (b < 0) return a;
+        int wa = weights.getInt(a * 4), wb = weights.getInt(b * 4);
+        return wa > wb || wa == wb && a < b ? a : b;
+    }
+
+    /** @return leaves of the max-tree over {@code n} suggestions, a power of two */
+    private static int leaves(int n) {
+        return Math.max(1, Integer.highestOneBit(Math.max(1, n) - 1) << 1);
+    }
+
+    /** Unmaps lazily; the buffers must not be used afterwards. */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Queries
+
+    private int[] match(BookIndex.Field field, String k) {
+        return switch (field) {
+            case TITLE   -> matchTitle(k);
+            case AUTHOR  -> matchDictionary(foldedAuthors, Section.AUTHOR_BOOK_OFFSETS, Section.AUTHOR_BOOKS, k);
+            case SUBJECT -> matchDictionary(foldedSubjects, Section.SUBJECT_BOOK_OFFSETS, Section.SUBJECT_BOOKS, k);
+        };
+    }
+
+    private int[] matchTitle(String k) {
+        if (k.isEmpty()) return all();
+        ByteBuffer offsets = section(Section.GRAM_OFFSETS);
+        ByteBuffer docs = section(Section.GRAM_DOCS);
+        if (k.length() <= MAX_GRAM) {
+            int g = gram(key(k, 0, k.length()));
+            if (g < 0) return new int[0];
+            int from = offsets.getInt(g * 4), to = offsets.getInt(g * 4 + 4);
+            int[] out = new int[to - from];
+            for (int i = 0; i < out.length; i++) out[i] = docs.getInt((from + i) * 4);
+            return out;
+        }
+
+        // trigram posting ranges, rarest first
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= k.length(); i++) {
+            int g = gram(key(k, i, MAX_GRAM));
+            if (g < 0) return new int[0];
+            ranges.add(new int[] { offsets.getInt(g * 4), offsets.getInt(g * 4 + 4) });
+        }
+        ranges.sort(Comparator.comparingInt(r -> r[1] - r[0]));
+
+        int[] rarest = ranges.get(0);
+        int[] out = new int[rarest[1] - rarest[0]];
+        int n = 0;
+        candidates:
+        for (int i = rarest[0]; i < rarest[1]; i++) {
+            int doc = docs.getInt(i * 4);
+            for (int j = 1; j < ranges.size(); j++) {
+                if (!contains(docs, ranges.get(j), doc)) continue candidates;
+            }
+            if (fold(string(Section.TITLE_OFFSETS, Section.TITLE_BYTES, doc)).contains(k)) out[n++] = doc;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Scans an interned dictionary and gathers the books of every matching entry. */
+    private int[] matchDictionary(String[] folded, Section offsets, Section books, String k) {
+        if (k.isEmpty()) return all();
+        ByteBuffer off = section(offsets), ords = section(books);
+        int[] out = new int[16];
+        int n = 0;
+        for (int e = 0; e < folded.length; e++) {
+            if (!folded[e].contains(k)) continue;
+            int from = off.getInt(e * 4), to = off.getInt(e * 4 + 4);
+            if (n + to - from > out.length) out = Arrays.copyOf(out, Math.max(out.length * 2, n + to - from));
+            for (int i = from; i < to; i++) out[n++] = ords.getInt(i * 4);
+        }
+        out = Arrays.copyOf(out, n);
+        Arrays.sort(out);
+        return out;
+    }
+
+    private int[] all() {
+        int[] out = new int[size];
+        for (int i = 0; i < size; i++) out[i] = i;
+        return out;
+    }
+
+    /** @return index of a gram key in GRAM_KEYS, or -1 */
+    private int gram(long key) {
+        ByteBuffer keys = section(Section.GRAM_KEYS);
+        int lo = 0, hi = grams - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = keys.getLong(mid * 8);
+            if      (k < key) lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private static boolean contains(ByteBuffer docs, int[] range, int doc) {
+        int lo = range[0], hi = range[1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int d = docs.getInt(mid * 4);
+            if      (d < doc) lo = mid + 1;
+            else if (d > doc) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    /** @return first position in ID_ORDER whose lower-cased ID is not below {@code folded} */
+    private int lowerBound(String folded) {
+        ByteBuffer order = section(Section.ID_ORDER);
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (fold(bookId(order.getInt(mid * 4))).compareTo(folded) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private ByteBuffer section(Section s) {
+        return sections[s.ordinal()];
+    }
+
+    private String string(Section offsets, Section bytes, int i) {
+        ByteBuffer off = section(offsets);
+        int from = off.getInt(i * 4), to = off.getInt(i * 4 + 4);
+        byte[] b = new byte[to - from];
+        section(bytes).get(from, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private String[] strings(Section offsets, Section bytes, int count) {
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) out[i] = string(offsets, bytes, i);
+        return out;
+    }
+
+    // Writing
+
+    /**
+     * Writes books to a new catalog file, replacing any existing file atomically.
+     * Ordinals follow the collection's iteration order.
+     * @param file  target file
+     * @param books books to store; IDs must be unique
+     * @throws IOException if writing fails or a section exceeds 2 GiB
+     */
+    public static void write(Path file, Collection<? extends Book> books) throws IOException {
+        Book[] all = books.toArray(new Book[0]);
+        int n = all.length;
+
+        byte[] types = new byte[n];
+        int[] authorOf = new int[n], subjectOf = new int[n];
+        List<String> authorDict = new ArrayList<>(), subjectDict = new ArrayList<>();
+        Map<String, Integer> authorRef = new HashMap<>(), subjectRef = new HashMap<>();
+        byte[][] ids = new byte[n][], titles = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            Book b = all[i];
+            types[i]     = BookType.of(b).code();
+            authorOf[i]  = intern(b.getAuthor(), authorDict, authorRef);
+            subjectOf[i] = intern(b.getSubject(), subjectDict, subjectRef);
+            ids[i]    = utf8(b.getBookId());
+            titles[i] = utf8(b.getTitle());
+        }
+
+        // title groups, numbered in key order; keys as read back, with null stored as ""
+        Title.Key[] keyOf = new Title.Key[n];
+        Map<Title.Key, Integer> titleRef = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Book b = all[i];
+            keyOf[i] = new Title.Key(BookType.of(b), orEmpty(b.getTitle()), orEmpty(b.getAuthor()), orEmpty(b.getSubject()));
+            titleRef.putIfAbsent(keyOf[i], 0);
+        }
+        Title.Key[] titleKeys = titleRef.keySet().toArray(new Title.Key[0]);
+        Arrays.sort(titleKeys, TITLE_ORDER);
+        for (int g = 0; g < titleKeys.length; g++) titleRef.put(titleKeys[g], g);
+        int[] titleOf = new int[n];
+        for (int i = 0; i < n; i++) titleOf[i] = titleRef.get(keyOf[i]);
+
+        Integer[] byId = new Integer[n];
+        String[] foldedIds = new String[n];
+        for (int i = 0; i < n; i++) {
+            byId[i] = i;
+            foldedIds[i] = fold(all[i].getBookId());
+        }
+        Arrays.sort(byId, Comparator.<Integer, String>comparing(i -> foldedIds[i])
+                .thenComparing(i -> all[i].getBookId()));
+        Integer[] sorted = Arrays.copyOf(byId, n);
+        Arrays.sort(sorted, Comparator.comparing(i -> all[i].getBookId()));
+
+        // title grams: count per gram, then give each gram a contiguous range
+        LongIntMap counts = new LongIntMap(1 << 16);
+        long postings = 0;
+        for (Book b : all) {
+            for (long g : gramsOf(fold(b.getTitle()))) counts.put(g, counts.get(g, 0) + 1);
+        }
+        long[] keys = new long[counts.size()];
+        int[] next = { 0 };
+        counts.forEach((g, c) -> keys[next[0]++] = g);
+        Arrays.sort(keys);
+        int[] gramOffsets = new int[keys.length + 1];
+        LongIntMap slot = new LongIntMap(keys.length);
+        for (int g = 0; g < keys.length; g++) {
+            postings += counts.get(keys[g], 0);
+            checkSize(postings * 4);
+            gramOffsets[g + 1] = (int) postings;
+            slot.put(keys[g], g);
+        }
+
+        // ranked index: each book's word counts, the vocabulary and a contiguous posting range per word
+        int[] docLengths = new int[n];
+        long[] fieldLengths = new long[RankedIndex.FIELDS];
+        Map<String, Integer> docFreq = new HashMap<>();
+        Map<String, String> suggestValue = new HashMap<>();
+        Map<String, Integer> suggestWeight = new HashMap<>();
+        for (int ord = 0; ord < n; ord++) {
+            Map<String, Integer> wordCounts = new HashMap<>();
+            docLengths[ord] = RankedIndex.count(all[ord], wordCounts);
+            for (int f = 0; f < RankedIndex.FIELDS; f++) fieldLengths[f] += RankedIndex.field(docLengths[ord], f);
+            for (String w : wordCounts.keySet()) docFreq.merge(w, 1, Integer::sum);
+            for (String s : new String[] { all[ord].getTitle(), all[ord].getAuthor() }) {
+                if (s == null || s.isBlank()) continue;
+                String k = fold(s.strip());
+                suggestValue.putIfAbsent(k, s.strip());
+                suggestWeight.merge(k, 1, Integer::sum);
+            }
+        }
+        String[] vocabulary = docFreq.keySet().toArray(new String[0]);
+        Arrays.sort(vocabulary);
+        int[] wordOffsets = new int[vocabulary.length + 1];
+        Map<String, Integer> wordSlot = new HashMap<>(vocabulary.length * 2);
+        long wordPostings = 0;
+        for (int i = 0; i < vocabulary.length; i++) {
+            wordPostings += docFreq.get(vocabulary[i]);
+            checkSize(wordPostings * 4);
+            wordOffsets[i + 1] = (int) wordPostings;
+            wordSlot.put(vocabulary[i], i);
+        }
+        String[] suggestKeys = suggestWeight.keySet().toArray(new String[0]);
+        Arrays.sort(suggestKeys);
+        int[] suggestWeights = new int[suggestKeys.length];
+        for (int i = 0; i < suggestKeys.length; i++) suggestWeights[i] = suggestWeight.get(suggestKeys[i]);
+        int leaves = leaves(suggestKeys.length);
+        byte[][] wordBytes = Arrays.stream(vocabulary).map(MappedCatalog::utf8).toArray(byte[][]::new);
+        byte[][] suggestKeyBytes = Arrays.stream(suggestKeys).map(MappedCatalog::utf8).toArray(byte[][]::new);
+        byte[][] suggestValueBytes = Arrays.stream(suggestKeys).map(k -> utf8(suggestValue.get(k))).toArray(byte[][]::new);
+
+        long[] length = new long[Section.values().length];
+        length[Section.TYPES.ordinal()]      = n;
+        length[Section.AUTHOR_OF.ordinal()]  = 4L * n;
+        length[Section.SUBJECT_OF.ordinal()] = 4L * n;
+        length[Section.ID_OFFSETS.ordinal()]    = 4L * (n + 1);
+        length[Section.ID_BYTES.ordinal()]      = bytes(ids);
+        length[Section.TITLE_OFFSETS.ordinal()] = 4L * (n + 1);
+        length[Section.TITLE_BYTES.ordinal()]   = bytes(titles);
+        length[Section.ID_ORDER.ordinal()]      = 4L * n;
+        length[Section.ID_SORTED.ordinal()]     = 4L * n;
+        byte[][] authorBytes = authorDict.stream().map(MappedCatalog::utf8).toArray(byte[][]::new);
+        byte[][] subjectBytes = subjectDict.stream().map(MappedCatalog::utf8).toArray(byte[][]::new);
+        length[Section.AUTHOR_OFFSETS.ordinal()]  = 4L * (authorBytes.length + 1);
+        length[Section.AUTHOR_BYTES.ordinal()]    = bytes(authorBytes);
+        length[Section.SUBJECT_OFFSETS.ordinal()] = 4L * (subjectBytes.length + 1);
+        length[Section.SUBJECT_BYTES.ordinal()]   = bytes(subjectBytes);
+        length[Section.AUTHOR_BOOK_OFFSETS.ordinal()]  = 4L * (authorBytes.length + 1);
+        length[Section.AUTHOR_BOOKS.ordinal()]         = 4L * n;
+        length[Section.SUBJECT_BOOK_OFFSETS.ordinal()] = 4L * (subjectBytes.length + 1);
+        length[Section.SUBJECT_BOOKS.ordinal()]        = 4L * n;
+        length[Section.TITLE_OF.ordinal()]           = 4L * n;
+        length[Section.TITLE_BOOK_OFFSETS.ordinal()] = 4L * (titleKeys.length + 1);
+        length[Section.TITLE_BOOKS.ordinal()]        = 4L * n;
+        length[Section.GRAM_KEYS.ordinal()]    = 8L * keys.length;
+        length[Section.GRAM_OFFSETS.ordinal()] = 4L * gramOffsets.length;
+        length[Section.GRAM_DOCS.ordinal()]    = 4L * postings;
+        length[Section.WORD_OFFSETS.ordinal()]         = 4L * (wordBytes.length + 1);
+        length[Section.WORD_BYTES.ordinal()]           = bytes(wordBytes);
+        length[Section.WORD_POSTING_OFFSETS.ordinal()] = 4L * wordOffsets.length;
+        length[Section.WORD_DOCS.ordinal()]            = 4L * wordPostings;
+        length[Section.WORD_COUNTS.ordinal()]          = 4L * wordPostings;
+        length[Section.DOC_LENGTHS.ordinal()]          = 4L * n;
+        length[Section.SUGGEST_OFFSETS.ordinal()]       = 4L * (suggestKeyBytes.length + 1);
+        length[Section.SUGGEST_BYTES.ordinal()]         = bytes(suggestKeyBytes);
+        length[Section.SUGGEST_VALUE_OFFSETS.ordinal()] = 4L * (suggestValueBytes.length + 1);
+        length[Section.SUGGEST_VALUE_BYTES.ordinal()]   = bytes(suggestValueBytes);
+        length[Section.SUGGEST_WEIGHTS.ordinal()]       = 4L * suggestKeys.length;
+        length[Section.SUGGEST_MAX.ordinal()]           = 8L * leaves;
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long[] offset = new long[length.length];
+            long pos = HEADER;
+            for (int s = 0; s < length.length; s++) {
+                offset[s] = pos;
+                pos += length[s];
+            }
+            MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+            header.putLong(MAGIC).putInt(n).putInt(authorBytes.length).putInt(subjectBytes.length).putInt(titleKeys.length)
+                    .putInt(keys.length)
+                    .putInt(vocabulary.length).putInt(suggestKeys.length);
+            for (long l : fieldLengths) header.putLong(l);
+            for (int s = 0; s < length.length; s++) header.putLong(offset[s]).putLong(length[s]);
+
+            region(ch, offset, length, Section.TYPES).put(types);
+            putInts(region(ch, offset, length, Section.AUTHOR_OF), authorOf);
+            putInts(region(ch, offset, length, Section.SUBJECT_OF), subjectOf);
+            putStrings(region(ch, offset, length, Section.ID_OFFSETS), region(ch, offset, length, Section.ID_BYTES), ids);
+            putStrings(region(ch, offset, length, Section.TITLE_OFFSETS),
+                    region(ch, offset, length, Section.TITLE_BYTES), titles);
+            ByteBuffer order = region(ch, offset, length, Section.ID_ORDER);
+            for (Integer ord : byId) order.putInt(ord);
+            ByteBuffer exact = region(ch, offset, length, Section.ID_SORTED);
+            for (Integer ord : sorted) exact.putInt(ord);
+            putStrings(region(ch, offset, length, Section.AUTHOR_OFFSETS),
+                    region(ch, offset, length, Section.AUTHOR_BYTES), authorBytes);
+            putStrings(region(ch, offset, length, Section.SUBJECT_OFFSETS),
+                    region(ch, offset, length, Section.SUBJECT_BYTES), subjectBytes);
+            putGroups(region(ch, offset, length, Section.AUTHOR_BOOK_OFFSETS),
+                    region(ch, offset, length, Section.AUTHOR_BOOKS), authorOf, authorBytes.length);
+            putGroups(region(ch, offset, length, Section.SUBJECT_BOOK_OFFSETS),
+                    region(ch, offset, length, Section.SUBJECT_BOOKS), subjectOf, subjectBytes.length);
+            putInts(region(ch, offset, length, Section.TITLE_OF), titleOf);
+            putGroups(region(ch, offset, length, Section.TITLE_BOOK_OFFSETS),
+                    region(ch, offset, length, Section.TITLE_BOOKS), titleOf, titleKeys.length);
+
+            ByteBuffer gramKeys = region(ch, offset, length, Section.GRAM_KEYS);
+            for (long k : keys) gramKeys.putLong(k);
+            putInts(region(ch, offset, length, Section.GRAM_OFFSETS), gramOffsets);
+            // ordinals are visited in ascending order, so every posting list comes out sorted
+            ByteBuffer docs = region(ch, offset, length, Section.GRAM_DOCS);
+            int[] cursor = Arrays.copyOf(gramOffsets, keys.length);
+            for (int ord = 0; ord < n; ord++) {
+                for (long g : gramsOf(fold(all[ord].getTitle()))) {
+                    docs.putInt(cursor[slot.get(g, -1)]++ * 4, ord);
+                }
+            }
+
+            putStrings(region(ch, offset, length, Section.WORD_OFFSETS), region(ch, offset, length, Section.WORD_BYTES), wordBytes);
+            putInts(region(ch, offset, length, Section.WORD_POSTING_OFFSETS), wordOffsets);
+            putInts(region(ch, offset, length, Section.DOC_LENGTHS), docLengths);
+            ByteBuffer wordDocs = region(ch, offset, length, Section.WORD_DOCS);
+            ByteBuffer wordCounts = region(ch, offset, length, Section.WORD_COUNTS);
+            int[] wordCursor = Arrays.copyOf(wordOffsets, vocabulary.length);
+            for (int ord = 0; ord < n; ord++) {
+                Map<String, Integer> bookWords = new HashMap<>();
+                RankedIndex.count(all[ord], bookWords);
+                for (Map.Entry<String, Integer> e : bookWords.entrySet()) {
+                    int at = wordCursor[wordSlot.get(e.getKey())]++;
+                    wordDocs.putInt(at * 4, ord);
+                    wordCounts.putInt(at * 4, e.getValue());
+                }
+            }
+            putStrings(region(ch, offset, length, Section.SUGGEST_OFFSETS),
+                    region(ch, offset, length, Section.SUGGEST_BYTES), suggestKeyBytes);
+            putStrings(region(ch, offset, length, Section.SUGGEST_VALUE_OFFSETS),
+                    region(ch, offset, length, Section.SUGGEST_VALUE_BYTES), suggestValueBytes);
+            ByteBuffer weights = region(ch, offset, length, Section.SUGGEST_WEIGHTS);
+            putInts(weights, suggestWeights);
+            putMaxTree(region(ch, offset, length, Section.SUGGEST_MAX), weights, leaves, suggestKeys.length);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int intern(String s, List<String> dict, Map<String, Integer> refs) {
+        String v = s == null ? "" : s;
+        return refs.computeIfAbsent(v, k -> {
+            dict.add(k);
+            return dict.size() - 1;
+        });
+    }
+
+    private static String orEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static byte[] utf8(String s) {
+        return (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long bytes(byte[][] strings) throws IOException {
+        long total = 0;
+        for (byte[] s : strings) total += s.length;
+        checkSize(total);
+        return total;
+    }
+
+    private static void checkSize(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) throw new IOException("Catalog section exceeds 2 GiB");
+    }
+
+    private static ByteBuffer region(FileChannel ch, long[] offset, long[] length, Section s) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_WRITE, offset[s.ordinal()], length[s.ordinal()]);
+    }
+
+    private static void putInts(ByteBuffer out, int[] values) {
+        for (int v : values) out.putInt(v);
+    }
+
+    private static void putStrings(ByteBuffer offsets, ByteBuffer bytes, byte[][] strings) {
+        int pos = 0;
+        offsets.putInt(pos);
+        for (byte[] s : strings) {
+            bytes.put(s);
+            pos += s.length;
+            offsets.putInt(pos);
+        }
+    }
+
+    /** Writes the max-tree over the suggestion weights: node k holds the heaviest position below it, -1 for none. */
+    private static void putMaxTree(ByteBuffer tree, ByteBuffer weights, int leaves, int n) {
+        for (int i = 0; i < leaves; i++) tree.putInt((leaves + i) * 4, i < n ? i : -1);
+        for (int k = leaves - 1; k > 0; k--) {
+            tree.putInt(k * 4, better(weights, tree.getInt(2 * k * 4), tree.getInt((2 * k + 1) * 4)));
+        }
+    }
+
+    /** Writes the ordinals of each dictionary entry as one contiguous, ascending run. */
+    private static void putGroups(ByteBuffer offsets, ByteBuffer ords, int[] refOf, int entries) {
+        int[] start = new int[entries + 1];
+        for (int ref : refOf) start[ref + 1]++;
+        for (int e = 0; e < entries; e++) start[e + 1] += start[e];
+        putInts(offsets, start);
+        int[] cursor = Arrays.copyOf(start, entries);
+        for (int ord = 0; ord < refOf.length; ord++) ords.putInt(cursor[refOf[ord]]++ * 4, ord);
+    }
+}
@@ -0,0 +1,154 @@
+package com.library.index;
+
+import com.library.model.Loan;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Active loans ordered by due date.
+ * <p>
+ * Loans are kept in a concurrent skip list ordered by due date, so overdue loans
+ * are a head view and "due soon" loans a range view: both cost O(log n + k) for
+ * k results instead of testing every active loan. The index registers itself as
+ * the loan's {@link Loan.DueDateListener}, so renewals and manual due-date
+ * changes move the loan to its new position. Queries take no lock.
+ */
+public class OverdueIndex implements Loan.DueDateListener {
+    /**
+     * Position of a loan in due-date order, also used as a paging key.
+     * @param due  due date
+     * @param seq  breaks ties between loans due at the same instant; kept across renewals
+     * @param loan the loan, or null in a search key
+     */
+    public record Entry(LocalDateTime due, long seq, Loan loan) {}
+
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparing(Entry::due).thenComparingLong(Entry::seq);
+
+    private final ConcurrentSkipListSet<Entry> byDueDate = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Loan, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+
+    /**
+     * Starts tracking an active loan.
+     * @param loan the loan to add
+     */
+    public void add(Loan loan) {
+        Entry e = new Entry(loan.getDueDate(), seq.incrementAndGet(), loan);
+        if (entries.putIfAbsent(loan, e) == null) byDueDate.add(e);
+        loan.setDueDateListener(this);
+    }
+
+    /**
+     * Stops tracking a loan, e.g. once it is returned.
+     * @param loan the loan to remove
+     * @return true if the loan was tracked
+     */
+    public boolean remove(Loan loan) {
+        loan.setDueDateListener(null);
+        Entry e = entries.remove(loan);
+        return e != null && byDueDate.remove(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dueDateChanged(Loan loan, LocalDateTime previous) {
+        Entry old = entries.get(loan);
+        if (old == null) return;
+        Entry moved = new Entry(loan.getDueDate(), old.seq(), loan);
+        if (entries.replace(loan, old, moved)) {
+            byDueDate.add(moved);
+            byDueDate.remove(old);
+        }
+    }
+
+    /**
+     * @param now reference time
+     * @return loans due strictly before {@code now}, earliest first
+     */
+    public List<Loan> overdue(LocalDateTime now) {
+        return loans(byDueDate.headSet(new Entry(now, Long.MIN_VALUE, null), false));
+    }
+
+    /**
+     * @param from start of the window (inclusive)
+     * @param to   end of the window (inclusive)
+     * @return loans due within the window, earliest first
+     */
+    public List<Loan> dueBetween(LocalDateTime from, LocalDateTime to) {
+        if (to.isBefore(from)) return new ArrayList<>();
+        return loans(byDueDate.subSet(
+                new Entry(from, Long.MIN_VALUE, null), true,
+                new Entry(to, Long.MAX_VALUE, null), true));
+    }
+
+    /**
+     * Keyset page of {@link #overdue(LocalDateTime)}.
+     * @param now   reference time
+     * @param after entry to continue behind, or null for the first page
+     * @param limit maximum number of entries
+     * @return overdue entries after {@code after}, earliest first
+     */
+    public List<Entry> overdue(LocalDateTime now, Entry after, int limit) {
+        return range(new Entry(LocalDateTime.MIN, Long.MIN_VALUE, null), new Entry(now, Long.MIN_VALUE, null),
+                after, limit);
+    }
+
+    /**
+     * Keyset page of {@link #dueBetween(LocalDateTime, LocalDateTime)}.
+     * @param from  start of the window (inclusive)
+     * @param to    end of the window (inclusive)
+     * @param after entry to continue behind, or null for the first page
+     * @param limit maximum number of entries
+     * @return entries in the window after {@code after}, earliest first
+     */
+    public List<Entry> dueBetween(LocalDateTime from, LocalDateTime to, Entry after, int limit) {
+        return range(new Entry(from, Long.MIN_VALUE, null), new Entry(to, Long.MAX_VALUE, null), after, limit);
+    }
+
+    /**
+     * @param now reference time
+     * @return lazy view of the loans due strictly before {@code now}, earliest first
+     */
+    public Stream<Loan> overdueStream(LocalDateTime now) {
+        return byDueDate.headSet(new Entry(now, Long.MIN_VALUE, null), false).stream().map(Entry::loan);
+    }
+
+    /**
+     * @param from start of the window (inclusive)
+     * @param to   end of the window (exclusive)
+     * @return lazy view of the loans due within the window, earliest first
+     */
+    public Stream<Loan> dueStream(LocalDateTime from, LocalDateTime to) {
+        if (!to.isAfter(from)) return Stream.empty();
+        return byDueDate.subSet(new Entry(from, Long.MIN_VALUE, null), true, new Entry(to, Long.MIN_VALUE, null), false)
+                .stream().map(Entry::loan);
+    }
+
+    /** @return number of tracked loans */
+    public int size() { return entries.size(); }
+
+    /** Walks {@code [from, to)} from behind {@code after}, which may lie outside the range. */
+    private List<Entry> range(Entry from, Entry to, Entry after, int limit) {
+        List<Entry> out = new ArrayList<>(Math.min(limit, 1024));
+        boolean resume = after != null && ORDER.compare(after, from) >= 0;
+        for (Entry e : byDueDate.tailSet(resume ? after : from, !resume)) {
+            if (out.size() == limit || ORDER.compare(e, to) >= 0) break;
+            out.add(e);
+        }
+        return out;
+    }
+
+    private static List<Loan> loans(NavigableSet<Entry> range) {
+        List<Loan> out = new ArrayList<>();
+        for (Entry e : range) out.add(e.loan());
+        return out;
+    }
+}
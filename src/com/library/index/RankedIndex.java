@@ -0,0 +1,435 @@
+package com.library.index;
+
+import com.library.model.Book;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Word index over the title, author and subject of every book, for ranked,
+ * typo-tolerant search and for search-box suggestions.
+ * <p>
+ * Text is folded to lower case and split into words at every character that
+ * is neither a letter nor a digit. Each word has a posting list of the
+ * documents containing it with its count per field, and each document its
+ * word count per field. Queries score documents with BM25F: the counts of a
+ * word are weighted per field (title 3, author 2, subject 1) and normalized
+ * by the field's length against its average before saturating, and the sum
+ * is weighted by how rare the word is. Every query word also matches the
+ * indexed words within one edit (two from six letters on), found by
+ * {@link CompletionTrie#fuzzy} over the vocabulary, with the score divided
+ * by one plus the distance; a document counts the best of them per word.
+ * <p>
+ * Suggestions complete the start of a title or an author name from a
+ * second trie, weighted by the number of books carrying it.
+ * <p>
+ * A {@link MappedCatalog} can be mounted as the first documents, one per
+ * ordinal. Its word index is read from the file rather than built, and
+ * merged into every query with the one on the heap, which then holds only
+ * the books added since. A mounted book that is removed is masked, and its
+ * words and suggestions are counted off, so the scores are the same as if
+ * every book were on the heap.
+ * <p>
+ * Books are addressed by int document numbers chosen by the caller and
+ * increasing as books are added. Thread-safe: writers are exclusive,
+ * queries share a read lock.
+ */
+public class RankedIndex {
+    /**
+     * A scored document.
+     * @param doc   document number
+     * @param score BM25F score, higher is better
+     */
+    public record Hit(int doc, double score) {}
+
+    static final double K1 = 1.2, B = 0.75;
+    private static final double[] WEIGHTS = { 3, 2, 1 };       // per BookIndex.Field
+    static final int FIELDS = WEIGHTS.length;
+    private static final int BITS = 10, MASK = (1 << BITS) - 1;
+
+    private final Map<String, Postings> words = new HashMap<>();
+    private final CompletionTrie vocabulary = new CompletionTrie();    // word → documents containing it
+    private final CompletionTrie suggestions = new CompletionTrie();   // folded title or author → books
+    private final long[] totalLength = new long[FIELDS];
+    private int[] lengths = new int[16];                                // doc - base → words per field, packed
+    private int docs;
+    private MappedCatalog mounted;                                      // documents 0 .. base - 1
+    private int base;
+    private final Bitmap masked = new Bitmap();                         // mounted documents removed
+    private final Map<String, Integer> maskedDocs = new HashMap<>();    // word → masked documents containing it
+    private final Map<String, Integer> maskedKeys = new HashMap<>();    // suggestion key → masked books carrying it
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Documents containing one word, ascending, with the word's count per field packed into an int. */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] counts = new int[2];
+        int size;
+
+        void append(int doc, int packed) {
+            if (size > 0 && docs[size - 1] >= doc) {         // out of order: insert in place
+                int i = Arrays.binarySearch(docs, 0, size, doc);
+                if (i >= 0) {
+                    counts[i] = packed;
+                    return;
+                }
+                grow();
+                i = -i - 1;
+                System.arraycopy(docs, i, docs, i + 1, size - i);
+                System.arraycopy(counts, i, counts, i + 1, size - i);
+                docs[i] = doc;
+                counts[i] = packed;
+                size++;
+                return;
+            }
+            grow();
+            docs[size] = doc;
+            counts[size++] = packed;
+        }
+
+        void grow() {
+            if (size < docs.length) return;
+            docs = Arrays.copyOf(docs, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+
+        boolean remove(int doc) {
+            int i = Arrays.binarySearch(docs, 0, size, doc);
+            if (i < 0) return false;
+            System.arraycopy(docs, i + 1, docs, i, size - i - 1);
+            System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+
+    /**
+     * Indexes a book under a document number not in use.
+     * @param doc document number, not negative
+     * @param b   the book
+     */
+    public void add(int doc, Book b) {
+        lock.writeLock().lock();
+        try {
+            put(doc, b);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Serves the books of a catalog file as documents 0 to its size - 1, from
+     * the word index stored in the file; nothing is read per book.
+     * @param m the catalog file
+     * @throws IllegalStateException if books were indexed already
+     */
+    public void mount(MappedCatalog m) {
+        lock.writeLock().lock();
+        try {
+            if (docs > 0 || mounted != null) throw new IllegalStateException("Mount into an empty index");
+            mounted = m;
+            base = m.size();
+            docs = m.size();
+            for (int f = 0; f < FIELDS; f++) totalLength[f] = m.fieldLength(f);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(int doc, Book b) {
+        Map<String, Integer> counts = new HashMap<>();
+        int packedLength = count(b, counts);
+        int at = doc - base;
+        if (at >= lengths.length) lengths = Arrays.copyOf(lengths, Math.max(at + 1, lengths.length * 2));
+        lengths[at] = packedLength;
+        for (int f = 0; f < FIELDS; f++) totalLength[f] += field(packedLength, f);
+        docs++;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            Postings p = words.computeIfAbsent(e.getKey(), k -> new Postings());
+            p.append(doc, e.getValue());
+            vocabulary.add(e.getKey(), e.getKey(), 1);
+        }
+        for (String s : new String[] { b.getTitle(), b.getAuthor() }) {
+            if (s != null && !s.isBlank()) suggestions.add(BookIndex.fold(s.strip()), s.strip(), 1);
+        }
+    }
+
+    /**
+     * Drops a document.
+     * @param doc document number
+     * @param b   the book it was indexed with
+     */
+    public void remove(int doc, Book b) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Integer> counts = new HashMap<>();
+            count(b, counts);
+            if (doc < base) {
+                mask(doc, b, counts);
+                return;
+            }
+            boolean found = false;
+            for (String w : counts.keySet()) {
+                Postings p = words.get(w);
+                if (p == null || !p.remove(doc)) continue;
+                found = true;
+                if (p.size == 0) words.remove(w);
+                vocabulary.add(w, w, -1);
+            }
+            if (!found) return;
+            for (int f = 0; f < FIELDS; f++) totalLength[f] -= field(lengths[doc - base], f);
+            lengths[doc - base] = 0;
+            docs--;
+            for (String s : new String[] { b.getTitle(), b.getAuthor() }) {
+                if (s != null && !s.isBlank()) suggestions.add(BookIndex.fold(s.strip()), s.strip(), -1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Counts off a removed mounted book, which stays in the file. */
+    private void mask(int doc, Book b, Map<String, Integer> counts) {
+        if (!masked.add(doc)) return;
+        for (String w : counts.keySet()) maskedDocs.merge(w, 1, Integer::sum);
+        int len = mounted.docLength(doc);
+        for (int f = 0; f < FIELDS; f++) totalLength[f] -= field(len, f);
+        docs--;
+        for (String s : new String[] { b.getTitle(), b.getAuthor() }) {
+            if (s != null && !s.isBlank()) maskedKeys.merge(BookIndex.fold(s.strip()), 1, Integer::sum);
+        }
+    }
+
+    /** @return number of indexed documents */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranks the documents matching any word of a query, allowing typos.
+     * @param query words to look for
+     * @param limit maximum number of hits
+     * @return the best hits, highest score first, ties by document number
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> terms = words(query);
+        lock.readLock().lock();
+        try {
+            if (docs == 0 || terms.isEmpty()) return List.of();
+            double[] avg = new double[FIELDS];
+            for (int f = 0; f < FIELDS; f++) avg[f] = Math.max(1, (double) totalLength[f] / docs);
+            long[] all = new long[0];
+            int n = 0;
+            for (String term : terms) {
+                long[] best = best(term, avg);
+                if (n + best.length > all.length) all = Arrays.copyOf(all, Math.max(all.length * 2, n + best.length));
+                System.arraycopy(best, 0, all, n, best.length);
+                n += best.length;
+            }
+            // sum per document, then keep the best few
+            Arrays.sort(all, 0, n);
+            PriorityQueue<Hit> top = new PriorityQueue<>(RankedIndex::worseFirst);
+            for (int i = 0; i < n; ) {
+                int doc = (int) (all[i] >>> 32);
+                double score = 0;
+                for (; i < n && (int) (all[i] >>> 32) == doc; i++) score += Float.intBitsToFloat((int) all[i]);
+                top.add(new Hit(doc, score));
+                if (top.size() > limit) top.poll();
+            }
+            List<Hit> out = new ArrayList<>(top);
+            out.sort((a, b) -> worseFirst(b, a));
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int worseFirst(Hit a, Hit b) {
+        int c = Double.compare(a.score, b.score);
+        return c != 0 ? c : Integer.compare(b.doc, a.doc);
+    }
+
+    /**
+     * Scores the documents of one query word and its near misses.
+     * @return per document its best score, as {@code doc << 32 | floatBits(score)}, ascending
+     */
+    private long[] best(String term, double[] avg) {
+        MappedCatalog m = mounted;
+        List<CompletionTrie.Match> matches = matches(term);
+        int[] fileWord = new int[matches.size()], df = new int[matches.size()];
+        int total = 0;
+        for (int k = 0; k < matches.size(); k++) {
+            String w = matches.get(k).key();
+            Postings p = words.get(w);
+            fileWord[k] = m == null ? -1 : m.word(w);
+            int inFile = fileWord[k] < 0 ? 0 : m.postingsTo(fileWord[k]) - m.postingsFrom(fileWord[k]);
+            df[k] = (p == null ? 0 : p.size) + inFile - maskedDocs.getOrDefault(w, 0);
+            total += (p == null ? 0 : p.size) + inFile;
+        }
+        long[] scored = new long[total];
+        int n = 0;
+        for (int k = 0; k < matches.size(); k++) {
+            if (df[k] == 0) continue;
+            double idf = Math.log(1 + (docs - df[k] + 0.5) / (df[k] + 0.5));
+            double penalty = 1.0 / (1 + matches.get(k).distance());
+            if (fileWord[k] >= 0) {
+                boolean anyMasked = !masked.isEmpty();
+                for (int i = m.postingsFrom(fileWord[k]), to = m.postingsTo(fileWord[k]); i < to; i++) {
+                    int doc = m.postingDoc(i);
+                    if (anyMasked && masked.contains(doc)) continue;
+                    scored[n++] = score(doc, m.postingCounts(i), m.docLength(doc), idf, penalty, avg);
+                }
+            }
+            Postings p = words.get(matches.get(k).key());
+            for (int i = 0; p != null && i < p.size; i++) {
+                scored[n++] = score(p.docs[i], p.counts[i], lengths[p.docs[i] - base], idf, penalty, avg);
+            }
+        }
+        Arrays.sort(scored, 0, n);
+        int distinct = 0;                       // positive floats order like their bits: keep each doc's last
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && (scored[i] >>> 32) == (scored[i + 1] >>> 32)) continue;
+            scored[distinct++] = scored[i];
+        }
+        return Arrays.copyOf(scored, distinct);
+    }
+
+    /** @return the indexed words a query word matches: itself if short, else those within its typo distance */
+    private List<CompletionTrie.Match> matches(String term) {
+        MappedCatalog m = mounted;
+        if (term.length() < 3) {
+            boolean known = words.containsKey(term) || m != null && m.word(term) >= 0;
+            return known ? List.of(new CompletionTrie.Match(term, 0)) : List.of();
+        }
+        int max = term.length() < 6 ? 1 : 2;
+        List<CompletionTrie.Match> own = vocabulary.fuzzy(term, max);
+        if (m == null) return own;
+        Map<String, CompletionTrie.Match> all = new TreeMap<>();
+        for (CompletionTrie.Match match : m.fuzzyWords(term, max)) all.put(match.key(), match);
+        for (CompletionTrie.Match match : own) all.put(match.key(), match);
+        return List.copyOf(all.values());
+    }
+
+    /** @return a posting's BM25F score as {@code doc << 32 | floatBits(score)} */
+    private static long score(int doc, int counts, int len, double idf, double penalty, double[] avg) {
+        double tf = 0;
+        for (int f = 0; f < FIELDS; f++) {
+            int c = field(counts, f);
+            if (c > 0) tf += WEIGHTS[f] * c / (1 - B + B * field(len, f) / avg[f]);
+        }
+        float score = (float) (penalty * idf * tf * (K1 + 1) / (K1 + tf));
+        return (long) doc << 32 | Float.floatToIntBits(score);
+    }
+
+    /**
+     * Completes the start of a title or an author name.
+     * @param prefix what was typed so far
+     * @param limit  maximum number of suggestions
+     * @return titles and names starting with the prefix (ignoring case), those
+     *         of the most books first
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String p = BookIndex.fold(prefix.stripLeading());
+        if (p.isEmpty()) return List.of();
+        lock.readLock().lock();
+        try {
+            return mounted == null ? suggestions.complete(p, limit) : merged(p, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Completes from the file and the heap together. A key's weight is its
+     * weight in the file, less its masked books, plus its weight on the heap.
+     * Both sides are read heaviest first, doubling the number read until the
+     * last result comes before any key neither side has returned yet: such a
+     * key weighs at most the sum of the last weights read, and if it weighs
+     * that much it sorts after the last keys read.
+     */
+    private List<String> merged(String prefix, int limit) {
+        MappedCatalog m = mounted;
+        for (int n = limit; ; n *= 2) {
+            List<CompletionTrie.Entry> file = m.suggestions(prefix, n), own = suggestions.entries(prefix, n);
+            Set<String> keys = new HashSet<>();
+            for (CompletionTrie.Entry e : file) keys.add(e.key());
+            for (CompletionTrie.Entry e : own) keys.add(e.key());
+            List<CompletionTrie.Entry> ranked = new ArrayList<>();
+            for (String key : keys) {
+                CompletionTrie.Entry e = merge(key, m.suggestion(key), suggestions.get(key));
+                if (e.weight() > 0) ranked.add(e);
+            }
+            ranked.sort(Comparator.comparingInt(CompletionTrie.Entry::weight).reversed()
+                    .thenComparing(CompletionTrie.Entry::key));
+            int unseen = 0;
+            String after = "";
+            for (List<CompletionTrie.Entry> side : List.of(file, own)) {
+                if (side.size() < n) continue;                  // read to the end
+                CompletionTrie.Entry last = side.get(n - 1);
+                unseen += last.weight();
+                if (last.key().compareTo(after) > 0) after = last.key();
+            }
+            CompletionTrie.Entry worst = ranked.size() >= limit ? ranked.get(limit - 1) : null;
+            if (file.size() < n && own.size() < n || worst != null && (worst.weight() > unseen
+                    || worst.weight() == unseen && worst.key().compareTo(after) <= 0)) {
+                List<String> out = new ArrayList<>(Math.min(limit, ranked.size()));
+                for (int i = 0; i < ranked.size() && i < limit; i++) out.add(ranked.get(i).value());
+                return out;
+            }
+        }
+    }
+
+    /**
+     * @return a key with its weights in the file (less masked books) and on
+     *         the heap summed; the file's value while it has books, else the heap's
+     */
+    private CompletionTrie.Entry merge(String key, CompletionTrie.Entry file, CompletionTrie.Entry own) {
+        int inFile = file == null ? 0 : file.weight() - maskedKeys.getOrDefault(key, 0);
+        int weight = inFile + (own == null ? 0 : own.weight());
+        return new CompletionTrie.Entry(key, inFile > 0 ? file.value() : own == null ? null : own.value(), weight);
+    }
+
+    /**
+     * Counts a book's words per field.
+     * @return the number of words per field, packed
+     */
+    static int count(Book b, Map<String, Integer> counts) {
+        String[] text = { b.getTitle(), b.getAuthor(), b.getSubject() };
+        int packedLength = 0;
+        for (int f = 0; f < FIELDS; f++) {
+            List<String> ws = words(text[f]);
+            packedLength |= Math.min(ws.size(), MASK) << (f * BITS);
+            int at = f;
+            for (String w : ws) {
+                counts.merge(w, 1 << (f * BITS), (a, c) -> field(a, at) == MASK ? a : a + c);
+            }
+        }
+        return packedLength;
+    }
+
+    static int field(int packed, int f) {
+        return (packed >>> (f * BITS)) & MASK;
+    }
+
+    /** @return the folded words of a text, in order */
+    static List<String> words(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        String s = BookIndex.fold(text);
+        int start = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) {
+                out.add(s.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
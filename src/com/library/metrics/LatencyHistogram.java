@@ -0,0 +1,110 @@
+package com.library.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram.
+ * <p>
+ * Values below 64 ns get a bucket each; above that every power of two is cut
+ * into 32 buckets, so a bucket is at most about 3% wide at any magnitude up
+ * to {@code Long.MAX_VALUE}. The 1,888 counters are fixed when the histogram
+ * is created, so recording is an index computation plus one atomic
+ * increment and never allocates. Percentiles report the upper end of the
+ * bucket they fall into. Thread-safe; readers see a weakly consistent view.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;                  // per power of two
+    private static final int LINEAR = SUB_BUCKETS * 2;                     // values below get their own bucket
+    private static final int BUCKETS = (63 - SUB_BITS) * SUB_BUCKETS + LINEAR - SUB_BUCKETS;
+
+    /**
+     * Summary of a histogram; latencies in nanoseconds.
+     * @param count number of values recorded
+     * @param sum   exact sum of the values
+     * @param max   exact maximum, or 0 if empty
+     */
+    public record Snapshot(long count, long sum, long p50, long p90, long p99, long p999, long max) {
+        /** @return exact mean, or 0 if empty */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     * @param nanos the latency; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(nanos, 0);
+        counts.getAndIncrement(bucket(v));
+        sum.add(v);
+        for (long m = max.get(); v > m && !max.compareAndSet(m, v); m = max.get()) { }
+    }
+
+    /** @return number of values recorded */
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the smallest bucket bound at or below which that share of the values lie, or 0 if empty
+     */
+    public long percentile(double percentile) {
+        long[] c = copy();
+        long total = 0;
+        for (long n : c) total += n;
+        return percentile(c, total, percentile);
+    }
+
+    /** @return count, mean, common percentiles and maximum from one pass over the buckets */
+    public Snapshot snapshot() {
+        long[] c = copy();
+        long total = 0;
+        for (long n : c) total += n;
+        if (total == 0) return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+        return new Snapshot(total, sum.sum(), percentile(c, total, 50), percentile(c, total, 90),
+                percentile(c, total, 99), percentile(c, total, 99.9), max.get());
+    }
+
+    private long[] copy() {
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) c[i] = counts.get(i);
+        return c;
+    }
+
+    private long percentile(long[] c, long total, double percentile) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < c.length; i++) {
+            seen += c[i];
+            if (seen >= rank) return Math.min(highest(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** @return bucket of a non-negative value */
+    static int bucket(long v) {
+        if (v < LINEAR) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (v >>> shift);
+    }
+
+    /** @return largest value that falls into a bucket */
+    static long highest(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return (sub << shift) + (1L << shift) - 1;                          // wraps to MAX_VALUE for the last one
+    }
+}
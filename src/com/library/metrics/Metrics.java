@@ -0,0 +1,173 @@
+package com.library.metrics;
+
+import com.library.CirculationResult;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Counters and latency histograms of the library's operations.
+ * <p>
+ * Every call is counted under its outcome, a {@link CirculationResult}, so
+ * failures keep their reason (borrow limit, hold order, not found, already
+ * issued, ...). Latency is measured for a random sample of calls, by default
+ * one in {@value #DEFAULT_SAMPLING}: reading the clock costs more than the
+ * counting (about 40 ns per read on a virtual machine), and sampling keeps the
+ * average cost per call well below that while the percentiles stay unbiased.
+ * <p>
+ * The numbers are exposed through JMX ({@link #register}) and as text in the
+ * Prometheus exposition format ({@link #writeText}). Thread-safe.
+ */
+public class Metrics {
+    /** Instrumented operations. */
+    public enum Op { ISSUE, ISSUE_BATCH, RETURN, RETURN_BATCH, RENEW, PLACE_HOLD, SEARCH }
+
+    /** Default share of calls whose latency is measured: one in this many. */
+    public static final int DEFAULT_SAMPLING = 8;
+    /** Start time of a call whose latency is not measured. */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final Op[] OPS = Op.values();
+
+    private final OperationStats[] stats = new OperationStats[OPS.length];
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile int sampleMask = DEFAULT_SAMPLING - 1;
+
+    public Metrics() {
+        for (Op op : OPS) stats[op.ordinal()] = new OperationStats(op.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Marks the start of a call.
+     * @return the clock reading if this call is sampled, else {@link #NOT_TIMED}
+     */
+    public long start() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Counts a finished call and records its latency if it was sampled.
+     * @param op     the operation
+     * @param result its outcome
+     * @param start  what {@link #start()} returned
+     */
+    public void record(Op op, CirculationResult result, long start) {
+        OperationStats s = stats[op.ordinal()];
+        s.add(result);
+        if (start != NOT_TIMED) s.latency().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Counts a finished batch call: one outcome per item, one latency for the call.
+     * @param op      the operation
+     * @param results outcome of each item
+     * @param start   what {@link #start()} returned
+     */
+    public void record(Op op, CirculationResult[] results, long start) {
+        OperationStats s = stats[op.ordinal()];
+        for (CirculationResult r : results) s.add(r);
+        if (start != NOT_TIMED) s.latency().record(System.nanoTime() - start);
+    }
+
+    /**
+     * @param op an operation
+     * @return its counters and histogram
+     */
+    public OperationStats stats(Op op) {
+        return stats[op.ordinal()];
+    }
+
+    /**
+     * @param every measure the latency of one in this many calls; a power of two, 1 for every call
+     */
+    public void setSampling(int every) {
+        if (every < 1 || Integer.bitCount(every) != 1) throw new IllegalArgumentException("sampling must be a power of two");
+        sampleMask = every - 1;
+    }
+
+    /**
+     * Registers one MXBean per operation with the platform MBean server, as
+     * {@code com.library:type=Operation,library=<name>,op=<op>}.
+     * @param library distinguishes libraries in one JVM
+     * @throws IllegalStateException if the names are already taken
+     */
+    public synchronized void register(String library) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationStats s : stats) {
+                ObjectName name = new ObjectName("com.library:type=Operation,library=" + ObjectName.quote(library)
+                        + ",op=" + s.name());
+                server.registerMBean(s, name);
+                registered.add(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics for " + library, e);
+        }
+    }
+
+    /** Removes the MXBeans added by {@link #register}. */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Writes every counter and latency summary in the Prometheus text format.
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void writeText(Appendable out) throws IOException {
+        out.append("# TYPE library_calls_total counter\n");
+        for (OperationStats s : stats) {
+            for (CirculationResult r : CirculationResult.values()) {
+                long n = s.count(r);
+                if (n > 0) line(out, "library_calls_total", s.name(), "result", r.name(), n);
+            }
+        }
+        out.append("# TYPE library_latency_nanos summary\n");
+        for (OperationStats s : stats) {
+            LatencyHistogram.Snapshot h = s.latency().snapshot();
+            line(out, "library_latency_nanos", s.name(), "quantile", "0.5", h.p50());
+            line(out, "library_latency_nanos", s.name(), "quantile", "0.9", h.p90());
+            line(out, "library_latency_nanos", s.name(), "quantile", "0.99", h.p99());
+            line(out, "library_latency_nanos", s.name(), "quantile", "0.999", h.p999());
+            line(out, "library_latency_nanos_sum", s.name(), null, null, h.sum());
+            line(out, "library_latency_nanos_count", s.name(), null, null, h.count());
+        }
+        out.append("# TYPE library_latency_nanos_max gauge\n");
+        for (OperationStats s : stats) line(out, "library_latency_nanos_max", s.name(), null, null, s.latency().snapshot().max());
+    }
+
+    /** @return {@link #writeText} as a string */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeText(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);                // a StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    private static void line(Appendable out, String metric, String op, String label, String value, long n)
+            throws IOException {
+        out.append(metric).append("{op=\"").append(op).append('"');
+        if (label != null) out.append(',').append(label).append("=\"").append(value).append('"');
+        out.append("} ").append(Long.toString(n)).append('\n');
+    }
+}
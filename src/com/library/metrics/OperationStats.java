@@ -0,0 +1,82 @@
+package com.library.metrics;
+
+import com.library.CirculationResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts per outcome and a latency histogram for one library operation.
+ * Thread-safe.
+ */
+public class OperationStats implements OperationStatsMXBean {
+    private static final CirculationResult[] RESULTS = CirculationResult.values();
+
+    private final String name;
+    private final LongAdder[] results = new LongAdder[RESULTS.length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    OperationStats(String name) {
+        this.name = name;
+        for (int i = 0; i < results.length; i++) results[i] = new LongAdder();
+    }
+
+    /** @return the operation's name, e.g. {@code issue} */
+    public String name() { return name; }
+
+    /** @return the latency histogram of the sampled calls */
+    public LatencyHistogram latency() { return latency; }
+
+    /**
+     * @param r an outcome
+     * @return number of calls with that outcome
+     */
+    public long count(CirculationResult r) {
+        return results[r.ordinal()].sum();
+    }
+
+    void add(CirculationResult r) {
+        results[r.ordinal()].increment();
+    }
+
+    @Override
+    public long getCalls() {
+        long n = 0;
+        for (LongAdder a : results) n += a.sum();
+        return n;
+    }
+
+    @Override
+    public long getFailures() {
+        return getCalls() - count(CirculationResult.OK);
+    }
+
+    @Override
+    public Map<String, Long> getResults() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (CirculationResult r : RESULTS) {
+            long n = count(r);
+            if (n > 0) out.put(r.name(), n);
+        }
+        return out;
+    }
+
+    @Override
+    public long getTimedCalls() { return latency.count(); }
+
+    @Override
+    public double getMeanNanos() { return latency.snapshot().mean(); }
+
+    @Override
+    public long getP50Nanos() { return latency.percentile(50); }
+
+    @Override
+    public long getP99Nanos() { return latency.percentile(99); }
+
+    @Override
+    public long getP999Nanos() { return latency.percentile(99.9); }
+
+    @Override
+    public long getMaxNanos() { return latency.snapshot().max(); }
+}
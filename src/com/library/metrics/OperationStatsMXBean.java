@@ -0,0 +1,36 @@
+package com.library.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of one library operation, registered by {@link Metrics#register}.
+ * Latencies are in nanoseconds and cover the sampled calls only.
+ */
+public interface OperationStatsMXBean {
+    /** @return number of calls */
+    long getCalls();
+
+    /** @return number of calls that did not succeed */
+    long getFailures();
+
+    /** @return number of calls per outcome, e.g. {@code OK}, {@code LIMIT_REACHED} */
+    Map<String, Long> getResults();
+
+    /** @return number of calls whose latency was recorded */
+    long getTimedCalls();
+
+    /** @return mean latency */
+    double getMeanNanos();
+
+    /** @return median latency */
+    long getP50Nanos();
+
+    /** @return 99th percentile latency */
+    long getP99Nanos();
+
+    /** @return 99.9th percentile latency */
+    long getP999Nanos();
+
+    /** @return highest latency recorded */
+    long getMaxNanos();
+}
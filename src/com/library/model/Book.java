@@ -4,14 +4,19 @@ import java.time.Duration;
 
 /**
  * Abstract representation of a library book.
+ * <p>
+ * Authors and subjects repeat across many books, so they are taken from a
+ * shared {@link StringPool}: a book refers to the pooled name instead of
+ * keeping its own copy.
  */
 public abstract class Book {
+    private static final StringPool NAMES = new StringPool();
+
     protected String bookId;
     protected String title;
     protected String author;
     protected String subject;
-    protected boolean isIssued = false;
-    protected Loan currentLoan;
+    protected volatile Loan currentLoan;               // null while on the shelf; no separate issued flag
 
     /**
      * Constructs a Book.
@@ -23,8 +28,8 @@ public abstract class Book {
     public Book(String bookId, String title, String author, String subject) {
         this.bookId  = bookId;
         this.title   = title;
-        this.author  = author;
-        this.subject = subject;
+        this.author  = NAMES.intern(author);
+        this.subject = NAMES.intern(subject);
     }
 
     /** @return the unique book ID */
@@ -40,7 +45,10 @@ public abstract class Book {
     public String getSubject() { return subject; }
 
     /** @return true if currently issued */
-    public boolean isIssued() { return isIssued; }
+    public boolean isIssued() { return currentLoan != null; }
+
+    /** @return the open loan for this book, or null if not issued */
+    public Loan getCurrentLoan() { return currentLoan; }
 
     /**
      * @return loan period for this book type
@@ -52,7 +60,6 @@ public abstract class Book {
      * @param loan the Loan object
      */
     public void issue(Loan loan) {
-        this.isIssued    = true;
         this.currentLoan = loan;
     }
 
@@ -60,7 +67,6 @@ public abstract class Book {
      * Marks this book as returned.
      */
     public void returned() {
-        this.isIssued    = false;
         this.currentLoan = null;
     }
 
@@ -71,6 +77,6 @@ public abstract class Book {
         System.out.printf("[%s] %s by %s (ID: %s)%s%n",
                 getClass().getSimpleName(),
                 title, author, bookId,
-                isIssued ? " [OUT]" : "");
+                isIssued() ? " [OUT]" : "");
     }
 }
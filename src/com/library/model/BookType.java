@@ -0,0 +1,52 @@
+package com.library.model;
+
+/**
+ * Concrete book types, with a stable one-byte code for storage formats.
+ */
+public enum BookType {
+    TEXTBOOK(1), NOVEL(2), REFERENCE(3);
+
+    private final byte code;
+
+    BookType(int code) { this.code = (byte) code; }
+
+    /** @return the storage code of this type */
+    public byte code() { return code; }
+
+    /**
+     * @param code a storage code
+     * @return the matching type
+     * @throws IllegalArgumentException if the code is unknown
+     */
+    public static BookType ofCode(byte code) {
+        for (BookType t : values()) if (t.code == code) return t;
+        throw new IllegalArgumentException("Unknown book type code: " + code);
+    }
+
+    /**
+     * @param b a book
+     * @return the type of that book
+     */
+    public static BookType of(Book b) {
+        if (b instanceof TextBook) return TEXTBOOK;
+        if (b instanceof Novel)    return NOVEL;
+        if (b instanceof Reference) return REFERENCE;
+        throw new IllegalArgumentException("Unsupported book class: " + b.getClass().getName());
+    }
+
+    /**
+     * Creates a book of this type.
+     * @param bookId  unique book ID
+     * @param title   title
+     * @param author  author name
+     * @param subject subject/genre
+     * @return the new Book
+     */
+    public Book create(String bookId, String title, String author, String subject) {
+        return switch (this) {
+            case TEXTBOOK  -> new TextBook(bookId, title, author, subject);
+            case NOVEL     -> new Novel(bookId, title, author, subject);
+            case REFERENCE -> new Reference(bookId, title, author, subject);
+        };
+    }
+}
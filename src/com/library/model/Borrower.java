@@ -1,14 +1,15 @@
 package com.library.model;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A library patron who can place holds and borrow books.
  */
 public class Borrower extends Person {
-    private final List<Loan> loans = new ArrayList<>();
-    private final List<HoldRequest> holds = new ArrayList<>();
+    // both lists stay short (bounded by the borrow limit / open holds), so copy-on-write is cheap
+    private final List<Loan> loans = new CopyOnWriteArrayList<>();
+    private final List<HoldRequest> holds = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a Borrower.
@@ -30,7 +31,7 @@ public class Borrower extends Person {
     }
 
     /**
-     * @return list of active and past loans
+     * @return list of active loans; closed loans move to the library's loan history
      */
     public List<Loan> getLoans() {
         return loans;
@@ -3,12 +3,14 @@ package com.library.model;
 import java.time.LocalDateTime;
 
 /**
- * Represents a patron's reservation request for a book.
+ * Represents a patron's reservation request for a title, placed through one
+ * of its copies.
  */
 public class HoldRequest {
     private final LocalDateTime requestDate;
     private final Borrower borrower;
-    private final Book book;
+    private volatile Book book;
+    private volatile LocalDateTime pickupBy;
 
     /**
      * Constructs a HoldRequest.
@@ -16,7 +18,17 @@ public class HoldRequest {
      * @param book     which book is requested
      */
     public HoldRequest(Borrower borrower, Book book) {
-        this.requestDate = LocalDateTime.now();
+        this(borrower, book, LocalDateTime.now());
+    }
+
+    /**
+     * Constructs a HoldRequest placed at a given time.
+     * @param borrower    who placed the hold
+     * @param book        which book is requested
+     * @param requestDate when the hold was placed
+     */
+    public HoldRequest(Borrower borrower, Book book, LocalDateTime requestDate) {
+        this.requestDate = requestDate;
         this.borrower    = borrower;
         this.book        = book;
     }
@@ -27,6 +39,25 @@ public class HoldRequest {
     /** @return the borrower who requested */
     public Borrower getBorrower() { return borrower; }
 
-    /** @return the book requested */
+    /** @return the copy requested, or the copy set aside for this borrower while there is one */
     public Book getBook() { return book; }
+
+    /** @return end of the pickup window while the book waits for this borrower, else null */
+    public LocalDateTime getPickupBy() { return pickupBy; }
+
+    /**
+     * Marks the book as set aside for this borrower.
+     * @param pickupBy end of the pickup window, or null when it is no longer set aside
+     */
+    public void setPickupBy(LocalDateTime pickupBy) { this.pickupBy = pickupBy; }
+
+    /**
+     * Marks a copy of the title as set aside for this borrower.
+     * @param copy     the copy waiting on the shelf
+     * @param pickupBy end of the pickup window
+     */
+    public void setAside(Book copy, LocalDateTime pickupBy) {
+        this.book     = copy;
+        this.pickupBy = pickupBy;
+    }
 }
@@ -1,18 +1,38 @@
 package com.library.model;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * Tracks a book checkout transaction.
+ * <p>
+ * Times are kept as epoch seconds of the local date-time read as UTC, the
+ * same encoding as the loan history, rather than as {@link LocalDateTime}
+ * objects, which take three objects each; the getters build them on demand.
+ * Sub-second parts are dropped.
  */
 public class Loan {
-    private final LocalDateTime issueDate;
-    private LocalDateTime dueDate;
-    private LocalDateTime returnDate;
+    private static final long OPEN = Long.MIN_VALUE;         // return time of a loan not returned
+
+    /**
+     * Callback for indexes that order loans by due date.
+     */
+    public interface DueDateListener {
+        /**
+         * Called after the due date of a loan has changed.
+         * @param loan     the loan whose due date moved
+         * @param previous the due date before the change
+         */
+        void dueDateChanged(Loan loan, LocalDateTime previous);
+    }
+
+    private final long issued;
+    private volatile long due;
+    private volatile long returned = OPEN;
     private final Borrower borrower;
     private final Book book;
     private final Librarian processedBy;
+    private volatile DueDateListener dueDateListener;
 
     /**
      * Creates a new Loan.
@@ -21,26 +41,78 @@ public class Loan {
      * @param processedBy librarian issuing the loan
      */
     public Loan(Borrower borrower, Book book, Librarian processedBy) {
-        this.issueDate   = LocalDateTime.now();
-        this.dueDate     = issueDate.plus(book.getLoanPeriod());
+        this(borrower, book, processedBy, LocalDateTime.now());
+    }
+
+    /**
+     * Creates a Loan issued at a given time (e.g. when replaying a journal).
+     * @param borrower    who borrows
+     * @param book        book being borrowed
+     * @param processedBy librarian issuing the loan
+     * @param issueDate   checkout timestamp
+     */
+    public Loan(Borrower borrower, Book book, Librarian processedBy, LocalDateTime issueDate) {
+        this.issued      = seconds(issueDate);
+        this.due         = issued + book.getLoanPeriod().toSeconds();
         this.borrower    = borrower;
         this.book        = book;
         this.processedBy = processedBy;
     }
 
+    /**
+     * Recreates a returned loan, e.g. from the history store; the book is left untouched.
+     * @param borrower    who borrowed
+     * @param book        book that was borrowed
+     * @param processedBy librarian who issued the loan
+     * @param issueDate   checkout timestamp
+     * @param dueDate     final due date
+     * @param returnDate  return timestamp
+     */
+    public Loan(Borrower borrower, Book book, Librarian processedBy,
+                LocalDateTime issueDate, LocalDateTime dueDate, LocalDateTime returnDate) {
+        this(borrower, book, processedBy, issueDate);
+        this.due      = seconds(dueDate);
+        this.returned = returnDate == null ? OPEN : seconds(returnDate);
+    }
+
+    private static long seconds(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime time(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+
     /** @return true if past due and not returned */
     public boolean isOverdue() {
-        return returnDate == null && LocalDateTime.now().isAfter(dueDate);
+        return isOverdue(LocalDateTime.now());
+    }
+
+    /**
+     * @param now reference time
+     * @return true if past due at {@code now} and not returned
+     */
+    public boolean isOverdue(LocalDateTime now) {
+        long s = seconds(now);
+        return returned == OPEN && (s > due || s == due && now.getNano() > 0);
     }
 
     /** Extends the due date by one loan period */
     public void renew() {
-        this.dueDate = this.dueDate.plus(book.getLoanPeriod());
+        setDueDate(time(due + book.getLoanPeriod().toSeconds()));
     }
 
     /** Marks the loan as returned and updates the book */
     public void close() {
-        this.returnDate = LocalDateTime.now();
+        close(LocalDateTime.now());
+    }
+
+    /**
+     * Marks the loan as returned at a given time and updates the book.
+     * @param returnDate return timestamp
+     */
+    public void close(LocalDateTime returnDate) {
+        this.returned = seconds(returnDate);
         book.returned();
     }
 
@@ -50,21 +122,41 @@ public class Loan {
     /** @return the book */
     public Book getBook() { return book; }
 
+    /** @return the checkout timestamp */
+    public LocalDateTime getIssueDate() { return time(issued); }
+
+    /** @return the return timestamp, or null while the loan is open */
+    public LocalDateTime getReturnDate() { return returned == OPEN ? null : time(returned); }
+
+    /** @return the librarian who processed the loan */
+    public Librarian getProcessedBy() { return processedBy; }
+
     /** @return the due date */
-    public LocalDateTime getDueDate() { return dueDate; }
+    public LocalDateTime getDueDate() { return time(due); }
 
     /** Prints a summary of the loan */
     public void printInfo() {
-        System.out.printf("Loan: %s → %s, due %s%n",
+        System.out.printf("Loan: %s → %s, %s %s%n",
                 borrower.getName(),
                 book.getTitle(),
-                dueDate.toLocalDate());
+                returned == OPEN ? "due" : "returned",
+                time(returned == OPEN ? due : returned).toLocalDate());
     }
 
     /**
      * force‐set the due date for test.
      */
     public void setDueDate(LocalDateTime dueDate) {
-        this.dueDate = dueDate;
+        long previous = due;
+        due = seconds(dueDate);
+        if (dueDateListener != null) dueDateListener.dueDateChanged(this, time(previous));
+    }
+
+    /**
+     * Registers the index to notify when the due date changes.
+     * @param listener the listener, or null to detach
+     */
+    public void setDueDateListener(DueDateListener listener) {
+        this.dueDateListener = listener;
     }
 }
@@ -1,5 +1,7 @@
 package com.library.model;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Abstract base class for all users of the library.
  */
@@ -8,6 +10,11 @@ public abstract class Person {
     protected String name;
     protected String email;
     protected String phone;
+    private static final AtomicIntegerFieldUpdater<Person> ACTIVE_LOANS =
+            AtomicIntegerFieldUpdater.newUpdater(Person.class, "activeLoans");
+
+    private volatile int activeLoans;                 // updated through ACTIVE_LOANS, no AtomicInteger per person
+    private volatile Person counter = this;           // whose activeLoans counts this person's loans
 
     /**
      * Constructs a Person with the given details.
@@ -48,6 +55,78 @@ public abstract class Person {
      */
     public abstract int getMaxBorrowLimit();
 
+    /**
+     * @return number of loans this person currently has open
+     */
+    public int getActiveLoanCount() { return counter.activeLoans; }
+
+    /**
+     * @return true if another book may be borrowed without exceeding the limit
+     */
+    public boolean canBorrow() { return getActiveLoanCount() < getMaxBorrowLimit(); }
+
+    /**
+     * Counts this person's open loans on another record of the same person,
+     * e.g. their record in another branch, so one borrow limit covers both.
+     * The loans counted so far move over. Call before either record borrows
+     * again.
+     * @param other record of the same person, counting its own loans
+     * @throws IllegalStateException if either record already counts on another
+     */
+    public void shareLoanCount(Person other) {
+        if (other == this || counter == other) return;
+        if (counter != this || other.counter != other) throw new IllegalStateException("loan count already shared");
+        ACTIVE_LOANS.addAndGet(other, ACTIVE_LOANS.getAndSet(this, 0));
+        counter = other;
+    }
+
+    /**
+     * Atomically takes one loan slot if the borrow limit allows it.
+     * @return true if the slot was taken
+     */
+    public boolean tryReserveLoan() {
+        return tryReserveLoans(1) == 1;
+    }
+
+    /**
+     * Atomically takes as many of {@code wanted} loan slots as the borrow limit allows.
+     * @param wanted number of slots asked for
+     * @return number of slots taken, 0 to {@code wanted}
+     */
+    public int tryReserveLoans(int wanted) {
+        int limit = getMaxBorrowLimit();
+        Person c = counter;
+        while (true) {
+            int current = c.activeLoans;
+            int granted = Math.min(wanted, limit - current);
+            if (granted <= 0) return 0;
+            if (ACTIVE_LOANS.compareAndSet(c, current, current + granted)) return granted;
+        }
+    }
+
+    /**
+     * Gives back a loan slot once a loan is closed.
+     */
+    public void releaseLoan() {
+        releaseLoans(1);
+    }
+
+    /**
+     * Gives back loan slots, e.g. ones reserved for a batch but not used.
+     * @param count number of slots to give back
+     * @throws IllegalStateException if fewer slots are taken, i.e. a slot was given back twice
+     */
+    public void releaseLoans(int count) {
+        Person c = counter;
+        while (true) {
+            int current = c.activeLoans;
+            if (count > current) {
+                throw new IllegalStateException("releasing " + count + " loan slots of " + id + ", " + current + " taken");
+            }
+            if (ACTIVE_LOANS.compareAndSet(c, current, current - count)) return;
+        }
+    }
+
     /**
      * Prints contact info to stdout.
      */
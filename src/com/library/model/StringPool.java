@@ -0,0 +1,26 @@
+package com.library.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of strings that many entities repeat, such as author names and
+ * subjects: equal strings are replaced by one shared instance, so a book
+ * holds a reference into the dictionary instead of its own copy. Entries are
+ * never dropped; there are few distinct values against the number of books.
+ * Thread-safe.
+ */
+final class StringPool {
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param s a string, or null
+     * @return the pooled string equal to {@code s}, or null
+     */
+    String intern(String s) {
+        if (s == null) return null;
+        String pooled = values.get(s);
+        if (pooled != null) return pooled;
+        pooled = values.putIfAbsent(s, s);
+        return pooled != null ? pooled : s;
+    }
+}
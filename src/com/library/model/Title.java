@@ -0,0 +1,225 @@
+package com.library.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bibliographic record shared by the copies of one title.
+ * <p>
+ * Copies are the {@link Book}s with the same type, title, author and subject;
+ * each keeps its own ID and circulation state. A title tracks which of its
+ * copies are on the shelf, i.e. neither issued nor set aside for a hold, so
+ * a free copy is found in O(1) and {@link #getAvailable()} is a plain read of
+ * a volatile counter. Thread-safe.
+ * <p>
+ * Most titles have one or a few copies, so the copies are kept in plain
+ * arrays rather than hash sets: the IDs in the order added, and per copy the
+ * two links of a list through the copies on the shelf, longest there first.
+ * A copy is found by a scan of the IDs while there are a few, and through a
+ * map from ID to slot beyond that. A title with a single copy has no links:
+ * that copy is on the shelf if it heads the list.
+ */
+public class Title {
+    private static final String[] NO_COPIES = new String[0];
+    private static final int OFF = -2, END = -1;            // links of a copy off the shelf, and of the list ends
+    private static final int SCAN_MAX = 8;                   // copies found by a scan up to this many
+
+    /**
+     * What makes books copies of one title; identifies the title.
+     * @param type    book type
+     * @param title   title
+     * @param author  author name
+     * @param subject subject or genre
+     */
+    public record Key(BookType type, String title, String author, String subject) {}
+
+    private final Key key;
+    private String[] copies = NO_COPIES;                     // the first copyCount are the copies, in the order added
+    private int[] links;                                     // per copy: previous and next copy on the shelf, or OFF;
+                                                             // null up to one copy
+    private Map<String, Integer> slots;                      // slot per copy ID; null up to SCAN_MAX copies
+    private int first = END, last = END;                     // the shelf, longest there first
+    private volatile int available;
+    private volatile int copyCount;
+
+    /**
+     * Creates a title with no copies yet.
+     * @param record any copy of the title
+     */
+    public Title(Book record) {
+        this(keyOf(record));
+    }
+
+    /**
+     * Creates a title with no copies yet.
+     * @param key the title's key, e.g. the one it is mapped under
+     */
+    public Title(Key key) {
+        this.key = key;
+    }
+
+    /**
+     * @param b a book
+     * @return the key of the title the book is a copy of
+     */
+    public static Key keyOf(Book b) {
+        return new Key(BookType.of(b), b.getTitle(), b.getAuthor(), b.getSubject());
+    }
+
+    /** @return the title's key, made of its type, title, author and subject */
+    public Key getKey() { return key; }
+
+    /** @return the book type of the copies */
+    public BookType getType() { return key.type(); }
+
+    /** @return the title */
+    public String getTitle() { return key.title(); }
+
+    /** @return the author name */
+    public String getAuthor() { return key.author(); }
+
+    /** @return the subject or genre */
+    public String getSubject() { return key.subject(); }
+
+    /** @return number of copies */
+    public int getCopies() { return copyCount; }
+
+    /** @return number of copies on the shelf */
+    public int getAvailable() { return available; }
+
+    /** @return IDs of the copies, in the order they were added */
+    public synchronized List<String> getCopyIds() {
+        return List.of(Arrays.copyOf(copies, copyCount));
+    }
+
+    /**
+     * Adds a copy; it counts as on the shelf unless it is issued.
+     * @param b a book with this title's key
+     * @return false if the copy was already known
+     */
+    public synchronized boolean addCopy(Book b) {
+        String id = b.getBookId();
+        if (indexOf(id) >= 0) return false;
+        int n = copyCount;
+        if (n == copies.length) copies = Arrays.copyOf(copies, Math.max(1, n * 2));
+        if (n == 1 && links == null) {
+            links = new int[2 * copies.length];
+            links[0] = links[1] = first == 0 ? END : OFF;
+        } else if (links != null && links.length < 2 * copies.length) {
+            links = Arrays.copyOf(links, 2 * copies.length);
+        }
+        copies[n] = id;
+        if (slots != null) slots.put(id, n);
+        else if (n == SCAN_MAX) {
+            slots = new HashMap<>();
+            for (int i = 0; i <= n; i++) slots.put(copies[i], i);
+        }
+        if (links != null) links[2 * n] = links[2 * n + 1] = OFF;
+        copyCount = n + 1;
+        if (!b.isIssued()) release(id);
+        return true;
+    }
+
+    /**
+     * @param bookId ID of a copy
+     * @return false if it was not a copy of this title
+     */
+    public synchronized boolean removeCopy(String bookId) {
+        int i = indexOf(bookId);
+        if (i < 0) return false;
+        take(bookId);
+        int n = copyCount - 1;
+        System.arraycopy(copies, i + 1, copies, i, n - i);
+        copies[n] = null;
+        if (slots != null) {
+            slots.remove(bookId);
+            for (int j = i; j < n; j++) slots.put(copies[j], j);
+        }
+        if (links != null) {
+            System.arraycopy(links, 2 * i + 2, links, 2 * i, 2 * (n - i));
+            for (int j = 0; j < 2 * n; j++) if (links[j] > i) links[j]--;     // slots after i moved down
+        }
+        if (first > i) first--;
+        if (last > i) last--;
+        copyCount = n;
+        return true;
+    }
+
+    /**
+     * Takes a copy off the shelf, e.g. because it was issued or set aside.
+     * @param bookId ID of the copy
+     * @return true if it was on the shelf
+     */
+    public synchronized boolean take(String bookId) {
+        int i = indexOf(bookId);
+        if (i < 0 || !onShelf(i)) return false;
+        available--;
+        if (links == null) {
+            first = last = END;
+            return true;
+        }
+        int prev = links[2 * i], next = links[2 * i + 1];
+        if (prev == END) first = next;
+        else links[2 * prev + 1] = next;
+        if (next == END) last = prev;
+        else links[2 * next] = prev;
+        links[2 * i] = links[2 * i + 1] = OFF;
+        return true;
+    }
+
+    /**
+     * Puts a copy back on the shelf.
+     * @param bookId ID of the copy
+     * @return true if it was a copy off the shelf
+     */
+    public synchronized boolean release(String bookId) {
+        int i = indexOf(bookId);
+        if (i < 0 || onShelf(i)) return false;
+        available++;
+        if (links == null) {
+            first = last = i;
+            return true;
+        }
+        links[2 * i] = last;
+        links[2 * i + 1] = END;
+        if (last == END) first = i;
+        else links[2 * last + 1] = i;
+        last = i;
+        return true;
+    }
+
+    /**
+     * @param bookId ID of a copy
+     * @return true if it is on the shelf
+     */
+    public synchronized boolean isFree(String bookId) {
+        int i = indexOf(bookId);
+        return i >= 0 && onShelf(i);
+    }
+
+    /** @return the copy longest on the shelf, or null if none is */
+    public synchronized String firstFree() {
+        return first == END ? null : copies[first];
+    }
+
+    private boolean onShelf(int i) {
+        return links == null ? first == i : links[2 * i] != OFF;
+    }
+
+    /** @return slot of a copy, or -1 */
+    private int indexOf(String bookId) {
+        if (slots != null) {
+            Integer i = slots.get(bookId);
+            return i == null ? -1 : i;
+        }
+        for (int i = 0, n = copyCount; i < n; i++) if (copies[i].equals(bookId)) return i;
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s by %s (%d of %d available)", key.title(), key.author(), getAvailable(), getCopies());
+    }
+}
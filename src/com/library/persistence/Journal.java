@@ -0,0 +1,419 @@
+package com.library.persistence;
+
+import com.library.model.Book;
+import com.library.model.BookType;
+import com.library.model.Librarian;
+import com.library.model.Person;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of library mutations with group commit.
+ * <p>
+ * Callers encode a record into an in-memory buffer and get a sequence number
+ * back; a single flusher thread swaps the buffer out, writes it and fsyncs it,
+ * so every fsync covers all records appended while the previous one ran. In
+ * {@link Durability#SYNC} mode {@link #awaitDurable(long)} blocks until the
+ * record is on disk; in {@link Durability#ASYNC} mode it returns at once.
+ * A failed flush stops the flusher and is latched: in either mode every later
+ * append and wait throws it, rather than accepting records that will never
+ * reach the disk.
+ * <p>
+ * The log is split into segment files named after the first sequence number
+ * they may contain. Each record is framed as
+ * {@code [int length][int crc32][byte type][long seq][long epochSecond][int nano][int n][n × (int len, utf-8)]},
+ * so a torn tail after a crash is detected and dropped on recovery.
+ */
+public class Journal implements Closeable {
+    /** Whether mutating calls wait for their record to be fsynced. */
+    public enum Durability { SYNC, ASYNC }
+
+    /** Record types. */
+    public enum Type {
+        ADD_BOOK, REMOVE_BOOK, REGISTER_BORROWER, REGISTER_LIBRARIAN,
+        PLACE_HOLD, CANCEL_HOLD, ISSUE, RENEW, RETURN, PAY_FINE, EXPIRE_HOLD,
+        NETWORK_HOLD, NETWORK_HOLD_DONE
+    }
+
+    /**
+     * One decoded journal record.
+     * @param type   mutation type
+     * @param seq    sequence number
+     * @param time   library clock time of the mutation
+     * @param fields string arguments, see the {@code log*} methods for their order
+     */
+    public record Entry(Type type, long seq, LocalDateTime time, String[] fields) {}
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 8;                  // length + crc
+
+    private final Path dir;
+    private final Durability durability;
+    private final Object lock = new Object();             // guards pending, nextSeq, closed
+    private final Object io = new Object();               // guards channel
+    private final Object durableMonitor = new Object();
+    private final Thread flusher;
+
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare   = ByteBuffer.allocate(1 << 16);
+    private long nextSeq;
+    private long bufferedUpTo;                            // last seq in pending
+    private boolean inFlight;                             // flusher holds a batch not yet written
+    private boolean closed;
+    private FileChannel channel;
+    private volatile long durableSeq;
+    private volatile IOException failure;
+
+    /**
+     * Opens a fresh segment in {@code dir} starting at {@code nextSeq}.
+     * @param dir        journal directory (created if missing)
+     * @param nextSeq    sequence number of the next record
+     * @param durability whether callers wait for fsync
+     * @throws IOException if the segment cannot be created
+     */
+    public Journal(Path dir, long nextSeq, Durability durability) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.durability = durability;
+        this.nextSeq = nextSeq;
+        this.bufferedUpTo = nextSeq - 1;
+        this.durableSeq = nextSeq - 1;
+        this.channel = openSegment(nextSeq);
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /** Logs addBook: type, bookId, title, author, subject. @return sequence number */
+    public long logAddBook(Book b, LocalDateTime time) {
+        return append(Type.ADD_BOOK, time,
+                BookType.of(b).name(), b.getBookId(), b.getTitle(), b.getAuthor(), b.getSubject());
+    }
+
+    /** Logs removeBook: bookId. @return sequence number */
+    public long logRemoveBook(String bookId, LocalDateTime time) {
+        return append(Type.REMOVE_BOOK, time, bookId);
+    }
+
+    /** Logs a borrower or librarian registration: id, name, email, phone. @return sequence number */
+    public long logRegister(Person p, LocalDateTime time) {
+        Type t = p instanceof Librarian ? Type.REGISTER_LIBRARIAN : Type.REGISTER_BORROWER;
+        return append(t, time, p.getId(), p.getName(), p.getEmail(), p.getPhone());
+    }
+
+    /** Logs placeHold: borrowerId, bookId. @return sequence number */
+    public long logPlaceHold(String borrowerId, String bookId, LocalDateTime time) {
+        return append(Type.PLACE_HOLD, time, borrowerId, bookId);
+    }
+
+    /** Logs cancelHold: borrowerId, bookId. @return sequence number */
+    public long logCancelHold(String borrowerId, String bookId, LocalDateTime time) {
+        return append(Type.CANCEL_HOLD, time, borrowerId, bookId);
+    }
+
+    /** Logs issueBook: borrowerId, bookId, librarianId. @return sequence number */
+    public long logIssue(String borrowerId, String bookId, String librarianId, LocalDateTime time) {
+        return append(Type.ISSUE, time, borrowerId, bookId, librarianId);
+    }
+
+    /** Logs renewLoan: borrowerId, bookId. @return sequence number */
+    public long logRenew(String borrowerId, String bookId, LocalDateTime time) {
+        return append(Type.RENEW, time, borrowerId, bookId);
+    }
+
+    /** Logs returnBook: bookId. @return sequence number */
+    public long logReturn(String bookId, LocalDateTime time) {
+        return append(Type.RETURN, time, bookId);
+    }
+
+    /** Logs payFine: borrowerId, cents. @return sequence number */
+    public long logPayFine(String borrowerId, long cents, LocalDateTime time) {
+        return append(Type.PAY_FINE, time, borrowerId, Long.toString(cents));
+    }
+
+    /** Logs expireHold and expired pickups: borrowerId, bookId. @return sequence number */
+    public long logExpireHold(String borrowerId, String bookId, LocalDateTime time) {
+        return append(Type.EXPIRE_HOLD, time, borrowerId, bookId);
+    }
+
+    /** Logs a hold across branches: borrowerId, then the copy IDs. @return sequence number */
+    public long logNetworkHold(String borrowerId, List<String> copyIds, LocalDateTime time) {
+        String[] fields = new String[copyIds.size() + 1];
+        fields[0] = borrowerId;
+        for (int i = 0; i < copyIds.size(); i++) fields[i + 1] = copyIds.get(i);
+        return append(Type.NETWORK_HOLD, time, fields);
+    }
+
+    /** Logs that a hold across branches was settled or withdrawn: its sequence number. @return sequence number */
+    public long logNetworkHoldDone(long holdSeq, LocalDateTime time) {
+        return append(Type.NETWORK_HOLD_DONE, time, Long.toString(holdSeq));
+    }
+
+    /**
+     * Blocks until the given record is fsynced (SYNC mode only).
+     * @param seq sequence number returned by a {@code log*} call
+     * @throws UncheckedIOException if the flusher failed, or wrapping an
+     *         {@link InterruptedIOException} if the thread was interrupted
+     *         while waiting; its interrupt status is kept
+     */
+    public void awaitDurable(long seq) {
+        if (durability == Durability.SYNC) {
+            synchronized (durableMonitor) {
+                while (durableSeq < seq && failure == null) {
+                    try {
+                        durableMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(
+                                new InterruptedIOException("interrupted while awaiting journal flush"));
+                    }
+                }
+            }
+        }
+        if (failure != null) throw new UncheckedIOException(failure);
+    }
+
+    /** @return sequence number of the last record handed out */
+    public long lastSeq() {
+        synchronized (lock) {
+            return nextSeq - 1;
+        }
+    }
+
+    /**
+     * Flushes everything buffered and starts a new segment. All records with a
+     * sequence number below the returned value are in older segments.
+     * @return first sequence number of the new segment
+     * @throws IOException if writing or opening fails
+     */
+    public long rotate() throws IOException {
+        synchronized (lock) {
+            while (inFlight && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while rotating journal");
+                }
+            }
+            if (failure != null) throw failure;
+            synchronized (io) {
+                writeAndSync(pending, bufferedUpTo);
+                pending.clear();
+                channel.close();
+                channel = openSegment(nextSeq);
+                return nextSeq;
+            }
+        }
+    }
+
+    /**
+     * Deletes segments that only hold records below {@code seq}.
+     * @param seq first sequence number still needed, as returned by {@link #rotate()}
+     * @throws IOException if listing or deleting fails
+     */
+    public void deleteSegmentsBefore(long seq) throws IOException {
+        List<Path> segments = segments(dir);
+        for (Path p : segments) {
+            if (startOf(p) < seq) Files.deleteIfExists(p);
+        }
+    }
+
+    /**
+     * Flushes and closes the journal.
+     * @throws IOException if the final flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (io) {
+            channel.close();
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Reads every intact record with a sequence number above {@code afterSeq}.
+     * A torn or corrupt tail ends the replay of its segment; a crash can only
+     * leave one at the end of a segment, and the next segment starts after
+     * the last intact record.
+     * @param dir      journal directory
+     * @param afterSeq records up to and including this number are skipped
+     * @param consumer receives the records in order
+     * @return sequence number of the last intact record read, or {@code afterSeq}
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path dir, long afterSeq, Consumer<Entry> consumer) throws IOException {
+        long last = afterSeq;
+        if (!Files.isDirectory(dir)) return last;
+        for (Path segment : segments(dir)) {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (buf.remaining() >= HEADER) {
+                int len = buf.getInt();
+                int crc = buf.getInt();
+                if (len <= 0 || len > buf.remaining()) break;
+                CRC32 c = new CRC32();
+                c.update(buf.array(), buf.position(), len);
+                if ((int) c.getValue() != crc) break;
+                Entry e = decode(buf);
+                if (e.seq() > afterSeq) {
+                    consumer.accept(e);
+                    last = e.seq();
+                }
+            }
+        }
+        return last;
+    }
+
+    /** @throws UncheckedIOException if an earlier flush failed */
+    private long append(Type type, LocalDateTime time, String... fields) {
+        byte[][] utf = new byte[fields.length][];
+        int size = HEADER + 1 + 8 + 8 + 4 + 4;
+        for (int i = 0; i < fields.length; i++) {
+            utf[i] = (fields[i] == null ? "" : fields[i]).getBytes(StandardCharsets.UTF_8);
+            size += 4 + utf[i].length;
+        }
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("journal closed");
+            if (failure != null) throw new UncheckedIOException(failure);
+            if (pending.remaining() < size) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            long seq = nextSeq++;
+            int start = pending.position();
+            pending.position(start + HEADER);
+            pending.put((byte) type.ordinal());
+            pending.putLong(seq);
+            pending.putLong(time.toEpochSecond(ZoneOffset.UTC));
+            pending.putInt(time.getNano());
+            pending.putInt(fields.length);
+            for (byte[] f : utf) {
+                pending.putInt(f.length);
+                pending.put(f);
+            }
+            int len = pending.position() - start - HEADER;
+            CRC32 c = new CRC32();
+            c.update(pending.array(), start + HEADER, len);
+            pending.putInt(start, len);
+            pending.putInt(start + 4, (int) c.getValue());
+            bufferedUpTo = seq;
+            lock.notifyAll();
+            return seq;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long upTo;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        fail(new InterruptedIOException("journal flusher interrupted"));
+                        return;
+                    }
+                }
+                if (pending.position() == 0) return;                    // closed and drained
+                batch = pending;
+                upTo = bufferedUpTo;
+                pending = spare;
+                inFlight = true;
+            }
+            try {
+                synchronized (io) {
+                    writeAndSync(batch, upTo);
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            batch.clear();
+            synchronized (lock) {
+                spare = batch;
+                inFlight = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** Latches the flusher's failure and wakes everyone waiting on it. */
+    private void fail(IOException e) {
+        failure = e;
+        synchronized (durableMonitor) {
+            durableMonitor.notifyAll();
+        }
+        synchronized (lock) {
+            inFlight = false;
+            lock.notifyAll();
+        }
+    }
+
+    /** Writes {@code buf} up to its position, fsyncs, and publishes {@code upTo} as durable. */
+    private void writeAndSync(ByteBuffer buf, long upTo) throws IOException {
+        if (buf.position() > 0) {
+            ByteBuffer out = buf.duplicate();
+            out.flip();
+            while (out.hasRemaining()) channel.write(out);
+            channel.force(false);
+        }
+        synchronized (durableMonitor) {
+            if (upTo > durableSeq) durableSeq = upTo;
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private FileChannel openSegment(long firstSeq) throws IOException {
+        Path p = dir.resolve(String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX));
+        return FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(Comparator.comparingLong(Journal::startOf));
+        return out;
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static Entry decode(ByteBuffer buf) {
+        Type type = Type.values()[buf.get()];
+        long seq = buf.getLong();
+        LocalDateTime time = LocalDateTime.ofEpochSecond(buf.getLong(), buf.getInt(), ZoneOffset.UTC);
+        String[] fields = new String[buf.getInt()];
+        for (int i = 0; i < fields.length; i++) {
+            byte[] b = new byte[buf.getInt()];
+            buf.get(b);
+            fields[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return new Entry(type, seq, time, fields);
+    }
+}
@@ -0,0 +1,410 @@
+package com.library.persistence;
+
+import com.library.Library;
+import com.library.analytics.PopularityTracker;
+import com.library.events.ChangeLog;
+import com.library.events.EventBus;
+import com.library.index.MappedCatalog;
+import com.library.model.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable home of a {@link Library}: a snapshot file plus a write-ahead
+ * {@link Journal} in one directory.
+ * <p>
+ * Opening the store loads the latest snapshot, replays the journal records
+ * written after it with the library clock pinned to each record's time, and
+ * then attaches a fresh journal segment. {@link #checkpoint()} writes a new
+ * snapshot and drops the journal segments it covers, which bounds recovery
+ * time to loading one snapshot plus a short journal tail.
+ * <p>
+ * If the directory holds a {@value #CATALOG} file (see
+ * {@link MappedCatalog#write}), it is mounted underneath the library before
+ * recovery, and snapshots then store only the changes made on top of it.
+ * <p>
+ * Each checkpoint first spills full segments of the closed-loan history into
+ * {@value #HISTORY}. The snapshot records how many segment files it covers and
+ * keeps only the newer closed loans, so its size does not grow with years of
+ * circulation.
+ */
+public class LibraryStore implements Closeable {
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String SNAPSHOT_TMP = "snapshot.tmp";
+    /** Name of the optional read-only catalog file in the data directory. */
+    public static final String CATALOG = "catalog.bin";
+    /** Subdirectory for closed-loan segments spilled by {@link #checkpoint()}. */
+    public static final String HISTORY = "history";
+    /** Subdirectory of the change log started by {@link #startChangeLog()}. */
+    public static final String CHANGES = "changes";
+    private static final long MAGIC = 0x4C4942534E415031L;      // "LIBSNAP1"
+
+    private final Path dir;
+    private final Library library;
+    private final Journal journal;
+    private ScheduledExecutorService checkpointer;
+    private ScheduledExecutorService pickupTimer;
+    private ChangeLog changeLog;
+    private EventBus.Subscription changeFeed;
+
+    private LibraryStore(Path dir, Library library, Journal journal) {
+        this.dir = dir;
+        this.library = library;
+        this.journal = journal;
+    }
+
+    /**
+     * Opens (or creates) a store and recovers its library.
+     * @param dir        data directory
+     * @param durability whether mutating calls wait for fsync
+     * @return the open store
+     * @throws IOException if the snapshot or journal cannot be read
+     */
+    public static LibraryStore open(Path dir, Journal.Durability durability) throws IOException {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(SNAPSHOT_TMP));
+        ReplayClock clock = new ReplayClock();
+        Library lib = new Library(clock);
+        if (Files.exists(dir.resolve(CATALOG))) lib.mountCatalog(MappedCatalog.open(dir.resolve(CATALOG)));
+        long covered = readSnapshot(dir.resolve(SNAPSHOT), lib);
+        long last = Journal.replay(dir, covered, e -> apply(lib, clock, e));
+        clock.release();
+        Journal journal = new Journal(dir, last + 1, durability);
+        lib.attachJournal(journal);
+        return new LibraryStore(dir, lib, journal);
+    }
+
+    /** @return the recovered, journaled library */
+    public Library library() { return library; }
+
+    /**
+     * Writes a snapshot of the current state and deletes the journal segments it covers.
+     * Mutations are paused only while the state is copied, not while it is written.
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        library.getHistory().spill(dir.resolve(HISTORY));
+        State state = new State();
+        IOException[] failure = new IOException[1];
+        library.runExclusive(() -> {
+            state.capture(library);
+            try {
+                state.nextSeq = journal.rotate();
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        writeSnapshot(state);
+        journal.deleteSegmentsBefore(state.nextSeq);
+    }
+
+    /**
+     * Takes a checkpoint periodically on a background thread.
+     * @param period time between checkpoints
+     */
+    public synchronized void checkpointEvery(Duration period) {
+        if (checkpointer != null) checkpointer.shutdownNow();
+        checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "library-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Expires pickup windows periodically on a background thread (see
+     * {@link Library#expirePickups()}). Not started by {@link #open}, so
+     * replay only applies the expiries the journal recorded.
+     * @param period time between checks
+     */
+    public synchronized void expirePickupsEvery(Duration period) {
+        if (pickupTimer != null) pickupTimer.shutdownNow();
+        pickupTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "library-pickups");
+            t.setDaemon(true);
+            return t;
+        });
+        pickupTimer.scheduleWithFixedDelay(() -> {
+            try {
+                library.expirePickups();
+            } catch (RuntimeException e) {
+                System.err.println("Expiring pickups failed: " + e);
+            }
+        }, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes every mutation from now on to a {@link ChangeLog} in
+     * {@value #CHANGES}, continuing its offsets, for other processes to tail.
+     * @return the change log
+     * @throws IOException if the log cannot be opened
+     */
+    public synchronized ChangeLog startChangeLog() throws IOException {
+        if (changeLog == null) {
+            changeLog = new ChangeLog(dir.resolve(CHANGES));
+            changeFeed = library.getEvents().subscribe("changelog", changeLog);
+        }
+        return changeLog;
+    }
+
+    /**
+     * Stops periodic checkpoints and pickup expiry, takes a final checkpoint
+     * and closes the journal and the change log.
+     * @throws IOException if the final checkpoint or flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (checkpointer != null) checkpointer.shutdownNow();
+            if (pickupTimer != null) pickupTimer.shutdownNow();
+        }
+        checkpoint();
+        library.attachJournal(null);
+        journal.close();
+        synchronized (this) {
+            if (changeFeed != null) {
+                changeFeed.close();
+                changeLog.close();
+            }
+        }
+        if (library.getMountedCatalog() != null) library.getMountedCatalog().close();
+    }
+
+    // Replay
+
+    private static void apply(Library lib, ReplayClock clock, Journal.Entry e) {
+        clock.pin(e.time());
+        String[] f = e.fields();
+        switch (e.type()) {
+            case ADD_BOOK           -> lib.addBook(BookType.valueOf(f[0]).create(f[1], f[2], f[3], f[4]));
+            case REMOVE_BOOK        -> lib.removeBook(f[0]);
+            case REGISTER_BORROWER  -> lib.registerBorrower(new Borrower(f[0], f[1], f[2], f[3]));
+            case REGISTER_LIBRARIAN -> lib.registerLibrarian(new Librarian(f[0], f[1], f[2], f[3]));
+            case PLACE_HOLD         -> lib.placeHold(f[0], f[1]);
+            case CANCEL_HOLD        -> lib.cancelHold(f[0], f[1]);
+            case ISSUE              -> lib.issueBook(f[0], f[1], f[2]);
+            case RENEW              -> lib.renewLoan(f[0], f[1]);
+            case RETURN             -> lib.returnBook(f[0]);
+            case PAY_FINE           -> lib.payFine(f[0], Long.parseLong(f[1]));
+            case EXPIRE_HOLD        -> lib.expireHold(f[0], f[1]);
+        }
+    }
+
+    // Snapshot format
+
+    /** Copy of the library state taken while mutations are paused. */
+    private static final class State {
+        final List<String> hidden = new ArrayList<>();
+        final List<Book> books = new ArrayList<>();
+        final List<Person> users = new ArrayList<>();
+        final List<Loan> closed = new ArrayList<>();              // only rows not yet in segment files
+        int spilled;
+        final List<Loan> open = new ArrayList<>();
+        final List<LocalDateTime> openDue = new ArrayList<>();  // due dates are mutable, copy them
+        final List<HoldRequest> holds = new ArrayList<>();
+        final List<LocalDateTime> pickupBy = new ArrayList<>();  // per hold, null unless set aside
+        final List<String> holdCopies = new ArrayList<>();       // per hold; changes when a copy is set aside
+        final List<PopularityTracker.Bucket> popularity = new ArrayList<>();
+        final Map<String, Long> fines = new HashMap<>();       // settled balances; running fines follow from open loans
+        long nextSeq;
+
+        void capture(Library lib) {
+            hidden.addAll(lib.listHiddenMountedIds());
+            books.addAll(lib.listAddedBooks());
+            users.addAll(lib.listUsers());
+            spilled = lib.getHistory().spilled();
+            closed.addAll(lib.getHistory().unspilled());
+            for (Loan l : lib.getActiveLoans()) {
+                open.add(l);
+                openDue.add(l.getDueDate());
+            }
+            for (HoldRequest hr : lib.listHolds()) {
+                holds.add(hr);
+                pickupBy.add(hr.getPickupBy());
+                holdCopies.add(hr.getBook().getBookId());
+            }
+            popularity.addAll(lib.getPopularity().buckets());
+            fines.putAll(lib.getFines().settled());
+        }
+    }
+
+    private void writeSnapshot(State s) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT_TMP);
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeLong(MAGIC);
+            out.writeLong(s.nextSeq - 1);
+
+            out.writeInt(s.hidden.size());
+            for (String id : s.hidden) out.writeUTF(id);
+            out.writeInt(s.books.size());
+            for (Book b : s.books) {
+                out.writeByte(BookType.of(b).code());
+                writeStrings(out, b.getBookId(), b.getTitle(), b.getAuthor(), b.getSubject());
+            }
+            out.writeInt(s.users.size());
+            for (Person p : s.users) {
+                out.writeBoolean(p instanceof Librarian);
+                writeStrings(out, p.getId(), p.getName(), p.getEmail(), p.getPhone());
+            }
+            out.writeInt(s.spilled);
+            out.writeInt(s.closed.size());
+            for (Loan l : s.closed) {
+                writeLoan(out, l, l.getDueDate());
+                writeTime(out, l.getReturnDate());
+            }
+            out.writeInt(s.open.size());
+            for (int i = 0; i < s.open.size(); i++) writeLoan(out, s.open.get(i), s.openDue.get(i));
+            out.writeInt(s.holds.size());
+            for (int i = 0; i < s.holds.size(); i++) {
+                HoldRequest hr = s.holds.get(i);
+                writeStrings(out, hr.getBorrower().getId(), s.holdCopies.get(i));
+                writeTime(out, hr.getRequestDate());
+            }
+            out.writeInt(s.popularity.size());
+            for (PopularityTracker.Bucket b : s.popularity) {
+                out.writeByte(b.event().ordinal());
+                out.writeByte(b.dimension().ordinal());
+                out.writeLong(b.day().toEpochDay());
+                out.writeInt(b.keys().length);
+                for (int i = 0; i < b.keys().length; i++) {
+                    out.writeUTF(b.keys()[i]);
+                    out.writeLong(b.counts()[i]);
+                }
+            }
+            out.writeInt(s.fines.size());
+            for (Map.Entry<String, Long> e : s.fines.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue());
+            }
+            List<Integer> aside = new ArrayList<>();
+            for (int i = 0; i < s.holds.size(); i++) if (s.pickupBy.get(i) != null) aside.add(i);
+            out.writeInt(aside.size());
+            for (int i : aside) {
+                writeStrings(out, s.holdCopies.get(i), s.holds.get(i).getBorrower().getId());
+                writeTime(out, s.pickupBy.get(i));
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return the last journal sequence number the snapshot covers, or 0 without a snapshot */
+    private static long readSnapshot(Path file, Library lib) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (InputStream fis = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fis, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readLong() != MAGIC) throw new IOException("Not a library snapshot: " + file);
+            long covered = in.readLong();
+
+            for (int n = in.readInt(); n > 0; n--) lib.removeBook(in.readUTF());
+            Map<String, Book> books = new HashMap<>();
+            for (int n = in.readInt(); n > 0; n--) {
+                BookType type = BookType.ofCode(in.readByte());
+                Book b = type.create(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+                books.put(b.getBookId(), b);
+            }
+            lib.addBooks(books.values());
+            Map<String, Person> users = new HashMap<>();
+            for (int n = in.readInt(); n > 0; n--) {
+                boolean librarian = in.readBoolean();
+                String id = in.readUTF(), name = in.readUTF(), email = in.readUTF(), phone = in.readUTF();
+                Person p = librarian ? new Librarian(id, name, email, phone) : new Borrower(id, name, email, phone);
+                users.put(id, p);
+                if (librarian) lib.registerLibrarian((Librarian) p); else lib.registerBorrower((Borrower) p);
+            }
+            lib.getHistory().mount(file.resolveSibling(HISTORY), in.readInt());
+            // closed loans first: closing a restored loan marks its book returned
+            for (int n = in.readInt(); n > 0; n--) {
+                Loan l = readLoan(in, lib, users);
+                LocalDateTime returned = readTime(in);
+                if (l == null) continue;                      // book was removed since
+                l.close(returned);
+                lib.restoreClosedLoan(l);
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                Loan l = readLoan(in, lib, users);
+                if (l != null) lib.restoreLoan(l);
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                String borrowerId = in.readUTF(), bookId = in.readUTF();
+                LocalDateTime requested = readTime(in);
+                Person p = users.get(borrowerId);
+                Book b = lib.getBook(bookId);
+                if (p instanceof Borrower && b != null) lib.restoreHold(new HoldRequest((Borrower) p, b, requested));
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                var event = PopularityTracker.Event.values()[in.readByte()];
+                var dimension = PopularityTracker.Dimension.values()[in.readByte()];
+                LocalDate day = LocalDate.ofEpochDay(in.readLong());
+                String[] keys = new String[in.readInt()];
+                long[] counts = new long[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = in.readUTF();
+                    counts[i] = in.readLong();
+                }
+                lib.getPopularity().restore(new PopularityTracker.Bucket(event, dimension, day, keys, counts));
+            }
+            for (int n = in.readInt(); n > 0; n--) lib.getFines().restore(in.readUTF(), in.readLong());
+            for (int n = in.readInt(); n > 0; n--) lib.restorePickup(in.readUTF(), in.readUTF(), readTime(in));
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) throw new IOException("Snapshot checksum mismatch: " + file);
+            return covered;
+        }
+    }
+
+    private static void writeLoan(DataOutputStream out, Loan l, LocalDateTime due) throws IOException {
+        writeStrings(out, l.getBorrower().getId(), l.getBook().getBookId(), l.getProcessedBy().getId());
+        writeTime(out, l.getIssueDate());
+        writeTime(out, due);
+    }
+
+    private static Loan readLoan(DataInputStream in, Library library, Map<String, Person> users)
+            throws IOException {
+        String borrowerId = in.readUTF(), bookId = in.readUTF(), librarianId = in.readUTF();
+        LocalDateTime issued = readTime(in), due = readTime(in);
+        Book b = library.getBook(bookId);
+        if (b == null || !(users.get(borrowerId) instanceof Borrower brw)
+                || !(users.get(librarianId) instanceof Librarian lib)) return null;
+        Loan l = new Loan(brw, b, lib, issued);
+        l.setDueDate(due);
+        return l;
+    }
+
+    private static void writeStrings(DataOutputStream out, String... values) throws IOException {
+        for (String v : values) out.writeUTF(v == null ? "" : v);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime t) throws IOException {
+        out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(t.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,39 @@
+package com.library.persistence;
+
+import java.time.*;
+
+/**
+ * Clock that can be pinned to a fixed time while a journal is replayed and
+ * otherwise follows the system clock.
+ */
+public class ReplayClock extends Clock {
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile Instant pinned;
+
+    /**
+     * Pins the clock to a local date-time in the system zone.
+     * @param time the time to report until {@link #release()}
+     */
+    public void pin(LocalDateTime time) {
+        this.pinned = time.atZone(zone).toInstant();
+    }
+
+    /** Returns the clock to system time. */
+    public void release() {
+        this.pinned = null;
+    }
+
+    @Override
+    public ZoneId getZone() { return zone; }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return Clock.system(zone);
+    }
+
+    @Override
+    public Instant instant() {
+        Instant p = pinned;
+        return p != null ? p : Instant.now();
+    }
+}
@@ -1,9 +1,24 @@
 package com.library;
 
+import com.library.index.MappedCatalog;
 import com.library.model.*;
+import com.library.persistence.ReplayClock;
 import org.junit.jupiter.api.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LibraryTest {
@@ -59,6 +74,373 @@ public class LibraryTest {
         assertEquals(reference, byId.get(0));
     }
 
+    /**
+     * Index-backed search must match a plain substring scan for short and long
+     * keywords, and forget books once they are removed or replaced.
+     */
+    @Test
+    void testSearchIndexMatchesScan() {
+        lib.addBook(new Novel("BK-010", "Javanese Tales", "Ava Java", "Folklore"));
+        for (String k : List.of("", "j", "JA", "ava", "java", "fundamentals", "a api", "zzz", "bk-010")) {
+            String f = k.toLowerCase();
+            long expected = lib.listBooks().stream()
+                    .filter(b -> b.getTitle().toLowerCase().contains(f)
+                            || b.getAuthor().toLowerCase().contains(f)
+                            || b.getBookId().equalsIgnoreCase(k))
+                    .count();
+            assertEquals(expected, lib.searchBooks(k).size(), "keyword: " + k);
+        }
+        assertEquals(1, lib.searchBySubject("folk").size());
+
+        lib.removeBook("BK-010");
+        assertTrue(lib.searchBooks("javanese").isEmpty(), "Removed book must leave the index");
+        lib.addBook(new TextBook("BK-001", "Kotlin Basics", "Evans", "CS"));
+        assertTrue(lib.searchBooks("fundamentals").isEmpty(), "Replaced book must leave the index");
+        assertEquals(1, lib.searchBooks("kotlin").size());
+    }
+
+    /**
+     * A batch never indexes a book that was removed or replaced before the
+     * batch reached the search index, e.g. an earlier entry with the same ID
+     * or one removed by another terminal meanwhile.
+     */
+    @Test
+    void testBatchAddIndexesCurrentBooksOnly() throws Exception {
+        lib.addBooks(List.of(new Novel("BK-050", "Batch Twin", "Old", "Test"), new Novel("BK-050", "Batch Twin", "New", "Test")));
+        assertEquals(List.of("New"), lib.searchBooks("batch twin").stream().map(Book::getAuthor).toList());
+
+        List<Book> batch = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) batch.add(new Novel("GH-" + i, "Ghost " + i, "G", "Test"));
+        Thread remover = new Thread(() -> {
+            for (int i = 0; i < 2_000; i++) {
+                while (lib.removeBook("GH-" + i) == null) Thread.onSpinWait();
+            }
+        });
+        remover.start();
+        lib.addBooks(batch);
+        remover.join();
+        assertEquals(List.of(), lib.searchBooks("ghost"));
+    }
+
+    /**
+     * Keyset pages walk each listing once in a stable order, even when items
+     * before the cursor go away between pages.
+     */
+    @Test
+    void testPagedListings() {
+        for (int i = 4; i <= 12; i++) lib.addBook(new Novel(String.format("BK-%03d", i), "Java Vol " + i, "Ng", "SF"));
+        Page<Book> first = lib.listBooks(null, 5);
+        assertEquals(List.of("BK-001", "BK-002", "BK-003", "BK-004", "BK-005"), ids(first.items()));
+        lib.removeBook("BK-002");
+        Page<Book> second = lib.listBooks(first.next(), 5);
+        assertEquals(List.of("BK-006", "BK-007", "BK-008", "BK-009", "BK-010"), ids(second.items()));
+        Page<Book> last = lib.listBooks(second.next(), 5);
+        assertEquals(List.of("BK-011", "BK-012"), ids(last.items()));
+        assertNull(last.next());
+        assertEquals(11, lib.streamBooks().count());
+
+        assertEquals(lib.searchBooks("java"), walk(after -> lib.searchBooks("java", after, 3)));
+        assertEquals(lib.searchBooks("java"), lib.streamSearch("java").toList());
+        Page<Book> vol = lib.searchBooks("vol 1", null, 2);
+        assertEquals(List.of("BK-010", "BK-011"), ids(vol.items()));
+        assertEquals(List.of("BK-012"), ids(lib.searchBooks("vol 1", vol.next(), 2).items()));
+        assertEquals(9, walk(after -> lib.searchBySubject("sf", after, 4)).size());
+
+        assertTrue(lib.issueBook("BOR-0001", "BK-004", "LIB-0001"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-005", "LIB-0001"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-006", "LIB-0001"));
+        lib.getActiveLoan("BK-004").setDueDate(LocalDateTime.now().minusDays(3));
+        lib.getActiveLoan("BK-005").setDueDate(LocalDateTime.now().minusDays(1));
+        lib.getActiveLoan("BK-006").setDueDate(LocalDateTime.now().minusDays(2));
+        Page<Loan> overdue = lib.displayOverdue(null, 2);
+        assertEquals(List.of("BK-004", "BK-006"), overdue.items().stream().map(l -> l.getBook().getBookId()).toList());
+        assertEquals(List.of(lib.getActiveLoan("BK-005")), lib.displayOverdue(overdue.next(), 2).items());
+        assertEquals(lib.displayOverdue(), lib.streamOverdue().toList());
+
+        Borrower alex = new Borrower("BOR-0002", "Alex", "alex@mail.com", "557");
+        Borrower kim  = new Borrower("BOR-0003", "Kim", "kim@mail.com", "558");
+        lib.registerBorrower(alex);
+        lib.registerBorrower(kim);
+        LocalDateTime t0 = LocalDateTime.now();
+        lib.restoreHold(new HoldRequest(alex, lib.getBook("BK-004"), t0));
+        lib.restoreHold(new HoldRequest(kim, lib.getBook("BK-004"), t0.plusSeconds(1)));
+        Page<HoldRequest> holds = lib.getHoldsForBook("BK-004", null, 1);
+        assertEquals(alex, holds.items().get(0).getBorrower());
+        assertTrue(lib.cancelHold("BOR-0002", "BK-004"));
+        assertEquals(kim, lib.getHoldsForBook("BK-004", holds.next(), 1).items().get(0).getBorrower());
+
+        assertEquals(3, lib.returnBooks(List.of("BK-004", "BK-005", "BK-006")).length);
+        Page<Loan> history = lib.getLoanHistory("BOR-0001", null, 2);
+        assertEquals(2, history.items().size());
+        assertEquals(List.of("BK-006"), lib.getLoanHistory("BOR-0001", history.next(), 2).items().stream()
+                .map(l -> l.getBook().getBookId()).toList());
+
+        assertEquals(List.of("BOR-0001", "BOR-0002"), lib.listUsers(null, 2).items().stream().map(Person::getId).toList());
+        assertEquals(List.of("BOR-0003", "LIB-0001"), lib.streamUsers().skip(2).map(Person::getId).toList());
+        assertThrows(IllegalArgumentException.class, () -> lib.listBooks(null, 0));
+        assertThrows(IllegalArgumentException.class, () -> lib.searchBooks("java", "x1", 5));
+    }
+
+    private static List<String> ids(List<Book> books) {
+        return books.stream().map(Book::getBookId).toList();
+    }
+
+    /** Collects every page of a listing. */
+    private static <T> List<T> walk(Function<String, Page<T>> fetch) {
+        List<T> out = new ArrayList<>();
+        for (Page<T> p = fetch.apply(null); ; p = fetch.apply(p.next())) {
+            out.addAll(p.items());
+            if (p.next() == null) return out;
+        }
+    }
+
+    /**
+     * A mounted catalog file serves lookups and searches like in-memory books,
+     * and can be circulated, replaced and removed.
+     */
+    @Test
+    void testMountedCatalog() throws IOException {
+        Path file = Files.createTempFile("catalog", ".bin");
+        try {
+            MappedCatalog.write(file, List.of(textbook, novel, reference,
+                    new Novel("BK-010", "Javanese Tales", "Ava Java", "Folklore")));
+            Library mountedLib = new Library();
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                mountedLib.mountCatalog(catalog);
+                mountedLib.registerBorrower(borrower);
+                mountedLib.registerLibrarian(librarian);
+                mountedLib.addBook(new Novel("BK-020", "Java Again", "Grey", "Fantasy"));
+
+                assertEquals(5, mountedLib.listBooks().size());
+                assertEquals(5, mountedLib.searchBooks("java").size());
+                assertEquals(1, mountedLib.searchBooks("bk-002").size());
+                assertEquals(1, mountedLib.searchBooks("evan").size());
+                assertEquals(2, mountedLib.searchBySubject("fanta").size());
+                assertInstanceOf(Reference.class, mountedLib.getBook("BK-003"));
+                assertNull(mountedLib.getBook("bk-003"));
+
+                assertTrue(mountedLib.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+                assertSame(mountedLib.getBook("BK-002"), mountedLib.getActiveLoan("BK-002").getBook());
+                assertTrue(mountedLib.searchBooks("saga").get(0).isIssued());
+
+                assertNotNull(mountedLib.removeBook("BK-010"));
+                assertNull(mountedLib.getBook("BK-010"));
+                assertTrue(mountedLib.searchBooks("javanese").isEmpty());
+                mountedLib.addBook(new TextBook("BK-001", "Kotlin Basics", "Evans", "CS"));
+                assertTrue(mountedLib.searchBooks("fundamentals").isEmpty());
+                assertEquals("Kotlin Basics", mountedLib.getBook("BK-001").getTitle());
+                assertEquals(4, mountedLib.listBooks().size());
+                assertEquals(List.of("BK-001", "BK-010"), mountedLib.listHiddenMountedIds().stream().sorted().toList());
+
+                assertEquals(List.of("BK-001", "BK-002", "BK-003", "BK-020"), ids(mountedLib.listBooks(null, 10).items()));
+                Page<Book> page = mountedLib.listBooks("BK-001", 2);
+                assertEquals(List.of("BK-002", "BK-003"), ids(page.items()));
+                assertEquals(List.of("BK-020"), ids(mountedLib.listBooks(page.next(), 2).items()));
+                assertEquals(mountedLib.searchBooks("java"), walk(after -> mountedLib.searchBooks("java", after, 1)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A mounted title counts all its mounted copies, looked up or not, so a
+     * hold is refused and issueCopy finds the other copy while one is out,
+     * and an in-memory copy added first joins them.
+     */
+    @Test
+    void testMountedCopiesShareTitle() throws IOException {
+        Path file = Files.createTempFile("catalog", ".bin");
+        try {
+            MappedCatalog.write(file, List.of(new Novel("C1", "Twin", "Ray", "Drama"), new Novel("C2", "Twin", "Ray", "Drama")));
+            Library mountedLib = new Library();
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                mountedLib.mountCatalog(catalog);
+                mountedLib.registerBorrower(borrower);
+                mountedLib.registerBorrower(new Borrower("BOR-0002", "Alex", "alex@mail.com", "557"));
+                mountedLib.registerLibrarian(librarian);
+                assertEquals(2, mountedLib.searchTitles("twin").get(0).getAvailable());
+
+                assertTrue(mountedLib.issueBook("BOR-0001", "C1", "LIB-0001"));
+                Title twin = mountedLib.getTitle("C1");
+                assertEquals(2, twin.getCopies());
+                assertEquals(1, twin.getAvailable());
+                assertFalse(mountedLib.placeHold("BOR-0002", "C1"), "C2 is on the shelf");
+                assertEquals("C2", mountedLib.issueCopy("BOR-0002", "C1", "LIB-0001"));
+                assertEquals(0, twin.getAvailable());
+
+                assertNotNull(mountedLib.removeBook("C1"));
+                assertEquals(List.of("C2"), mountedLib.getTitle("C2").getCopyIds());
+
+                Library fresh = new Library();
+                fresh.mountCatalog(catalog);
+                fresh.addBook(new Novel("C3", "Twin", "Ray", "Drama"));
+                assertEquals(List.of("C1", "C2", "C3"), fresh.getTitle("C3").getCopyIds());
+                assertEquals(3, fresh.getTitle("C1").getAvailable());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Facet counts follow the filters of the other facets, the availability
+     * bitmap flips on issue and return, and mounted and in-memory books are
+     * searched together, without removed or replaced ones.
+     */
+    @Test
+    void testFacetedSearch() throws IOException {
+        Facets all = lib.searchFacets(null, Set.of(), Set.of(), false, 10);
+        assertEquals(3, all.total());
+        assertEquals(Map.of("CS", 1, "Fantasy", 1, "Vol1", 1), all.subjects());
+        lib.addBook(new Novel("BK-004", "Java Nights", "Brown", "Fantasy"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+
+        Facets fantasy = lib.searchFacets("java", Set.of("Fantasy"), Set.of(), true, 10);
+        assertEquals(List.of("BK-004"), ids(fantasy.books()));
+        assertEquals(1, fantasy.total());
+        assertEquals(1, fantasy.available(), "BK-002 is out");
+        assertEquals(Map.of("Fantasy", 1, "CS", 1, "Vol1", 1), fantasy.subjects());
+        assertEquals(Map.of(BookType.NOVEL, 1), fantasy.types());
+        Facets byType = lib.searchFacets("java", Set.of(), Set.of(BookType.NOVEL, BookType.REFERENCE), false, 2);
+        assertEquals(List.of("BK-002", "BK-003"), ids(byType.books()));
+        assertEquals(3, byType.total());
+        assertEquals(Map.of("Fantasy", 2, "Vol1", 1), byType.subjects());
+        assertEquals(List.of("Fantasy", "Vol1"), List.copyOf(byType.subjects().keySet()), "Largest first");
+
+        assertTrue(lib.returnBook("BK-002"));
+        assertEquals(2, lib.searchFacets(null, Set.of("Fantasy"), Set.of(), true, 10).total());
+        lib.removeBook("BK-004");
+        assertEquals(Map.of(BookType.NOVEL, 1), lib.searchFacets(null, Set.of("Fantasy"), Set.of(), false, 10).types());
+        assertEquals(0, lib.searchFacets("nothing", Set.of(), Set.of(), false, 10).total());
+
+        Path file = Files.createTempFile("catalog", ".bin");
+        try {
+            MappedCatalog.write(file, List.of(textbook, novel, new Novel("BK-010", "Java Tales", "Ava", "Folklore")));
+            Library mountedLib = new Library();
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                mountedLib.mountCatalog(catalog);
+                mountedLib.registerBorrower(borrower);
+                mountedLib.registerLibrarian(librarian);
+                mountedLib.addBook(new Novel("BK-020", "Java Again", "Grey", "Fantasy"));
+                mountedLib.addBook(new Novel("BK-010", "Java Tales", "Ava", "Fantasy"));
+                assertTrue(mountedLib.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+
+                Facets f = mountedLib.searchFacets("java", Set.of("Fantasy"), Set.of(), false, 10);
+                assertEquals(List.of("BK-002", "BK-020", "BK-010"), ids(f.books()), "Mounted first, then in-memory");
+                assertEquals(2, f.available());
+                assertEquals(Map.of("Fantasy", 3, "CS", 1), f.subjects(), "Replaced BK-010 counts once, as Fantasy");
+                assertTrue(mountedLib.returnBook("BK-002"));
+                assertEquals(3, mountedLib.searchFacets(null, Set.of("Fantasy"), Set.of(), true, 10).total());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Ranked search tolerates typos and puts title matches first; suggestions
+     * complete titles and authors, most copies first, mounted books included.
+     */
+    @Test
+    void testRankedSearchAndSuggest() throws IOException {
+        assertEquals("BK-001", lib.searchRanked("Jva Fundamentls", 10).get(0).getBookId());
+        lib.addBook(new Novel("BK-004", "Brownies", "Java Jones", "Baking"));
+        lib.addBook(new Novel("BK-005", "The Java Saga", "Brown", "Fantasy"));
+        List<Book> java = lib.searchRanked("java", 10);
+        assertEquals("BK-004", ids(java).get(4), "An author match ranks below title matches");
+        assertEquals(List.of("BK-002", "BK-005"), ids(lib.searchRanked("brwn", 3)), "Equal scores in catalog order");
+        assertEquals(List.of(), lib.searchRanked("qq", 10), "Short words need an exact match");
+
+        assertEquals(List.of("The Java Saga"), lib.suggest("the j", 10));
+        assertEquals(List.of("Java API Handbook", "Java Fundamentals", "Java Jones"), lib.suggest("JAVA ", 10));
+        assertEquals(List.of("Brown", "Brownies"), lib.suggest("bro", 10), "Two books by Brown");
+        lib.removeBook("BK-004");
+        assertEquals(List.of("Brown"), lib.suggest("bro", 10));
+        assertEquals(List.of(), lib.searchRanked("baking", 10));
+
+        Path file = Files.createTempFile("catalog", ".bin");
+        try {
+            MappedCatalog.write(file, List.of(textbook, new Novel("BK-010", "Java Tales", "Ava", "Folklore")));
+            Library mountedLib = new Library();
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                mountedLib.mountCatalog(catalog);
+                mountedLib.addBook(new Novel("BK-010", "Jazz Tales", "Ava", "Folklore"));
+                assertEquals(List.of("BK-001", "BK-010"), ids(mountedLib.searchRanked("tales fundamentals", 10)));
+                assertEquals("Jazz Tales", mountedLib.searchRanked("tales", 10).get(0).getTitle(), "Replaced view is gone");
+                assertEquals(List.of("Java Fundamentals", "Jazz Tales"), mountedLib.suggest("ja", 10));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Batch issue stops at the borrow limit and reports every item; batch
+     * return reports books that are unknown or not on loan.
+     */
+    @Test
+    void testBatchIssueAndReturn() {
+        lib.addBook(new Novel("BK-004", "Fourth", "D", "Y"));
+        lib.addBook(new Novel("BK-005", "Fifth", "E", "Y"));
+        Borrower other = new Borrower("BOR-0002", "Alex", "alex@mail.com", "557");
+        lib.registerBorrower(other);
+        assertTrue(lib.issueBook("BOR-0002", "BK-004", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0001", "BK-004"));
+        assertTrue(lib.returnBook("BK-004"));
+        assertTrue(lib.issueBook("BOR-0002", "BK-003", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0002", "BK-003"));
+
+        CirculationResult[] issued = lib.issueBooks("BOR-0001",
+                List.of("BK-004", "BK-003", "BK-999", "BK-001", "BK-002", "BK-005"), "LIB-0001");
+        assertArrayEquals(new CirculationResult[] {
+                CirculationResult.OK, CirculationResult.UNAVAILABLE, CirculationResult.NOT_FOUND,
+                CirculationResult.OK, CirculationResult.OK, CirculationResult.LIMIT_REACHED }, issued);
+        assertEquals(3, borrower.getActiveLoanCount(), "Unused reserved slots must be given back");
+        assertTrue(lib.getHoldsForBook("BK-004").isEmpty(), "Hold is fulfilled by the batch issue");
+        assertArrayEquals(new CirculationResult[] { CirculationResult.UNKNOWN_USER },
+                lib.issueBooks("LIB-0001", List.of("BK-005"), "LIB-0001"));
+
+        CirculationResult[] returned = lib.returnBooks(List.of("BK-001", "BK-005", "BK-998", "BK-002", "BK-001"));
+        assertArrayEquals(new CirculationResult[] {
+                CirculationResult.OK, CirculationResult.NOT_ON_LOAN, CirculationResult.NOT_FOUND,
+                CirculationResult.OK, CirculationResult.NOT_ON_LOAN }, returned);
+        assertEquals(1, borrower.getActiveLoanCount());
+        assertEquals(2, lib.getLoanHistory("BOR-0001").size());
+    }
+
+    /**
+     * Command mode runs a script without the menu and reports each command.
+     */
+    @Test
+    void testCommandModeScript() throws IOException {
+        String script = String.join("\n",
+                "# circulation script",
+                "add-book BK-010 2 \"The \\\"Quoted\\\" Saga\" Brown Fantasy",
+                "issue BOR-0001 BK-010 LIB-0001",
+                "",
+                "issue BOR-0001 BK-010 LIB-0001",
+                "search quoted",
+                "return-batch BK-010 BK-001",
+                "frobnicate",
+                "add-book BK-011 9 T A S");
+        StringWriter out = new StringWriter();
+        int failed = new CommandMode(lib, new BufferedReader(new StringReader(script)), out).run();
+
+        assertEquals(3, failed);
+        assertEquals(String.join(System.lineSeparator(),
+                "ok added BK-010",
+                "ok issued BK-010 BOR-0001",
+                "error 5: cannot issue BK-010 to BOR-0001",
+                "ok 1 books",
+                "BK-010\tNovel\tThe \"Quoted\" Saga\tBrown\tFantasy\tOUT",
+                "ok 1/2",
+                "BK-010\tOK",
+                "BK-001\tNOT_ON_LOAN",
+                "error 8: unknown command frobnicate",
+                "error 9: invalid type 9", ""), out.toString());
+    }
+
     /**
      * Ensures listing books on an empty catalog returns an empty collection.
      */
@@ -122,6 +504,31 @@ public class LibraryTest {
         assertTrue(overdue.get(0).isOverdue());
     }
 
+    /**
+     * Due-date changes re-order the overdue index, and returned loans leave it.
+     */
+    @Test
+    void testOverdueIndexTracksDueDates() {
+        lib.issueBook("BOR-0001","BK-001","LIB-0001");   // due in 14 days
+        lib.issueBook("BOR-0001","BK-003","LIB-0001");   // due in 7 days
+        assertTrue(lib.displayOverdue().isEmpty());
+        List<Loan> soon = lib.getLoansDueWithin(10);
+        assertEquals(1, soon.size());
+        assertEquals("BK-003", soon.get(0).getBook().getBookId());
+        assertEquals(2, lib.getLoansDueWithin(30).size());
+
+        Loan textbookLoan = textbook.getCurrentLoan();
+        Loan referenceLoan = reference.getCurrentLoan();
+        textbookLoan.setDueDate(LocalDateTime.now().minusDays(2));
+        referenceLoan.setDueDate(LocalDateTime.now().minusDays(9));
+        List<Loan> overdue = lib.displayOverdue();
+        assertEquals(List.of(referenceLoan, textbookLoan), overdue, "Most overdue loan comes first");
+        assertTrue(lib.getLoansDueWithin(30).isEmpty());
+
+        assertTrue(lib.returnBook("BK-003"));
+        assertEquals(List.of(textbookLoan), lib.displayOverdue());
+    }
+
     /**
      * Verifies renewing loans extends due date and forbids renewing overdue loans.
      */
@@ -180,6 +587,69 @@ public class LibraryTest {
                 "Borrower should be refused on 4th checkout beyond their limit");
     }
 
+    /**
+     * Only open loans count toward the borrow limit; returned loans move to history.
+     */
+    @Test
+    void testBorrowLimitCountsOpenLoansOnly() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(lib.issueBook("BOR-0001","BK-001","LIB-0001"));
+            assertTrue(lib.returnBook("BK-001"));
+        }
+        assertEquals(0, borrower.getActiveLoanCount());
+        assertThrows(IllegalStateException.class, borrower::releaseLoan, "No slot left to give back");
+        assertEquals(0, borrower.getActiveLoanCount());
+        assertTrue(borrower.getLoans().isEmpty());
+        assertEquals(5, lib.getLoanHistory("BOR-0001").size());
+
+        assertTrue(lib.issueBook("BOR-0001","BK-001","LIB-0001"));
+        assertTrue(lib.issueBook("BOR-0001","BK-002","LIB-0001"));
+        textbook.getCurrentLoan().setDueDate(LocalDateTime.now().minusDays(3));
+        assertTrue(lib.issueBook("BOR-0001","BK-003","LIB-0001"));
+        assertEquals(3, borrower.getActiveLoanCount());
+        assertFalse(borrower.canBorrow(), "Overdue loans still occupy a slot");
+        lib.addBook(new TextBook("BK-004","Extra Book","X","Test"));
+        assertFalse(lib.issueBook("BOR-0001","BK-004","LIB-0001"));
+    }
+
+    /**
+     * Overdue loans accrue fines day by day; once they reach the threshold the
+     * borrower cannot check out until enough is paid, and returns keep the fine.
+     */
+    @Test
+    void testFinesBlockCheckout() {
+        ReplayClock clock = new ReplayClock();
+        LocalDateTime t0 = LocalDateTime.of(2025, 3, 3, 10, 0);
+        clock.pin(t0);
+        Library lib = new Library(clock);
+        lib.registerBorrower(borrower);
+        lib.registerLibrarian(librarian);
+        lib.addBook(new Reference("BK-R", "Handbook", "Sun", "Vol1"));
+        lib.addBook(new Novel("BK-N", "Saga", "Brown", "Fantasy"));
+        lib.addBook(new Novel("BK-M", "Sequel", "Brown", "Fantasy"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-R", "LIB-0001"));          // due in 7 days, 1.00 a day late
+
+        clock.pin(t0.plusDays(16));
+        assertEquals(900, lib.getFineBalance("BOR-0001"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-N", "LIB-0001"), "0.99 short of the threshold");
+        assertTrue(lib.returnBook("BK-N"));
+        clock.pin(t0.plusDays(17));
+        assertEquals(1000, lib.getFineBalance("BOR-0001"));
+        assertFalse(lib.issueBook("BOR-0001", "BK-N", "LIB-0001"));
+        assertArrayEquals(new CirculationResult[] { CirculationResult.FINES_OWED, CirculationResult.FINES_OWED },
+                lib.issueBooks("BOR-0001", List.of("BK-N", "BK-M"), "LIB-0001"));
+
+        assertFalse(lib.payFine("BOR-0001", 1001));
+        assertFalse(lib.payFine("LIB-0001", 1));
+        assertTrue(lib.payFine("BOR-0001", 300));
+        assertTrue(lib.issueBook("BOR-0001", "BK-N", "LIB-0001"));
+        assertTrue(lib.returnBook("BK-R"));
+        clock.pin(t0.plusDays(38));
+        assertEquals(700, lib.getFineBalance("BOR-0001"), "The reference fine stops at its return; the novel is due today");
+        clock.pin(t0.plusDays(40));
+        assertEquals(720, lib.getFineBalance("BOR-0001"));
+    }
+
     /**
      * Ensures first‐in‐line hold gets the next available copy.
      */
@@ -203,6 +673,154 @@ public class LibraryTest {
                 "Second in queue must wait until first borrower returns");
     }
 
+    /**
+     * A returned book is set aside for the first hold; when the pickup window
+     * runs out, or the borrower declines, it moves to the next in line, and
+     * collecting it ends the window.
+     */
+    @Test
+    void testPickupWindowAdvancesHoldQueue() {
+        ReplayClock clock = new ReplayClock();
+        LocalDateTime t0 = LocalDateTime.of(2025, 3, 3, 10, 0);
+        clock.pin(t0);
+        Library lib = new Library(clock);
+        Borrower alex = new Borrower("BOR-0002", "Alex", "alex@mail.com", "557");
+        Borrower kim = new Borrower("BOR-0003", "Kim", "kim@mail.com", "558");
+        lib.registerBorrower(borrower);
+        lib.registerBorrower(alex);
+        lib.registerBorrower(kim);
+        lib.registerLibrarian(librarian);
+        lib.addBook(new Novel("BK-N", "Saga", "Brown", "Fantasy"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-N", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0002", "BK-N"));
+        assertTrue(lib.placeHold("BOR-0003", "BK-N"));
+
+        clock.pin(t0.plusDays(2));
+        assertTrue(lib.returnBook("BK-N"));
+        List<HoldRequest> queue = lib.getHoldsForBook("BK-N");
+        assertEquals(t0.plusDays(9), queue.get(0).getPickupBy(), "Set aside for Alex for a week");
+        assertNull(queue.get(1).getPickupBy());
+        assertEquals(1, lib.getPickupsPending());
+        assertTrue(lib.placeHold("BOR-0001", "BK-N"), "A book on the pickup shelf can be held");
+        assertFalse(lib.issueBook("BOR-0003", "BK-N", "LIB-0001"));
+
+        lib.setPickupWindow(Duration.ofDays(3));
+        clock.pin(t0.plusDays(9));
+        assertEquals(0, lib.expirePickups(), "The window includes its last instant");
+        clock.pin(t0.plusDays(9).plusMinutes(1));
+        assertEquals(1, lib.expirePickups());
+        assertTrue(alex.getHolds().isEmpty());
+        assertEquals(kim, lib.getHoldsForBook("BK-N").get(0).getBorrower());
+        assertEquals(t0.plusDays(12).plusMinutes(1), lib.getHoldsForBook("BK-N").get(0).getPickupBy());
+
+        assertFalse(lib.expireHold("BOR-0001", "BK-N"), "Sam is not first in line");
+        assertTrue(lib.expireHold("BOR-0003", "BK-N"));
+        assertNotNull(lib.getHoldsForBook("BK-N").get(0).getPickupBy());
+        assertTrue(lib.issueBook("BOR-0001", "BK-N", "LIB-0001"));
+        assertEquals(0, lib.getPickupsPending());
+        clock.pin(t0.plusYears(1));
+        assertEquals(0, lib.expirePickups());
+        assertTrue(lib.getBook("BK-N").isIssued());
+    }
+
+    /**
+     * Copies of one title share its hold queue: each returned copy is set
+     * aside for the next waiting borrower, issueCopy takes the copy set aside
+     * or any copy on the shelf, and searchTitles counts the copies.
+     */
+    @Test
+    void testCopiesShareTitleHoldQueue() {
+        for (int i = 1; i <= 3; i++) lib.addBook(new TextBook("CT-" + i, "Course Text", "Knuth", "CS"));
+        for (int i = 2; i <= 5; i++) lib.registerBorrower(new Borrower("BOR-000" + i, "B" + i, "b" + i + "@mail.com", "55" + i));
+        List<Title> titles = lib.searchTitles("course");
+        assertEquals(1, titles.size(), "One hit per title");
+        Title course = titles.get(0);
+        assertEquals(List.of("CT-1", "CT-2", "CT-3"), course.getCopyIds());
+        assertSame(course, lib.getTitle("CT-2"));
+        assertEquals(3, lib.searchBooks("course").size(), "One hit per copy");
+
+        assertEquals("CT-1", lib.issueCopy("BOR-0001", "CT-3", "LIB-0001"), "Longest on the shelf");
+        assertFalse(lib.placeHold("BOR-0004", "CT-1"), "Copies are still on the shelf");
+        assertEquals("CT-2", lib.issueCopy("BOR-0002", "CT-1", "LIB-0001"));
+        assertTrue(lib.issueBook("BOR-0003", "CT-3", "LIB-0001"));
+        assertEquals(0, course.getAvailable());
+        assertNull(lib.issueCopy("BOR-0004", "CT-1", "LIB-0001"));
+
+        assertTrue(lib.placeHold("BOR-0004", "CT-1"));
+        assertTrue(lib.placeHold("BOR-0005", "CT-3"));
+        assertFalse(lib.placeHold("BOR-0004", "CT-2"), "Already waiting for the title");
+        assertEquals(2, lib.getHoldsForBook("CT-2").size());
+
+        assertTrue(lib.returnBook("CT-3"));
+        HoldRequest first = lib.getHoldsForBook("CT-1").get(0);
+        assertEquals("BOR-0004", first.getBorrower().getId());
+        assertSame(lib.getBook("CT-3"), first.getBook(), "The returned copy is set aside");
+        assertNotNull(first.getPickupBy());
+        assertFalse(lib.issueBook("BOR-0005", "CT-3", "LIB-0001"));
+        assertTrue(lib.returnBook("CT-2"));
+        assertEquals("CT-2", lib.getHoldsForBook("CT-1").get(1).getBook().getBookId());
+        assertEquals(2, lib.getPickupsPending());
+        assertEquals(0, course.getAvailable());
+
+        assertEquals("CT-3", lib.issueCopy("BOR-0004", "CT-1", "LIB-0001"), "The copy set aside for them");
+        assertTrue(lib.cancelHold("BOR-0005", "CT-1"));
+        assertEquals(1, course.getAvailable(), "CT-2 back on the shelf");
+        assertTrue(lib.returnBook("CT-1"));
+        assertEquals(2, lib.searchTitles("knuth").get(0).getAvailable());
+        assertNotNull(lib.removeBook("CT-2"));
+        assertEquals(2, course.getCopies());
+        assertEquals(1, course.getAvailable());
+        assertEquals(0, lib.getPickupsPending());
+    }
+
+    /**
+     * A copy added to a title with a waiting hold is set aside for it like a
+     * returned copy, instead of going on the shelf.
+     */
+    @Test
+    void testNewCopyServesWaitingHold() {
+        Borrower second = new Borrower("BOR-0002", "Alex", "alex@mail.com", "557");
+        lib.registerBorrower(second);
+        assertTrue(lib.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0002", "BK-002"));
+
+        lib.addBook(new Novel("BK-012", "The Java Saga", "Brown", "Fantasy"));
+        HoldRequest hold = lib.getHoldsForBook("BK-002").get(0);
+        assertEquals("BK-012", hold.getBook().getBookId());
+        assertNotNull(hold.getPickupBy());
+        assertEquals(1, lib.getPickupsPending());
+        assertEquals(0, lib.getTitle("BK-012").getAvailable());
+        assertEquals(0, lib.searchFacets("saga", Set.of(), Set.of(), true, 10).total());
+        assertTrue(lib.issueBook("BOR-0002", "BK-012", "LIB-0001"));
+        assertEquals(0, lib.getPickupsPending());
+    }
+
+    /**
+     * Cancelling a hold lets the next borrower in line issue the book,
+     * and keeps Borrower.getHolds() in step with the queue.
+     */
+    @Test
+    void testCancelHoldAdvancesQueue() {
+        Borrower second = new Borrower("BOR-0002","Alex","alex@mail.com","557");
+        lib.registerBorrower(second);
+        assertTrue(lib.issueBook("BOR-0001","BK-003","LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0001","BK-003"));
+        assertFalse(lib.placeHold("BOR-0001","BK-003"), "A borrower may hold a book only once");
+        assertTrue(lib.placeHold("BOR-0002","BK-003"));
+        assertEquals(2, lib.getHoldsForBook("BK-003").size());
+
+        assertTrue(lib.cancelHold("BOR-0001","BK-003"));
+        assertFalse(lib.cancelHold("BOR-0001","BK-003"), "Hold is already gone");
+        assertTrue(borrower.getHolds().isEmpty());
+        assertEquals(second, lib.getHoldsForBook("BK-003").get(0).getBorrower());
+
+        assertTrue(lib.returnBook("BK-003"));
+        assertFalse(lib.issueBook("BOR-0001","BK-003","LIB-0001"), "Alex is now first in line");
+        assertTrue(lib.issueBook("BOR-0002","BK-003","LIB-0001"));
+        assertTrue(second.getHolds().isEmpty(), "Fulfilled hold leaves the borrower's list");
+        assertTrue(lib.getHoldsForBook("BK-003").isEmpty());
+    }
+
     /**
      * placeHold(...) must reject non-existent borrower or book IDs.
      */
@@ -226,4 +844,48 @@ public class LibraryTest {
         assertTrue(lib.generateUserReport("BOR-0001").isEmpty(),
                 "Returned loans should not appear in the active‐only report");
     }
+
+    /**
+     * Many terminals racing for the same books must never double-issue a book
+     * or exceed a borrower's limit.
+     */
+    @Test
+    void testConcurrentIssueNeverDoubleIssues() throws Exception {
+        int threads = 8;
+        for (int i = 2; i <= threads; i++) {
+            lib.registerBorrower(new Borrower("BOR-000" + i, "B" + i, "b@mail.com", "55" + i));
+        }
+        for (int i = 10; i < 40; i++) lib.addBook(new Novel("BK-0" + i, "Race " + i, "R", "Test"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger issued = new AtomicInteger();
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 1; t <= threads; t++) {
+            String borrowerId = "BOR-000" + t;
+            done.add(pool.submit(() -> {
+                start.await();
+                for (int round = 0; round < 200; round++) {
+                    String bookId = "BK-0" + (10 + ThreadLocalRandom.current().nextInt(30));
+                    if (lib.issueBook(borrowerId, bookId, "LIB-0001")) {
+                        issued.incrementAndGet();
+                        assertEquals(borrowerId, lib.getActiveLoan(bookId).getBorrower().getId());
+                        assertTrue(lib.returnBook(bookId));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : done) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertTrue(issued.get() > 0);
+        assertTrue(lib.displayOverdue().isEmpty());
+        for (Person p : lib.listUsers()) assertEquals(0, p.getActiveLoanCount());
+        for (Book b : lib.listBooks()) assertFalse(b.isIssued());
+        int history = 0;
+        for (Person p : lib.listUsers()) history += lib.getLoanHistory(p.getId()).size();
+        assertEquals(issued.get(), history, "Every issue must be matched by exactly one return");
+    }
 }
@@ -0,0 +1,143 @@
+package com.library.analytics;
+
+import com.library.analytics.PopularityTracker.Count;
+import com.library.analytics.PopularityTracker.Dimension;
+import com.library.analytics.PopularityTracker.Event;
+import com.library.analytics.PopularityTracker.Window;
+import com.library.model.Book;
+import com.library.model.Novel;
+import com.library.model.TextBook;
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PopularityTrackerTest {
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+    private static final Book JAVA = new TextBook("BK-001", "Java Fundamentals", "Evans", "CS");
+    private static final Book SAGA = new Novel("BK-002", "The Java Saga", "Brown", "Fantasy");
+    private static final Book ALGO = new TextBook("BK-003", "Algorithms", "Knuth", "CS");
+
+    private static void checkouts(PopularityTracker t, Book b, int n, LocalDate day) {
+        for (int i = 0; i < n; i++) t.record(Event.CHECKOUT, b, day);
+    }
+
+    /**
+     * Windows count the days ending today; older days drop out as the days pass.
+     */
+    @Test
+    void testWindowsSlide() {
+        PopularityTracker t = new PopularityTracker();
+        checkouts(t, JAVA, 5, DAY);
+        checkouts(t, SAGA, 3, DAY.plusDays(20));
+        checkouts(t, ALGO, 1, DAY.plusDays(25));
+
+        LocalDate today = DAY.plusDays(25);
+        assertEquals(List.of(new Count("BK-002", 3), new Count("BK-003", 1)), t.top(Event.CHECKOUT, Dimension.BOOK, Window.WEEK, 10, today));
+        assertEquals(List.of(new Count("BK-001", 5), new Count("BK-002", 3), new Count("BK-003", 1)),
+                t.top(Event.CHECKOUT, Dimension.BOOK, Window.MONTH, 10, today));
+        assertEquals(List.of(new Count("CS", 6), new Count("Fantasy", 3)), t.top(Event.CHECKOUT, Dimension.SUBJECT, Window.MONTH, 10, today));
+
+        assertEquals(List.of(new Count("BK-002", 3), new Count("BK-003", 1)),
+                t.top(Event.CHECKOUT, Dimension.BOOK, Window.MONTH, 10, DAY.plusDays(30)), "Day 0 left the 30-day window");
+        assertEquals(List.of(new Count("BK-001", 5), new Count("BK-002", 3), new Count("BK-003", 1)),
+                t.top(Event.CHECKOUT, Dimension.BOOK, Window.YEAR, 10, DAY.plusDays(30)));
+        assertTrue(t.top(Event.CHECKOUT, Dimension.BOOK, Window.YEAR, 10, DAY.plusDays(400)).isEmpty());
+        assertTrue(t.top(Event.HOLD, Dimension.BOOK, Window.YEAR, 10, DAY.plusDays(400)).isEmpty());
+    }
+
+    /**
+     * Top-N lists are cut at N, ties ordered by key, and events of the same
+     * day are merged with the closed days.
+     */
+    @Test
+    void testTopNAndTies() {
+        PopularityTracker t = new PopularityTracker();
+        checkouts(t, SAGA, 2, DAY);
+        checkouts(t, ALGO, 2, DAY);
+        checkouts(t, JAVA, 1, DAY);
+        checkouts(t, JAVA, 2, DAY.plusDays(1));
+
+        assertEquals(List.of(new Count("BK-001", 3), new Count("BK-002", 2)),
+                t.top(Event.CHECKOUT, Dimension.BOOK, Window.WEEK, 2, DAY.plusDays(1)));
+        assertEquals(List.of(new Count("BK-001", 3), new Count("BK-002", 2), new Count("BK-003", 2)),
+                t.top(Event.CHECKOUT, Dimension.BOOK, Window.WEEK, 3, DAY.plusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> t.top(Event.CHECKOUT, Dimension.BOOK, Window.WEEK, 0, DAY));
+        assertThrows(IllegalArgumentException.class, () -> Window.ofDays(14));
+    }
+
+    /**
+     * With far more titles than counters, the heavy hitters still come out
+     * on top with counts within the Space-Saving error bound.
+     */
+    @Test
+    void testHeavyHittersSurviveEviction() {
+        PopularityTracker t = new PopularityTracker(16);
+        for (int day = 0; day < 10; day++) {
+            for (int i = 0; i < 500; i++) {
+                t.record(Event.CHECKOUT, new Novel("TAIL-" + day + "-" + i, "t", "a", "g"), DAY.plusDays(day));
+                if (i % 5 == 0) t.record(Event.CHECKOUT, JAVA, DAY.plusDays(day));
+                if (i % 10 == 0) t.record(Event.CHECKOUT, SAGA, DAY.plusDays(day));
+            }
+        }
+        List<Count> top = t.top(Event.CHECKOUT, Dimension.BOOK, Window.MONTH, 2, DAY.plusDays(9));
+        assertEquals("BK-001", top.get(0).key());
+        assertEquals("BK-002", top.get(1).key());
+        long bound = 10 * (500 + 100 + 50) / 16;
+        assertTrue(top.get(0).count() >= 1000 && top.get(0).count() <= 1000 + bound, top.toString());
+        assertTrue(top.get(1).count() >= 500 && top.get(1).count() <= 500 + bound, top.toString());
+    }
+
+    /**
+     * Threads recording concurrently, some still on the previous day, add up
+     * to exact counts: each thread's part of a day is frozen into that day
+     * whenever its stripe moves on.
+     */
+    @Test
+    void testConcurrentRecordingAcrossDays() throws InterruptedException {
+        PopularityTracker t = new PopularityTracker();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            boolean late = i % 2 == 0;
+            threads.add(Thread.ofPlatform().start(() -> {
+                checkouts(t, JAVA, 1_000, DAY);
+                checkouts(t, SAGA, 500, late ? DAY : DAY.plusDays(1));
+            }));
+        }
+        for (Thread th : threads) th.join();
+        checkouts(t, ALGO, 1, DAY.plusDays(2));
+
+        LocalDate today = DAY.plusDays(2);
+        assertEquals(List.of(new Count("BK-001", 8_000), new Count("BK-002", 4_000), new Count("BK-003", 1)),
+                t.top(Event.CHECKOUT, Dimension.BOOK, Window.WEEK, 10, today));
+        assertEquals(List.of(new Count("BK-003", 1)), t.top(Event.CHECKOUT, Dimension.BOOK, Window.WEEK, 10, DAY.plusDays(8)),
+                "The first two days left the window");
+        assertEquals(3, t.buckets().stream().filter(b -> b.dimension() == Dimension.BOOK).count(), "One bucket per day");
+    }
+
+    /**
+     * Buckets restored into a fresh tracker answer the same queries.
+     */
+    @Test
+    void testRestoreRoundTrip() {
+        PopularityTracker t = new PopularityTracker();
+        checkouts(t, JAVA, 4, DAY);
+        checkouts(t, SAGA, 2, DAY.plusDays(3));
+        t.record(Event.HOLD, SAGA, DAY.plusDays(3));
+
+        PopularityTracker copy = new PopularityTracker();
+        t.buckets().forEach(copy::restore);
+        LocalDate today = DAY.plusDays(4);
+        for (Event e : Event.values()) {
+            for (Dimension d : Dimension.values()) {
+                for (Window w : Window.values()) {
+                    assertEquals(t.top(e, d, w, 10, today), copy.top(e, d, w, 10, today), e + " " + d + " " + w);
+                }
+            }
+        }
+        assertEquals(List.of(new Count("BK-002", 1)), copy.top(Event.HOLD, Dimension.BOOK, Window.WEEK, 10, today));
+    }
+}
@@ -0,0 +1,169 @@
+package com.library.bench;
+
+import com.library.Library;
+import com.library.model.Loan;
+import com.library.persistence.Journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.library.bench.WorkloadGenerator.bookId;
+import static com.library.bench.WorkloadGenerator.borrowerId;
+
+/**
+ * Benchmark suite for the circulation hot paths: searchBooks, issueBook/returnBook,
+ * getHoldsForBook, displayOverdue, a mixed counter workload and batch returns from
+ * the book-drop sorter, parameterized over catalog size, loan count, hold-queue
+ * depth and belt size.
+ * <p>
+ * Usage: {@code java com.library.bench.CirculationBenchmark [--max-books=N]
+ * [--out=results.tsv] [--baseline=results.tsv] [--tolerance=0.2]}. With a
+ * baseline the run exits with status 1 if any benchmark got slower than the
+ * tolerance allows, so it can gate performance work.
+ */
+public class CirculationBenchmark {
+    private static final int TRAFFIC = 1 << 16;           // pre-generated ops, reused round-robin
+    private static final int OPS = 20_000;                // invocations per measured iteration
+
+    public static void main(String[] args) throws Exception {
+        int maxBooks = 1_000_000;
+        Path out = null, baseline = null;
+        double tolerance = 0.20;
+        for (String a : args) {
+            if      (a.startsWith("--max-books=")) maxBooks  = Integer.parseInt(a.substring(12));
+            else if (a.startsWith("--out="))       out       = Path.of(a.substring(6));
+            else if (a.startsWith("--baseline="))  baseline  = Path.of(a.substring(11));
+            else if (a.startsWith("--tolerance=")) tolerance = Double.parseDouble(a.substring(12));
+        }
+
+        Harness h = new Harness(3, 5);
+        for (int books = 1_000; books <= maxBooks; books *= 10) {
+            catalogBenchmarks(h, books);
+        }
+        for (int depth : new int[] { 1, 100, 10_000 }) {
+            holdBenchmarks(h, depth);
+        }
+        for (int loans = 1_000; loans <= Math.min(maxBooks, 100_000); loans *= 10) {
+            overdueBenchmarks(h, loans);
+        }
+        sorterBenchmarks(h, 32);
+
+        if (out != null) h.save(out);
+        if (baseline != null) {
+            List<String> slower = h.regressions(baseline, tolerance);
+            slower.forEach(s -> System.out.println("REGRESSION " + s));
+            if (!slower.isEmpty()) System.exit(1);
+        }
+    }
+
+    /** searchBooks, issue+return and the mixed workload at one catalog size. */
+    private static void catalogBenchmarks(Harness h, int books) {
+        Library lib = new Library();
+        WorkloadGenerator gen = new WorkloadGenerator(42, books, 40);
+        int borrowers = Math.max(1_000, books / 5);
+        gen.populate(lib, borrowers);
+
+        String[] keywords = new String[TRAFFIC];
+        String[] bookIds = new String[TRAFFIC];
+        String[] borrowerIds = new String[TRAFFIC];
+        WorkloadGenerator.Op[] ops = new WorkloadGenerator.Op[TRAFFIC];
+        for (int i = 0; i < TRAFFIC; i++) {
+            keywords[i] = gen.nextKeyword();
+            bookIds[i] = bookId(gen.nextBook());
+            borrowerIds[i] = borrowerId(gen.nextInt(borrowers));
+            ops[i] = gen.nextOp();
+        }
+        int mask = TRAFFIC - 1;
+        String p = "[books=" + books + "]";
+
+        h.measure("searchBooks" + p, OPS / 10, i -> lib.searchBooks(keywords[i & mask]));
+        h.measure("issueAndReturn" + p, OPS, i -> {
+            String bookId = bookIds[i & mask];
+            return lib.issueBook(borrowerIds[i & mask], bookId, "LIB-0001") && lib.returnBook(bookId);
+        });
+        h.measure("mixedCounterTraffic" + p, OPS, i -> {
+            int k = i & mask;
+            String bookId = bookIds[k];
+            return switch (ops[k]) {
+                case SEARCH -> lib.searchBooks(keywords[k]);
+                case ISSUE  -> lib.issueBook(borrowerIds[k], bookId, "LIB-0001");
+                case RETURN -> lib.returnBook(bookId);
+                case HOLD   -> lib.placeHold(borrowerIds[k], bookId);
+                case RENEW  -> {
+                    Loan loan = lib.getActiveLoan(bookId);
+                    yield loan != null && lib.renewLoan(loan.getBorrower().getId(), bookId);
+                }
+            };
+        });
+    }
+
+    /** getHoldsForBook and head-of-queue issue checks at one hold-queue depth. */
+    private static void holdBenchmarks(Harness h, int depth) {
+        Library lib = new Library();
+        WorkloadGenerator gen = new WorkloadGenerator(7, 100, 0);
+        gen.populate(lib, depth + 1);
+        lib.issueBook(borrowerId(depth), bookId(0), "LIB-0001");
+        for (int i = 0; i < depth; i++) lib.placeHold(borrowerId(i), bookId(0));
+        lib.returnBook(bookId(0));
+        String p = "[holdDepth=" + depth + "]";
+
+        h.measure("getHoldsForBook" + p, OPS, i -> lib.getHoldsForBook(bookId(0)));
+        // the previous loaner is not in line, so the hold-order check refuses every attempt
+        h.measure("issueRefusedByHold" + p, OPS, i -> lib.issueBook(borrowerId(depth), bookId(0), "LIB-0001"));
+    }
+
+    /** displayOverdue with 10 % of the active loans overdue. */
+    private static void overdueBenchmarks(Harness h, int loans) {
+        Library lib = new Library();
+        WorkloadGenerator gen = new WorkloadGenerator(11, loans, 0);
+        gen.populate(lib, loans / 3 + 1);
+        LocalDateTime past = LocalDateTime.now().minusDays(30);
+        for (int i = 0; i < loans; i++) {
+            lib.issueBook(borrowerId(i / 3), bookId(i), "LIB-0001");
+            if (i % 10 == 0) lib.getActiveLoan(bookId(i)).setDueDate(past.plusMinutes(i));
+        }
+        h.measure("displayOverdue[loans=" + loans + "]", 200, i -> lib.displayOverdue());
+        h.measure("loansDueWithin7Days[loans=" + loans + "]", 200, i -> lib.getLoansDueWithin(7));
+    }
+
+    /**
+     * Returns one sorter belt of books per operation, with a SYNC journal, once
+     * book by book and once through returnBooks. The loans are opened up front
+     * with the journal detached, so only the returns are timed.
+     */
+    private static void sorterBenchmarks(Harness h, int belt) throws IOException {
+        int belts = 2 * (3 + 5) * (OPS / 100);             // warm-up + measured ops of both variants
+        int books = belts * belt;
+        Library lib = new Library();
+        WorkloadGenerator gen = new WorkloadGenerator(13, books, 0);
+        gen.populate(lib, books / 3 + 1);
+        List<List<String>> loaded = new ArrayList<>();
+        for (int b = 0; b < belts; b++) {
+            List<String> ids = new ArrayList<>();
+            for (int k = 0; k < belt; k++) ids.add(bookId(b * belt + k));
+            loaded.add(ids);
+        }
+        for (int i = 0; i < books; i++) lib.issueBook(borrowerId(i / 3), bookId(i), "LIB-0001");
+
+        Path dir = Files.createTempDirectory("sorter-bench");
+        try (Journal journal = new Journal(dir, 1, Journal.Durability.SYNC)) {
+            lib.attachJournal(journal);
+            String p = "[belt=" + belt + ",journal=sync]";
+            h.measure("sorterReturnLoop" + p, OPS / 100, i -> {
+                for (String id : loaded.get(i)) lib.returnBook(id);
+                return null;
+            });
+            h.measure("sorterReturnBooks" + p, OPS / 100, i -> lib.returnBooks(loaded.get(belts / 2 + i)));
+            lib.attachJournal(null);
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+}
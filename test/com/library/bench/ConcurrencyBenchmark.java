@@ -0,0 +1,65 @@
+package com.library.bench;
+
+import com.library.Library;
+import com.library.model.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures circulation throughput (issue + return pairs and searches) against
+ * one shared Library as the number of terminal threads grows.
+ * Run the main method directly; optional arg: max thread count.
+ */
+public class ConcurrencyBenchmark {
+    private static final int BOOKS = 100_000;
+    private static final int BORROWERS = 20_000;
+    private static final long RUN_MILLIS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(16, Runtime.getRuntime().availableProcessors());
+        Library lib = seed();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(lib, threads);                                 // warm-up
+            double opsPerSec = run(lib, threads);
+            System.out.printf("threads=%3d  %,12.0f ops/s%n", threads, opsPerSec);
+        }
+    }
+
+    static Library seed() {
+        Library lib = new Library();
+        lib.registerLibrarian(new Librarian("LIB-0001", "Bench", "bench@mail.com", "0"));
+        for (int i = 0; i < BORROWERS; i++) {
+            lib.registerBorrower(new Borrower("BOR-" + i, "B" + i, "b@mail.com", "0"));
+        }
+        for (int i = 0; i < BOOKS; i++) {
+            lib.addBook(new TextBook("BK-" + i, "Title " + i, "Author " + (i % 5000), "S" + (i % 100)));
+        }
+        return lib;
+    }
+
+    /** @return operations per second over one timed run */
+    private static double run(Library lib, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    String bookId = "BK-" + rnd.nextInt(BOOKS);
+                    if (rnd.nextInt(10) == 0) {
+                        lib.searchBooks("author " + rnd.nextInt(5000));
+                    } else if (lib.issueBook("BOR-" + rnd.nextInt(BORROWERS), bookId, "LIB-0001")) {
+                        lib.returnBook(bookId);
+                    }
+                    ops.increment();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(RUN_MILLIS * 2, TimeUnit.MILLISECONDS);
+        return ops.sum() * 1000.0 / RUN_MILLIS;
+    }
+}
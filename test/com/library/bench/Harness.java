@@ -0,0 +1,77 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Minimal JMH-style measurement loop: warm-up iterations, then timed
+ * iterations reporting the mean ns/op. Results can be written to a file and
+ * compared against a saved baseline so a regression fails the run.
+ */
+final class Harness {
+    /** A benchmarked operation; {@code i} is the invocation counter. */
+    interface Op { Object run(int i); }
+
+    private static volatile Object sink;                 // keeps results alive (no dead-code elimination)
+
+    private final int warmup;
+    private final int iterations;
+    private final Map<String, Double> results = new LinkedHashMap<>();
+
+    Harness(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Runs and reports one benchmark.
+     * @param name   benchmark name including its parameters, e.g. {@code search[books=1000]}
+     * @param opsPerIteration invocations per iteration
+     * @param op     the operation
+     * @return mean nanoseconds per operation over the measured iterations
+     */
+    double measure(String name, int opsPerIteration, Op op) {
+        int counter = 0;
+        for (int w = 0; w < warmup; w++) {
+            for (int i = 0; i < opsPerIteration; i++) sink = op.run(counter++);
+        }
+        long total = 0;
+        for (int it = 0; it < iterations; it++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < opsPerIteration; i++) sink = op.run(counter++);
+            total += System.nanoTime() - start;
+        }
+        double nsPerOp = (double) total / ((long) iterations * opsPerIteration);
+        results.put(name, nsPerOp);
+        System.out.printf("%-48s %14.1f ns/op%n", name, nsPerOp);
+        return nsPerOp;
+    }
+
+    /** Writes {@code name<TAB>ns/op} lines. */
+    void save(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        results.forEach((k, v) -> lines.add(k + "\t" + v));
+        Files.write(file, lines);
+    }
+
+    /**
+     * Compares the results against a baseline file written by {@link #save}.
+     * @param baseline  baseline results
+     * @param tolerance allowed slowdown, e.g. 0.20 for 20 %
+     * @return names of benchmarks that regressed beyond the tolerance
+     */
+    List<String> regressions(Path baseline, double tolerance) throws IOException {
+        List<String> slower = new ArrayList<>();
+        for (String line : Files.readAllLines(baseline)) {
+            String[] parts = line.split("\t");
+            if (parts.length != 2) continue;
+            Double now = results.get(parts[0]);
+            double before = Double.parseDouble(parts[1]);
+            if (now != null && now > before * (1 + tolerance)) {
+                slower.add(String.format("%s: %.1f -> %.1f ns/op", parts[0], before, now));
+            }
+        }
+        return slower;
+    }
+}
@@ -0,0 +1,96 @@
+package com.library.bench;
+
+import com.library.Library;
+import com.library.http.LibraryServer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.library.bench.WorkloadGenerator.bookId;
+
+/**
+ * Loopback load test for {@link LibraryServer}: keep-alive connections send
+ * {@code GET /books/{id}} (and every tenth request a search) back to back for
+ * a fixed time and the achieved request rate is reported.
+ * <p>
+ * Usage: {@code java com.library.bench.HttpLoadBenchmark [--connections=64] [--seconds=10] [--books=100000]}
+ */
+public class HttpLoadBenchmark {
+    public static void main(String[] args) throws Exception {
+        int connections = 64, seconds = 10, books = 100_000;
+        for (String a : args) {
+            if      (a.startsWith("--connections=")) connections = Integer.parseInt(a.substring(14));
+            else if (a.startsWith("--seconds="))     seconds     = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--books="))       books       = Integer.parseInt(a.substring(8));
+        }
+        Library lib = new Library();
+        WorkloadGenerator gen = new WorkloadGenerator(5, books, 10);
+        gen.populate(lib, 100);
+        String[] keywords = new String[1024];
+        for (int i = 0; i < keywords.length; i++) keywords[i] = gen.nextKeyword().replace(' ', '+');
+
+        try (LibraryServer server = new LibraryServer(lib, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            LongAdder done = new LongAdder();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            List<Thread> clients = new ArrayList<>();
+            for (int c = 0; c < connections; c++) {
+                int seed = c;
+                int catalog = books;
+                clients.add(Thread.ofVirtual().start(() -> {
+                    try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                        s.setTcpNoDelay(true);
+                        OutputStream out = s.getOutputStream();
+                        InputStream in = new BufferedInputStream(s.getInputStream(), 1 << 14);
+                        for (int i = seed; System.nanoTime() < end; i += 7919) {
+                            String path = i % 10 == 0 ? "/books?q=" + keywords[i & 1023] : "/books/" + bookId(i % catalog);
+                            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                            readResponse(in);
+                            done.increment();
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (Thread t : clients) t.join();
+            System.out.printf("%d connections, %d s: %,.0f req/s%n", connections, seconds, done.sum() / (double) seconds);
+        }
+    }
+
+    /** Skips one response, using its Content-Length header. */
+    private static void readResponse(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        long length = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) throw new IOException("connection closed");
+            if (b != '\n') {
+                if (b != '\r') line.append((char) b);
+                continue;
+            }
+            if (line.isEmpty()) break;
+            String h = line.toString().toLowerCase();
+            if (h.startsWith("content-length:")) length = Long.parseLong(h.substring(15).trim());
+            line.setLength(0);
+        }
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new IOException("connection closed");
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+}
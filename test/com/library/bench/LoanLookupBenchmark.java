@@ -0,0 +1,64 @@
+package com.library.bench;
+
+import com.library.Library;
+import com.library.model.*;
+
+/**
+ * Measures returnBook/renewLoan latency as the number of active loans grows.
+ * With keyed loan lookup the per-operation cost should stay flat.
+ * Run the main method directly; it is not part of the unit test suite.
+ */
+public class LoanLookupBenchmark {
+    private static final int OPS = 50_000;
+
+    public static void main(String[] args) {
+        for (int loans : new int[] { 1_000, 10_000, 100_000, 500_000 }) {
+            Library lib = seed(loans);
+            long renew = 0, ret = 0;
+            for (int round = 0; round < 3; round++) {       // last round is the measured one
+                renew = timeRenew(lib, loans);
+                ret   = timeReturnAndReissue(lib, loans);
+            }
+            System.out.printf("loans=%,9d  renew=%6d ns/op  return+issue=%6d ns/op%n",
+                    loans, renew / OPS, ret / OPS);
+        }
+    }
+
+    /** Builds a library with the given number of loans, three per borrower. */
+    static Library seed(int loans) {
+        Library lib = new Library();
+        lib.registerLibrarian(new Librarian("LIB-0001", "Bench", "bench@mail.com", "0"));
+        for (int i = 0; i < loans; i++) {
+            String bookId = "BK-" + i;
+            String borrowerId = borrowerFor(i);
+            if (i % 3 == 0) lib.registerBorrower(new Borrower(borrowerId, "B" + i, "b@mail.com", "0"));
+            lib.addBook(new Novel(bookId, "Title " + i, "Author " + (i % 1000), "Bench"));
+            lib.issueBook(borrowerId, bookId, "LIB-0001");
+        }
+        return lib;
+    }
+
+    private static String borrowerFor(int book) {
+        return "BOR-" + (book / 3);
+    }
+
+    private static long timeRenew(Library lib, int loans) {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS; i++) {
+            int book = (int) ((i * 7919L) % loans);
+            lib.renewLoan(borrowerFor(book), "BK-" + book);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeReturnAndReissue(Library lib, int loans) {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS; i++) {
+            int book = (int) ((i * 7919L) % loans);
+            String bookId = "BK-" + book;
+            lib.returnBook(bookId);
+            lib.issueBook(borrowerFor(book), bookId, "LIB-0001");
+        }
+        return System.nanoTime() - start;
+    }
+}
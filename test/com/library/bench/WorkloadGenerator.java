@@ -0,0 +1,105 @@
+package com.library.bench;
+
+import com.library.Library;
+import com.library.model.*;
+
+import java.util.Random;
+
+/**
+ * Builds synthetic libraries and circulation traffic for benchmarks.
+ * <p>
+ * Titles and authors are drawn from a small vocabulary so searches hit
+ * realistic posting-list sizes, and book popularity follows a Zipf-like
+ * distribution so a few titles receive most checkouts and holds.
+ */
+public class WorkloadGenerator {
+    /** Kinds of counter traffic in the generated mix. */
+    public enum Op { SEARCH, ISSUE, RETURN, RENEW, HOLD }
+
+    private static final String[] WORDS = {
+            "java", "python", "history", "saga", "ocean", "river", "garden", "night", "code",
+            "data", "systems", "theory", "art", "music", "war", "peace", "modern", "guide",
+            "introduction", "advanced", "world", "secret", "city", "empire", "design", "patterns"
+    };
+    private static final String[] SUBJECTS = { "CS", "Fantasy", "History", "Math", "Art", "Travel", "Science" };
+
+    private final Random rnd;
+    private final int books;
+    private final double[] zipf;                          // cumulative popularity
+    private final int[] mix;                              // cumulative weights per Op, out of 100
+
+    /**
+     * @param seed  random seed, so runs are reproducible
+     * @param books catalog size the traffic refers to
+     * @param searchPct share of searches, the rest is split over circulation ops
+     */
+    public WorkloadGenerator(long seed, int books, int searchPct) {
+        this.rnd = new Random(seed);
+        this.books = books;
+        this.zipf = new double[Math.min(books, 10_000)];
+        double sum = 0;
+        for (int i = 0; i < zipf.length; i++) zipf[i] = sum += 1.0 / (i + 1);
+        for (int i = 0; i < zipf.length; i++) zipf[i] /= sum;
+        int rest = 100 - searchPct;
+        this.mix = new int[] { searchPct, searchPct + rest * 4 / 10, searchPct + rest * 8 / 10,
+                searchPct + rest * 9 / 10, 100 };
+    }
+
+    /**
+     * Populates a library with books, borrowers and one librarian ({@code LIB-0001}).
+     * @param lib       target library
+     * @param borrowers number of borrowers to register
+     */
+    public void populate(Library lib, int borrowers) {
+        lib.registerLibrarian(new Librarian("LIB-0001", "Bench", "bench@mail.com", "0"));
+        for (int i = 0; i < borrowers; i++) lib.registerBorrower(new Borrower(borrowerId(i), "B" + i, "b@mail.com", "0"));
+        for (int i = 0; i < books; i++) lib.addBook(book(i));
+    }
+
+    /** @return a deterministic book for catalog slot {@code i} */
+    public Book book(int i) {
+        String id = bookId(i);
+        String title = WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)] + " " + i;
+        String author = "Author " + rnd.nextInt(Math.max(1, books / 20));
+        String subject = SUBJECTS[rnd.nextInt(SUBJECTS.length)];
+        return switch (i % 3) {
+            case 0  -> new TextBook(id, title, author, subject);
+            case 1  -> new Novel(id, title, author, subject);
+            default -> new Reference(id, title, author, subject);
+        };
+    }
+
+    /** @return the next operation according to the configured mix */
+    public Op nextOp() {
+        int r = rnd.nextInt(100);
+        for (int i = 0; i < mix.length; i++) if (r < mix[i]) return Op.values()[i];
+        return Op.HOLD;
+    }
+
+    /** @return a book slot, popular titles first (Zipf over the top slots, uniform tail) */
+    public int nextBook() {
+        if (rnd.nextInt(4) == 0) return rnd.nextInt(books);
+        double u = rnd.nextDouble();
+        int lo = 0, hi = zipf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zipf[mid] < u) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** @return a search keyword as a patron would type it */
+    public String nextKeyword() {
+        return switch (rnd.nextInt(3)) {
+            case 0  -> WORDS[rnd.nextInt(WORDS.length)];
+            case 1  -> WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)];
+            default -> "author " + rnd.nextInt(Math.max(1, books / 20));
+        };
+    }
+
+    /** @return a uniformly chosen index below {@code bound} */
+    public int nextInt(int bound) { return rnd.nextInt(bound); }
+
+    public static String bookId(int i)     { return "BK-" + i; }
+    public static String borrowerId(int i) { return "BOR-" + i; }
+}
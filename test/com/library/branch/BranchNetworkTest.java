@@ -0,0 +1,218 @@
+package com.library.branch;
+
+import com.library.Library;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BranchNetworkTest {
+    private BranchNetwork net;
+
+    @BeforeEach
+    void setUp() {
+        net = new BranchNetwork(List.of("north", "south", "east"), 2);
+        for (int i = 1; i <= 4; i++) net.registerBorrower(new Borrower("BOR-000" + i, "B" + i, "b" + i + "@mail.com", "55" + i)).join();
+        net.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556")).join();
+    }
+
+    @AfterEach
+    void tearDown() {
+        net.close();
+    }
+
+    /**
+     * Books go to their branch or, without one, to the branch their ID
+     * hashes to; searches merge every branch's hits in branch order, and a
+     * borrower's limit counts loans in all branches.
+     */
+    @Test
+    void testRoutingSearchAndNetworkWideLimit() {
+        net.addBook("south", new Novel("S-1", "Java Saga", "Brown", "Fantasy")).join();
+        net.addBook("north", new TextBook("N-1", "Java Fundamentals", "Evans", "CS")).join();
+        net.addBook("east", new Novel("E-1", "Java Nights", "Brown", "Fantasy")).join();
+        for (int i = 0; i < 30; i++) net.addBook(new Novel("H-" + i, "Hashed " + i, "Hash", "Misc")).join();
+
+        assertEquals("south", net.branchOf("S-1"));
+        assertNotNull(net.branch("south").getBook("S-1"));
+        assertNull(net.branch("north").getBook("S-1"), "A book lives in one branch only");
+        int spread = 0;
+        for (String b : net.branchNames()) if (!net.branch(b).searchBooks("Hashed").isEmpty()) spread++;
+        assertEquals(3, spread, "Hashed IDs spread over every branch");
+        assertEquals(List.of("N-1", "S-1", "E-1"),
+                net.searchBooks("java").join().stream().map(Book::getBookId).toList());
+        assertEquals(30, net.searchBooks("hashed").join().size());
+
+        assertTrue(net.issueBook("BOR-0001", "N-1", "LIB-0001").join());
+        assertTrue(net.issueBook("BOR-0001", "S-1", "LIB-0001").join());
+        assertTrue(net.issueBook("BOR-0001", "E-1", "LIB-0001").join());
+        assertFalse(net.issueBook("BOR-0001", "H-0", "LIB-0001").join(), "Borrow limit of 3 across branches");
+        assertTrue(net.returnBook("S-1").join());
+        assertTrue(net.issueBook("BOR-0001", "H-0", "LIB-0001").join());
+        assertFalse(net.returnBook("NO-SUCH").join());
+        assertSame(net.branch(net.branchOf("H-0")).getBook("H-0"), net.getBook("H-0").join());
+        assertThrows(IllegalArgumentException.class, () -> net.branch("west"));
+    }
+
+    /**
+     * A user is registered with their home branch only; another branch gets
+     * a record of them when they first borrow there, counting the same loans.
+     */
+    @Test
+    void testUsersLiveInHomeBranch() {
+        String home = net.homeOf("BOR-0001");
+        String other = net.branchNames().stream().filter(b -> !b.equals(home)).findFirst().orElseThrow();
+        for (String b : net.branchNames()) {
+            assertEquals(b.equals(home), net.branch(b).getUser("BOR-0001") != null, b);
+        }
+        net.addBook(other, new Novel("O-1", "Elsewhere", "Brown", "Fantasy")).join();
+        assertTrue(net.issueBook("BOR-0001", "O-1", "LIB-0001").join());
+        assertSame(net.branch(home).getUser("BOR-0001"), net.branch(other).getUser("BOR-0001"));
+        assertEquals(1, net.branch(home).getUser("BOR-0001").getActiveLoanCount());
+        assertFalse(net.issueBook("NO-SUCH", "O-1", "LIB-0001").join());
+    }
+
+    /**
+     * A network hold queues on the copies in every branch; the first copy to
+     * come back is set aside for the borrower and their holds on the other
+     * copies are dropped, so those go to the next borrower in line.
+     */
+    @Test
+    void testNetworkHoldTakesFirstReturnedCopy() {
+        net.addBook("north", new TextBook("N-1", "Algorithms", "Knuth", "CS")).join();
+        net.addBook("south", new TextBook("S-1", "Algorithms", "Knuth", "CS")).join();
+        List<String> copies = List.of("N-1", "S-1");
+        assertTrue(net.issueBook("BOR-0001", "N-1", "LIB-0001").join());
+        assertFalse(net.placeHold("BOR-0003", copies).join(), "S-1 is still on the shelf");
+        assertTrue(net.issueBook("BOR-0002", "S-1", "LIB-0001").join());
+
+        assertTrue(net.placeHold("BOR-0003", copies).join());
+        assertTrue(net.placeHold("BOR-0004", copies).join());
+        assertEquals(2, net.getNetworkHoldsPending());
+        assertEquals(2, net.branch("north").getHoldsForBook("N-1").size());
+
+        assertTrue(net.returnBook("S-1").join());
+        assertEquals("BOR-0003", net.branch("south").getHoldsForBook("S-1").get(0).getBorrower().getId());
+        await(() -> net.branch("north").getHoldsForBook("N-1").size() == 1);
+        assertEquals("BOR-0004", net.branch("north").getHoldsForBook("N-1").get(0).getBorrower().getId());
+        assertEquals(1, net.getNetworkHoldsPending());
+
+        assertTrue(net.returnBook("N-1").join());
+        assertNotNull(net.branch("north").getHoldsForBook("N-1").get(0).getPickupBy(), "Set aside for BOR-0004");
+        await(() -> net.branch("south").getHoldsForBook("S-1").size() == 1);
+        assertEquals(0, net.getNetworkHoldsPending());
+        assertFalse(net.issueBook("BOR-0004", "S-1", "LIB-0001").join(), "S-1 waits for BOR-0003");
+        assertTrue(net.issueBook("BOR-0003", "S-1", "LIB-0001").join());
+        assertTrue(net.issueBook("BOR-0004", "N-1", "LIB-0001").join());
+
+        assertTrue(net.placeHold("BOR-0001", copies).join());
+        assertTrue(net.cancelHold("BOR-0001", copies).join());
+        assertEquals(0, net.getNetworkHoldsPending());
+        assertTrue(net.branch("north").getHoldsForBook("N-1").isEmpty());
+    }
+
+    /**
+     * Fines owed in several branches add up to the checkout block, though no
+     * single branch reaches it.
+     */
+    @Test
+    void testFinesBlockAcrossBranches() {
+        net.addBook("north", new Reference("N-1", "Atlas", "Sun", "Maps")).join();
+        net.addBook("south", new Reference("S-1", "Almanac", "Sun", "Facts")).join();
+        net.addBook("east", new Novel("E-1", "Java Nights", "Brown", "Fantasy")).join();
+        for (String id : List.of("N-1", "S-1")) {
+            assertTrue(net.issueBook("BOR-0001", id, "LIB-0001").join());
+            net.branch(net.branchOf(id)).getActiveLoan(id).setDueDate(LocalDateTime.now().minusDays(6));
+            assertTrue(net.returnBook(id).join());
+        }
+        assertEquals(600, net.branch("north").getFineBalance("BOR-0001"), "6 days late at 1.00 a day");
+        assertEquals(1200, net.getFineBalance("BOR-0001").join());
+        assertFalse(net.issueBook("BOR-0001", "E-1", "LIB-0001").join(), "Blocked at 10.00 across branches");
+        assertTrue(net.branch("south").payFine("BOR-0001", 600));
+        assertTrue(net.issueBook("BOR-0001", "E-1", "LIB-0001").join());
+    }
+
+    /**
+     * Wrapped libraries that each hold their own record of a borrower, as
+     * libraries recovered by separate stores do, still enforce one borrow
+     * limit across the network.
+     */
+    @Test
+    void testWrappedBranchesShareBorrowLimit() {
+        Map<String, Library> libs = new LinkedHashMap<>();
+        for (String name : List.of("north", "south")) {
+            Library lib = new Library();
+            lib.registerBorrower(new Borrower("BOR-0001", "Sam", "sam@mail.com", "555"));
+            lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+            for (int i = 1; i <= 3; i++) lib.addBook(new Novel(name + "-" + i, "Book " + i, "Brown", "Fantasy"));
+            libs.put(name, lib);
+        }
+        assertTrue(libs.get("north").issueBook("BOR-0001", "north-1", "LIB-0001"));
+        assertTrue(libs.get("north").issueBook("BOR-0001", "north-2", "LIB-0001"));
+
+        try (BranchNetwork wrapped = new BranchNetwork(libs, 1)) {
+            assertEquals(2, wrapped.branch("south").getUser("BOR-0001").getActiveLoanCount());
+            assertTrue(wrapped.issueBook("BOR-0001", "south-1", "LIB-0001").join());
+            assertFalse(wrapped.issueBook("BOR-0001", "south-2", "LIB-0001").join(), "Borrow limit of 3 across branches");
+            assertTrue(wrapped.returnBook("north-1").join());
+            assertTrue(wrapped.issueBook("BOR-0001", "south-2", "LIB-0001").join());
+            assertEquals(3, wrapped.branch("north").getUser("BOR-0001").getActiveLoanCount());
+        }
+    }
+
+    /**
+     * A network hold outlives the network that placed it: reopened on the
+     * same hold log after its borrower's copy came back, the network cancels
+     * the hold on the other copy.
+     */
+    @Test
+    void testNetworkHoldSettledAfterReopen() throws IOException {
+        Path holdLog = Files.createTempDirectory("network-holds");
+        Map<String, Library> libs = new LinkedHashMap<>();
+        for (String name : List.of("north", "south")) {
+            Library lib = new Library();
+            for (int i = 1; i <= 3; i++) lib.registerBorrower(new Borrower("BOR-000" + i, "B" + i, "b" + i + "@mail.com", "55" + i));
+            lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+            lib.addBook(new TextBook(name + "-1", "Algorithms", "Knuth", "CS"));
+            libs.put(name, lib);
+        }
+        List<String> copies = List.of("north-1", "south-1");
+        assertTrue(libs.get("north").issueBook("BOR-0001", "north-1", "LIB-0001"));
+        assertTrue(libs.get("south").issueBook("BOR-0002", "south-1", "LIB-0001"));
+        try (BranchNetwork first = BranchNetwork.open(libs, 1, holdLog)) {
+            assertTrue(first.placeHold("BOR-0003", copies).join());
+        }
+        assertTrue(libs.get("south").returnBook("south-1"));       // set aside while no network listens
+
+        try (BranchNetwork second = BranchNetwork.open(libs, 1, holdLog)) {
+            await(() -> libs.get("north").getHoldsForBook("north-1").isEmpty());
+            assertEquals(0, second.getNetworkHoldsPending());
+        }
+        try (BranchNetwork third = BranchNetwork.open(libs, 1, holdLog)) {
+            assertEquals(0, third.getNetworkHoldsPending(), "Settled hold closed in the log");
+        } finally {
+            try (Stream<Path> files = Files.walk(holdLog)) {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.library.events;
+
+import com.library.Library;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventBusTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("change-log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Several publishers through a small ring: every handler sees every event
+     * once, in sequence order, and a slow handler holds publishers back
+     * instead of losing events.
+     */
+    @Test
+    void testEveryHandlerSeesEveryEventInOrder() throws Exception {
+        EventBus bus = new EventBus(64);
+        int threads = 4, perThread = 5_000;
+        List<Long> fast = new ArrayList<>(), slow = new ArrayList<>();
+        List<String> slowBooks = new ArrayList<>();
+        int[] batchEnds = new int[1];
+        EventBus.Subscription a = bus.subscribe("fast", (e, end) -> {
+            fast.add(e.seq());
+            if (end) batchEnds[0]++;
+        });
+        EventBus.Subscription b = bus.subscribe("slow", (e, end) -> {
+            slow.add(e.seq());
+            slowBooks.add(e.bookId());
+            if (e.seq() % 1000 == 0) Thread.sleep(5);
+        });
+
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String prefix = "T" + t + "-";
+            publishers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    bus.publish(Event.Type.ISSUED, T0, prefix + i, "BOR", "LIB", 0);
+                }
+            }));
+        }
+        for (Thread t : publishers) t.join();
+        a.close();
+        b.close();
+
+        int total = threads * perThread;
+        assertEquals(total, bus.published());
+        for (List<Long> seen : List.of(fast, slow)) {
+            assertEquals(total, seen.size());
+            for (int i = 0; i < total; i++) assertEquals(i, seen.get(i));
+        }
+        assertTrue(batchEnds[0] > 0 && batchEnds[0] <= total);
+        assertTrue(bus.stalls() > 0, "The slow handler must have held publishers back");
+        int[] lastOfThread = new int[threads];
+        Arrays.fill(lastOfThread, -1);
+        for (String id : slowBooks) {
+            int t = id.charAt(1) - '0', i = Integer.parseInt(id.substring(3));
+            assertEquals(lastOfThread[t] + 1, i, "Each publisher's events stay in order");
+            lastOfThread[t] = i;
+        }
+        assertEquals(0, b.lag());
+    }
+
+    /**
+     * A publisher that claims through an outbox under a lock its handler also
+     * takes, and publishes after releasing it, gets through a full ring; the
+     * handler still sees the events in claim order.
+     */
+    @Test
+    void testOutboxPublishesAfterTheLockIsReleased() throws Exception {
+        EventBus bus = new EventBus(4);
+        ReentrantLock stripe = new ReentrantLock();
+        List<String> seen = new ArrayList<>();
+        EventBus.Subscription sub = bus.subscribe("reentrant", (e, end) -> {
+            stripe.lock();                                     // as a handler calling back into the library
+            try {
+                seen.add(e.bookId());
+            } finally {
+                stripe.unlock();
+            }
+        });
+        Thread publisher = Thread.ofPlatform().start(() -> {
+            EventBus.Outbox outbox = bus.outbox();
+            for (int i = 0; i < 100; i++) {
+                stripe.lock();
+                try {
+                    outbox.add(Event.Type.ISSUED, T0, "B" + i, "BOR", "LIB", 0);
+                    outbox.add(Event.Type.RETURNED, T0, "B" + i, "BOR", null, 0);
+                } finally {
+                    stripe.unlock();
+                }
+                outbox.flush();
+            }
+        });
+        publisher.join(5_000);
+        assertFalse(publisher.isAlive(), "Publisher waited for a slot under the lock");
+        while (sub.lag() > 0) Thread.onSpinWait();
+        sub.close();
+        assertEquals(200, seen.size());
+        for (int i = 0; i < 100; i++) assertEquals("B" + i, seen.get(2 * i));
+    }
+
+    /**
+     * Library mutations land in the change log with their details; readers
+     * tail it across segment rolls, resume after an offset, and a reopened log
+     * continues the offsets.
+     */
+    @Test
+    void testChangeLogTailsAndResumes() throws IOException {
+        Library lib = new Library();
+        ChangeLog log = new ChangeLog(dir, 512, true);
+        EventBus.Subscription feed = lib.getEvents().subscribe("log", log);
+        lib.registerBorrower(new Borrower("BOR-0001", "Sam", "sam@mail.com", "555"));
+        lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+        for (int i = 0; i < 20; i++) lib.addBook(new Novel("BK-" + i, "Title " + i, "Brown", "Fantasy"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-3", "LIB-0001"));
+        assertTrue(lib.returnBook("BK-3"));
+        assertNotNull(lib.removeBook("BK-4"));
+        feed.close();
+        log.close();
+        assertEquals(24, log.lastOffset());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() > 2, "Small segments roll over");
+        }
+
+        List<ChangeLog.Change> all = new ArrayList<>();
+        ChangeLog.Reader reader = new ChangeLog.Reader(dir, -1);
+        assertEquals(25, reader.poll(100, all::add));
+        assertEquals(0, reader.poll(100, all::add), "Nothing new yet");
+        assertEquals(24, reader.position());
+        assertEquals(List.of("BORROWER", "Sam", "sam@mail.com", "555"), all.get(0).details());
+        assertEquals(List.of("NOVEL", "Title 0", "Brown", "Fantasy"), all.get(2).details());
+        ChangeLog.Change issued = all.get(22);
+        assertEquals(Event.Type.ISSUED, issued.type());
+        assertEquals(List.of("BK-3", "BOR-0001", "LIB-0001"), List.of(issued.bookId(), issued.userId(), issued.librarianId()));
+        assertEquals(Event.Type.RETURNED, all.get(23).type());
+        assertEquals(Event.Type.BOOK_REMOVED, all.get(24).type());
+        for (int i = 0; i < all.size(); i++) assertEquals(i, all.get(i).offset());
+
+        ChangeLog reopened = new ChangeLog(dir, 512, true);
+        assertEquals(24, reopened.lastOffset());
+        EventBus.Subscription again = lib.getEvents().subscribe("log", reopened);
+        assertTrue(lib.issueBook("BOR-0001", "BK-5", "LIB-0001"));
+        again.close();
+        reopened.close();
+        List<ChangeLog.Change> tail = new ArrayList<>();
+        assertEquals(1, reader.poll(100, tail::add), "The reader picks up the new segment");
+        assertEquals(25, tail.get(0).offset());
+
+        reopened.deleteBefore(20);
+        List<ChangeLog.Change> resumed = new ArrayList<>();
+        try (ChangeLog.Reader r = new ChangeLog.Reader(dir, 21)) {
+            r.poll(100, resumed::add);
+        }
+        assertEquals(List.of(22L, 23L, 24L, 25L), resumed.stream().map(ChangeLog.Change::offset).toList());
+        reader.close();
+    }
+}
@@ -0,0 +1,166 @@
+package com.library.fines;
+
+import com.library.index.OverdueIndex;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FineEngineTest {
+    private static final LocalDate DAY0 = LocalDate.of(2025, 3, 1);
+
+    private final Librarian librarian = new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556");
+    private final OverdueIndex index = new OverdueIndex();
+
+    private Loan issue(Borrower b, Book bk, LocalDate day) {
+        Loan l = new Loan(b, bk, librarian, day.atTime(12, 0));
+        index.add(l);
+        return l;
+    }
+
+    private static long returnOn(FineEngine engine, OverdueIndex index, Loan l, LocalDate day) {
+        l.close(day.atTime(12, 0));
+        index.remove(l);
+        return engine.returned(l, day);
+    }
+
+    /**
+     * Each type accrues its daily rate from the day after the due day and
+     * stops at its cap; a return settles the same amount.
+     */
+    @Test
+    void testAccruesPerTypeUpToCap() {
+        FineEngine engine = new FineEngine(FineSchedule.DEFAULT, index);
+        Borrower t = new Borrower("BOR-T", "T", "t@mail.com", "1");
+        Borrower n = new Borrower("BOR-N", "N", "n@mail.com", "2");
+        Borrower r = new Borrower("BOR-R", "R", "r@mail.com", "3");
+        issue(t, new TextBook("BK-T", "t", "a", "s"), DAY0);           // due day 14
+        issue(n, new Novel("BK-N", "n", "a", "s"), DAY0);              // due day 21
+        Loan ref = issue(r, new Reference("BK-R", "r", "a", "s"), DAY0);   // due day 7
+
+        assertEquals(0, engine.balance("BOR-R", DAY0.plusDays(7)), "Nothing is owed on the due day");
+        assertEquals(100, engine.balance("BOR-R", DAY0.plusDays(8)));
+        assertEquals(0, engine.balance("BOR-N", DAY0.plusDays(21)));
+        assertEquals(25 * 59, engine.balance("BOR-T", DAY0.plusDays(73)));
+        assertEquals(1500, engine.balance("BOR-T", DAY0.plusDays(75)), "Text books cap at 15.00 after 60 days");
+        assertEquals(500, engine.balance("BOR-N", DAY0.plusDays(200)));
+        assertEquals(3000, engine.balance("BOR-R", DAY0.plusDays(200)));
+        assertEquals(0, engine.balance("NOBODY", DAY0.plusDays(200)));
+
+        assertEquals(3000, returnOn(engine, index, ref, DAY0.plusDays(201)));
+        assertEquals(3000, engine.balance("BOR-R", DAY0.plusDays(300)), "The settled fine stays after the return");
+        assertTrue(engine.blocked("BOR-R", DAY0.plusDays(300)));
+        assertFalse(engine.pay("BOR-R", 3001, DAY0.plusDays(300)));
+        assertFalse(engine.pay("BOR-R", 0, DAY0.plusDays(300)));
+        assertTrue(engine.pay("BOR-R", 2001, DAY0.plusDays(300)));
+        assertFalse(engine.blocked("BOR-R", DAY0.plusDays(300)), "999 is below the threshold");
+        assertEquals(Map.of("BOR-R", 999L), engine.settled());
+    }
+
+    /**
+     * Random issues, renewals, returns and payments over a year, with the
+     * balance looked up on random days, always match the fines recomputed
+     * from scratch. The novel rate does not divide its cap, so the last day
+     * before the cap is partial.
+     */
+    @Test
+    void testMatchesRecomputation() {
+        FineSchedule schedule = new FineSchedule(Map.of(
+                BookType.TEXTBOOK, new FineSchedule.Rate(25, 1500),
+                BookType.NOVEL, new FineSchedule.Rate(30, 100)), 0);
+        FineEngine engine = new FineEngine(schedule, index);
+        Random rnd = new Random(17);
+        List<Borrower> borrowers = new ArrayList<>();
+        for (int i = 0; i < 12; i++) borrowers.add(new Borrower("BOR-" + i, "B", "b@mail.com", "5"));
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            books.add(switch (i % 3) {
+                case 0 -> new TextBook("BK-" + i, "t", "a", "s");
+                case 1 -> new Novel("BK-" + i, "n", "a", "s");
+                default -> new Reference("BK-" + i, "r", "a", "s");
+            });
+        }
+        Map<Book, Loan> open = new HashMap<>();
+        Map<String, Long> settled = new HashMap<>();
+
+        for (int d = 0; d < 365; d++) {
+            LocalDate day = DAY0.plusDays(d);
+            for (Book bk : books) {
+                Loan l = open.get(bk);
+                int roll = rnd.nextInt(100);
+                if (l == null && roll < 5) {
+                    open.put(bk, issue(borrowers.get(rnd.nextInt(borrowers.size())), bk, day));
+                } else if (l != null && roll < 4) {
+                    open.remove(bk);
+                    long fine = returnOn(engine, index, l, day);
+                    assertEquals(schedule.fine(l, day), fine);
+                    settled.merge(l.getBorrower().getId(), fine, Long::sum);
+                } else if (l != null && roll < 8 && !l.isOverdue(day.atTime(12, 0))) {
+                    l.renew();
+                    engine.renewed(l, day);
+                }
+            }
+            if (rnd.nextInt(4) > 0) continue;                  // let the engine skip days
+            for (Borrower b : borrowers) {
+                long expected = settled.getOrDefault(b.getId(), 0L);
+                for (Loan l : open.values()) if (l.getBorrower() == b) expected += schedule.fine(l, day);
+                assertEquals(expected, engine.balance(b.getId(), day), b.getId() + " on day " + d);
+                if (expected > 0 && rnd.nextInt(5) == 0) {
+                    long paid = 1 + rnd.nextInt((int) Math.min(expected, Integer.MAX_VALUE));
+                    assertTrue(engine.pay(b.getId(), paid, day));
+                    settled.merge(b.getId(), -paid, Long::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Settled amounts restore into a new engine, which rebuilds the running
+     * fines from the open loans in the index.
+     */
+    @Test
+    void testRestoreRebuildsRunningFines() {
+        FineEngine engine = new FineEngine(FineSchedule.DEFAULT, index);
+        Borrower b = new Borrower("BOR-1", "B", "b@mail.com", "5");
+        Loan done = issue(b, new Novel("BK-1", "n", "a", "s"), DAY0);
+        issue(b, new TextBook("BK-2", "t", "a", "s"), DAY0);
+        returnOn(engine, index, done, DAY0.plusDays(25));      // 4 days late
+        assertEquals(40 + 11 * 25, engine.balance("BOR-1", DAY0.plusDays(25)));
+
+        FineEngine restored = new FineEngine(FineSchedule.DEFAULT, index);
+        engine.settled().forEach(restored::restore);
+        assertEquals(engine.balance("BOR-1", DAY0.plusDays(30)), restored.balance("BOR-1", DAY0.plusDays(30)));
+        assertEquals(40 + 1500, restored.balance("BOR-1", DAY0.plusDays(400)));
+    }
+
+    /**
+     * Returning or renewing a loan that is not accruing does not wait for
+     * the engine's monitor; an overdue one still settles exactly.
+     */
+    @Test
+    void testOnTimeReturnSkipsEngineMonitor() throws Exception {
+        FineEngine engine = new FineEngine(FineSchedule.DEFAULT, index);
+        Borrower b = new Borrower("BOR-1", "B", "b@mail.com", "5");
+        Loan onTime = issue(b, new Novel("BK-1", "n", "a", "s"), DAY0);
+        Loan renewed = issue(b, new Novel("BK-2", "n", "a", "s"), DAY0);
+        Loan late = issue(b, new Reference("BK-3", "r", "a", "s"), DAY0);      // due day 7
+        assertEquals(300, engine.balance("BOR-1", DAY0.plusDays(10)));
+
+        Thread other;
+        synchronized (engine) {
+            other = new Thread(() -> {
+                returnOn(engine, index, onTime, DAY0.plusDays(10));
+                renewed.renew();
+                engine.renewed(renewed, DAY0.plusDays(10));
+            });
+            other.start();
+            other.join(5000);
+            assertFalse(other.isAlive(), "Loans with no running fine must not need the engine's monitor");
+        }
+        assertEquals(300, returnOn(engine, index, late, DAY0.plusDays(10)));
+        assertEquals(300, engine.balance("BOR-1", DAY0.plusDays(40)));
+    }
+}
@@ -0,0 +1,137 @@
+package com.library.history;
+
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoanHistoryTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2020, 1, 1, 10, 0);
+
+    private final Map<String, Book> books = new HashMap<>();
+    private final Map<String, Person> users = new HashMap<>();
+    private final Librarian librarian = new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556");
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("loan-history");
+        users.put(librarian.getId(), librarian);
+        for (int i = 0; i < 10; i++) {
+            Borrower b = new Borrower("BOR-" + i, "B" + i, "b" + i + "@mail.com", "555");
+            users.put(b.getId(), b);
+            Book bk = new Novel("BK-" + i, "Title " + i, "Author", "Fiction");
+            books.put(bk.getBookId(), bk);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private LoanHistory history() {
+        return new LoanHistory(books::get, users::get);
+    }
+
+    /** Appends loan {@code n}: borrower n % 10, book n % 7, out for n days from day n. */
+    private void append(LoanHistory h, int n) {
+        Loan l = new Loan((Borrower) users.get("BOR-" + n % 10), books.get("BK-" + n % 7), librarian, T0.plusDays(n));
+        l.close(T0.plusDays(2L * n));
+        h.append(l);
+    }
+
+    /**
+     * Loans come back per borrower and per book, oldest first, with their
+     * dates, and range queries return the loans that were out in the range.
+     */
+    @Test
+    void testQueriesByBorrowerAndBook() {
+        LoanHistory h = history();
+        for (int n = 0; n < 100; n++) append(h, n);
+        assertEquals(100, h.size());
+
+        List<Loan> b3 = h.forBorrower("BOR-3");
+        assertEquals(10, b3.size());
+        assertEquals("BK-3", b3.get(0).getBook().getBookId());
+        assertEquals(T0.plusDays(13), b3.get(1).getIssueDate());
+        assertEquals(T0.plusDays(26), b3.get(1).getReturnDate());
+        assertEquals(T0.plusDays(13).plus(books.get("BK-6").getLoanPeriod()), b3.get(1).getDueDate());
+        assertSame(librarian, b3.get(0).getProcessedBy());
+        assertFalse(books.get("BK-3").isIssued(), "Reading the history must not touch the books");
+
+        assertEquals(15, h.forBook("BK-0").size());
+        assertTrue(h.forBook("BK-99").isEmpty());
+        assertTrue(h.forBorrower("NOBODY").isEmpty());
+
+        // loan n is out from day n to day 2n
+        List<Loan> inRange = h.forBorrower("BOR-3", T0.plusDays(40), T0.plusDays(50));
+        assertEquals(List.of(23, 33, 43), inRange.stream().map(l -> (int) Duration.between(T0, l.getIssueDate()).toDays()).toList());
+        assertEquals(6, h.forBook("BK-0", T0.plusDays(60), T0.plusDays(71)).size(), "Loans 35 to 70");
+    }
+
+    /**
+     * Pages continue at the returned position; rows whose book was removed are skipped.
+     */
+    @Test
+    void testSlicesSkipRemovedBooks() {
+        LoanHistory h = history();
+        for (int n = 0; n < 100; n++) append(h, n);
+        books.remove("BK-0");
+        List<String> walked = new ArrayList<>();
+        int from = 0;
+        while (from >= 0) {
+            LoanHistory.Slice s = h.forBorrower("BOR-0", from, 3);
+            assertTrue(s.loans().size() <= 3);
+            s.loans().forEach(l -> walked.add(l.getBook().getBookId()));
+            from = s.next();
+        }
+        assertEquals(h.forBorrower("BOR-0").stream().map(l -> l.getBook().getBookId()).toList(), walked);
+        assertEquals(8, walked.size(), "Loans 0 and 70 were of the removed book");
+    }
+
+    /**
+     * Full segments spill to files and mount again after a restart; files
+     * beyond the mounted count are dropped.
+     */
+    @Test
+    void testSpillAndMount() throws IOException {
+        LoanHistory h = history();
+        int total = Segment.ROWS * 2 + 5;
+        for (int n = 0; n < total; n++) append(h, n);
+        assertEquals(0, h.spilled());
+        assertEquals(2, h.spill(dir));
+        assertEquals(2, h.spill(dir), "Spilling again writes nothing new");
+        assertEquals(5, h.unspilled().size());
+        List<Loan> before = h.forBorrower("BOR-7");
+        List<Loan> bookBefore = h.forBook("BK-4", T0.plusDays(1000), T0.plusDays(1100));
+
+        LoanHistory mounted = history();
+        mounted.mount(dir, 2);
+        assertEquals(Segment.ROWS * 2, mounted.size());
+        for (int n = Segment.ROWS * 2; n < total; n++) append(mounted, n);
+        assertEquals(total, mounted.size());
+        assertEquals(dates(before), dates(mounted.forBorrower("BOR-7")));
+        assertEquals(dates(bookBefore), dates(mounted.forBook("BK-4", T0.plusDays(1000), T0.plusDays(1100))));
+
+        LoanHistory first = history();
+        first.mount(dir, 1);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count(), "The unmounted segment file is deleted");
+        }
+        assertThrows(IOException.class, () -> history().mount(dir, 2));
+    }
+
+    private static List<LocalDateTime> dates(List<Loan> loans) {
+        return loans.stream().map(Loan::getIssueDate).toList();
+    }
+}
@@ -0,0 +1,90 @@
+package com.library.holds;
+
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    /**
+     * Random schedules, cancels and advances, from single ticks to jumps over
+     * every level, fire exactly the timers a sorted reference says are due,
+     * each on the advance that passes its deadline.
+     */
+    @Test
+    void testFiresExactlyWhatIsDue() {
+        Random rnd = new Random(19);
+        long start = 1_700_000_000L;
+        TimingWheel<Long> wheel = new TimingWheel<>(start);
+        long now = start;
+        Map<Long, TimingWheel.Timer<Long>> timers = new HashMap<>();
+        Map<Long, Long> firesAt = new HashMap<>();
+        TreeMap<Long, Set<Long>> byDeadline = new TreeMap<>();       // reference
+        long[] spans = { 3, 64, 4_096, 300_000, 20_000_000, 1L << 37 };
+        long ids = 0;
+
+        for (int round = 0; round < 3_000; round++) {
+            for (int i = rnd.nextInt(40); i > 0; i--) {
+                long deadline = now - 5 + (long) (rnd.nextDouble() * spans[rnd.nextInt(spans.length)]);
+                long id = ids++;
+                timers.put(id, wheel.schedule(id, deadline));
+                firesAt.put(id, Math.max(deadline, now + 1));          // past deadlines fire on the next advance
+                byDeadline.computeIfAbsent(firesAt.get(id), k -> new HashSet<>()).add(id);
+            }
+            for (Iterator<Long> it = timers.keySet().iterator(); it.hasNext(); ) {
+                long id = it.next();
+                if (rnd.nextInt(30) != 0) continue;
+                TimingWheel.Timer<Long> t = timers.get(id);
+                assertTrue(wheel.cancel(t));
+                assertFalse(wheel.cancel(t));
+                byDeadline.get(firesAt.get(id)).remove(id);
+                it.remove();
+            }
+            now += rnd.nextInt(8) == 0 ? (long) (rnd.nextDouble() * spans[rnd.nextInt(spans.length)]) : rnd.nextInt(3);
+
+            Set<Long> expected = new HashSet<>();
+            for (Set<Long> due : byDeadline.headMap(now, true).values()) expected.addAll(due);
+            byDeadline.headMap(now, true).clear();
+            Set<Long> fired = new HashSet<>();
+            long at = now;
+            wheel.advance(now, id -> {
+                assertTrue(timers.get(id).deadline() <= at, "Fired early");
+                assertTrue(fired.add(id), "Fired twice");
+            });
+            assertEquals(expected, fired, "round " + round);
+            timers.keySet().removeAll(fired);
+            assertEquals(timers.size(), wheel.size());
+            assertEquals(now, wheel.current());
+        }
+    }
+
+    /**
+     * One window per book: a new window replaces the old one, a collected
+     * book cancels it, and a window is due once its last second has passed.
+     */
+    @Test
+    void testPickupWindowsPerBook() {
+        LocalDateTime t0 = LocalDateTime.of(2025, 3, 1, 10, 0);
+        PickupScheduler pickups = new PickupScheduler(t0);
+        List<HoldRequest> holds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Borrower b = new Borrower("BOR-" + i, "B", "b@mail.com", "5");
+            HoldRequest hr = new HoldRequest(b, new Novel("BK-" + (i % 3), "n", "a", "s"), t0);
+            hr.setPickupBy(t0.plusDays(7 - i));
+            holds.add(hr);
+        }
+        holds.forEach(pickups::schedule);                 // BOR-3 replaces BOR-0 on BK-0
+        assertEquals(3, pickups.pending());
+        assertSame(holds.get(1), pickups.cancel("BK-1"));
+        assertNull(pickups.cancel("BK-1"));
+
+        assertEquals(List.of(), pickups.due(t0.plusDays(4)), "Windows end at their last instant");
+        assertEquals(List.of(holds.get(3)), pickups.due(t0.plusDays(4).plusSeconds(1)));
+        assertEquals(List.of(holds.get(2)), pickups.due(t0.plusYears(1)));
+        assertEquals(0, pickups.pending());
+    }
+}
@@ -0,0 +1,147 @@
+package com.library.http;
+
+import com.library.Library;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryServerTest {
+    private LibraryServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Library lib = new Library();
+        lib.registerBorrower(new Borrower("BOR-0001", "Sam", "sam@mail.com", "555"));
+        lib.registerBorrower(new Borrower("BOR-0002", "Alex", "alex@mail.com", "557"));
+        lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+        lib.addBook(new TextBook("BK-001", "Java Fundamentals", "Evans", "CS"));
+        lib.addBook(new Novel("BK-002", "The \"Java\" Saga", "Brown", "Fantasy"));
+        server = new LibraryServer(lib, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path, String form) throws Exception {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+        if (form != null) b.header("Content-Type", "application/x-www-form-urlencoded");
+        b.method(method, form == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(form));
+        return client.send(b.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Search, issue, hold, renew and return round-trip as JSON with the expected status codes.
+     */
+    @Test
+    void testCirculationOverHttp() throws Exception {
+        HttpResponse<String> search = send("GET", "/books?q=saga", null);
+        assertEquals(200, search.statusCode());
+        assertTrue(search.body().contains("\"title\":\"The \\\"Java\\\" Saga\""), search.body());
+        assertEquals("application/json; charset=utf-8", search.headers().firstValue("Content-Type").orElse(""));
+
+        HttpResponse<String> issued = send("POST", "/loans", "borrower=BOR-0001&book=BK-002&librarian=LIB-0001");
+        assertEquals(201, issued.statusCode());
+        assertTrue(issued.body().contains("\"borrowerId\":\"BOR-0001\""));
+        assertEquals(409, send("POST", "/loans", "borrower=BOR-0002&book=BK-002&librarian=LIB-0001").statusCode());
+        assertEquals(404, send("POST", "/loans", "borrower=BOR-0002&book=BK-999&librarian=LIB-0001").statusCode());
+        assertEquals(400, send("POST", "/loans", "borrower=BOR-0002").statusCode());
+
+        assertEquals(201, send("POST", "/holds", "borrower=BOR-0002&book=BK-002").statusCode());
+        assertTrue(send("GET", "/holds/BK-002", null).body().contains("BOR-0002"));
+        assertEquals(200, send("POST", "/loans/BK-002/renew", "borrower=BOR-0001").statusCode());
+        assertTrue(send("GET", "/borrowers/BOR-0001/loans", null).body().contains("BK-002"));
+
+        assertEquals(200, send("DELETE", "/loans/BK-002", null).statusCode());
+        assertEquals(409, send("DELETE", "/loans/BK-002", null).statusCode());
+        assertTrue(send("GET", "/borrowers/BOR-0001/history", null).body().contains("\"returned\":\""));
+        assertTrue(send("GET", "/books/BK-002/history?from=2000-01-01", null).body().contains("\"borrowerId\":\"BOR-0001\""));
+        assertEquals("[]", send("GET", "/borrowers/BOR-0001/history?to=2000-01-01", null).body());
+        assertEquals(400, send("GET", "/borrowers/BOR-0001/history?from=yesterday", null).statusCode());
+        assertEquals("{\"items\":[],\"next\":null}", send("GET", "/reports/overdue", null).body());
+        assertEquals("[{\"key\":\"BK-002\",\"count\":1}]", send("GET", "/reports/popular?days=7", null).body());
+        assertEquals("[{\"key\":\"BK-002\",\"count\":1}]", send("GET", "/reports/popular?event=hold&by=book", null).body());
+        assertEquals(400, send("GET", "/reports/popular?days=14", null).statusCode());
+        assertEquals("{\"borrowerId\":\"BOR-0001\",\"balance\":0}", send("GET", "/borrowers/BOR-0001/fines", null).body());
+        assertEquals(409, send("POST", "/borrowers/BOR-0001/payments", "amount=100").statusCode(), "Nothing is owed");
+        assertEquals(400, send("POST", "/borrowers/BOR-0001/payments", "amount=lots").statusCode());
+
+        HttpResponse<String> first = send("GET", "/books?limit=1", null);
+        assertTrue(first.body().contains("\"id\":\"BK-001\"") && first.body().endsWith("\"next\":\"BK-001\"}"), first.body());
+        HttpResponse<String> second = send("GET", "/books?limit=1&after=BK-001", null);
+        assertTrue(second.body().contains("\"id\":\"BK-002\"") && second.body().endsWith("\"next\":null}"), second.body());
+        assertEquals(400, send("GET", "/books?limit=0", null).statusCode());
+
+        HttpResponse<String> batch = send("POST", "/loans", "borrower=BOR-0002&librarian=LIB-0001&book=BK-002&book=BK-001");
+        assertEquals("[{\"bookId\":\"BK-002\",\"result\":\"OK\"},{\"bookId\":\"BK-001\",\"result\":\"OK\"}]", batch.body());
+        assertEquals(404, send("GET", "/nowhere", null).statusCode());
+        HttpResponse<String> titles = send("GET", "/titles?q=saga", null);
+        assertTrue(titles.body().contains("\"copies\":1,\"available\":0,\"copyIds\":[\"BK-002\"]"), titles.body());
+        assertEquals("{\"total\":0,\"available\":0,\"subjects\":{\"Fantasy\":1},\"types\":{\"TEXTBOOK\":1},\"items\":[]}",
+                send("GET", "/facets?q=java&type=novel&subject=CS", null).body());
+        assertEquals(400, send("GET", "/facets?type=poem", null).statusCode());
+        assertTrue(send("GET", "/search?q=jaav+fundamentals&limit=1", null).body().startsWith("[{\"id\":\"BK-001\""));
+        assertEquals("[\"The \\\"Java\\\" Saga\"]", send("GET", "/suggest?q=the", null).body());
+        assertEquals(400, send("GET", "/suggest", null).statusCode());
+
+        HttpResponse<String> metrics = send("GET", "/metrics", null);
+        assertTrue(metrics.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        assertTrue(metrics.body().contains("library_calls_total{op=\"return\",result=\"NOT_ON_LOAN\"} 1\n"), metrics.body());
+        assertTrue(metrics.body().contains("library_calls_total{op=\"issue_batch\",result=\"OK\"} 3\n"), metrics.body());
+    }
+
+    /**
+     * A form body over the limit answers 413 without being parsed, whether it
+     * declares its length or arrives in chunks.
+     */
+    @Test
+    void testOversizedBodyIsRefused() throws Exception {
+        String form = "borrower=BOR-0001&librarian=LIB-0001" + "&book=BK-001".repeat(LibraryServer.MAX_BODY / 12 + 1);
+        HttpResponse<String> declared = send("POST", "/loans", form);
+        assertEquals(413, declared.statusCode());
+        assertTrue(declared.body().contains("body over"), declared.body());
+
+        byte[] bytes = form.getBytes(StandardCharsets.UTF_8);
+        HttpRequest chunked = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/loans"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(bytes)))
+                .build();
+        assertEquals(413, client.send(chunked, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(404, send("GET", "/loans/BK-001", null).statusCode(), "Nothing was issued");
+    }
+
+    /**
+     * An unexpected failure answers 500 without the exception's details.
+     */
+    @Test
+    void testInternalErrorHidesDetails() throws Exception {
+        Library failing = new Library() {
+            @Override
+            public Book getBook(String bookId) {
+                throw new IllegalStateException("secret detail");
+            }
+        };
+        try (LibraryServer s = new LibraryServer(failing, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            s.start();
+            HttpRequest req = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + s.port() + "/books/BK-001")).build();
+            HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+            assertEquals(500, r.statusCode());
+            assertEquals("{\"error\":\"internal error\"}", r.body());
+        }
+    }
+}
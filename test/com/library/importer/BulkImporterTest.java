@@ -0,0 +1,92 @@
+package com.library.importer;
+
+import com.library.Library;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkImporterTest {
+    private Path dir;
+    private Library lib;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("library-import");
+        lib = new Library();
+        lib.addBook(new TextBook("BK-001", "Java Fundamentals", "Evans", "CS"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * CSV books are imported across several chunks; bad, duplicate and
+     * already-present rows end up in the rejects file with their line number.
+     */
+    @Test
+    void testImportBooksCsv() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("ID,Type,Title,Author,Subject");
+        for (int i = 0; i < BulkImporter.CHUNK + 500; i++) {
+            lines.add("IMP-" + i + ",novel,\"Saga, part " + i + "\",Brown,Fantasy");
+        }
+        lines.add("BK-001,1,Duplicate,Evans,CS");          // already in the library
+        lines.add("IMP-7,2,Again,Brown,Fantasy");          // earlier chunk
+        lines.add("bad id,2,Title,A,S");
+        lines.add("IMP-X,comic,Title,A,S");
+        lines.add("IMP-Y,2,\"unterminated,A,S");
+        Path input = Files.write(dir.resolve("books.csv"), lines);
+        Path rejects = dir.resolve("books.rejects");
+
+        List<BulkImporter.Report> progress = new ArrayList<>();
+        BulkImporter.Report r = new BulkImporter(lib, 3, progress::add).importFile(BulkImporter.Kind.BOOKS, input, rejects);
+
+        assertEquals(BulkImporter.CHUNK + 505, r.read());
+        assertEquals(BulkImporter.CHUNK + 500, r.imported());
+        assertEquals(5, r.rejected());
+        assertEquals(2, progress.size());
+        assertEquals(BulkImporter.CHUNK + 501, lib.listBooks().size());
+        assertEquals("Saga, part 42", lib.getBook("IMP-42").getTitle());
+        assertEquals(1, lib.searchBooks("part 10499").size());
+
+        List<String> rejected = Files.readAllLines(rejects);
+        assertEquals(5, rejected.size());
+        assertTrue(rejected.get(0).startsWith((BulkImporter.CHUNK + 502) + "\tduplicate id BK-001\t"));
+        assertTrue(rejected.get(1).contains("duplicate id IMP-7"));
+        assertTrue(rejected.get(2).contains("invalid id"));
+    }
+
+    /**
+     * JSON Lines borrowers: nulls count as missing, blank lines are skipped.
+     */
+    @Test
+    void testImportBorrowersJsonLines() throws IOException {
+        Path input = Files.write(dir.resolve("patrons.jsonl"), List.of(
+                "{\"id\": \"BOR-1\", \"name\": \"Sam \\\"S\\\"\", \"email\": \"sam@mail.com\", \"phone\": 555}",
+                "",
+                "{\"id\": \"BOR-2\", \"name\": null}",
+                "{\"id\": \"BOR-3\", \"name\": \"Alex\", \"email\": \"nope\"}",
+                "{\"id\": \"BOR-4\", \"name\": \"Kim\"}",
+                "not json"));
+        BulkImporter.Report r = new BulkImporter(lib, 2, null)
+                .importFile(BulkImporter.Kind.BORROWERS, input, dir.resolve("patrons.rejects"));
+
+        assertEquals(new BulkImporter.Report(5, 2, 3), r);
+        assertEquals("Sam \"S\"", lib.getUser("BOR-1").getName());
+        assertEquals("555", lib.getUser("BOR-1").getPhone());
+        assertInstanceOf(Borrower.class, lib.getUser("BOR-4"));
+        assertTrue(Files.readAllLines(dir.resolve("patrons.rejects")).get(0).startsWith("3\tmissing name\t"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.library.index;
+
+import com.library.model.Book;
+import com.library.model.Novel;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BookIndexTest {
+
+    /**
+     * Random adds and removes, enough to compact the postings several times,
+     * agree with a linear scan for short and long keywords, whole and paged.
+     */
+    @Test
+    void testRemovalsMatchLinearScan() {
+        Random rnd = new Random(1);
+        String[] words = { "dune", "dust", "river", "rivet", "stone", "tone", "one" };
+        BookIndex index = new BookIndex();
+        Map<String, Book> live = new LinkedHashMap<>();
+        for (int i = 0; i < 12_000; i++) {
+            String id = "B" + rnd.nextInt(3_000);
+            Book old = live.remove(id);
+            if (old != null) assertTrue(index.remove(old));
+            if (old == null || rnd.nextBoolean()) {
+                Book b = new Novel(id, words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)],
+                        "Author " + rnd.nextInt(50), "Fiction");
+                index.add(b);
+                live.put(id, b);
+            }
+        }
+        assertEquals(live.size(), index.size());
+        for (String k : List.of("on", "one", "stone", "iver", "dune dust", "rive", "xyz", "Author 4")) {
+            String f = k.toLowerCase();
+            List<Book> expected = live.values().stream()
+                    .filter(b -> b.getTitle().toLowerCase().contains(f))
+                    .sorted(Comparator.comparingInt(b -> index.docOf(b.getBookId())))
+                    .toList();
+            assertEquals(expected, index.search(BookIndex.Field.TITLE, k), k);
+
+            List<Book> paged = new ArrayList<>();
+            int after = -1;
+            for (List<BookIndex.Hit> page; !(page = index.search(BookIndex.Field.TITLE, k, after, 100)).isEmpty(); ) {
+                page.forEach(h -> paged.add(h.book()));
+                after = page.get(page.size() - 1).doc();
+            }
+            assertEquals(expected, paged, k);
+        }
+    }
+}
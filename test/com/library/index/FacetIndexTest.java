@@ -0,0 +1,90 @@
+package com.library.index;
+
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FacetIndexTest {
+
+    /**
+     * Random adds and removes, sparse and dense, agree with a TreeSet through
+     * every container conversion, and so do AND, OR and the AND count.
+     */
+    @Test
+    void testBitmapMatchesTreeSet() {
+        Random rnd = new Random(23);
+        Bitmap a = new Bitmap(), b = new Bitmap();
+        TreeSet<Integer> sa = new TreeSet<>(), sb = new TreeSet<>();
+        for (int round = 0; round < 4; round++) {
+            int range = round % 2 == 0 ? 300_000 : 70_000;          // sparse, then dense containers
+            for (int i = 0; i < 60_000; i++) {
+                int v = rnd.nextInt(range);
+                if (rnd.nextInt(4) == 0) assertEquals(sa.remove(v), a.remove(v));
+                else assertEquals(sa.add(v), a.add(v));
+                int w = rnd.nextInt(range);
+                if (rnd.nextInt(3) == 0) assertEquals(sb.remove(w), b.remove(w));
+                else assertEquals(sb.add(w), b.add(w));
+            }
+            assertEquals(sa.size(), a.cardinality());
+            assertArrayEquals(sa.stream().mapToInt(Integer::intValue).toArray(), a.toArray(Integer.MAX_VALUE));
+            TreeSet<Integer> and = new TreeSet<>(sa), or = new TreeSet<>(sa);
+            and.retainAll(sb);
+            or.addAll(sb);
+            assertArrayEquals(and.stream().mapToInt(Integer::intValue).toArray(), a.and(b).toArray(Integer.MAX_VALUE));
+            assertArrayEquals(or.stream().mapToInt(Integer::intValue).toArray(), a.or(b).toArray(Integer.MAX_VALUE));
+            assertEquals(and.size(), a.andCardinality(b));
+            assertEquals(and.size(), b.andCardinality(a));
+            for (int i = 0; i < 1_000; i++) {
+                int v = rnd.nextInt(range);
+                assertEquals(sa.contains(v), a.contains(v));
+            }
+        }
+        assertArrayEquals(sa.stream().limit(5).mapToInt(Integer::intValue).toArray(), a.toArray(5));
+        for (int v : a.toArray(Integer.MAX_VALUE)) a.remove(v);
+        assertTrue(a.isEmpty());
+    }
+
+    /**
+     * Facets are ORed within and ANDed across; each is counted against the
+     * other facets' filters, and only indexed documents flip availability.
+     */
+    @Test
+    void testQueryCountsAgainstOtherFacets() {
+        FacetIndex idx = new FacetIndex();
+        Book[] books = {
+                new Novel("B0", "a", "x", "Fantasy"), new Novel("B1", "b", "x", "Crime"),
+                new TextBook("B2", "c", "y", "CS"), new TextBook("B3", "d", "y", "Fantasy"),
+                new Reference("B4", "e", "z", "CS")
+        };
+        for (int i = 0; i < books.length; i++) idx.add(i * 70_000, books[i], i != 1);
+        idx.setAvailable(3 * 70_000, false);
+        idx.setAvailable(1, true);                                  // not indexed
+        assertEquals(5, idx.size());
+
+        FacetIndex.Result r = idx.query(null, Set.of("Fantasy", "CS"), EnumSet.of(BookType.TEXTBOOK), true, 10);
+        assertArrayEquals(new int[] { 140_000 }, r.docs());
+        assertEquals(1, r.total());
+        assertEquals(Map.of("CS", 1), r.subjects(), "B3 is out, B1 is no textbook");
+        assertEquals(Map.of(BookType.NOVEL, 1, BookType.TEXTBOOK, 1, BookType.REFERENCE, 1), r.types());
+        assertEquals(1, r.available());
+
+        Bitmap scope = new Bitmap();
+        scope.add(0);
+        scope.add(70_000);
+        scope.add(999_999);                                         // never indexed
+        r = idx.query(scope, Set.of(), Set.of(), false, 1);
+        assertEquals(2, r.total());
+        assertArrayEquals(new int[] { 0 }, r.docs());
+        assertEquals(Map.of("Crime", 1, "Fantasy", 1), r.subjects());
+
+        idx.remove(0, books[0]);
+        idx.remove(0, books[0]);
+        r = idx.query(null, Set.of("Fantasy"), Set.of(), false, 10);
+        assertArrayEquals(new int[] { 210_000 }, r.docs());
+        assertEquals(0, r.available());
+        assertEquals(0, idx.query(null, Set.of("Poetry"), Set.of(), false, 10).total());
+    }
+}
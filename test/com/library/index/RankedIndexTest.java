@@ -0,0 +1,144 @@
+package com.library.index;
+
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RankedIndexTest {
+
+    /** Optimal string alignment distance, the plain way. */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    /**
+     * Random weight changes agree with a TreeMap through edge splits and
+     * pruning: completions come heaviest first, ties in key order, and fuzzy
+     * lookups find exactly the keys within the distance.
+     */
+    @Test
+    void testTrieMatchesBruteForce() {
+        Random rnd = new Random(24);
+        CompletionTrie trie = new CompletionTrie();
+        TreeMap<String, Integer> weights = new TreeMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            StringBuilder k = new StringBuilder();
+            for (int n = 1 + rnd.nextInt(6); n > 0; n--) k.append((char) ('a' + rnd.nextInt(4)));
+            String key = k.toString();
+            int delta = rnd.nextInt(5) - 1;
+            trie.add(key, key.toUpperCase(), delta);
+            int w = Math.max(0, weights.getOrDefault(key, 0) + delta);
+            if (w == 0) weights.remove(key);
+            else weights.put(key, w);
+        }
+        assertEquals(weights.size(), trie.size());
+        for (String key : List.of("", "a", "ab", "abc", "dd", "cab")) {
+            List<String> expected = weights.entrySet().stream()
+                    .filter(e -> e.getKey().startsWith(key))
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())   // stable: key order
+                    .limit(10).map(e -> e.getKey().toUpperCase()).toList();
+            assertEquals(expected, trie.complete(key, 10), key);
+            assertEquals(weights.getOrDefault(key, 0), trie.weight(key));
+        }
+        for (String word : List.of("abcd", "badc", "ddddd", "c")) {
+            List<CompletionTrie.Match> expected = new ArrayList<>();
+            for (String key : weights.keySet()) {
+                int d = distance(word, key);
+                if (d <= 2) expected.add(new CompletionTrie.Match(key, d));
+            }
+            assertEquals(expected, trie.fuzzy(word, 2), word);
+        }
+        for (String key : List.copyOf(weights.keySet())) trie.add(key, null, -weights.get(key));
+        assertEquals(0, trie.size());
+        assertEquals(List.of(), trie.complete("", 10));
+    }
+
+    /**
+     * Title words outrank author and subject words, rare words outrank common
+     * ones, short fields outrank long ones, and a typo costs score.
+     */
+    @Test
+    void testBm25fOrdering() {
+        RankedIndex idx = new RankedIndex();
+        idx.add(0, new Novel("B0", "Ocean", "Smith", "Sea"));
+        idx.add(1, new Novel("B1", "Shore", "Ocean", "Sea"));
+        idx.add(2, new Novel("B2", "Lighthouse", "Smith", "Ocean"));
+        idx.add(3, new Novel("B3", "Ocean of Glass and Time", "Smith", "Sea"));
+        assertEquals(List.of(0, 1, 3, 2), docs(idx.search("ocean", 10)), "The long title ranks below the author");
+        assertEquals(List.of(2, 0, 3), docs(idx.search("lighthouse smith", 3)), "Rare words weigh more");
+        assertEquals(List.of(0, 1, 3, 2), docs(idx.search("oecan", 10)), "Swapped letters are one edit");
+        assertTrue(idx.search("oecan", 1).get(0).score() < idx.search("ocean", 1).get(0).score());
+        assertEquals(List.of(), idx.search("oxxxn", 10));
+
+        idx.remove(0, new Novel("B0", "Ocean", "Smith", "Sea"));
+        idx.remove(0, new Novel("B0", "Ocean", "Smith", "Sea"));
+        assertEquals(3, idx.size());
+        assertEquals(List.of(1, 3, 2), docs(idx.search("ocean", 10)));
+        assertEquals(List.of("Ocean", "Ocean of Glass and Time"), idx.suggest("oc", 10), "Still an author");
+    }
+
+    /**
+     * A mounted catalog scores and completes exactly like the same books
+     * indexed on the heap, with books added after it and books removed from
+     * both parts.
+     */
+    @Test
+    void testMountedMatchesHeap() throws IOException {
+        String[] words = { "Ocean", "Oceans", "River", "Night", "Knight", "Garden", "Java", "Jazz", "Data", "Art" };
+        String[] authors = { "Smith", "Ocean", "Brown", "Browne" };
+        Random rnd = new Random(7);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String title = words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)]
+                    + (rnd.nextBoolean() ? " " + words[rnd.nextInt(words.length)] : "");
+            books.add(new Novel("B" + i, title, authors[rnd.nextInt(authors.length)], rnd.nextBoolean() ? "Sea" : "Art"));
+        }
+        Path file = Files.createTempFile("catalog", ".bin");
+        try {
+            MappedCatalog.write(file, books.subList(0, 200));
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                RankedIndex mounted = new RankedIndex(), heap = new RankedIndex();
+                mounted.mount(catalog);
+                for (int doc = 0; doc < books.size(); doc++) {
+                    if (doc >= 200) mounted.add(doc, books.get(doc));
+                    heap.add(doc, books.get(doc));
+                }
+                for (int doc = 0; doc < books.size(); doc += 3) {
+                    mounted.remove(doc, books.get(doc));
+                    heap.remove(doc, books.get(doc));
+                }
+                assertEquals(heap.size(), mounted.size());
+                for (String q : List.of("ocean", "oecan", "nihgt", "java jazz", "art", "smith river", "brwn", "gardn data")) {
+                    assertEquals(heap.search(q, 15), mounted.search(q, 15), q);
+                }
+                for (String p : List.of("o", "oc", "ocean ", "j", "b", "knight g", "x")) {
+                    assertEquals(heap.suggest(p, 5), mounted.suggest(p, 5), p);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<Integer> docs(List<RankedIndex.Hit> hits) {
+        return hits.stream().map(RankedIndex.Hit::doc).toList();
+    }
+}
@@ -0,0 +1,108 @@
+package com.library.metrics;
+
+import com.library.CirculationResult;
+import com.library.Library;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    /**
+     * Percentiles of random latencies over nine orders of magnitude stay
+     * within a bucket width (about 3%) above the exact ones; mean and
+     * maximum are exact.
+     */
+    @Test
+    void testHistogramPercentilesWithinBucketWidth() {
+        LatencyHistogram h = new LatencyHistogram();
+        Random rnd = new Random(20);
+        long[] values = new long[100_000];
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.pow(10, rnd.nextDouble() * 9);
+            h.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(values.length, s.count());
+        assertEquals((double) sum / values.length, s.mean(), 1e-6);
+        assertEquals(values[values.length - 1], s.max());
+        for (double p : new double[] { 1, 25, 50, 90, 99, 99.9, 100 }) {
+            long exact = values[(int) Math.ceil(values.length * p / 100) - 1];
+            long reported = h.percentile(p);
+            assertTrue(reported >= exact && reported <= exact + Math.max(1, exact / 31), p + ": " + reported + " vs " + exact);
+        }
+        for (int b = 0; b < 1_888; b++) {
+            assertEquals(b, LatencyHistogram.bucket(LatencyHistogram.highest(b)), "bucket " + b);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(LatencyHistogram.bucket(Long.MAX_VALUE)));
+        assertEquals(0, new LatencyHistogram().percentile(50));
+    }
+
+    /**
+     * Failed calls are counted under their reason, and the counts reach the
+     * text format and JMX.
+     */
+    @Test
+    void testFailureReasonsAreCounted() throws Exception {
+        Library lib = new Library();
+        Metrics m = lib.getMetrics();
+        m.setSampling(1);
+        lib.registerBorrower(new Borrower("BOR-0001", "Sam", "sam@mail.com", "555"));
+        lib.registerBorrower(new Borrower("BOR-0002", "Alex", "alex@mail.com", "557"));
+        lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+        for (int i = 0; i < 6; i++) lib.addBook(new Novel("BK-" + i, "Title " + i, "Brown", "Fantasy"));
+
+        for (int i = 0; i < 3; i++) assertTrue(lib.issueBook("BOR-0001", "BK-" + i, "LIB-0001"));
+        assertFalse(lib.issueBook("BOR-0001", "BK-3", "LIB-0001"));         // borrow limit
+        assertFalse(lib.issueBook("BOR-0002", "BK-0", "LIB-0001"));         // already issued
+        assertFalse(lib.issueBook("BOR-0002", "BK-9", "LIB-0001"));         // not found
+        assertFalse(lib.issueBook("NOBODY", "BK-5", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0002", "BK-0"));
+        assertFalse(lib.placeHold("BOR-0002", "BK-0"));
+        assertFalse(lib.placeHold("BOR-0002", "BK-5"));
+        assertTrue(lib.returnBook("BK-0"));
+        assertFalse(lib.issueBook("BOR-0001", "BK-0", "LIB-0001"));         // hold order
+        assertFalse(lib.returnBook("BK-0"));
+        assertFalse(lib.renewLoan("BOR-0002", "BK-1"));
+        lib.searchBooks("title");
+
+        OperationStats issue = m.stats(Metrics.Op.ISSUE);
+        assertEquals(8, issue.getCalls());
+        assertEquals(5, issue.getFailures());
+        assertEquals(Map.of("OK", 3L, "LIMIT_REACHED", 1L, "UNAVAILABLE", 1L, "NOT_FOUND", 1L, "UNKNOWN_USER", 1L,
+                "HELD_FOR_OTHER", 1L), issue.getResults());
+        assertEquals(8, issue.getTimedCalls(), "Sampling every call");
+        assertTrue(issue.getP50Nanos() > 0 && issue.getP50Nanos() <= issue.getMaxNanos());
+        assertEquals(Map.of("OK", 1L, "ALREADY_HELD", 1L, "NOT_ON_LOAN", 1L), m.stats(Metrics.Op.PLACE_HOLD).getResults());
+        assertEquals(Map.of("OK", 1L, "NOT_ON_LOAN", 1L), m.stats(Metrics.Op.RETURN).getResults());
+        assertEquals(1, m.stats(Metrics.Op.RENEW).count(CirculationResult.NOT_ON_LOAN));
+        assertEquals(1, m.stats(Metrics.Op.SEARCH).getCalls());
+
+        String text = m.toText();
+        assertTrue(text.contains("library_calls_total{op=\"issue\",result=\"LIMIT_REACHED\"} 1\n"), text);
+        assertTrue(text.contains("library_latency_nanos_count{op=\"issue\"} 8\n"), text);
+
+        m.register("metrics-test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.library:type=Operation,library=\"metrics-test\",op=issue");
+            assertEquals(8L, server.getAttribute(name, "Calls"));
+            TabularData results = (TabularData) server.getAttribute(name, "Results");
+            assertEquals(6, results.size());
+            assertThrows(IllegalStateException.class, () -> m.register("metrics-test"));
+        } finally {
+            m.unregister();
+        }
+        assertThrows(IllegalArgumentException.class, () -> m.setSampling(3));
+    }
+}
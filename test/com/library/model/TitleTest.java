@@ -0,0 +1,61 @@
+package com.library.model;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TitleTest {
+
+    /**
+     * Random adds, removes, takes and releases agree with insertion-ordered
+     * sets of the copies and of the shelf, through the single-copy form and
+     * back.
+     */
+    @Test
+    void testCopiesMatchLinkedSets() {
+        Random rnd = new Random(25);
+        Title t = new Title(new Novel("C0", "Dune", "Herbert", "SF"));
+        LinkedHashSet<String> copies = new LinkedHashSet<>(), free = new LinkedHashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            String id = "C" + rnd.nextInt(i < 10_000 ? 2 : 12);
+            switch (rnd.nextInt(4)) {
+                case 0 -> {
+                    boolean added = copies.add(id);
+                    if (added) free.add(id);
+                    assertEquals(added, t.addCopy(new Novel(id, "Dune", "Herbert", "SF")));
+                }
+                case 1 -> {
+                    boolean removed = copies.remove(id);
+                    free.remove(id);
+                    assertEquals(removed, t.removeCopy(id));
+                }
+                case 2 -> assertEquals(free.remove(id), t.take(id));
+                default -> assertEquals(copies.contains(id) && free.add(id), t.release(id));
+            }
+            assertEquals(List.copyOf(copies), t.getCopyIds());
+            assertEquals(copies.size(), t.getCopies());
+            assertEquals(free.size(), t.getAvailable());
+            assertEquals(free.isEmpty() ? null : free.iterator().next(), t.firstFree());
+            assertEquals(free.contains(id), t.isFree(id));
+        }
+    }
+
+    /** An issued copy joins off the shelf; the key ignores copy IDs. */
+    @Test
+    void testIssuedCopyAndKey() {
+        Book a = new TextBook("A", "Calculus", "Spivak", "Math"), b = new TextBook("B", "Calculus", "Spivak", "Math");
+        b.issue(new Loan(new Borrower("U", "n", "e", "p"), b, new Librarian("L", "n", "e", "p")));
+        Title t = new Title(a);
+        assertTrue(t.addCopy(a));
+        assertTrue(t.addCopy(b));
+        assertFalse(t.addCopy(a));
+        assertEquals(1, t.getAvailable());
+        assertEquals(Title.keyOf(b), t.getKey());
+        assertNotEquals(Title.keyOf(new Novel("A", "Calculus", "Spivak", "Math")), t.getKey());
+        assertTrue(t.release("B"));
+        assertTrue(t.take("A"));
+        assertEquals("B", t.firstFree());
+    }
+}
@@ -0,0 +1,330 @@
+package com.library.persistence;
+
+import com.library.Library;
+import com.library.analytics.PopularityTracker;
+import com.library.index.MappedCatalog;
+import com.library.model.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryStoreTest {
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("library-store");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Seeds a library with loans, holds and one closed loan. */
+    private static void seed(Library lib) {
+        lib.registerBorrower(new Borrower("BOR-0001", "Sam", "sam@mail.com", "555"));
+        lib.registerBorrower(new Borrower("BOR-0002", "Alex", "alex@mail.com", "557"));
+        lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+        lib.addBook(new TextBook("BK-001", "Java Fundamentals", "Evans", "CS"));
+        lib.addBook(new Novel("BK-002", "The Java Saga", "Brown", "Fantasy"));
+        lib.addBook(new Reference("BK-003", "Java API Handbook", "Sun", "Vol1"));
+        lib.addBook(new Novel("BK-004", "Gone Soon", "X", "Y"));
+        lib.removeBook("BK-004");
+
+        assertTrue(lib.issueBook("BOR-0001", "BK-001", "LIB-0001"));
+        assertTrue(lib.renewLoan("BOR-0001", "BK-001"));
+        assertTrue(lib.issueBook("BOR-0001", "BK-003", "LIB-0001"));
+        assertTrue(lib.returnBook("BK-003"));
+        assertTrue(lib.issueBook("BOR-0002", "BK-002", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0001", "BK-002"));
+    }
+
+    /** Checks that a recovered library matches what {@link #seed} produced. */
+    private static void assertSeeded(Library lib, Library original) {
+        assertEquals(3, lib.listBooks().size());
+        assertNull(lib.getBook("BK-004"));
+        assertEquals(3, lib.listUsers().size());
+        assertEquals(1, lib.searchBooks("saga").size());
+
+        Loan renewed = lib.getActiveLoan("BK-001");
+        assertEquals("BOR-0001", renewed.getBorrower().getId());
+        assertEquals(original.getActiveLoan("BK-001").getIssueDate(), renewed.getIssueDate());
+        assertEquals(original.getActiveLoan("BK-001").getDueDate(), renewed.getDueDate(),
+                "Renewal must replay against the original issue time");
+        assertTrue(lib.getBook("BK-002").isIssued());
+        assertFalse(lib.getBook("BK-003").isIssued());
+
+        List<Loan> history = lib.getLoanHistory("BOR-0001");
+        assertEquals(1, history.size());
+        assertEquals("BK-003", history.get(0).getBook().getBookId());
+        assertNotNull(history.get(0).getReturnDate());
+
+        assertEquals(1, lib.getHoldsForBook("BK-002").size());
+        Person sam = lib.listUsers().stream().filter(p -> p.getId().equals("BOR-0001")).findFirst().orElseThrow();
+        assertEquals(1, sam.getActiveLoanCount());
+        assertEquals(1, ((Borrower) sam).getHolds().size());
+    }
+
+    /**
+     * Without a clean shutdown, state comes back from the journal alone.
+     */
+    @Test
+    void testRecoverFromJournal() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        seed(store.library());
+        // simulate a crash: no close(), so no snapshot is written
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.SYNC);
+        assertSeeded(recovered.library(), store.library());
+        recovered.close();
+    }
+
+    /**
+     * A checkpoint replaces the journal; later mutations land in the new segment.
+     */
+    @Test
+    void testRecoverFromSnapshotAndTail() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.ASYNC);
+        seed(store.library());
+        store.checkpoint();
+        store.library().getActiveLoan("BK-002").setDueDate(LocalDateTime.now().minusDays(1));
+        assertTrue(store.library().returnBook("BK-002"));
+        store.close();
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.ASYNC);
+        Library lib = recovered.library();
+        assertFalse(lib.getBook("BK-002").isIssued());
+        assertEquals(1, lib.getLoanHistory("BOR-0002").size());
+        assertFalse(lib.issueBook("BOR-0002", "BK-002", "LIB-0001"), "Sam's hold is still first in line");
+        assertTrue(lib.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+        recovered.close();
+
+        LibraryStore again = LibraryStore.open(dir, Journal.Durability.ASYNC);
+        assertEquals("BOR-0001", again.library().getActiveLoan("BK-002").getBorrower().getId());
+        again.close();
+    }
+
+    /**
+     * Registrations racing with a checkpoint land either in its snapshot or in
+     * the journal tail it keeps, never only in a segment it deletes.
+     */
+    @Test
+    void testRegistrationsSurviveConcurrentCheckpoints() throws Exception {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        AtomicInteger ids = new AtomicInteger();
+        Set<String> registered = ConcurrentHashMap.newKeySet();
+        for (int round = 0; round < 20; round++) {
+            Library lib = store.library();
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> registrars = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                registrars.add(Thread.ofPlatform().start(() -> {
+                    while (!stop.get()) {
+                        String id = String.format("BOR-%05d", ids.getAndIncrement());
+                        lib.registerBorrower(new Borrower(id, "Sam", "sam@mail.com", "555"));
+                        registered.add(id);
+                    }
+                }));
+            }
+            int before = registered.size();
+            while (registered.size() < before + 20) Thread.onSpinWait();
+            store.checkpoint();
+            stop.set(true);
+            for (Thread t : registrars) t.join();
+            // crash right after the checkpoint
+
+            store = LibraryStore.open(dir, Journal.Durability.SYNC);
+            for (String id : registered) assertNotNull(store.library().getUser(id), id);
+        }
+        store.close();
+    }
+
+    /**
+     * Popularity counters come back from the snapshot; checkouts after the
+     * checkpoint are counted again while the journal tail replays.
+     */
+    @Test
+    void testPopularitySurvivesCheckpoint() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        seed(store.library());
+        store.checkpoint();
+        assertTrue(store.library().returnBook("BK-001"));
+        assertTrue(store.library().issueBook("BOR-0002", "BK-001", "LIB-0001"));
+        // crash: the tail exists only in the journal
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.SYNC);
+        Library lib = recovered.library();
+        assertEquals(List.of(new PopularityTracker.Count("BK-001", 2), new PopularityTracker.Count("BK-002", 1),
+                        new PopularityTracker.Count("BK-003", 1)),
+                lib.getPopularTitles(PopularityTracker.Window.WEEK, 10));
+        assertEquals(List.of(new PopularityTracker.Count("BK-002", 1)),
+                lib.getPopular(PopularityTracker.Event.HOLD, PopularityTracker.Dimension.BOOK, PopularityTracker.Window.YEAR, 10));
+        recovered.close();
+    }
+
+    /**
+     * Settled fines come back from the snapshot and payments after it from
+     * the journal.
+     */
+    @Test
+    void testFinesSurviveCheckpoint() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        seed(store.library());
+        Library lib = store.library();
+        assertTrue(lib.issueBook("BOR-0002", "BK-003", "LIB-0001"));
+        lib.getActiveLoan("BK-003").setDueDate(LocalDateTime.now().minusDays(12));
+        assertTrue(lib.returnBook("BK-003"));
+        assertEquals(1200, lib.getFineBalance("BOR-0002"), "12 days late at 1.00 a day");
+        store.checkpoint();
+        assertTrue(lib.payFine("BOR-0002", 200));
+        // crash: the payment exists only in the journal
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.SYNC);
+        Library again = recovered.library();
+        assertEquals(1000, again.getFineBalance("BOR-0002"));
+        assertFalse(again.issueBook("BOR-0002", "BK-001", "LIB-0001"), "Still at the threshold");
+        assertTrue(again.payFine("BOR-0002", 1000));
+        assertEquals(0, again.getFineBalance("BOR-0002"));
+        recovered.close();
+    }
+
+    /**
+     * A pickup window comes back from the snapshot, and an expiry after it
+     * from the journal, with the next window at its original time.
+     */
+    @Test
+    void testPickupWindowsSurviveRecovery() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        seed(store.library());
+        Library lib = store.library();
+        assertTrue(lib.returnBook("BK-002"));
+        assertTrue(lib.placeHold("BOR-0002", "BK-002"));
+        assertNotNull(lib.getHoldsForBook("BK-002").get(0).getPickupBy(), "Set aside for Sam");
+        store.checkpoint();
+        assertTrue(lib.expireHold("BOR-0001", "BK-002"));
+        HoldRequest alex = lib.getHoldsForBook("BK-002").get(0);
+        // crash: the expiry exists only in the journal
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.SYNC);
+        Library again = recovered.library();
+        List<HoldRequest> queue = again.getHoldsForBook("BK-002");
+        assertEquals(1, queue.size());
+        assertEquals("BOR-0002", queue.get(0).getBorrower().getId());
+        assertEquals(alex.getPickupBy(), queue.get(0).getPickupBy());
+        assertEquals(1, again.getPickupsPending());
+        assertFalse(again.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+        assertTrue(again.issueBook("BOR-0002", "BK-002", "LIB-0001"));
+        recovered.close();
+
+        LibraryStore reopened = LibraryStore.open(dir, Journal.Durability.SYNC);
+        assertEquals(0, reopened.library().getPickupsPending());
+        assertTrue(reopened.library().getHoldsForBook("BK-002").isEmpty());
+        reopened.close();
+    }
+
+    /**
+     * A title's shared queue and the copy set aside for each hold come back
+     * from the snapshot and from the journal.
+     */
+    @Test
+    void testCopiesSetAsideSurviveRecovery() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        seed(store.library());
+        Library lib = store.library();
+        lib.registerBorrower(new Borrower("BOR-0003", "Kim", "kim@mail.com", "558"));
+        lib.addBook(new Novel("CP-1", "Shared", "Brown", "Fantasy"));
+        lib.addBook(new Novel("CP-2", "Shared", "Brown", "Fantasy"));
+        assertTrue(lib.issueBook("BOR-0002", "CP-1", "LIB-0001"));
+        assertTrue(lib.issueBook("BOR-0002", "CP-2", "LIB-0001"));
+        assertTrue(lib.placeHold("BOR-0001", "CP-2"));
+        assertTrue(lib.returnBook("CP-2"));
+        store.checkpoint();
+        assertTrue(lib.placeHold("BOR-0003", "CP-1"));
+        assertTrue(lib.returnBook("CP-1"));
+        // crash: the second hold and return exist only in the journal
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.SYNC);
+        Library again = recovered.library();
+        List<HoldRequest> queue = again.getHoldsForBook("CP-1");
+        assertEquals(List.of("BOR-0001", "BOR-0003"), queue.stream().map(hr -> hr.getBorrower().getId()).toList());
+        assertEquals(List.of("CP-2", "CP-1"), queue.stream().map(hr -> hr.getBook().getBookId()).toList());
+        assertEquals(0, again.getTitle("CP-1").getAvailable());
+        assertEquals(2, again.getPickupsPending());
+        assertEquals("CP-1", again.issueCopy("BOR-0003", "CP-2", "LIB-0001"));
+        recovered.close();
+    }
+
+    /**
+     * Full history segments move to files at a checkpoint; the snapshot keeps
+     * only the rest, and both come back after a crash.
+     */
+    @Test
+    void testHistorySpillsOnCheckpoint() throws IOException {
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.SYNC);
+        seed(store.library());
+        Library lib = store.library();
+        Borrower sam = (Borrower) lib.getUser("BOR-0001");
+        Librarian mu = (Librarian) lib.getUser("LIB-0001");
+        LocalDateTime t = LocalDateTime.of(2015, 1, 1, 9, 0);
+        int older = 1 << 16;
+        for (int i = 0; i < older; i++, t = t.plusHours(1)) {
+            lib.restoreClosedLoan(new Loan(sam, lib.getBook("BK-003"), mu, t, t.plusDays(7), t.plusHours(1)));
+        }
+        store.checkpoint();
+        assertEquals(1, lib.getHistory().spilled());
+        assertTrue(Files.exists(dir.resolve(LibraryStore.HISTORY).resolve("00000000.seg")));
+        assertTrue(Files.size(dir.resolve("snapshot.bin")) < 64 * 1024, "Spilled loans stay out of the snapshot");
+        assertTrue(lib.issueBook("BOR-0001", "BK-003", "LIB-0001"));
+        assertTrue(lib.returnBook("BK-003"));
+        // crash: the last return exists only in the journal
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.SYNC);
+        Library again = recovered.library();
+        assertEquals(older + 2, again.getLoanHistory("BOR-0001").size());
+        assertEquals(older + 2, again.getBookHistory("BK-003").size());
+        assertEquals(25, again.getLoanHistory("BOR-0001", LocalDateTime.of(2015, 1, 2, 0, 0),
+                LocalDateTime.of(2015, 1, 3, 0, 0)).size(), "24 issued that day plus one returned at midnight");
+        recovered.close();
+    }
+
+    /**
+     * A catalog file in the data directory is mounted on open; snapshots keep
+     * only the changes on top of it.
+     */
+    @Test
+    void testMountedCatalogSurvivesCheckpoint() throws IOException {
+        MappedCatalog.write(dir.resolve(LibraryStore.CATALOG), List.of(
+                new TextBook("BK-001", "Java Fundamentals", "Evans", "CS"),
+                new Novel("BK-002", "The Java Saga", "Brown", "Fantasy"),
+                new Novel("BK-004", "Gone Soon", "X", "Y")));
+        LibraryStore store = LibraryStore.open(dir, Journal.Durability.ASYNC);
+        Library lib = store.library();
+        lib.registerBorrower(new Borrower("BOR-0001", "Sam", "sam@mail.com", "555"));
+        lib.registerLibrarian(new Librarian("LIB-0001", "Mueller", "mu@mail.com", "556"));
+        lib.addBook(new Reference("BK-003", "Java API Handbook", "Sun", "Vol1"));
+        lib.removeBook("BK-004");
+        assertTrue(lib.issueBook("BOR-0001", "BK-002", "LIB-0001"));
+        store.close();
+
+        LibraryStore recovered = LibraryStore.open(dir, Journal.Durability.ASYNC);
+        Library again = recovered.library();
+        assertEquals(3, again.listBooks().size());
+        assertEquals(1, again.listAddedBooks().size());
+        assertNull(again.getBook("BK-004"));
+        assertTrue(again.getBook("BK-002").isIssued());
+        assertEquals(3, again.searchBooks("java").size());
+        recovered.close();
+    }
+}